@@ -3,12 +3,10 @@ package de.lenneflow.callbackservice.component;
 import de.lenneflow.callbackservice.config.AppConfiguration;
 import de.lenneflow.callbackservice.dto.ResultQueueElement;
 import de.lenneflow.callbackservice.util.Util;
-import org.springframework.amqp.core.AmqpAdmin;
-import org.springframework.amqp.core.Binding;
-import org.springframework.amqp.core.Queue;
-import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Component;
 
@@ -17,29 +15,43 @@ import org.springframework.stereotype.Component;
 @EnableAsync
 public class QueueController {
 
-    private final AmqpAdmin admin;
     private final RabbitTemplate rabbitTemplate;
+    //JSON or Smile, the orchestration service reads the results by the content type of the message
+    private final String messageContentType;
 
-    public QueueController(AmqpAdmin admin, RabbitTemplate rabbitTemplate) {
-        this.admin = admin;
+    public QueueController(RabbitTemplate rabbitTemplate,
+                           @Value("${callback.messaging.content-type:application/json}") String messageContentType) {
         this.rabbitTemplate = rabbitTemplate;
+        this.messageContentType = Util.supportedContentType(messageContentType);
     }
 
+    /**
+     * Sends a result to the result partition of its workflow instance. The orchestration service processes the
+     * results of a partition one after the other. The partition queues are declared at startup.
+     *
+     * @param functionDto the result
+     */
     public void addFunctionDtoToResultQueue(ResultQueueElement functionDto)  {
-        byte[] serializedFunctionDto = Util.serializeResultQueueElement(functionDto);
-        String queueName = AppConfiguration.RESULTSQUEUENAME;
-        String exchange  = queueName + "-Exchange";
-        String routingKey = queueName + "-RoutingKey";
-        createQueueAndBinding(queueName, exchange, routingKey);
-        rabbitTemplate.convertAndSend(exchange, routingKey, serializedFunctionDto);
+        byte[] serializedFunctionDto = Util.serializeResultQueueElement(functionDto, messageContentType);
+        int partition = resultPartition(functionDto.getWorkflowInstanceId());
+        rabbitTemplate.convertAndSend(AppConfiguration.RESULTSEXCHANGENAME, AppConfiguration.resultRoutingKey(partition), serializedFunctionDto, this::withContentType);
     }
 
-    private void createQueueAndBinding(String queueName, String exchangeName, String routingKey) {
-        Queue queue = new Queue(queueName, true, false, false);
-        admin.declareQueue(queue);
-        TopicExchange exchange = new TopicExchange(exchangeName, true, false);
-        admin.declareExchange(exchange);
-        Binding binding = new Binding(queueName, Binding.DestinationType.QUEUE, exchangeName, routingKey, null);
-        admin.declareBinding(binding);
+    private Message withContentType(Message message) {
+        message.getMessageProperties().setContentType(messageContentType);
+        return message;
+    }
+
+    /**
+     * The partition of the results of a workflow instance, computed the same way as in the orchestration service.
+     *
+     * @param workflowInstanceId the workflow instance id
+     * @return the partition
+     */
+    static int resultPartition(String workflowInstanceId) {
+        if (workflowInstanceId == null) {
+            return 0;
+        }
+        return Math.floorMod(workflowInstanceId.hashCode(), AppConfiguration.RESULTSQUEUEPARTITIONS);
     }
 }
@@ -1,7 +1,12 @@
 package de.lenneflow.callbackservice.config;
 
 import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
@@ -13,6 +18,8 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 @Configuration
@@ -20,6 +27,11 @@ public class AppConfiguration {
 
     public static final String RESULTSQUEUENAME = "functionResultQueue";
 
+    //must be the same as in the orchestration service
+    public static final int RESULTSQUEUEPARTITIONS = 16;
+
+    public static final String RESULTSEXCHANGENAME = RESULTSQUEUENAME + "-Exchange";
+
 
     @Value("${rabbit.address}")  private String address;
 
@@ -39,6 +51,29 @@ public class AppConfiguration {
         return new Queue(RESULTSQUEUENAME, true);
     }
 
+    /**
+     * The result partition queues and their bindings, declared the same way as in the orchestration service. They
+     * are declared once when the connection is created, not for every result.
+     *
+     * @return the declarables
+     */
+    @Bean
+    public Declarables resultPartitionQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        TopicExchange exchange = new TopicExchange(RESULTSEXCHANGENAME, true, false);
+        declarables.add(exchange);
+        for (int partition = 0; partition < RESULTSQUEUEPARTITIONS; partition++) {
+            Queue queue = QueueBuilder.durable(RESULTSQUEUENAME + "." + partition).singleActiveConsumer().build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(resultRoutingKey(partition)));
+        }
+        return new Declarables(declarables);
+    }
+
+    public static String resultRoutingKey(int partition) {
+        return RESULTSQUEUENAME + "-RoutingKey." + partition;
+    }
+
 
     @Bean
     public RestTemplate restTemplate(RestTemplateBuilder builder) {
@@ -18,11 +18,13 @@ public class CallBackController {
 
 
     @PostMapping("/{step-instance-id}/{workflow-instance-id}")
-    public void workerCallBack(@RequestBody FunctionPayload payload, @PathVariable("step-instance-id") String stepInstanceId, @PathVariable("workflow-instance-id") String workflowInstanceId){
+    public void workerCallBack(@RequestBody FunctionPayload payload, @PathVariable("step-instance-id") String stepInstanceId, @PathVariable("workflow-instance-id") String workflowInstanceId,
+                               @RequestParam(value = "attempt", required = false) Integer attempt){
         Validator.validate(payload);
         ResultQueueElement resultQueueElement = new ResultQueueElement();
         resultQueueElement.setStepInstanceId(stepInstanceId);
         resultQueueElement.setWorkflowInstanceId(workflowInstanceId);
+        resultQueueElement.setAttempt(attempt);
         resultQueueElement.setOutputData(payload.getOutputData());
         resultQueueElement.setRunStatus(payload.getRunStatus());
         resultQueueElement.setInputData(payload.getInputData());
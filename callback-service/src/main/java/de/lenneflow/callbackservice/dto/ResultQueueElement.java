@@ -19,6 +19,8 @@ public class ResultQueueElement {
 
     private String workflowInstanceId;
 
+    private Integer attempt;
+
     private RunStatus runStatus;
 
     private String failureReason;
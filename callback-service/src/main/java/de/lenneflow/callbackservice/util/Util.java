@@ -2,33 +2,62 @@ package de.lenneflow.callbackservice.util;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import de.lenneflow.callbackservice.dto.ResultQueueElement;
+import org.springframework.amqp.core.MessageProperties;
 
 import java.io.IOException;
 
 
 public class Util {
 
+    public static final String JSON_CONTENT_TYPE = MessageProperties.CONTENT_TYPE_JSON;
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    //the readers and writers are thread safe, so the serializers are built once and not for every message
+    private static final ObjectReader JSON_READER = new ObjectMapper().readerFor(ResultQueueElement.class);
+    private static final ObjectWriter JSON_WRITER = new ObjectMapper().writerFor(ResultQueueElement.class);
+    private static final ObjectReader SMILE_READER = new ObjectMapper(new SmileFactory()).readerFor(ResultQueueElement.class);
+    private static final ObjectWriter SMILE_WRITER = new ObjectMapper(new SmileFactory()).writerFor(ResultQueueElement.class);
+
     public static ResultQueueElement deserializeResultQueueElement(byte[] serializedResultQueueElement) {
-        ObjectMapper mapper = new ObjectMapper();
-        ResultQueueElement resultQueueElement = null;
+        return deserializeResultQueueElement(serializedResultQueueElement, JSON_CONTENT_TYPE);
+    }
+
+    public static ResultQueueElement deserializeResultQueueElement(byte[] serializedResultQueueElement, String contentType) {
         try {
-            resultQueueElement = mapper.readValue(serializedResultQueueElement, ResultQueueElement.class);
+            return (isSmile(contentType) ? SMILE_READER : JSON_READER).readValue(serializedResultQueueElement);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return resultQueueElement;
     }
 
     public static byte[] serializeResultQueueElement(ResultQueueElement resultQueueElement) {
-        ObjectMapper mapper = new ObjectMapper();
-        byte[] serializedFunction = null;
+        return serializeResultQueueElement(resultQueueElement, JSON_CONTENT_TYPE);
+    }
+
+    public static byte[] serializeResultQueueElement(ResultQueueElement resultQueueElement, String contentType) {
         try {
-            serializedFunction = mapper.writeValueAsBytes(resultQueueElement);
+            return (isSmile(contentType) ? SMILE_WRITER : JSON_WRITER).writeValueAsBytes(resultQueueElement);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
-        return serializedFunction;
+    }
+
+    /**
+     * Returns the supported content type for a configured content type, JSON if it is not Smile.
+     *
+     * @param contentType the configured content type
+     * @return the content type the results are published with
+     */
+    public static String supportedContentType(String contentType) {
+        return isSmile(contentType) ? SMILE_CONTENT_TYPE : JSON_CONTENT_TYPE;
+    }
+
+    public static boolean isSmile(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase().startsWith(SMILE_CONTENT_TYPE);
     }
 
 }
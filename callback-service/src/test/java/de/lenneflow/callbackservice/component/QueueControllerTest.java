@@ -5,18 +5,20 @@ import de.lenneflow.callbackservice.dto.ResultQueueElement;
 import de.lenneflow.callbackservice.util.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class QueueControllerTest {
 
-    @Mock
-    private AmqpAdmin admin;
-
     @Mock
     private RabbitTemplate rabbitTemplate;
 
@@ -25,23 +27,56 @@ class QueueControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        queueController = new QueueController(admin, rabbitTemplate);
+        queueController = new QueueController(rabbitTemplate, Util.JSON_CONTENT_TYPE);
     }
 
     @Test
-    void addFunctionDtoToResultQueue_shouldCreateQueueAndSendMessage() {
+    void addFunctionDtoToResultQueue_shouldSendMessage() {
         ResultQueueElement functionDto = new ResultQueueElement();
+        functionDto.setWorkflowInstanceId("instance1");
         byte[] serializedFunctionDto = Util.serializeResultQueueElement(functionDto);
         String queueName = AppConfiguration.RESULTSQUEUENAME;
         String exchange = queueName + "-Exchange";
-        String routingKey = queueName + "-RoutingKey";
+        String routingKey = queueName + "-RoutingKey." + Math.floorMod("instance1".hashCode(), AppConfiguration.RESULTSQUEUEPARTITIONS);
+
+        queueController.addFunctionDtoToResultQueue(functionDto);
+
+        verify(rabbitTemplate).convertAndSend(eq(exchange), eq(routingKey), eq(serializedFunctionDto), any(MessagePostProcessor.class));
+    }
+
+    @Test
+    void addFunctionDtoToResultQueue_shouldSendConfiguredFormat() {
+        queueController = new QueueController(rabbitTemplate, Util.SMILE_CONTENT_TYPE);
+        ResultQueueElement functionDto = new ResultQueueElement();
+        functionDto.setStepInstanceId("step1");
 
         queueController.addFunctionDtoToResultQueue(functionDto);
 
-        verify(admin).declareQueue(any());
-        verify(admin).declareExchange(any());
-        verify(admin).declareBinding(any());
-        verify(rabbitTemplate).convertAndSend(exchange, routingKey, serializedFunctionDto);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), body.capture(), postProcessor.capture());
+        assertEquals("step1", Util.deserializeResultQueueElement(body.getValue(), Util.SMILE_CONTENT_TYPE).getStepInstanceId());
+        Message message = postProcessor.getValue().postProcessMessage(new Message(new byte[0]));
+        assertEquals(Util.SMILE_CONTENT_TYPE, message.getMessageProperties().getContentType());
+    }
+
+    @Test
+    void resultPartitionQueues_shouldDeclareAllPartitions() {
+        Declarables declarables = new AppConfiguration().resultPartitionQueues();
+
+        assertEquals(AppConfiguration.RESULTSQUEUEPARTITIONS, declarables.getDeclarablesByType(Queue.class).size());
+        Queue queue = declarables.getDeclarablesByType(Queue.class).get(3);
+        assertEquals(AppConfiguration.RESULTSQUEUENAME + ".3", queue.getName());
+        assertEquals(true, queue.getArguments().get("x-single-active-consumer"));
+    }
+
+    @Test
+    void resultPartition_isInRange() {
+        assertEquals(0, QueueController.resultPartition(null));
+        for (int i = 0; i < 1000; i++) {
+            int partition = QueueController.resultPartition("instance" + i);
+            assertTrue(partition >= 0 && partition < AppConfiguration.RESULTSQUEUEPARTITIONS);
+        }
     }
 
 }
\ No newline at end of file
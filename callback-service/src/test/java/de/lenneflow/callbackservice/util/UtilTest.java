@@ -34,6 +34,18 @@ class UtilTest {
         assertEquals(RunStatus.COMPLETED, deserializedFunction.getRunStatus());
     }
 
+    @Test
+    void deserializeResultQueueElement_shouldDeserializeSmile() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setStepInstanceId("123");
+        byte[] serializedFunction = Util.serializeResultQueueElement(resultQueueElement, Util.SMILE_CONTENT_TYPE);
+
+        ResultQueueElement deserializedFunction = Util.deserializeResultQueueElement(serializedFunction, Util.SMILE_CONTENT_TYPE);
+
+        assertEquals("123", deserializedFunction.getStepInstanceId());
+        assertThrows(RuntimeException.class, () -> Util.deserializeResultQueueElement(serializedFunction));
+    }
+
     @Test
     void deserializeResultQueueElement_shouldThrowExceptionWhenSerializedResultQueueElementIsInvalid() {
         byte[] invalidSerializedFunction = "invalid data".getBytes();
@@ -1,6 +1,8 @@
 package de.lenneflow.functionservice;
 
+import de.lenneflow.functionservice.helpercomponents.DeploymentEventPublisher;
 import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
@@ -47,4 +49,14 @@ public class FunctionServiceApplication {
         return new RabbitAdmin(connectionFactory());
     }
 
+    /**
+     * The exchange of the deployment events, declared by the admin when the connection is established.
+     *
+     * @return the exchange
+     */
+    @Bean
+    public FanoutExchange functionDeploymentExchange() {
+        return new FanoutExchange(DeploymentEventPublisher.FUNCTION_DEPLOYMENT_EXCHANGE, true, false);
+    }
+
 }
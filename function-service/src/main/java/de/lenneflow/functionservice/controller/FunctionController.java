@@ -9,6 +9,7 @@ import de.lenneflow.functionservice.exception.ResourceNotFoundException;
 import de.lenneflow.functionservice.feignclients.WorkerServiceClient;
 import de.lenneflow.functionservice.feignmodels.KubernetesCluster;
 import de.lenneflow.functionservice.helpercomponents.DeploymentController;
+import de.lenneflow.functionservice.helpercomponents.DeploymentEventPublisher;
 import de.lenneflow.functionservice.model.Function;
 import de.lenneflow.functionservice.model.JsonSchema;
 import de.lenneflow.functionservice.repository.FunctionRepository;
@@ -43,13 +44,15 @@ public class FunctionController {
     final DeploymentController deploymentController;
     final WorkerServiceClient workerServiceClient;
     final JsonSchemaRepository jsonSchemaRepository;
+    final DeploymentEventPublisher deploymentEventPublisher;
 
-    public FunctionController(FunctionRepository functionRepository, Validator validator, DeploymentController deploymentController, WorkerServiceClient workerServiceClient, JsonSchemaRepository jsonSchemaRepository) {
+    public FunctionController(FunctionRepository functionRepository, Validator validator, DeploymentController deploymentController, WorkerServiceClient workerServiceClient, JsonSchemaRepository jsonSchemaRepository, DeploymentEventPublisher deploymentEventPublisher) {
         this.functionRepository = functionRepository;
         this.validator = validator;
         this.deploymentController = deploymentController;
         this.workerServiceClient = workerServiceClient;
         this.jsonSchemaRepository = jsonSchemaRepository;
+        this.deploymentEventPublisher = deploymentEventPublisher;
     }
 
     @Operation(summary = "Get a function by id")
@@ -64,6 +67,12 @@ public class FunctionController {
         return functionRepository.findByName(name);
     }
 
+    @Operation(summary = "Get functions by ids", description = "Returns the functions with the given ids in one call. Unknown ids are left out.")
+    @PostMapping("/batch")
+    public List<Function> getFunctionsByIds(@RequestBody List<String> uids) {
+        return functionRepository.findByUidIn(uids);
+    }
+
     @Operation(summary = "Get all functions")
     @GetMapping("/list")
     public List<Function> getAllFunctions() {
@@ -106,6 +115,7 @@ public class FunctionController {
             function.setUpdated(LocalDateTime.now());
             function.setDeploymentState(DeploymentState.UNDEPLOYED);
             functionRepository.save(function);
+            deploymentEventPublisher.publishDeploymentState(function);
             return;
         }
         if (foundFunction.getDeploymentState() == DeploymentState.DEPLOYING) {
@@ -115,11 +125,13 @@ public class FunctionController {
             deploymentController.undeployFunction(foundFunction);
             function.setUpdated(LocalDateTime.now());
             Function savedFunction = functionRepository.save(function);
+            deploymentEventPublisher.publishDeploymentState(savedFunction);
             new Thread(() -> deploymentController.deployFunctionImageToWorker(savedFunction)).start();
             return;
         }
         function.setUpdated(LocalDateTime.now());
         functionRepository.save(function);
+        deploymentEventPublisher.publishDeploymentState(function);
 
     }
 
@@ -137,6 +149,7 @@ public class FunctionController {
         deploymentController.undeployFunction(function);
         function.setDeploymentState(DeploymentState.UNDEPLOYED);
         functionRepository.save(function);
+        deploymentEventPublisher.publishDeploymentState(function);
     }
 
     @Operation(summary = "Checks the connection to a cluster")
@@ -162,6 +175,8 @@ public class FunctionController {
             deploymentController.undeployFunction(function);
         }
         functionRepository.delete(function);
+        function.setDeploymentState(DeploymentState.UNDEPLOYED);
+        deploymentEventPublisher.publishDeploymentState(function);
     }
 
     @Operation(summary = "Creates a new json schema")
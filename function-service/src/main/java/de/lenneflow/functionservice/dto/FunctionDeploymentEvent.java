@@ -0,0 +1,27 @@
+package de.lenneflow.functionservice.dto;
+
+import de.lenneflow.functionservice.enums.DeploymentState;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Change of the deployment state of a function, published to the function deployment exchange.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FunctionDeploymentEvent {
+
+    private String functionUid;
+
+    private String functionName;
+
+    private DeploymentState deploymentState;
+
+    private String serviceUrl;
+}
@@ -43,10 +43,12 @@ public class DeploymentController {
 
     final WorkerServiceClient workerServiceClient;
     final FunctionRepository functionRepository;
+    final DeploymentEventPublisher deploymentEventPublisher;
 
-    public DeploymentController(WorkerServiceClient workerServiceClient, FunctionRepository functionRepository) {
+    public DeploymentController(WorkerServiceClient workerServiceClient, FunctionRepository functionRepository, DeploymentEventPublisher deploymentEventPublisher) {
         this.workerServiceClient = workerServiceClient;
         this.functionRepository = functionRepository;
+        this.deploymentEventPublisher = deploymentEventPublisher;
     }
 
     /**
@@ -180,13 +182,14 @@ public class DeploymentController {
     }
 
     /**
-     * Updates the state of function entity
+     * Updates the state of function entity and publishes the change
      * @param function function
      * @param deploymentState new state
      */
     private void updateFunctionDeploymentState(Function function, DeploymentState deploymentState) {
         function.setDeploymentState(deploymentState);
         functionRepository.save(function);
+        deploymentEventPublisher.publishDeploymentState(function);
     }
 
     /**
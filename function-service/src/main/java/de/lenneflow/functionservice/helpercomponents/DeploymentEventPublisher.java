@@ -0,0 +1,50 @@
+package de.lenneflow.functionservice.helpercomponents;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.functionservice.dto.FunctionDeploymentEvent;
+import de.lenneflow.functionservice.model.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the changes of the deployment state of the functions. The orchestrators wait for these events instead of
+ * polling the function service, so a run that waits for its functions starts as soon as they are deployed.
+ * The updates and deletions of functions are published as well, the orchestrators remove the function from their
+ * function cache on every event. The exchange is declared once as a bean of the application.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class DeploymentEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeploymentEventPublisher.class);
+
+    public static final String FUNCTION_DEPLOYMENT_EXCHANGE = "functionDeploymentExchange";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    final RabbitTemplate rabbitTemplate;
+
+    public DeploymentEventPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * Publishes the current deployment state of a function. A failed publish is only logged, the state is saved
+     * in the database anyway.
+     *
+     * @param function the function with the new deployment state
+     */
+    public void publishDeploymentState(Function function) {
+        FunctionDeploymentEvent event = new FunctionDeploymentEvent(function.getUid(), function.getName(), function.getDeploymentState(), function.getServiceUrl());
+        try {
+            rabbitTemplate.convertAndSend(FUNCTION_DEPLOYMENT_EXCHANGE, "", mapper.writeValueAsBytes(event));
+        } catch (JsonProcessingException | AmqpException e) {
+            logger.error("Could not publish the deployment state of the function {}!\n{}", function.getName(), e.getMessage());
+        }
+    }
+}
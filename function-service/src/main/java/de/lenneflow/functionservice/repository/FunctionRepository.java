@@ -4,6 +4,7 @@ package de.lenneflow.functionservice.repository;
 import de.lenneflow.functionservice.model.Function;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -18,5 +19,7 @@ public interface FunctionRepository extends MongoRepository<Function, String> {
 
     List<Function> findByType(String functionType);
 
+    List<Function> findByUidIn(Collection<String> uids);
+
 
 }
@@ -8,6 +8,7 @@ import de.lenneflow.functionservice.exception.ResourceNotFoundException;
 import de.lenneflow.functionservice.feignclients.WorkerServiceClient;
 import de.lenneflow.functionservice.feignmodels.KubernetesCluster;
 import de.lenneflow.functionservice.helpercomponents.DeploymentController;
+import de.lenneflow.functionservice.helpercomponents.DeploymentEventPublisher;
 import de.lenneflow.functionservice.model.Function;
 import de.lenneflow.functionservice.model.JsonSchema;
 import de.lenneflow.functionservice.repository.FunctionRepository;
@@ -41,12 +42,15 @@ class FunctionControllerTest {
     @Mock
     private JsonSchemaRepository jsonSchemaRepository;
 
+    @Mock
+    private DeploymentEventPublisher deploymentEventPublisher;
+
     private FunctionController functionController;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        functionController = new FunctionController(functionRepository, validator, deploymentController, workerServiceClient, jsonSchemaRepository);
+        functionController = new FunctionController(functionRepository, validator, deploymentController, workerServiceClient, jsonSchemaRepository, deploymentEventPublisher);
     }
 
     @Test
@@ -73,6 +77,17 @@ class FunctionControllerTest {
         assertEquals("existingName", result.getName());
     }
 
+    @Test
+    void getFunctionsByIds_shouldReturnFoundFunctions() {
+        Function function = new Function();
+        function.setUid("existingUid");
+        when(functionRepository.findByUidIn(List.of("existingUid", "nonExistingUid"))).thenReturn(List.of(function));
+
+        List<Function> result = functionController.getFunctionsByIds(List.of("existingUid", "nonExistingUid"));
+
+        assertEquals(List.of(function), result);
+    }
+
     @Test
     void getAllFunctions_shouldReturnListOfFunctions() {
         Function function1 = new Function();
@@ -118,6 +133,7 @@ class FunctionControllerTest {
         functionController.updateFunction(functionDTO, "existingUid");
 
         verify(functionRepository, times(1)).save(any(Function.class));
+        verify(deploymentEventPublisher, times(1)).publishDeploymentState(any(Function.class));
     }
 
     @Test
@@ -148,6 +164,7 @@ class FunctionControllerTest {
         functionController.deleteFunction("existingUid");
 
         verify(functionRepository, times(1)).delete(function);
+        verify(deploymentEventPublisher, times(1)).publishDeploymentState(function);
     }
 
     @Test
@@ -0,0 +1,57 @@
+package de.lenneflow.functionservice.helpercomponents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.functionservice.dto.FunctionDeploymentEvent;
+import de.lenneflow.functionservice.enums.DeploymentState;
+import de.lenneflow.functionservice.model.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.net.ConnectException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeploymentEventPublisherTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    private DeploymentEventPublisher deploymentEventPublisher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deploymentEventPublisher = new DeploymentEventPublisher(rabbitTemplate);
+    }
+
+    @Test
+    void publishDeploymentState_sendsEventToExchange() throws IOException {
+        Function function = new Function();
+        function.setUid("functionUid");
+        function.setName("function");
+        function.setDeploymentState(DeploymentState.DEPLOYED);
+
+        deploymentEventPublisher.publishDeploymentState(function);
+
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(rabbitTemplate).convertAndSend(eq(DeploymentEventPublisher.FUNCTION_DEPLOYMENT_EXCHANGE), eq(""), body.capture());
+        FunctionDeploymentEvent event = new ObjectMapper().readValue((byte[]) body.getValue(), FunctionDeploymentEvent.class);
+        assertEquals("functionUid", event.getFunctionUid());
+        assertEquals(DeploymentState.DEPLOYED, event.getDeploymentState());
+    }
+
+    @Test
+    void publishDeploymentState_doesNotThrowWhenBrokerIsDown() {
+        Function function = new Function();
+        doThrow(new AmqpConnectException(new ConnectException("down"))).when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class));
+
+        assertDoesNotThrow(() -> deploymentEventPublisher.publishDeploymentState(function));
+    }
+}
@@ -0,0 +1,56 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.ezylang.evalex.EvaluationException;
+import com.ezylang.evalex.Expression;
+import com.ezylang.evalex.parser.ParseException;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the evaluation of a DO_WHILE condition with the former string substitution and parsing on every
+ * evaluation against the compiled expression with bound variables.
+ * Run with ./gradlew jmh
+ *
+ * @author Idrissa Ganemtore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpressionEvaluatorBenchmark {
+
+    private static final String CONDITION = "[runCount] < [step1.output.maxRuns] && [step2.output.status] == \"RUNNING\"";
+
+    private final Map<String, Object> values = Map.of("step1.output.maxRuns", "10", "step2.output.status", "RUNNING");
+
+    private CompiledExpression compiledExpression;
+
+    @Setup
+    public void setUp() {
+        compiledExpression = CompiledExpression.compile(CONDITION);
+    }
+
+    @Benchmark
+    public Object substituteAndParse() throws EvaluationException, ParseException {
+        String expression = CONDITION;
+        for (String s : StringUtils.substringsBetween(expression, "[", "]")) {
+            if (s.equalsIgnoreCase("runCount")) {
+                expression = expression.replace(s, "5");
+            } else {
+                Object value = values.get(s);
+                //string values have to be quoted by hand in the former path
+                expression = expression.replace(s, value.equals("RUNNING") ? "\"" + value + "\"" : value.toString());
+            }
+        }
+        expression = expression.replace("[", "").replace("]", "");
+        return new Expression(expression).evaluate().getValue();
+    }
+
+    @Benchmark
+    public Object compiled() throws EvaluationException, ParseException {
+        return compiledExpression.evaluate(List.of(5, values.get("step1.output.maxRuns"), values.get("step2.output.status")));
+    }
+}
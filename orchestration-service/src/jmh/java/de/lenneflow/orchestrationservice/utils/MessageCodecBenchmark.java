@@ -0,0 +1,65 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.orchestrationservice.dto.QueueElement;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encoding and decoding of a queue element with a new object mapper for every message, the former
+ * path, against the shared JSON and Smile codecs.
+ * Run with ./gradlew jmh
+ *
+ * @author Idrissa Ganemtore
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCodecBenchmark {
+
+    private QueueElement queueElement;
+
+    @Setup
+    public void setUp() {
+        queueElement = new QueueElement();
+        queueElement.setStepInstanceId("6f1c2a0e-3b7d-4a51-9d8e-2f4b6c8a1e30");
+        queueElement.setWorkflowInstanceId("0b9e7d5c-1a3f-4e62-8c4d-7a2b9f6e3d11");
+        queueElement.setAttempt(1);
+        queueElement.setRunStatus(RunStatus.RUNNING);
+        queueElement.setServiceUrl("http://function-service.lenneflow.svc.cluster.local/api/run");
+        queueElement.setCallBackUrl("http://callback-service.lenneflow.svc.cluster.local/api/callback");
+        queueElement.setFunctionName("image-resize");
+        queueElement.setFunctionType("IMAGE");
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.put("width", 1024);
+        inputData.put("height", 768);
+        inputData.put("format", "png");
+        inputData.put("tags", List.of("thumbnail", "preview", "archive"));
+        inputData.put("source", Map.of("bucket", "images", "key", "uploads/2024/10/picture.png", "size", 3481923));
+        queueElement.setInputData(inputData);
+    }
+
+    @Benchmark
+    public QueueElement newMapperPerMessage() throws IOException {
+        byte[] encoded = new ObjectMapper().writeValueAsBytes(queueElement);
+        return new ObjectMapper().readValue(encoded, QueueElement.class);
+    }
+
+    @Benchmark
+    public QueueElement sharedJson() throws IOException {
+        byte[] encoded = MessageCodec.encode(queueElement, MessageCodec.JSON_CONTENT_TYPE);
+        return MessageCodec.decode(encoded, MessageCodec.JSON_CONTENT_TYPE, QueueElement.class);
+    }
+
+    @Benchmark
+    public QueueElement sharedSmile() throws IOException {
+        byte[] encoded = MessageCodec.encode(queueElement, MessageCodec.SMILE_CONTENT_TYPE);
+        return MessageCodec.decode(encoded, MessageCodec.SMILE_CONTENT_TYPE, QueueElement.class);
+    }
+}
@@ -1,33 +1,56 @@
 package de.lenneflow.orchestrationservice.configuration;
 
 import de.lenneflow.orchestrationservice.helpercomponents.QueueController;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.HeadersExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-import org.springframework.web.client.RestTemplate;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 @Configuration
 public class AppConfiguration {
 
+    public static final String FUNCTION_QUEUE_LISTENER_FACTORY = "functionQueueListenerFactory";
+
+    public static final String RESULT_QUEUE_LISTENER_FACTORY = "resultQueueListenerFactory";
 
     @Value("${rabbit.address}")  private String address;
 
@@ -37,24 +60,219 @@ public class AppConfiguration {
 
     @Value("${rabbit.password}")  private String password;
 
+    @Value("${orchestration.dispatch.max-concurrency:64}")  private int dispatchMaxConcurrency;
+
+    @Value("${orchestration.dispatch.queue-capacity:256}")  private int dispatchQueueCapacity;
+
+    @Value("${orchestration.dispatch.http.max-connections-per-route:50}")  private int dispatchMaxConnectionsPerRoute;
+
+    @Value("${orchestration.dispatch.http.max-connections-total:500}")  private int dispatchMaxConnectionsTotal;
+
+    @Value("${orchestration.dispatch.http.connect-timeout-ms:5000}")  private long dispatchConnectTimeoutMillis;
+
+    @Value("${orchestration.dispatch.http.response-timeout-ms:600000}")  private long dispatchResponseTimeoutMillis;
+
+    @Value("${orchestration.dispatch.http.keep-alive-seconds:60}")  private long dispatchKeepAliveSeconds;
+
+    @Value("${orchestration.result.prefetch-count:50}")  private int resultPrefetchCount;
+
+    @Value("${orchestration.publisher.channel-cache-size:25}")  private int publisherChannelCacheSize;
+
     @Bean
     public AmqpAdmin amqpAdmin() {
         return new RabbitAdmin(connectionFactory());
     }
 
+    /**
+     * The unpartitioned result queue. It is still consumed, so results published before the partitioning are
+     * not lost.
+     *
+     * @return the queue
+     */
     @Bean
     public Queue functionResultQueue() {
         return new Queue(QueueController.FUNCTION_RESULT_QUEUE, true);
     }
 
+    /**
+     * The result partition queues and their bindings to the result exchange.
+     *
+     * @return the declarables
+     */
+    @Bean
+    public Declarables resultPartitionQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        TopicExchange exchange = new TopicExchange(QueueController.FUNCTION_RESULT_EXCHANGE, true, false);
+        declarables.add(exchange);
+        for (int partition = 0; partition < QueueController.RESULT_QUEUE_PARTITIONS; partition++) {
+            Queue queue = QueueController.resultPartitionQueue(partition);
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).with(QueueController.resultPartitionRoutingKey(partition)));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * The fanout exchange of the function service for the deployment state changes.
+     *
+     * @return the exchange
+     */
+    @Bean
+    public FanoutExchange functionDeploymentExchange() {
+        return new FanoutExchange(QueueController.FUNCTION_DEPLOYMENT_EXCHANGE, true, false);
+    }
+
+    /**
+     * The deployment state changes of this orchestrator. Every orchestrator gets all changes in its own queue,
+     * the queue is deleted when the orchestrator stops.
+     *
+     * @return the queue
+     */
+    @Bean
+    public Queue functionDeploymentQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding functionDeploymentBinding() {
+        return BindingBuilder.bind(functionDeploymentQueue()).to(functionDeploymentExchange());
+    }
+
     @Bean
     public Queue functionQueue() {
         return new Queue(QueueController.FUNCTION_QUEUE, true);
     }
 
+    @Bean
+    public TopicExchange functionQueueExchange() {
+        return new TopicExchange(QueueController.FUNCTION_QUEUE_EXCHANGE, true, false);
+    }
+
+    @Bean
+    public Binding functionQueueBinding() {
+        return BindingBuilder.bind(functionQueue()).to(functionQueueExchange()).with(QueueController.FUNCTION_QUEUE_ROUTING);
+    }
+
+    /**
+     * The fanout exchange of the run state changes. It is deleted by the broker when its last binding is removed,
+     * the message publisher declares it again when a message to it is not confirmed.
+     *
+     * @return the exchange
+     */
+    @Bean
+    public FanoutExchange runStateExchange() {
+        return new FanoutExchange(QueueController.RUN_STATE_EXCHANGE, false, true);
+    }
+
+    /**
+     * The run state changes of this orchestrator for its event streams. Every orchestrator gets all changes in its
+     * own queue, the queue is deleted when the orchestrator stops.
+     *
+     * @return the queue
+     */
+    @Bean
+    public Queue runStateQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding runStateBinding() {
+        return BindingBuilder.bind(runStateQueue()).to(runStateExchange());
+    }
+
+    /**
+     * The headers exchange of the retry delay queues.
+     *
+     * @return the exchange
+     */
+    @Bean
+    public HeadersExchange retryDelayExchange() {
+        return QueueController.retryDelayExchange();
+    }
 
+    /**
+     * The retry delay queues, one per delay of the fixed set of retry delays.
+     *
+     * @return the declarables
+     */
     @Bean
-    public RestTemplate getRestTemplate() throws NoSuchAlgorithmException, KeyManagementException {
+    public Declarables retryDelayQueues() {
+        return new Declarables(QueueController.retryDelayQueues());
+    }
+
+
+    /**
+     * Listener container factory for the function queue. Messages are acknowledged manually when the dispatch is
+     * done and the prefetch count matches the capacity of the dispatch executor, so a burst stays in the broker.
+     *
+     * @return the listener container factory
+     */
+    @Bean(name = FUNCTION_QUEUE_LISTENER_FACTORY)
+    public SimpleRabbitListenerContainerFactory functionQueueListenerFactory() {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory());
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(dispatchMaxConcurrency + dispatchQueueCapacity);
+        return factory;
+    }
+
+    /**
+     * Listener container factory for the result partition queues. Every queue gets its own consumer, so the results
+     * of a partition are processed one after the other and the partitions are processed in parallel.
+     *
+     * @return the listener container factory
+     */
+    @Bean(name = RESULT_QUEUE_LISTENER_FACTORY)
+    public DirectRabbitListenerContainerFactory resultQueueListenerFactory() {
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory());
+        factory.setConsumersPerQueue(1);
+        factory.setPrefetchCount(resultPrefetchCount);
+        return factory;
+    }
+
+    /**
+     * Non-blocking HTTP client used to dispatch functions. Connections to the function pods are pooled and kept
+     * alive per host, and HTTP/2 is negotiated with the functions that support it.
+     *
+     * @return the started http client
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient functionHttpClient() throws NoSuchAlgorithmException, KeyManagementException {
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setTlsStrategy(new DefaultClientTlsStrategy(trustAllSslContext(), NoopHostnameVerifier.INSTANCE))
+                .setDefaultTlsConfig(TlsConfig.custom().setVersionPolicy(HttpVersionPolicy.NEGOTIATE).build())
+                .setMaxConnPerRoute(dispatchMaxConnectionsPerRoute)
+                .setMaxConnTotal(dispatchMaxConnectionsTotal)
+                .setDefaultConnectionConfig(dispatchConnectionConfig())
+                .build();
+
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(dispatchRequestConfig())
+                .setIOReactorConfig(IOReactorConfig.custom().setSoKeepAlive(true).build())
+                .evictIdleConnections(TimeValue.ofSeconds(dispatchKeepAliveSeconds))
+                .build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    private ConnectionConfig dispatchConnectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(dispatchConnectTimeoutMillis))
+                .setSocketTimeout(Timeout.ofMilliseconds(dispatchResponseTimeoutMillis))
+                .build();
+    }
+
+    private RequestConfig dispatchRequestConfig() {
+        return RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofMilliseconds(dispatchResponseTimeoutMillis))
+                .setConnectionKeepAlive(TimeValue.ofSeconds(dispatchKeepAliveSeconds))
+                .build();
+    }
+
+    private SSLContext trustAllSslContext() throws NoSuchAlgorithmException, KeyManagementException {
 
         // Create SSL context to trust all certificates
         SSLContext sslContext = SSLContext.getInstance("TLS");
@@ -77,20 +295,7 @@ public class AppConfiguration {
 
         // Initialize SSL context with the defined trust managers
         sslContext.init(null, trustManagers, null);
-
-        // Disable SSL verification for RestTemplate
-
-        // Set the default SSL socket factory to use the custom SSL context
-        HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-
-        // Set the default hostname verifier to allow all hostnames
-        HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-
-        // Create a RestTemplate with a custom request factory
-
-        // Build RestTemplate with SimpleClientHttpRequestFactory
-        return new RestTemplateBuilder().requestFactory(SimpleClientHttpRequestFactory.class).readTimeout(Duration.ofMinutes(10))
-                .build();
+        return sslContext;
     }
 
 
@@ -112,6 +317,9 @@ public class AppConfiguration {
         connectionFactory.setPort(port);
         connectionFactory.setUsername(userName);
         connectionFactory.setPassword(password);
+        //the message publisher waits for the confirms of its batches
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        connectionFactory.setChannelCacheSize(publisherChannelCacheSize);
         return connectionFactory;
     }
 }
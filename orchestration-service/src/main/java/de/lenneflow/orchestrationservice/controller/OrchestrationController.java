@@ -1,10 +1,18 @@
 package de.lenneflow.orchestrationservice.controller;
 
 import de.lenneflow.orchestrationservice.dto.GlobalInputDataDto;
+import de.lenneflow.orchestrationservice.dto.RunPage;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.exception.PayloadNotValidException;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.helpercomponents.ExecutionPlanCache;
+import de.lenneflow.orchestrationservice.helpercomponents.InstanceCache;
 import de.lenneflow.orchestrationservice.helpercomponents.InstanceController;
+import de.lenneflow.orchestrationservice.helpercomponents.PayloadStore;
+import de.lenneflow.orchestrationservice.helpercomponents.RunCompletionTracker;
+import de.lenneflow.orchestrationservice.helpercomponents.RunListing;
+import de.lenneflow.orchestrationservice.helpercomponents.RunStateStream;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
 import de.lenneflow.orchestrationservice.model.GlobalInputData;
 import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
@@ -19,10 +27,16 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -38,18 +52,24 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class OrchestrationController {
 
-    final WorkflowServiceClient workflowServiceClient;
+    final ExecutionPlanCache executionPlanCache;
     final WorkflowInstanceRepository workflowInstanceRepository;
     final WorkflowStepInstanceRepository workflowStepInstanceRepository;
     final WorkflowRunner workflowRunner;
     final InstanceController instanceController;
     final GlobalInputDataRepository globalInputDataRepository;
+    final RunListing runListing;
+    final RunStateStream runStateStream;
+    final RunCompletionTracker runCompletionTracker;
+    final InstanceCache instanceCache;
+    final PayloadStore payloadStore;
 
     @Operation(summary = "Starts a workflow by UID")
     @GetMapping("/workflow/{workflow-uid}/input-data/{input-data-uid}/start")
     public WorkflowExecution startWorkflowGet(@PathVariable(name = "workflow-uid") @Parameter(name = "Workflow UID") String workflowId, @PathVariable("input-data-uid") @Parameter(name = "Input data UID") String inputdataId) {
         GlobalInputData globalInputData = globalInputDataRepository.findByUid(inputdataId);
-        Workflow workflow = workflowServiceClient.getWorkflowById(workflowId);
+        ExecutionPlan plan = executionPlanCache.getPlan(workflowId);
+        Workflow workflow = plan != null ? plan.getWorkflow() : null;
         if (globalInputData == null) {
             throw new PayloadNotValidException("Could not find global input data with id " + inputdataId);
         }
@@ -59,7 +79,7 @@ public class OrchestrationController {
         Validator.validateJsonData(workflow.getInputDataSchema().getSchema(), workflow.getInputDataSchema().getSchemaVersion(), globalInputData.getInputData());
 
         //create an instance for the workflow
-        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(workflow, globalInputData.getInputData(), null, null);
+        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(plan, globalInputData.getInputData(), null, null);
 
         return workflowRunner.startWorkflow(workflowInstance);
     }
@@ -67,42 +87,70 @@ public class OrchestrationController {
     @Operation(summary = "Starts a workflow by UID")
     @GetMapping("/workflow/{workflow-uid}/start")
     public WorkflowExecution startWorkflowGet2(@PathVariable(name = "workflow-uid") String workflowId) {
-        Workflow workflow = workflowServiceClient.getWorkflowById(workflowId);
+        ExecutionPlan plan = executionPlanCache.getPlan(workflowId);
+        Workflow workflow = plan != null ? plan.getWorkflow() : null;
         if (workflow == null) {
             throw new PayloadNotValidException("Could not find workflow with id " + workflowId);
         }
         //create an instance for the workflow
-        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(workflow, null, null, null);
+        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(plan, null, null, null);
         return workflowRunner.startWorkflow(workflowInstance);
     }
 
     @Operation(summary = "Starts a workflow by UID")
     @PostMapping("/workflow/{workflow-uid}/start")
     public WorkflowExecution startWorkflowPost(@PathVariable(name = "workflow-uid") String workflowId, @RequestBody Map<String, Object> inputData) {
-        Workflow workflow = workflowServiceClient.getWorkflowById(workflowId);
+        ExecutionPlan plan = executionPlanCache.getPlan(workflowId);
+        Workflow workflow = plan != null ? plan.getWorkflow() : null;
         if (workflow == null) {
             throw new PayloadNotValidException("Could not find workflow with id " + workflowId);
         }
         Validator.validateJsonData(workflow.getInputDataSchema().getSchema(), workflow.getInputDataSchema().getSchemaVersion(), inputData);
 
         //create an instance for the workflow
-        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(workflow, inputData, null, null);
+        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(plan, inputData, null, null);
 
         return workflowRunner.startWorkflow(workflowInstance);
     }
 
+    @Operation(summary = "Starts a workflow by UID and waits for the end of the run. Returns 202 with the run UID if the run did not end within the timeout in seconds")
+    @PostMapping("/workflow/{workflow-uid}/run-sync")
+    public DeferredResult<ResponseEntity<WorkflowExecution>> startWorkflowSync(@PathVariable(name = "workflow-uid") String workflowId, @RequestBody Map<String, Object> inputData,
+                                                                              @RequestParam(name = "timeout", defaultValue = "30") long timeoutSeconds) {
+        ExecutionPlan plan = executionPlanCache.getPlan(workflowId);
+        Workflow workflow = plan != null ? plan.getWorkflow() : null;
+        if (workflow == null) {
+            throw new PayloadNotValidException("Could not find workflow with id " + workflowId);
+        }
+        Validator.validateJsonData(workflow.getInputDataSchema().getSchema(), workflow.getInputDataSchema().getSchemaVersion(), inputData);
+
+        //create an instance for the workflow, the request waits for it before it is started
+        WorkflowInstance workflowInstance = instanceController.generateWorkflowInstance(plan, inputData, null, null);
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = runCompletionTracker.awaitCompletion(workflowInstance, timeoutSeconds);
+        try {
+            workflowRunner.startWorkflow(workflowInstance);
+        } catch (RuntimeException e) {
+            runCompletionTracker.cancel(workflowInstance.getUid());
+            throw e;
+        }
+        return result;
+    }
+
+    //stop, pause and resume are applied by the orchestrator that processes the run, the response has the state before
     @GetMapping("/workflow/run/{uid}/stop")
+    @ResponseStatus(HttpStatus.ACCEPTED)
     public WorkflowExecution stopWorkflow(@PathVariable(name = "uid") String executionId) {
         return workflowRunner.stopWorkflow(executionId);
     }
 
     @GetMapping("/workflow/run/{uid}/pause")
-    @ResponseStatus(HttpStatus.OK)
+    @ResponseStatus(HttpStatus.ACCEPTED)
     public WorkflowExecution pauseWorkflow(@PathVariable(name = "uid") String executionId) {
         return workflowRunner.pauseWorkflow(executionId);
     }
 
     @GetMapping("/workflow/run/{uid}/resume")
+    @ResponseStatus(HttpStatus.ACCEPTED)
     public WorkflowExecution resumeWorkflow(@PathVariable(name = "uid") String executionId) {
         return workflowRunner.resumeWorkflow(executionId);
     }
@@ -112,9 +160,39 @@ public class OrchestrationController {
         return workflowRunner.getCurrentExecutionState(executionId);
     }
 
+    @Operation(summary = "Streams the state changes of a workflow run as server-sent events until the run finished. Subscribe before reading the state to not miss a change")
+    @GetMapping(value = "/workflow/run/{uid}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter workflowRunEvents(@PathVariable(name = "uid") String executionId,
+                                       @RequestParam(name = "include-steps", defaultValue = "true") boolean includeSteps) {
+        return runStateStream.subscribeToRun(executionId, includeSteps);
+    }
+
+    @Operation(summary = "Streams the state changes of all runs of a workflow as server-sent events")
+    @GetMapping(value = "/workflow/{workflow-uid}/run/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter workflowEvents(@PathVariable(name = "workflow-uid") String workflowUid,
+                                     @RequestParam(name = "include-steps", defaultValue = "false") boolean includeSteps) {
+        return runStateStream.subscribeToWorkflow(workflowUid, includeSteps);
+    }
+
+    @Operation(summary = "Lists the workflow runs, newest first. The next page is requested with the cursor of the previous page")
     @GetMapping("/workflow/run/list")
-    public List<WorkflowExecution> executionList() {
-        return getWorkflowExecutionList();
+    public RunPage executionList(@RequestParam(name = "workflow-uid", required = false) String workflowUid,
+                                 @RequestParam(name = "status", required = false) RunStatus runStatus,
+                                 @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                 @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                 @RequestParam(name = "cursor", required = false) String cursor,
+                                 @RequestParam(name = "limit", defaultValue = "50") int limit) {
+        return runListing.listRuns(workflowUid, runStatus, from, to, cursor, limit);
+    }
+
+    @Operation(summary = "Exports the workflow runs as newline delimited json, newest first")
+    @GetMapping(value = "/workflow/run/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportExecutionList(@RequestParam(name = "workflow-uid", required = false) String workflowUid,
+                                                                     @RequestParam(name = "status", required = false) RunStatus runStatus,
+                                                                     @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                     @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        StreamingResponseBody body = outputStream -> runListing.streamRuns(workflowUid, runStatus, from, to, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
     }
 
     @DeleteMapping("/workflow/run/{uid}")
@@ -123,8 +201,11 @@ public class OrchestrationController {
         if (instance == null) {
             throw new PayloadNotValidException("Could not find workflow instance with id " + uid);
         }
+        //the cached run and the offloaded data of the run are removed with the run
+        instanceCache.evict(uid);
         workflowStepInstanceRepository.deleteAll(instance.getStepInstances());
         workflowInstanceRepository.delete(instance);
+        payloadStore.deleteByWorkflowInstances(List.of(uid));
     }
 
     @PostMapping("/workflow/input-data/create")
@@ -156,13 +237,5 @@ public class OrchestrationController {
         return found;
     }
 
-    private List<WorkflowExecution> getWorkflowExecutionList(){
-        List<WorkflowExecution> runList = new ArrayList<>();
-        List<WorkflowInstance> instances = workflowInstanceRepository.findAll();
-        for (WorkflowInstance instance : instances) {
-            runList.add(new WorkflowExecution(instance));
-        }
-        return runList;
-    }
 
 }
@@ -0,0 +1,27 @@
+package de.lenneflow.orchestrationservice.dto;
+
+import de.lenneflow.orchestrationservice.enums.DeploymentState;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Change of the deployment state of a function, published by the function service.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FunctionDeploymentEvent {
+
+    private String functionUid;
+
+    private String functionName;
+
+    private DeploymentState deploymentState;
+
+    private String serviceUrl;
+}
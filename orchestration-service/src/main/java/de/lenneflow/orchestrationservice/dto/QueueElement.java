@@ -24,6 +24,8 @@ public class QueueElement {
 
     private String workflowInstanceId;
 
+    private Integer attempt;
+
     private RunStatus runStatus;
 
     private String serviceUrl;
@@ -1,5 +1,6 @@
 package de.lenneflow.orchestrationservice.dto;
 
+import de.lenneflow.orchestrationservice.enums.RunCommand;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -24,6 +25,14 @@ public class ResultQueueElement {
 
     private String workflowInstanceId;
 
+    private Integer attempt;
+
+    //a due retry of the failed attempt, published through a retry delay queue
+    private boolean retry;
+
+    //a command for the whole run, applied by the orchestrator that processes the result partition of the run
+    private RunCommand command;
+
     private RunStatus runStatus;
 
     private String failureReason;
@@ -19,4 +19,6 @@ public class RunNotification {
     private String workflowStepInstanceUid;
 
     private RunStatus status;
+
+    private String workflowUid;
 }
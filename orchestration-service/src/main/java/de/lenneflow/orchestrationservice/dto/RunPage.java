@@ -0,0 +1,25 @@
+package de.lenneflow.orchestrationservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the run listing. The next cursor is null on the last page.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RunPage {
+
+    private List<RunSummary> runs = new ArrayList<>();
+
+    private String nextCursor;
+}
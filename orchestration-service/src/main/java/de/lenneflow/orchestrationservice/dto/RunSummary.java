@@ -0,0 +1,49 @@
+package de.lenneflow.orchestrationservice.dto;
+
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Summary of a workflow run for the run listing, without the steps and the payloads.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RunSummary {
+
+    private String runUid;
+
+    private String workflowUid;
+
+    private String workflowName;
+
+    private String parentRunUid;
+
+    private RunStatus runStatus;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime endTime;
+
+    private String failureReason;
+
+    public RunSummary(WorkflowInstance workflowInstance) {
+        this.runUid = workflowInstance.getUid();
+        this.workflowUid = workflowInstance.getWorkflowUid();
+        this.workflowName = workflowInstance.getName();
+        this.parentRunUid = workflowInstance.getParentInstanceUid();
+        this.runStatus = workflowInstance.getRunStatus();
+        this.startTime = workflowInstance.getStartTime();
+        this.endTime = workflowInstance.getEndTime();
+        this.failureReason = workflowInstance.getFailureReason();
+    }
+}
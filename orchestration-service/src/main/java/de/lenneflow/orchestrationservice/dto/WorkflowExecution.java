@@ -50,7 +50,7 @@ public class WorkflowExecution {
         this.workflowName = workflowInstance.getName();
         this.workflowDescription = workflowInstance.getDescription();
         this.runStatus = workflowInstance.getRunStatus();
-        this.runSteps = workflowInstance.getStepInstances();
+        this.runSteps = workflowInstance.getEmbeddedStepInstances() != null ? workflowInstance.getEmbeddedStepInstances() : workflowInstance.getStepInstances();
         this.startTime = workflowInstance.getStartTime();
         this.endTime = workflowInstance.getEndTime();
         this.failureReason = workflowInstance.getFailureReason();
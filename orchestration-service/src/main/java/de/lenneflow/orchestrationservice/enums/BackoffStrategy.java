@@ -0,0 +1,7 @@
+package de.lenneflow.orchestrationservice.enums;
+
+public enum BackoffStrategy {
+    FIXED,
+    EXPONENTIAL,
+    EXPONENTIAL_WITH_JITTER
+}
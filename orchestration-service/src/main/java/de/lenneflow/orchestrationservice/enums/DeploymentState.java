@@ -1,5 +1,5 @@
 package de.lenneflow.orchestrationservice.enums;
 
 public enum DeploymentState {
-    UNDEPLOYED, DEPLOYING, DEPLOYED
+    UNDEPLOYED, DEPLOYING, DEPLOYED, FAILED
 }
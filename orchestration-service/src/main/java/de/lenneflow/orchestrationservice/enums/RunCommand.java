@@ -0,0 +1,16 @@
+package de.lenneflow.orchestrationservice.enums;
+
+/**
+ * Commands that change a run outside of its step results. They are published to the result partition of the run,
+ * so they are applied by the orchestrator that processes the results of the run.
+ * TERMINATE: ends the run with the run status and failure reason of the command, for example when it is stopped.
+ * PAUSE: pauses the run and its running steps.
+ * RESUME: resumes the run and runs its paused steps again.
+ * RUN_DEPLOYED_STEP: runs the step of the command, the functions of the run were deployed.
+ */
+public enum RunCommand {
+    TERMINATE,
+    PAUSE,
+    RESUME,
+    RUN_DEPLOYED_STEP
+}
@@ -17,4 +17,12 @@ public enum RunStatus implements Serializable {
     NEW,
     DEPLOYING_FUNCTIONS,
     SKIPPED;
+
+    /**
+     * @return true if a run with this status does not change anymore, unless it is restarted
+     */
+    public boolean isFinal() {
+        return this == COMPLETED || this == COMPLETED_WITH_ERRORS || this == FAILED || this == FAILED_WITH_TERMINAL_ERROR
+                || this == CANCELED || this == STOPPED || this == TIMED_OUT;
+    }
 }
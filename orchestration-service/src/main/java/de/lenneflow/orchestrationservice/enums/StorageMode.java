@@ -0,0 +1,11 @@
+package de.lenneflow.orchestrationservice.enums;
+
+/**
+ * How the step instances of a workflow run are stored.
+ * REFERENCED: every step instance is a document of its own, the run references them.
+ * EMBEDDED: the step instances are stored inside the document of the run.
+ */
+public enum StorageMode {
+    REFERENCED,
+    EMBEDDED
+}
@@ -4,7 +4,10 @@ import de.lenneflow.orchestrationservice.feignmodels.Function;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,6 +22,9 @@ public interface FunctionServiceClient {
     @GetMapping("/api/functions/{uid}")
     Function getFunctionByUid(@PathVariable String uid);
 
+    @PostMapping("/api/functions/batch")
+    List<Function> getFunctionsByUids(@RequestBody Collection<String> uids);
+
     @GetMapping("/api/functions/ping")
     String getFunctionHome();
 
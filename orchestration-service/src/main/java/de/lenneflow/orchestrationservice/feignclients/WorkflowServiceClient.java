@@ -1,10 +1,14 @@
 package de.lenneflow.orchestrationservice.feignclients;
 
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowBundle;
 import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
 import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 
 import java.util.List;
 
@@ -20,6 +24,9 @@ public interface WorkflowServiceClient {
     @GetMapping("/api/workflows/{uid}")
     Workflow getWorkflowById(@PathVariable("uid") String uid);
 
+    @GetMapping("/api/workflows/{uid}/bundle")
+    ResponseEntity<WorkflowBundle> getWorkflowBundle(@PathVariable("uid") String uid, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
+
     @GetMapping("/api/workflows/name/{name}")
     Workflow getWorkflowByName(@PathVariable("name") String name);
 
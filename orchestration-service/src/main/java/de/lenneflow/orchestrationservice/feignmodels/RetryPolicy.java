@@ -0,0 +1,24 @@
+package de.lenneflow.orchestrationservice.feignmodels;
+
+import de.lenneflow.orchestrationservice.enums.BackoffStrategy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryPolicy implements Serializable {
+
+    private BackoffStrategy backoffStrategy = BackoffStrategy.FIXED;
+
+    private long delayInSeconds;
+
+    private double multiplier = 2;
+
+    private long maxDelayInSeconds;
+}
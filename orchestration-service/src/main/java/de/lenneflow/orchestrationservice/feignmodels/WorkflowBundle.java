@@ -0,0 +1,22 @@
+package de.lenneflow.orchestrationservice.feignmodels;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WorkflowBundle {
+
+    private Workflow workflow;
+
+    private List<WorkflowStep> steps = new ArrayList<>();
+
+    private String version;
+}
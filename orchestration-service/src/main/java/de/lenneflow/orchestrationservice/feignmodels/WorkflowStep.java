@@ -42,6 +42,14 @@ public class WorkflowStep {
 
     private String stopCondition;
 
+    private List<ForkBranch> branches = new ArrayList<>();
+
+    private int joinCount;
+
+    private String itemsExpression;
+
+    private int maxParallelism;
+
     private JsonSchema inputDataSchema;
 
     private JsonSchema outputDataSchema;
@@ -50,6 +58,10 @@ public class WorkflowStep {
 
     private Integer retryCount;
 
+    private long timeOutInSeconds;
+
+    private RetryPolicy retryPolicy;
+
     private LocalDateTime created;
 
     private LocalDateTime updated;
@@ -0,0 +1,180 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.DeploymentState;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.Function;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the runs that wait for the deployment of their functions. A waiting run is only a future registered for its
+ * functions, no thread waits for it. The future completes when the function service reports all functions as
+ * deployed, it fails when a function could not be deployed or the deployment takes too long.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class DeploymentTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeploymentTracker.class);
+
+    private static final String DEPLOYMENT_TIMED_OUT = "All functions could not be deployed in time. Workflow run will be cancelled!";
+
+    private final FunctionServiceClient functionServiceClient;
+
+    private final long maxWaitSeconds;
+
+    //runs the deployment requests, the state checks and the continuations of the waiting runs
+    private final ExecutorService deploymentExecutor;
+
+    private final Map<String, Set<Waiter>> waitersByFunction = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DeploymentTracker(FunctionServiceClient functionServiceClient,
+                             @Value("${orchestration.deployment.max-wait-seconds:300}") long maxWaitSeconds,
+                             @Value("${orchestration.deployment.threads:4}") int threads) {
+        this.functionServiceClient = functionServiceClient;
+        this.maxWaitSeconds = maxWaitSeconds;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.deploymentExecutor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "lenneflow-deployments-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Registers a run that waits for the deployment of functions. The functions are checked once after the
+     * registration, so a deployment that finished before the registration is not missed.
+     *
+     * @param functionUids the uids of the functions to wait for
+     * @return a future that completes on the deployment executor when all functions are deployed
+     */
+    public CompletableFuture<Void> awaitDeployment(Collection<String> functionUids) {
+        Waiter waiter = new Waiter(functionUids);
+        for (String functionUid : waiter.pending) {
+            waitersByFunction.compute(functionUid, (uid, waiters) -> {
+                Set<Waiter> functionWaiters = waiters != null ? waiters : ConcurrentHashMap.newKeySet();
+                functionWaiters.add(waiter);
+                return functionWaiters;
+            });
+        }
+        if (waiter.pending.isEmpty()) {
+            waiter.future.complete(null);
+        }
+        CompletableFuture<Void> result = waiter.future.orTimeout(maxWaitSeconds, TimeUnit.SECONDS)
+                .handleAsync((ignored, error) -> {
+                    remove(waiter);
+                    if (error instanceof InternalServiceException internalServiceException) {
+                        throw internalServiceException;
+                    }
+                    if (error != null) {
+                        throw new InternalServiceException(DEPLOYMENT_TIMED_OUT);
+                    }
+                    return null;
+                }, deploymentExecutor);
+        deploymentExecutor.execute(() -> checkDeploymentStates(waiter));
+        return result;
+    }
+
+    /**
+     * Asks the function service to deploy a function. A failed request fails the runs waiting for the function.
+     *
+     * @param functionUid the function uid
+     */
+    public void requestDeployment(String functionUid) {
+        deploymentExecutor.execute(() -> {
+            try {
+                functionServiceClient.deployFunction(functionUid);
+            } catch (Exception e) {
+                logger.error("Could not deploy the function {}!\n{}", functionUid, e.getMessage());
+                onDeploymentStateChange(functionUid, DeploymentState.FAILED);
+            }
+        });
+    }
+
+    /**
+     * Processes a deployment state change reported by the function service.
+     *
+     * @param functionUid     the function uid
+     * @param deploymentState the new deployment state
+     */
+    public void onDeploymentStateChange(String functionUid, DeploymentState deploymentState) {
+        Set<Waiter> waiters = waitersByFunction.get(functionUid);
+        if (waiters == null) {
+            return;
+        }
+        for (Waiter waiter : waiters) {
+            if (deploymentState == DeploymentState.DEPLOYED) {
+                waiter.deployed(functionUid);
+            } else if (deploymentState == DeploymentState.FAILED) {
+                waiter.future.completeExceptionally(new InternalServiceException("The function " + functionUid + " could not be deployed. Workflow run will be cancelled!"));
+            }
+        }
+    }
+
+    /**
+     * @return the number of functions that waiting runs wait for
+     */
+    public int awaitedFunctions() {
+        return waitersByFunction.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        deploymentExecutor.shutdownNow();
+    }
+
+    private void checkDeploymentStates(Waiter waiter) {
+        for (String functionUid : Set.copyOf(waiter.pending)) {
+            try {
+                Function function = functionServiceClient.getFunctionByUid(functionUid);
+                if (function != null) {
+                    onDeploymentStateChange(functionUid, function.getDeploymentState());
+                }
+            } catch (Exception e) {
+                logger.error("Could not check the deployment state of the function {}!\n{}", functionUid, e.getMessage());
+            }
+        }
+    }
+
+    private void remove(Waiter waiter) {
+        for (String functionUid : waiter.functionUids) {
+            waitersByFunction.computeIfPresent(functionUid, (uid, waiters) -> {
+                waiters.remove(waiter);
+                return waiters.isEmpty() ? null : waiters;
+            });
+        }
+    }
+
+    private static final class Waiter {
+
+        private final Set<String> functionUids;
+
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(Collection<String> functionUids) {
+            this.functionUids = Set.copyOf(functionUids);
+            this.pending.addAll(this.functionUids);
+        }
+
+        private void deployed(String functionUid) {
+            if (pending.remove(functionUid) && pending.isEmpty()) {
+                future.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowBundle;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
+import de.lenneflow.orchestrationservice.utils.ExpressionEvaluator;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of the execution plans of the workflows, one plan per workflow version. A plan is built from the workflow
+ * bundle of the workflow service, which contains the workflow, its schemas and its ordered steps. A cached plan is
+ * used without a request for a short time, then it is revalidated with the ETag of the bundle and only a changed
+ * workflow is transferred and prepared again.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class ExecutionPlanCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionPlanCache.class);
+
+    final WorkflowServiceClient workflowServiceClient;
+
+    final ExpressionEvaluator expressionEvaluator;
+
+    private final long revalidateNanos;
+
+    private final Map<String, CachedPlan> plans = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ExecutionPlanCache(WorkflowServiceClient workflowServiceClient, ExpressionEvaluator expressionEvaluator,
+                              @Value("${orchestration.plan-cache.revalidate-seconds:10}") long revalidateSeconds) {
+        this.workflowServiceClient = workflowServiceClient;
+        this.expressionEvaluator = expressionEvaluator;
+        this.revalidateNanos = TimeUnit.SECONDS.toNanos(revalidateSeconds);
+    }
+
+    /**
+     * Returns the execution plan of the current version of a workflow.
+     *
+     * @param workflowUid the workflow uid
+     * @return the execution plan or null if the workflow does not exist
+     */
+    public ExecutionPlan getPlan(String workflowUid) {
+        if (workflowUid == null) {
+            return null;
+        }
+        CachedPlan cachedPlan = plans.get(workflowUid);
+        long now = System.nanoTime();
+        if (cachedPlan != null && now - cachedPlan.validatedAt < revalidateNanos) {
+            return cachedPlan.plan;
+        }
+        ResponseEntity<WorkflowBundle> response;
+        try {
+            response = workflowServiceClient.getWorkflowBundle(workflowUid, cachedPlan != null ? cachedPlan.eTag : null);
+        } catch (FeignException e) {
+            //feign reports every status outside of 2xx as exception
+            if (cachedPlan != null && e.status() == HttpStatus.NOT_MODIFIED.value()) {
+                return revalidated(workflowUid, cachedPlan, now);
+            }
+            if (e.status() == HttpStatus.NOT_FOUND.value()) {
+                plans.remove(workflowUid);
+                return null;
+            }
+            throw e;
+        }
+        if (cachedPlan != null && response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+            return revalidated(workflowUid, cachedPlan, now);
+        }
+        WorkflowBundle bundle = response.getBody();
+        if (bundle == null || bundle.getWorkflow() == null) {
+            plans.remove(workflowUid);
+            return null;
+        }
+        ExecutionPlan plan = new ExecutionPlan(bundle.getWorkflow(), bundle.getSteps() != null ? bundle.getSteps() : List.of(), bundle.getVersion());
+        expressionEvaluator.precompile(plan.getExpressions());
+        plans.put(workflowUid, new CachedPlan(plan, response.getHeaders().getETag(), now));
+        logger.info("Prepared the version {} of the workflow {}", plan.getVersion(), plan.getWorkflow().getName());
+        return plan;
+    }
+
+    /**
+     * Returns the current version of a workflow.
+     *
+     * @param workflowUid the workflow uid
+     * @return the workflow or null if not found
+     */
+    public Workflow getWorkflow(String workflowUid) {
+        ExecutionPlan plan = getPlan(workflowUid);
+        return plan != null ? plan.getWorkflow() : null;
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    private ExecutionPlan revalidated(String workflowUid, CachedPlan cachedPlan, long now) {
+        plans.put(workflowUid, new CachedPlan(cachedPlan.plan, cachedPlan.eTag, now));
+        return cachedPlan.plan;
+    }
+
+    private record CachedPlan(ExecutionPlan plan, String eTag, long validatedAt) {
+    }
+}
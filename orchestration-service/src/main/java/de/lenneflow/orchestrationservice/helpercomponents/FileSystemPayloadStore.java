@@ -0,0 +1,107 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Payload store in a local directory, for tests and single node setups. Every workflow run has a directory of
+ * its own, the id of a payload is the path of its file relative to the base directory.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+@ConditionalOnProperty(name = "orchestration.payload.store", havingValue = "filesystem")
+public class FileSystemPayloadStore implements PayloadStore {
+
+    private static final String NO_WORKFLOW_INSTANCE = "none";
+
+    private final Path directory;
+
+    @Autowired
+    public FileSystemPayloadStore(@Value("${orchestration.payload.directory:${java.io.tmpdir}/lenneflow-payloads}") String directory) {
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String store(String workflowInstanceUid, byte[] payload) {
+        String payloadId = runDirectoryName(workflowInstanceUid) + "/" + UUID.randomUUID();
+        Path file = resolve(payloadId);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, payload);
+        } catch (IOException e) {
+            throw new InternalServiceException("Could not write the payload " + payloadId + ": " + e.getMessage());
+        }
+        return payloadId;
+    }
+
+    @Override
+    public byte[] load(String payloadId) {
+        if (payloadId == null) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(resolve(payloadId));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new InternalServiceException("Could not read the payload " + payloadId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void delete(String payloadId) {
+        if (payloadId == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(resolve(payloadId));
+        } catch (IOException e) {
+            throw new InternalServiceException("Could not delete the payload " + payloadId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void deleteByWorkflowInstances(Collection<String> workflowInstanceUids) {
+        for (String workflowInstanceUid : workflowInstanceUids) {
+            Path runDirectory = resolve(runDirectoryName(workflowInstanceUid));
+            if (!Files.isDirectory(runDirectory)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(runDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new InternalServiceException("Could not delete the payloads of " + workflowInstanceUid + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String runDirectoryName(String workflowInstanceUid) {
+        return workflowInstanceUid == null || workflowInstanceUid.isBlank() ? NO_WORKFLOW_INSTANCE : workflowInstanceUid;
+    }
+
+    /**
+     * Resolves a payload id in the base directory, ids pointing outside the directory are rejected.
+     */
+    private Path resolve(String payloadId) {
+        Path path = directory.resolve(payloadId).normalize();
+        if (!path.startsWith(directory) || path.equals(directory)) {
+            throw new InternalServiceException("Invalid payload id " + payloadId);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,128 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of the function metadata. The function definitions rarely change, so the steps of the runs are
+ * dispatched without a call to the function service. A function is removed from the cache when the function service
+ * reports a change of the function, the time to live only bounds the age of an entry if such an event is lost.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class FunctionCache {
+
+    final FunctionServiceClient functionServiceClient;
+
+    private final long ttlNanos;
+
+    private final Map<String, CachedFunction> functions = new ConcurrentHashMap<>();
+
+    //counts the invalidations, a function read before an invalidation is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public FunctionCache(FunctionServiceClient functionServiceClient, @Value("${orchestration.function-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.functionServiceClient = functionServiceClient;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Returns a function, from the cache or from the function service.
+     *
+     * @param functionUid the function uid
+     * @return the function or null if not found
+     */
+    public Function getFunction(String functionUid) {
+        if (functionUid == null) {
+            return null;
+        }
+        CachedFunction cachedFunction = functions.get(functionUid);
+        if (cachedFunction != null && !cachedFunction.isExpired(System.nanoTime())) {
+            return cachedFunction.function;
+        }
+        long generation = invalidations.get();
+        Function function = functionServiceClient.getFunctionByUid(functionUid);
+        put(function, generation);
+        return function;
+    }
+
+    /**
+     * Returns several functions. The functions that are not cached are read with one call to the function service.
+     *
+     * @param functionUids the function uids
+     * @return the found functions by uid, in the order of the uids
+     */
+    public Map<String, Function> getFunctions(Collection<String> functionUids) {
+        Map<String, Function> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        for (String functionUid : functionUids) {
+            if (functionUid == null || result.containsKey(functionUid)) {
+                continue;
+            }
+            CachedFunction cachedFunction = functions.get(functionUid);
+            if (cachedFunction != null && !cachedFunction.isExpired(now)) {
+                result.put(functionUid, cachedFunction.function);
+            } else {
+                //keeps the position of the uid in the result
+                result.put(functionUid, null);
+                missing.add(functionUid);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long generation = invalidations.get();
+            List<Function> found = functionServiceClient.getFunctionsByUids(missing);
+            for (Function function : found == null ? List.<Function>of() : found) {
+                result.put(function.getUid(), function);
+                put(function, generation);
+            }
+        }
+        result.values().removeIf(Objects::isNull);
+        return result;
+    }
+
+    /**
+     * Removes a function from the cache, for example because it was updated or its deployment state changed.
+     *
+     * @param functionUid the function uid
+     */
+    public void invalidate(String functionUid) {
+        if (functionUid == null) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        functions.remove(functionUid);
+    }
+
+    public int size() {
+        return functions.size();
+    }
+
+    private void put(Function function, long generation) {
+        if (function == null || function.getUid() == null) {
+            return;
+        }
+        functions.put(function.getUid(), new CachedFunction(function, System.nanoTime() + ttlNanos));
+        //an invalidation during the read could be overwritten by the old state
+        if (invalidations.get() != generation) {
+            functions.remove(function.getUid());
+        }
+    }
+
+    private record CachedFunction(Function function, long expiresAt) {
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
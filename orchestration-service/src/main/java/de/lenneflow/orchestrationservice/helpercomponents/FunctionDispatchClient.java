@@ -0,0 +1,96 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.orchestrationservice.dto.FunctionPayload;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP client for the dispatch of functions to the function pods.
+ * The underlying client keeps a pool of persistent connections per function host, so consecutive dispatches
+ * reuse the connection instead of opening a new TCP/TLS connection for every call.
+ * The responses arrive on the I/O threads of the client, which must never block. The returned futures are
+ * completed on the response executor instead, so their continuations can block, for example while the result of
+ * a failed dispatch waits for space in the publish buffer.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class FunctionDispatchClient {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final CloseableHttpAsyncClient functionHttpClient;
+
+    private final ExecutorService responseExecutor;
+
+    @Autowired
+    public FunctionDispatchClient(CloseableHttpAsyncClient functionHttpClient,
+                                  @Value("${orchestration.dispatch.response-threads:4}") int responseThreads) {
+        this.functionHttpClient = functionHttpClient;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.responseExecutor = Executors.newFixedThreadPool(responseThreads, runnable -> {
+            Thread thread = new Thread(runnable, "lenneflow-dispatch-response-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sends the payload to the function. The returned future completes on the response executor with the HTTP
+     * status code of the response or exceptionally if the request could not be sent.
+     *
+     * @param serviceUrl      the service url of the function
+     * @param functionPayload the payload to send
+     * @return the future of the status code
+     */
+    public CompletableFuture<Integer> post(String serviceUrl, FunctionPayload functionPayload) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        SimpleHttpRequest request;
+        try {
+            request = SimpleRequestBuilder.post(serviceUrl)
+                    .setBody(objectMapper.writeValueAsBytes(functionPayload), ContentType.APPLICATION_JSON)
+                    .build();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        functionHttpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                responseExecutor.execute(() -> result.complete(response.getCode()));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                responseExecutor.execute(() -> result.completeExceptionally(e));
+            }
+
+            @Override
+            public void cancelled() {
+                responseExecutor.execute(() -> result.completeExceptionally(new CancellationException("Request to " + serviceUrl + " was cancelled")));
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        responseExecutor.shutdown();
+    }
+}
@@ -0,0 +1,96 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for the dispatch of functions from the function queue.
+ * At most maxConcurrency dispatches run at the same time, further dispatches wait in a bounded queue.
+ * The function queue listener acknowledges a message only after its dispatch is done, so together with the
+ * prefetch count of the listener the broker never delivers more messages than the executor can hold.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class FunctionDispatchExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FunctionDispatchExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public FunctionDispatchExecutor(@Value("${orchestration.dispatch.max-concurrency:64}") int maxConcurrency,
+                                    @Value("${orchestration.dispatch.queue-capacity:256}") int queueCapacity,
+                                    MeterRegistry meterRegistry) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "lenneflow-dispatch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                //if the listener prefetch is higher than the capacity, the listener thread runs the dispatch itself and slows down
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        Gauge.builder("lenneflow.dispatch.in-flight", inFlight, AtomicInteger::get)
+                .description("Function dispatches currently running")
+                .register(meterRegistry);
+        Gauge.builder("lenneflow.dispatch.queued", executor, e -> e.getQueue().size())
+                .description("Function dispatches waiting for a free slot")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a non-blocking dispatch as soon as a slot is free. The slot is released when the dispatch returned its
+     * future, the dispatch stays in flight until the future completes.
+     *
+     * @param dispatch   the dispatch to run
+     * @param onComplete called after the future of the dispatch completed, with the failure or null
+     */
+    public void executeAsync(Supplier<CompletableFuture<?>> dispatch, Consumer<Throwable> onComplete) {
+        executor.execute(() -> {
+            inFlight.incrementAndGet();
+            CompletableFuture<?> future;
+            try {
+                future = dispatch.get();
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    logger.error("Function dispatch failed!\n{}", e.getMessage());
+                }
+                inFlight.decrementAndGet();
+                onComplete.accept(e);
+            });
+        });
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
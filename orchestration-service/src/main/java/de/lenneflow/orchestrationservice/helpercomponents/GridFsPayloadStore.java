@@ -0,0 +1,72 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+/**
+ * Payload store in the GridFS of the orchestration database. The workflow run of a payload is kept in the
+ * metadata of the file, so the payloads of deleted runs are removed with one query.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "orchestration.payload.store", havingValue = "gridfs", matchIfMissing = true)
+public class GridFsPayloadStore implements PayloadStore {
+
+    private static final String FILE_NAME = "payload";
+    private static final String WORKFLOW_INSTANCE_UID = "workflowInstanceUid";
+
+    final GridFsTemplate gridFsTemplate;
+
+    @Override
+    public String store(String workflowInstanceUid, byte[] payload) {
+        Document metadata = new Document(WORKFLOW_INSTANCE_UID, workflowInstanceUid);
+        return gridFsTemplate.store(new ByteArrayInputStream(payload), FILE_NAME, metadata).toHexString();
+    }
+
+    @Override
+    public byte[] load(String payloadId) {
+        if (payloadId == null || !ObjectId.isValid(payloadId)) {
+            return null;
+        }
+        GridFSFile file = gridFsTemplate.findOne(new Query(Criteria.where("_id").is(new ObjectId(payloadId))));
+        if (file == null) {
+            return null;
+        }
+        try (InputStream inputStream = gridFsTemplate.getResource(file).getInputStream()) {
+            return inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new InternalServiceException("Could not read the payload " + payloadId + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void delete(String payloadId) {
+        if (payloadId == null || !ObjectId.isValid(payloadId)) {
+            return;
+        }
+        gridFsTemplate.delete(new Query(Criteria.where("_id").is(new ObjectId(payloadId))));
+    }
+
+    @Override
+    public void deleteByWorkflowInstances(Collection<String> workflowInstanceUids) {
+        if (workflowInstanceUids.isEmpty()) {
+            return;
+        }
+        gridFsTemplate.delete(new Query(Criteria.where("metadata." + WORKFLOW_INSTANCE_UID).in(workflowInstanceUids)));
+    }
+}
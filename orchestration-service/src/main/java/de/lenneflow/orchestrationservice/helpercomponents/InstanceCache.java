@@ -0,0 +1,408 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of the active workflow runs and their step instances.
+ * The database stays the system of record: the cache is read-through and the cached objects are the same
+ * objects that are changed by the {@link InstanceController} before the changes are written.
+ * Runs are evicted when they terminate or when the estimated size of all cached runs exceeds the limit.
+ * In the embedded storage mode the step instances are read from the run document instead of their own collection.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class InstanceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceCache.class);
+
+    private static final Set<RunStatus> ACTIVE_STATES = EnumSet.of(RunStatus.NEW, RunStatus.SCHEDULED, RunStatus.RUNNING, RunStatus.PAUSED, RunStatus.DEPLOYING_FUNCTIONS);
+
+    final WorkflowInstanceRepository workflowInstanceRepository;
+    final WorkflowStepInstanceRepository workflowStepInstanceRepository;
+
+    private final long maxWeight;
+
+    private final int maxRuns;
+
+    private final StorageMode storageMode;
+
+    private long currentWeight = 0;
+
+    //access ordered, the eldest entry is the least recently used run
+    private final LinkedHashMap<String, CachedRun> runs = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Autowired
+    public InstanceCache(WorkflowInstanceRepository workflowInstanceRepository, WorkflowStepInstanceRepository workflowStepInstanceRepository,
+                         @Value("${orchestration.cache.max-weight-bytes:67108864}") long maxWeight, @Value("${orchestration.cache.max-runs:10000}") int maxRuns,
+                         @Value("${orchestration.storage.mode:REFERENCED}") StorageMode storageMode) {
+        this.workflowInstanceRepository = workflowInstanceRepository;
+        this.workflowStepInstanceRepository = workflowStepInstanceRepository;
+        this.maxWeight = maxWeight;
+        this.maxRuns = maxRuns;
+        this.storageMode = storageMode;
+    }
+
+    public InstanceCache(WorkflowInstanceRepository workflowInstanceRepository, WorkflowStepInstanceRepository workflowStepInstanceRepository, long maxWeight, int maxRuns) {
+        this(workflowInstanceRepository, workflowStepInstanceRepository, maxWeight, maxRuns, StorageMode.REFERENCED);
+    }
+
+    public boolean isEmbeddedStorage() {
+        return storageMode == StorageMode.EMBEDDED;
+    }
+
+    /**
+     * Adds a new workflow run with all its step instances to the cache.
+     *
+     * @param workflowInstance the workflow instance
+     * @param stepInstances    the step instances of the run
+     */
+    public void put(WorkflowInstance workflowInstance, List<WorkflowStepInstance> stepInstances) {
+        if (workflowInstance.getUid() == null) {
+            return;
+        }
+        CachedRun cachedRun = new CachedRun(workflowInstance);
+        for (WorkflowStepInstance stepInstance : stepInstances) {
+            cachedRun.addStep(stepInstance);
+        }
+        synchronized (runs) {
+            CachedRun previous = runs.put(workflowInstance.getUid(), cachedRun);
+            if (previous != null) {
+                currentWeight -= previous.weight;
+            }
+            currentWeight += cachedRun.weight;
+            evictOverLimit();
+        }
+    }
+
+    /**
+     * Returns the workflow instance. Active runs are served from memory, all others are read from the database.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @return the workflow instance or null if not found
+     */
+    public WorkflowInstance getWorkflowInstance(String workflowInstanceUid) {
+        CachedRun cachedRun = getOrLoad(workflowInstanceUid);
+        if (cachedRun != null) {
+            return cachedRun.instance;
+        }
+        return workflowInstanceRepository.findByUid(workflowInstanceUid);
+    }
+
+    /**
+     * Returns a step instance of a workflow run.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @param stepInstanceUid     the step instance UID
+     * @return the step instance or null if not found
+     */
+    public WorkflowStepInstance getStepInstance(String workflowInstanceUid, String stepInstanceUid) {
+        CachedRun cachedRun = getOrLoad(workflowInstanceUid);
+        if (cachedRun != null) {
+            WorkflowStepInstance stepInstance = cachedRun.stepsByUid.get(stepInstanceUid);
+            if (stepInstance != null) {
+                return stepInstance;
+            }
+        }
+        if (isEmbeddedStorage()) {
+            return findEmbeddedStepInstances(workflowInstanceUid).stream().filter(step -> stepInstanceUid.equals(step.getUid())).findFirst().orElse(null);
+        }
+        return workflowStepInstanceRepository.findByUid(stepInstanceUid);
+    }
+
+    /**
+     * Returns a step instance of a workflow run by the step name.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @param stepName            the step name
+     * @return the step instance or null if not found
+     */
+    public WorkflowStepInstance getStepInstanceByName(String workflowInstanceUid, String stepName) {
+        CachedRun cachedRun = getOrLoad(workflowInstanceUid);
+        if (cachedRun != null) {
+            WorkflowStepInstance stepInstance = cachedRun.stepsByName.get(stepName);
+            if (stepInstance != null) {
+                return stepInstance;
+            }
+        }
+        if (isEmbeddedStorage()) {
+            return findEmbeddedStepInstances(workflowInstanceUid).stream().filter(step -> stepName.equals(step.getName())).findFirst().orElse(null);
+        }
+        return workflowStepInstanceRepository.findByNameAndWorkflowInstanceUid(stepName, workflowInstanceUid);
+    }
+
+    /**
+     * Returns the step instances of a workflow run with the given names. The steps that are not in memory are read
+     * with one query.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @param stepNames           the step names
+     * @return the found step instances by name
+     */
+    public Map<String, WorkflowStepInstance> getStepInstancesByName(String workflowInstanceUid, Collection<String> stepNames) {
+        Map<String, WorkflowStepInstance> result = new HashMap<>();
+        if (stepNames.isEmpty()) {
+            return result;
+        }
+        CachedRun cachedRun = getOrLoad(workflowInstanceUid);
+        List<String> missingNames = new ArrayList<>();
+        for (String stepName : stepNames) {
+            WorkflowStepInstance stepInstance = cachedRun != null ? cachedRun.stepsByName.get(stepName) : null;
+            if (stepInstance != null) {
+                result.put(stepName, stepInstance);
+            } else {
+                missingNames.add(stepName);
+            }
+        }
+        if (!missingNames.isEmpty() && isEmbeddedStorage()) {
+            for (WorkflowStepInstance stepInstance : findEmbeddedStepInstances(workflowInstanceUid)) {
+                if (missingNames.contains(stepInstance.getName())) {
+                    result.put(stepInstance.getName(), stepInstance);
+                }
+            }
+        } else if (missingNames.size() == 1) {
+            WorkflowStepInstance stepInstance = workflowStepInstanceRepository.findByNameAndWorkflowInstanceUid(missingNames.get(0), workflowInstanceUid);
+            if (stepInstance != null) {
+                result.put(missingNames.get(0), stepInstance);
+            }
+        } else if (!missingNames.isEmpty()) {
+            for (WorkflowStepInstance stepInstance : workflowStepInstanceRepository.findByWorkflowInstanceUidAndNameIn(workflowInstanceUid, missingNames)) {
+                result.put(stepInstance.getName(), stepInstance);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all step instances of a workflow run.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @return the step instances
+     */
+    public List<WorkflowStepInstance> getStepInstances(String workflowInstanceUid) {
+        CachedRun cachedRun = getOrLoad(workflowInstanceUid);
+        if (cachedRun != null) {
+            return new ArrayList<>(cachedRun.stepsByUid.values());
+        }
+        if (isEmbeddedStorage()) {
+            return findEmbeddedStepInstances(workflowInstanceUid);
+        }
+        return workflowStepInstanceRepository.findByWorkflowInstanceUid(workflowInstanceUid);
+    }
+
+    /**
+     * Recomputes the estimated size of a step instance after its data changed.
+     *
+     * @param stepInstance the changed step instance
+     */
+    public void refresh(WorkflowStepInstance stepInstance) {
+        synchronized (runs) {
+            CachedRun cachedRun = runs.get(stepInstance.getWorkflowInstanceUid());
+            if (cachedRun == null) {
+                return;
+            }
+            currentWeight -= cachedRun.weight;
+            cachedRun.addStep(stepInstance);
+            currentWeight += cachedRun.weight;
+            evictOverLimit();
+        }
+    }
+
+    /**
+     * Removes a run from the cache. Called when the run terminates.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     */
+    public void evict(String workflowInstanceUid) {
+        if (workflowInstanceUid == null) {
+            return;
+        }
+        synchronized (runs) {
+            CachedRun removed = runs.remove(workflowInstanceUid);
+            if (removed != null) {
+                currentWeight -= removed.weight;
+            }
+        }
+    }
+
+    /**
+     * Removes the runs of a result partition from the cache. Called when the consumer of the partition queue on
+     * this orchestrator starts or becomes the active consumer: another orchestrator could have processed the
+     * partition in the meantime, so the cached runs of the partition can be older than the database.
+     *
+     * @param partition the result partition
+     * @return the number of removed runs
+     */
+    public int evictPartition(int partition) {
+        int removed = 0;
+        synchronized (runs) {
+            Iterator<Map.Entry<String, CachedRun>> iterator = runs.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CachedRun> entry = iterator.next();
+                if (QueueController.resultPartition(entry.getKey()) == partition) {
+                    currentWeight -= entry.getValue().weight;
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        logger.debug("Evicted {} workflow runs of the result partition {} from the instance cache", removed, partition);
+        return removed;
+    }
+
+    public int size() {
+        synchronized (runs) {
+            return runs.size();
+        }
+    }
+
+    public long weight() {
+        synchronized (runs) {
+            return currentWeight;
+        }
+    }
+
+    private CachedRun getOrLoad(String workflowInstanceUid) {
+        if (workflowInstanceUid == null) {
+            return null;
+        }
+        synchronized (runs) {
+            CachedRun cachedRun = runs.get(workflowInstanceUid);
+            if (cachedRun != null) {
+                return cachedRun;
+            }
+        }
+        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceUid);
+        if (workflowInstance == null || !ACTIVE_STATES.contains(workflowInstance.getRunStatus())) {
+            return null;
+        }
+        put(workflowInstance, loadStepInstances(workflowInstance));
+        synchronized (runs) {
+            return runs.get(workflowInstanceUid);
+        }
+    }
+
+    /**
+     * Loads all step instances of a run that is not cached. In the referenced storage mode the branch and item
+     * instances of fork join and for each steps are only in the step collection and not in the step list of the
+     * run, so the step instances are read from the collection.
+     *
+     * @param workflowInstance the workflow instance
+     * @return the step instances
+     */
+    private List<WorkflowStepInstance> loadStepInstances(WorkflowInstance workflowInstance) {
+        if (isEmbeddedStorage() || workflowInstance.getEmbeddedStepInstances() != null) {
+            return stepInstancesOf(workflowInstance);
+        }
+        return workflowStepInstanceRepository.findByWorkflowInstanceUid(workflowInstance.getUid());
+    }
+
+    private List<WorkflowStepInstance> findEmbeddedStepInstances(String workflowInstanceUid) {
+        return stepInstancesOf(workflowInstanceRepository.findByUid(workflowInstanceUid));
+    }
+
+    /**
+     * Returns the step instances of a run loaded from the database, for both storage modes.
+     *
+     * @param workflowInstance the workflow instance, can be null
+     * @return the step instances
+     */
+    static List<WorkflowStepInstance> stepInstancesOf(WorkflowInstance workflowInstance) {
+        if (workflowInstance == null) {
+            return List.of();
+        }
+        if (workflowInstance.getEmbeddedStepInstances() != null) {
+            return workflowInstance.getEmbeddedStepInstances();
+        }
+        return workflowInstance.getStepInstances() != null ? workflowInstance.getStepInstances() : List.of();
+    }
+
+    /**
+     * Removes the least recently used runs until the limits are respected.
+     * Must be called while holding the lock on the runs map.
+     */
+    private void evictOverLimit() {
+        Iterator<Map.Entry<String, CachedRun>> iterator = runs.entrySet().iterator();
+        while ((currentWeight > maxWeight || runs.size() > maxRuns) && iterator.hasNext()) {
+            Map.Entry<String, CachedRun> eldest = iterator.next();
+            currentWeight -= eldest.getValue().weight;
+            iterator.remove();
+            logger.debug("Evicted workflow run {} from the instance cache", eldest.getKey());
+        }
+    }
+
+    /**
+     * Estimates the memory footprint of a value in bytes. Only the payload data is considered because it
+     * dominates the size of a run.
+     *
+     * @param value the value
+     * @return the estimated size
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 8;
+        }
+        if (value instanceof CharSequence charSequence) {
+            return 40L + 2L * charSequence.length();
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = 64;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = 40;
+            for (Object element : collection) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        return 24;
+    }
+
+    private static class CachedRun {
+
+        private final WorkflowInstance instance;
+
+        private final Map<String, WorkflowStepInstance> stepsByUid = new ConcurrentHashMap<>();
+
+        private final Map<String, WorkflowStepInstance> stepsByName = new ConcurrentHashMap<>();
+
+        private final Map<String, Long> stepWeights = new HashMap<>();
+
+        private long weight;
+
+        CachedRun(WorkflowInstance instance) {
+            this.instance = instance;
+            this.weight = 512 + estimateSize(instance.getInputData()) + estimateSize(instance.getOutputData());
+        }
+
+        void addStep(WorkflowStepInstance stepInstance) {
+            if (stepInstance == null || stepInstance.getUid() == null) {
+                return;
+            }
+            stepsByUid.put(stepInstance.getUid(), stepInstance);
+            if (stepInstance.getName() != null) {
+                stepsByName.put(stepInstance.getName(), stepInstance);
+            }
+            long stepWeight = 512 + estimateSize(stepInstance.getInputData()) + estimateSize(stepInstance.getOutputData());
+            Long previous = stepWeights.put(stepInstance.getUid(), stepWeight);
+            weight += stepWeight - (previous != null ? previous : 0);
+        }
+    }
+}
@@ -2,12 +2,12 @@ package de.lenneflow.orchestrationservice.helpercomponents;
 
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.enums.ControlStructure;
 import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
-import de.lenneflow.orchestrationservice.feignmodels.Workflow;
-import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
+import de.lenneflow.orchestrationservice.feignmodels.ForkBranch;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
@@ -35,77 +35,175 @@ public class InstanceController {
 
     private static final Logger logger = LoggerFactory.getLogger(InstanceController.class);
 
-    final WorkflowServiceClient workflowServiceClient;
     final WorkflowInstanceRepository workflowInstanceRepository;
     final WorkflowStepInstanceRepository workflowStepInstanceRepository;
     final QueueController queueController;
     final ExpressionEvaluator expressionEvaluator;
+    final TransitionWriter transitionWriter;
+    final InstanceCache instanceCache;
+    final PayloadOffloader payloadOffloader;
 
 
     /**
-     * From a workflow ID, this method will create a new workflow instance to run.
+     * From the execution plan of a workflow, this method will create a new workflow instance to run.
      * It will also create all the workflow step instances.
      *
-     * @param workflow workflow.
+     * @param plan       the execution plan of the workflow version to run.
      * @param inputData  the specific input parameters.
      * @return the created workflow instance.
      */
-    public WorkflowInstance generateWorkflowInstance(Workflow workflow, Map<String, Object> inputData, String parentInstanceUid, String parentStepInstanceUid) {
+    public WorkflowInstance generateWorkflowInstance(ExecutionPlan plan, Map<String, Object> inputData, String parentInstanceUid, String parentStepInstanceUid) {
 
         //create an instance for the workflow
-        WorkflowInstance workflowInstance = ObjectMapper.mapToWorkflowInstance(workflow);
+        WorkflowInstance workflowInstance = ObjectMapper.mapToWorkflowInstance(plan.getWorkflow());
         workflowInstance.setUid(UUID.randomUUID().toString());
         workflowInstance.setParentInstanceUid(parentInstanceUid);
         workflowInstance.setParentStepInstanceUid(parentStepInstanceUid);
         workflowInstance.setRunStatus(RunStatus.NEW);
-        workflowInstance.setInputData(inputData);
+        workflowInstance.setInputData(payloadOffloader.offload(inputData, workflowInstance.getUid()));
         workflowInstance.setCreated(LocalDateTime.now());
         workflowInstance.setUpdated(LocalDateTime.now());
+        if (instanceCache.isEmbeddedStorage()) {
+            //the run and its step instances are written with one insert
+            List<WorkflowStepInstance> stepInstances = generateWorkflowStepInstances(plan, workflowInstance);
+            workflowInstance.setStepInstances(new ArrayList<>());
+            workflowInstance.setEmbeddedStepInstances(new ArrayList<>(stepInstances));
+            workflowInstanceRepository.save(workflowInstance);
+            instanceCache.put(workflowInstance, stepInstances);
+            return workflowInstance;
+        }
         workflowInstanceRepository.save(workflowInstance);
 
         //create workflow step instances for the workflow
-        List<WorkflowStepInstance> stepInstances = generateWorkflowStepInstances(workflow, workflowInstance);
+        List<WorkflowStepInstance> stepInstances = generateWorkflowStepInstances(plan, workflowInstance);
         workflowInstance.setStepInstances(stepInstances);
         workflowInstanceRepository.save(workflowInstance);
+        instanceCache.put(workflowInstance, stepInstances);
 
         return workflowInstance;
     }
 
     /**
      * create the list of workflow step instances for a given workflow instance.
+     * The step instances are copied from the execution plan of the workflow, already labeled and linked.
      *
+     * @param plan             the execution plan the workflow instance was created from
      * @param workflowInstance the workflow instance
      * @return the workflow step instances list.
      */
-    public List<WorkflowStepInstance> generateWorkflowStepInstances(Workflow workflow, WorkflowInstance workflowInstance) {
-        List<WorkflowStepInstance> workflowStepInstances = new ArrayList<>();
+    public List<WorkflowStepInstance> generateWorkflowStepInstances(ExecutionPlan plan, WorkflowInstance workflowInstance) {
         List<WorkflowStepInstance> result = new ArrayList<>();
-        List<WorkflowStep> steps = workflowServiceClient.getStepListByWorkflowId(workflowInstance.getWorkflowUid());
-        List<WorkflowStep> sorted = steps.stream().sorted(Comparator.comparing(WorkflowStep::getExecutionOrder)).toList();
-        for (WorkflowStep step : sorted) {
-            WorkflowStepInstance stepInstance = new WorkflowStepInstance(workflow, step, workflowInstance.getUid());
-            workflowStepInstances.add(stepInstance);
+        for (WorkflowStepInstance stepInstance : plan.newStepInstances(workflowInstance.getUid())) {
+            result.add(saveStepInstance(stepInstance));
+        }
+        return result;
+    }
+
+    private WorkflowStepInstance saveStepInstance(WorkflowStepInstance stepInstance) {
+        if (instanceCache.isEmbeddedStorage()) {
+            //saved with the run document
+            return stepInstance;
         }
-        for (int i = 0; i < sorted.size(); i++) {
-            WorkflowStepInstance stepInstance = workflowStepInstances.get(i);
-            if (i == 0) {
-                stepInstance.setRunOrderLabel(RunOrderLabel.FIRST);
-                stepInstance.setNextStepId(workflowStepInstances.get(i + 1).getUid());
-                result.add(workflowStepInstanceRepository.save(stepInstance));
-            } else if (i == workflowStepInstances.size() - 1) {
-                stepInstance.setRunOrderLabel(RunOrderLabel.LAST);
-                stepInstance.setPreviousStepId(workflowStepInstances.get(i - 1).getUid());
-                result.add(workflowStepInstanceRepository.save(stepInstance));
-            } else {
-                stepInstance.setRunOrderLabel(RunOrderLabel.INTERMEDIATE);
-                stepInstance.setNextStepId(workflowStepInstances.get(i + 1).getUid());
-                stepInstance.setPreviousStepId(workflowStepInstances.get(i - 1).getUid());
-                result.add(workflowStepInstanceRepository.save(stepInstance));
+        return workflowStepInstanceRepository.save(stepInstance);
+    }
+
+
+    /**
+     * Creates the step instances for the branches of a fork join step. Branch instances are not part of the
+     * step chain, they reference the fork join step instance and run in parallel.
+     *
+     * @param forkStepInstance the fork join step instance
+     * @return the created branch step instances.
+     */
+    public List<WorkflowStepInstance> generateBranchStepInstances(WorkflowStepInstance forkStepInstance) {
+        List<WorkflowStepInstance> branchInstances = new ArrayList<>();
+        for (ForkBranch branch : forkStepInstance.getBranches()) {
+            //the input data of the branch overrides the shared input data of the fork join step
+            Map<String, Object> inputData = new LinkedHashMap<>();
+            if (forkStepInstance.getInputData() != null) {
+                inputData.putAll(forkStepInstance.getInputData());
+            }
+            if (branch.getInputData() != null) {
+                inputData.putAll(branch.getInputData());
             }
+            WorkflowStepInstance branchInstance = createChildStepInstance(forkStepInstance, branch.getName(), branch.getFunctionUid(), inputData, branch.getRetryCount());
+            branchInstance.setBranchName(branch.getName());
+            branchInstances.add(branchInstance);
         }
-        return result;
+        saveChildStepInstances(forkStepInstance, branchInstances);
+        return branchInstances;
+    }
+
+    /**
+     * Creates one step instance for every item of a for each step. The input data of every item instance is the
+     * input data of the step with the additional keys item and index. The input data of the step is normalized
+     * once here, the items are data and are bound afterwards, so they are never evaluated as expressions.
+     *
+     * @param forEachStepInstance the for each step instance
+     * @param items               the items to process
+     * @return the created item step instances, ordered by index.
+     */
+    public List<WorkflowStepInstance> generateItemStepInstances(WorkflowStepInstance forEachStepInstance, List<Object> items) {
+        Map<String, Object> stepInputData = ObjectMapper.copyData(payloadOffloader.resolve(forEachStepInstance.getInputData()));
+        if (stepInputData == null) {
+            stepInputData = new LinkedHashMap<>();
+        }
+        expressionEvaluator.normalizeInputData(stepInputData, forEachStepInstance.getWorkflowInstanceUid());
+        List<WorkflowStepInstance> itemInstances = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Map<String, Object> inputData = ObjectMapper.copyData(stepInputData);
+            inputData.put("item", items.get(i));
+            inputData.put("index", i);
+            WorkflowStepInstance itemInstance = createChildStepInstance(forEachStepInstance, String.valueOf(i), forEachStepInstance.getFunctionUid(), inputData, forEachStepInstance.getRetryCount());
+            itemInstance.setItemIndex(i);
+            itemInstances.add(itemInstance);
+        }
+        saveChildStepInstances(forEachStepInstance, itemInstances);
+        return itemInstances;
     }
 
+    private WorkflowStepInstance createChildStepInstance(WorkflowStepInstance parentStepInstance, String suffix, String functionUid, Map<String, Object> inputData, Integer retryCount) {
+        WorkflowStepInstance childInstance = new WorkflowStepInstance();
+        childInstance.setUid(UUID.randomUUID().toString());
+        childInstance.setName(parentStepInstance.getName() + "-" + suffix);
+        childInstance.setParentStepInstanceUid(parentStepInstance.getUid());
+        childInstance.setWorkflowUid(parentStepInstance.getWorkflowUid());
+        childInstance.setWorkflowName(parentStepInstance.getWorkflowName());
+        childInstance.setWorkflowInstanceUid(parentStepInstance.getWorkflowInstanceUid());
+        childInstance.setDescription(parentStepInstance.getDescription());
+        childInstance.setExecutionOrder(parentStepInstance.getExecutionOrder());
+        childInstance.setControlStructure(ControlStructure.SIMPLE);
+        childInstance.setFunctionUid(functionUid);
+        childInstance.setInputData(inputData);
+        childInstance.setRetryCount(retryCount != null ? retryCount : 0);
+        childInstance.setRetryPolicy(parentStepInstance.getRetryPolicy());
+        childInstance.setTimeOutInSeconds(parentStepInstance.getTimeOutInSeconds());
+        childInstance.setRunStatus(RunStatus.NEW);
+        childInstance.setFailureReason("");
+        childInstance.setCreated(LocalDateTime.now());
+        childInstance.setUpdated(LocalDateTime.now());
+        return childInstance;
+    }
+
+    private void saveChildStepInstances(WorkflowStepInstance parentStepInstance, List<WorkflowStepInstance> childInstances) {
+        if (instanceCache.isEmbeddedStorage()) {
+            transitionWriter.insertEmbeddedStepInstances(parentStepInstance.getWorkflowInstanceUid(), childInstances);
+            WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance(parentStepInstance.getWorkflowInstanceUid());
+            if (workflowInstance != null && workflowInstance.getEmbeddedStepInstances() != null) {
+                synchronized (workflowInstance) {
+                    workflowInstance.getEmbeddedStepInstances().addAll(childInstances);
+                }
+            }
+        } else {
+            workflowStepInstanceRepository.saveAll(childInstances);
+        }
+        for (WorkflowStepInstance childInstance : childInstances) {
+            instanceCache.refresh(childInstance);
+        }
+        List<String> childUids = childInstances.stream().map(WorkflowStepInstance::getUid).toList();
+        parentStepInstance.setBranchStepInstanceUids(new ArrayList<>(childUids));
+        commit(new StateTransition().set(parentStepInstance, "branchStepInstanceUids", parentStepInstance.getBranchStepInstanceUids()));
+    }
 
     /**
      * Updates the workflow step instance status and output data.
@@ -114,14 +212,89 @@ public class InstanceController {
      * @param resultQueueElement          the executed queueElement belonging to the workflow instance.
      */
     public void mapResultToStepInstance(WorkflowStepInstance workflowStepInstance, ResultQueueElement resultQueueElement) {
+        StateTransition transition = new StateTransition();
+        mapResultToStepInstance(workflowStepInstance, resultQueueElement, transition);
+        commit(transition);
+    }
+
+    /**
+     * Updates the workflow step instance status and output data as part of a transition.
+     *
+     * @param workflowStepInstance the workflow step instance to update.
+     * @param resultQueueElement   the executed queueElement belonging to the workflow instance.
+     * @param transition           the transition recording the changes.
+     */
+    public void mapResultToStepInstance(WorkflowStepInstance workflowStepInstance, ResultQueueElement resultQueueElement, StateTransition transition) {
         workflowStepInstance.setRunStatus(resultQueueElement.getRunStatus());
-        Map<String, Object> output = resultQueueElement.getOutputData();
+        //large outputs are stored once and the step, the run and the following messages only carry the reference
+        Map<String, Object> output = payloadOffloader.offload(resultQueueElement.getOutputData(), workflowStepInstance.getWorkflowInstanceUid());
         workflowStepInstance.setOutputData(output);
         workflowStepInstance.setRunCount(workflowStepInstance.getRunCount() + 1);
+        transition.set(workflowStepInstance, "runStatus", workflowStepInstance.getRunStatus())
+                .set(workflowStepInstance, "outputData", output)
+                .set(workflowStepInstance, "runCount", workflowStepInstance.getRunCount());
         if (resultQueueElement.getFailureReason() != null && !resultQueueElement.getFailureReason().isEmpty()) {
             workflowStepInstance.setFailureReason(resultQueueElement.getFailureReason());
+            transition.set(workflowStepInstance, "failureReason", resultQueueElement.getFailureReason());
+        }
+        RunNotification runNotification = new RunNotification();
+        runNotification.setStatus(workflowStepInstance.getRunStatus());
+        runNotification.setStepUpdate(true);
+        runNotification.setWorkflowInstanceUid(workflowStepInstance.getWorkflowInstanceUid());
+        runNotification.setWorkflowStepInstanceUid(workflowStepInstance.getUid());
+        runNotification.setWorkflowUid(workflowStepInstance.getWorkflowUid());
+        transition.addNotification(runNotification);
+    }
+
+    /**
+     * Applies the result of a step run with compare-and-set semantics. The result is only written if the step is
+     * still running and, if the result carries an attempt, still running this attempt. Duplicate and late results
+     * are dropped: most of them are recognized by the cached step, the conditional update is the final check.
+     * The output of a dropped result that was offloaded for the conditional update is deleted again.
+     *
+     * @param workflowStepInstance the workflow step instance the result belongs to.
+     * @param resultQueueElement   the result.
+     * @return true if the result was applied, false if it was dropped.
+     */
+    public boolean applyResult(WorkflowStepInstance workflowStepInstance, ResultQueueElement resultQueueElement) {
+        if (workflowStepInstance.getRunStatus() != RunStatus.RUNNING
+                || (resultQueueElement.getAttempt() != null && !resultQueueElement.getAttempt().equals(workflowStepInstance.getAttempt()))) {
+            return false;
+        }
+        StateTransition transition = new StateTransition();
+        transition.expect(workflowStepInstance, "runStatus", RunStatus.RUNNING);
+        if (resultQueueElement.getAttempt() != null) {
+            transition.expect(workflowStepInstance, "attempt", resultQueueElement.getAttempt());
+        }
+        setEndTime(workflowStepInstance, transition);
+        mapResultToStepInstance(workflowStepInstance, resultQueueElement, transition);
+        if (!transitionWriter.commitConditional(transition)) {
+            //a large output was stored for this result, nothing references it
+            if (workflowStepInstance.getOutputData() != resultQueueElement.getOutputData()) {
+                payloadOffloader.discard(workflowStepInstance.getOutputData());
+            }
+            //the cached run was stale, it is reloaded from the database on the next access
+            instanceCache.evict(workflowStepInstance.getWorkflowInstanceUid());
+            return false;
+        }
+        for (RunNotification runNotification : transition.getNotifications()) {
+            queueController.publishRunStateChange(runNotification);
         }
-        workflowStepInstanceRepository.save(workflowStepInstance);
+        return true;
+    }
+
+    /**
+     * Starts a new attempt of a step instance as part of a transition. Results of earlier attempts are dropped.
+     *
+     * @param workflowStepInstance the workflow step instance.
+     * @param transition           the transition recording the changes.
+     * @return the new attempt.
+     */
+    public int startAttempt(WorkflowStepInstance workflowStepInstance, StateTransition transition) {
+        int attempt = workflowStepInstance.getAttempt() == null ? 1 : workflowStepInstance.getAttempt() + 1;
+        workflowStepInstance.setAttempt(attempt);
+        transition.set(workflowStepInstance, "attempt", attempt);
+        return attempt;
     }
 
     /**
@@ -130,16 +303,29 @@ public class InstanceController {
      * @param runStatus        the status
      */
     public void updateRunStatus(WorkflowInstance workflowInstance, RunStatus runStatus) {
-        //Updates
+        StateTransition transition = new StateTransition();
+        updateRunStatus(workflowInstance, runStatus, transition);
+        commit(transition);
+    }
+
+    /**
+     * Updates the status of workflow instance as part of a transition.
+     * The notification is published when the transition is committed.
+     *
+     * @param workflowInstance the workflow instance
+     * @param runStatus        the status
+     * @param transition       the transition recording the changes.
+     */
+    public void updateRunStatus(WorkflowInstance workflowInstance, RunStatus runStatus, StateTransition transition) {
         workflowInstance.setRunStatus(runStatus);
-        workflowInstanceRepository.save(workflowInstance);
+        transition.set(workflowInstance, "runStatus", runStatus);
 
-        //Publish change to fanout exchange
         RunNotification runNotification = new RunNotification();
         runNotification.setStatus(runStatus);
         runNotification.setStepUpdate(false);
         runNotification.setWorkflowInstanceUid(workflowInstance.getUid());
-        queueController.publishRunStateChange(runNotification);
+        runNotification.setWorkflowUid(workflowInstance.getWorkflowUid());
+        transition.addNotification(runNotification);
     }
 
 
@@ -150,16 +336,30 @@ public class InstanceController {
      * @param runStatus    The status to set.
      */
     public void updateRunStatus(WorkflowStepInstance stepInstance, RunStatus runStatus) {
+        StateTransition transition = new StateTransition();
+        updateRunStatus(stepInstance, runStatus, transition);
+        commit(transition);
+    }
+
+    /**
+     * Updates the workflow step instance status as part of a transition.
+     * The notification is published when the transition is committed.
+     *
+     * @param stepInstance the workflow step instance to update.
+     * @param runStatus    The status to set.
+     * @param transition   the transition recording the changes.
+     */
+    public void updateRunStatus(WorkflowStepInstance stepInstance, RunStatus runStatus, StateTransition transition) {
         stepInstance.setRunStatus(runStatus);
-        workflowStepInstanceRepository.save(stepInstance);
+        transition.set(stepInstance, "runStatus", runStatus);
 
-        //Publish change to fanout exchange
         RunNotification runNotification = new RunNotification();
         runNotification.setStatus(runStatus);
         runNotification.setStepUpdate(true);
         runNotification.setWorkflowInstanceUid(stepInstance.getWorkflowInstanceUid());
         runNotification.setWorkflowStepInstanceUid(stepInstance.getUid());
-        queueController.publishRunStateChange(runNotification);
+        runNotification.setWorkflowUid(stepInstance.getWorkflowUid());
+        transition.addNotification(runNotification);
     }
 
     /**
@@ -168,8 +368,20 @@ public class InstanceController {
      * @param workflowInstance the workflow instance
      */
     public void setEndTime(WorkflowInstance workflowInstance) {
+        StateTransition transition = new StateTransition();
+        setEndTime(workflowInstance, transition);
+        commit(transition);
+    }
+
+    /**
+     * Sets the finished time of a workflow run as part of a transition.
+     *
+     * @param workflowInstance the workflow instance
+     * @param transition       the transition recording the changes.
+     */
+    public void setEndTime(WorkflowInstance workflowInstance, StateTransition transition) {
         workflowInstance.setEndTime(LocalDateTime.now());
-        workflowInstanceRepository.save(workflowInstance);
+        transition.set(workflowInstance, "endTime", workflowInstance.getEndTime());
     }
 
     /**
@@ -178,8 +390,20 @@ public class InstanceController {
      * @param workflowInstance the workflow instance
      */
     public void setStartTime(WorkflowInstance workflowInstance) {
+        StateTransition transition = new StateTransition();
+        setStartTime(workflowInstance, transition);
+        commit(transition);
+    }
+
+    /**
+     * Sets the start time of a workflow run as part of a transition.
+     *
+     * @param workflowInstance the workflow instance
+     * @param transition       the transition recording the changes.
+     */
+    public void setStartTime(WorkflowInstance workflowInstance, StateTransition transition) {
         workflowInstance.setStartTime(LocalDateTime.now());
-        workflowInstanceRepository.save(workflowInstance);
+        transition.set(workflowInstance, "startTime", workflowInstance.getStartTime());
     }
 
     /**
@@ -188,8 +412,20 @@ public class InstanceController {
      * @param workflowStepInstance the workflow instance
      */
     public void setEndTime(WorkflowStepInstance workflowStepInstance) {
+        StateTransition transition = new StateTransition();
+        setEndTime(workflowStepInstance, transition);
+        commit(transition);
+    }
+
+    /**
+     * Sets the finished time of a step instance run as part of a transition.
+     *
+     * @param workflowStepInstance the workflow step instance
+     * @param transition           the transition recording the changes.
+     */
+    public void setEndTime(WorkflowStepInstance workflowStepInstance, StateTransition transition) {
         workflowStepInstance.setEndTime(LocalDateTime.now());
-        workflowStepInstanceRepository.save(workflowStepInstance);
+        transition.set(workflowStepInstance, "endTime", workflowStepInstance.getEndTime());
     }
 
     /**
@@ -198,8 +434,34 @@ public class InstanceController {
      * @param workflowStepInstance the workflow instance
      */
     public void setStartTime(WorkflowStepInstance workflowStepInstance) {
+        StateTransition transition = new StateTransition();
+        setStartTime(workflowStepInstance, transition);
+        commit(transition);
+    }
+
+    /**
+     * Sets the start time of a step instance run as part of a transition.
+     *
+     * @param workflowStepInstance the workflow step instance
+     * @param transition           the transition recording the changes.
+     */
+    public void setStartTime(WorkflowStepInstance workflowStepInstance, StateTransition transition) {
         workflowStepInstance.setStartTime(LocalDateTime.now());
-        workflowStepInstanceRepository.save(workflowStepInstance);
+        transition.set(workflowStepInstance, "startTime", workflowStepInstance.getStartTime());
+    }
+
+    /**
+     * Sets the input data of a step instance as part of a transition. Large input data is replaced by a reference
+     * to the payload store.
+     *
+     * @param workflowStepInstance the workflow step instance
+     * @param inputData            the input data
+     * @param transition           the transition recording the changes.
+     */
+    public void updateInputData(WorkflowStepInstance workflowStepInstance, Map<String, Object> inputData, StateTransition transition) {
+        inputData = payloadOffloader.offload(inputData, workflowStepInstance.getWorkflowInstanceUid());
+        workflowStepInstance.setInputData(inputData);
+        transition.set(workflowStepInstance, "inputData", inputData);
     }
 
     /**
@@ -208,8 +470,22 @@ public class InstanceController {
      * @param workflowInstance the workflow instance
      */
     public void updateOutputData(WorkflowInstance workflowInstance, Map<String, Object> outputData) {
+        StateTransition transition = new StateTransition();
+        updateOutputData(workflowInstance, outputData, transition);
+        commit(transition);
+    }
+
+    /**
+     * Sets the output data of the workflow as part of a transition.
+     *
+     * @param workflowInstance the workflow instance
+     * @param outputData       the output data
+     * @param transition       the transition recording the changes.
+     */
+    public void updateOutputData(WorkflowInstance workflowInstance, Map<String, Object> outputData, StateTransition transition) {
+        outputData = payloadOffloader.offload(outputData, workflowInstance.getUid());
         workflowInstance.setOutputData(outputData);
-        workflowInstanceRepository.save(workflowInstance);
+        transition.set(workflowInstance, "outputData", outputData);
     }
 
     /**
@@ -219,57 +495,34 @@ public class InstanceController {
      * @param failureReason    the failure reason
      */
     public void setFailureReason(WorkflowInstance workflowInstance, String failureReason) {
-        workflowInstance.setFailureReason(failureReason);
-        workflowInstanceRepository.save(workflowInstance);
+        StateTransition transition = new StateTransition();
+        setFailureReason(workflowInstance, failureReason, transition);
+        commit(transition);
     }
 
+    /**
+     * Sets the failure reason of the workflow as part of a transition.
+     *
+     * @param workflowInstance the workflow instance
+     * @param failureReason    the failure reason
+     * @param transition       the transition recording the changes.
+     */
+    public void setFailureReason(WorkflowInstance workflowInstance, String failureReason, StateTransition transition) {
+        workflowInstance.setFailureReason(failureReason);
+        transition.set(workflowInstance, "failureReason", failureReason);
+    }
 
     /**
-     * This function deletes old workflow runs.
+     * Writes all changes of a transition with a single partial update per document and publishes
+     * the collected notifications afterwards.
      *
-     * @param keepDaysCount     the max number of days to keep runs.
-     * @param maxInstancesCount the max number of runs to keep.
+     * @param transition the transition to commit
      */
-    public void deleteLastWorkflowInstances(int keepDaysCount, int maxInstancesCount) {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-            List<WorkflowInstance> instancesToDelete = new ArrayList<>();
-            List<WorkflowInstance> instances = workflowInstanceRepository.findAll();
-
-            //Sort from oldest to newest
-            List<WorkflowInstance> sortedInstances = new ArrayList<>(instances.stream().sorted((o1, o2) -> {
-                if (o1.getStartTime().isBefore(o2.getStartTime())) {
-                    return -1;
-                }
-                if (o1.getStartTime().isAfter(o2.getStartTime())) {
-                    return 1;
-                }
-                return 0;
-            }).toList());
-
-            //iterate over the sorted executions and add the oldest to the list to remove
-            for (WorkflowInstance instance : sortedInstances) {
-                if (instance.getStartTime().plusDays(keepDaysCount).isBefore(now) && (instance.getParentInstanceUid() == null || instance.getParentInstanceUid().isEmpty())) {
-                    instancesToDelete.add(instance);
-                } else {
-                    if (sortedInstances.size() - instancesToDelete.size() >= maxInstancesCount) {
-                        instancesToDelete.add(instance);
-                    } else {
-                        break;
-                    }
-                }
-            }
-            //Delete objects from database
-            for (WorkflowInstance instance : instancesToDelete) {
-                List<WorkflowStepInstance> stepInstances = workflowStepInstanceRepository.findByWorkflowInstanceUid(instance.getUid());
-                workflowStepInstanceRepository.deleteAll(stepInstances);
-                workflowInstanceRepository.delete(instance);
-            }
-            workflowInstanceRepository.deleteAll(instancesToDelete);
-        } catch (Exception e) {
-            logger.error("Could not delete old workflow runs!\n{}" ,e.getMessage());
+    public void commit(StateTransition transition) {
+        transitionWriter.commit(transition);
+        for (RunNotification runNotification : transition.getNotifications()) {
+            queueController.publishRunStateChange(runNotification);
         }
-
     }
 
     /**
@@ -281,11 +534,11 @@ public class InstanceController {
     public WorkflowStepInstance getNextWorkflowStepInstance(WorkflowStepInstance stepInstance) {
         try {
             switch (stepInstance.getControlStructure()) {
-                case SIMPLE, SUB_WORKFLOW, SWITCH:
-                    return workflowStepInstanceRepository.findByUid(stepInstance.getNextStepId());
+                case SIMPLE, SUB_WORKFLOW, SWITCH, FORK_JOIN, FOR_EACH:
+                    return instanceCache.getStepInstance(stepInstance.getWorkflowInstanceUid(), stepInstance.getNextStepId());
                 case DO_WHILE:
                     if (expressionEvaluator.evaluateDoWhileCondition(stepInstance.getWorkflowInstanceUid(), stepInstance.getStopCondition(), stepInstance.getRunCount()))
-                        return workflowStepInstanceRepository.findByUid(stepInstance.getNextStepId());
+                        return instanceCache.getStepInstance(stepInstance.getWorkflowInstanceUid(), stepInstance.getNextStepId());
                     else
                         return stepInstance;
                 default:
@@ -304,7 +557,7 @@ public class InstanceController {
      * @return the start step of the workflow.
      */
     public WorkflowStepInstance getStartStep(WorkflowInstance workflowInstance) {
-        for (WorkflowStepInstance step : workflowStepInstanceRepository.findByWorkflowInstanceUid(workflowInstance.getUid())) {
+        for (WorkflowStepInstance step : instanceCache.getStepInstances(workflowInstance.getUid())) {
             if (step.getRunOrderLabel() == RunOrderLabel.FIRST) return step;
         }
         throw new InternalServiceException("The first workflow step to execute could not be found");
@@ -0,0 +1,302 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Publishes the queue messages of the orchestrator in batches with publisher confirms. The callers add their
+ * message to a buffer and get a future of its confirm. One publisher thread takes the buffered messages in batches,
+ * sends all messages of a batch on the cached channels without waiting and then waits for the confirms of the
+ * whole batch, so the round trips to the broker overlap. Messages the broker did not confirm are published again
+ * after the topology was declared again, so a message can arrive twice. When a message could still not be
+ * published after the maximum attempts, its future fails. The listeners acknowledge the message they process only
+ * after the confirms of the messages they published, so a message that could not be published leads to the
+ * redelivery of the processed message and is never dropped without the caller knowing.
+ * The messages are published in the order they were added, except for the messages that are published again.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class MessagePublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessagePublisher.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    //declares the topology again when messages were not confirmed, for example after an exchange was deleted
+    private final AmqpAdmin admin;
+
+    private final int batchSize;
+
+    private final long confirmTimeoutMillis;
+
+    private final int maxAttempts;
+
+    //without confirms on the connection factory the messages are only sent and never waited for
+    private final boolean publisherConfirms;
+
+    private final BlockingQueue<OutgoingMessage> outgoingMessages;
+
+    private final ExecutorService publishExecutor;
+
+    //the confirms of the messages published by the current thread while it processes a message
+    private final ThreadLocal<List<CompletableFuture<Void>>> confirmScope = new ThreadLocal<>();
+
+    private volatile boolean running = true;
+
+    @Autowired
+    public MessagePublisher(RabbitTemplate rabbitTemplate, AmqpAdmin admin,
+                            @Value("${orchestration.publisher.batch-size:100}") int batchSize,
+                            @Value("${orchestration.publisher.buffer-capacity:10000}") int bufferCapacity,
+                            @Value("${orchestration.publisher.confirm-timeout-ms:5000}") long confirmTimeoutMillis,
+                            @Value("${orchestration.publisher.max-attempts:3}") int maxAttempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.admin = admin;
+        this.batchSize = Math.max(1, batchSize);
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        ConnectionFactory connectionFactory = rabbitTemplate.getConnectionFactory();
+        this.publisherConfirms = connectionFactory != null && connectionFactory.isPublisherConfirms();
+        this.outgoingMessages = new LinkedBlockingQueue<>(bufferCapacity);
+        this.publishExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "lenneflow-publisher"));
+        this.publishExecutor.execute(this::publishLoop);
+    }
+
+    /**
+     * Adds a message to the publish buffer. The call blocks while the buffer is full. If the current thread runs
+     * in a confirm scope, the confirm is also added to the scope.
+     *
+     * @param exchange   the exchange
+     * @param routingKey the routing key
+     * @param message    the message with its properties
+     * @return the future of the confirm, it fails if the message could not be published
+     */
+    public CompletableFuture<Void> publish(String exchange, String routingKey, Message message) {
+        CompletableFuture<Void> confirm = buffer(exchange, routingKey, message);
+        List<CompletableFuture<Void>> scope = confirmScope.get();
+        if (scope != null) {
+            scope.add(confirm);
+        }
+        return confirm;
+    }
+
+    /**
+     * Adds a message to the publish buffer without waiting for its confirm, also in a confirm scope. Only for
+     * messages whose loss does not stop a run, a failure is only logged.
+     *
+     * @param exchange   the exchange
+     * @param routingKey the routing key
+     * @param message    the message with its properties
+     */
+    public void publishAndForget(String exchange, String routingKey, Message message) {
+        buffer(exchange, routingKey, message);
+    }
+
+    /**
+     * Runs an action in a confirm scope. The returned future completes when all messages the action published on
+     * the current thread were confirmed, and fails if one of them could not be published. The listeners use it to
+     * acknowledge the processed message only after the messages that were published for it.
+     *
+     * @param action the action, for example the processing of a received message
+     * @return the future of the confirms of all messages published by the action
+     */
+    public CompletableFuture<Void> confirmsOf(Runnable action) {
+        List<CompletableFuture<Void>> outerScope = confirmScope.get();
+        List<CompletableFuture<Void>> scope = new ArrayList<>();
+        confirmScope.set(scope);
+        try {
+            action.run();
+        } finally {
+            confirmScope.set(outerScope);
+        }
+        if (outerScope != null) {
+            outerScope.addAll(scope);
+        }
+        return CompletableFuture.allOf(scope.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> buffer(String exchange, String routingKey, Message message) {
+        CompletableFuture<Void> confirm = new CompletableFuture<>();
+        confirm.whenComplete((result, e) -> {
+            if (e != null) {
+                logger.error("Could not publish a message to the exchange {} with the routing key {}!\n{}", exchange, routingKey, e.getMessage());
+            }
+        });
+        if (!running) {
+            try {
+                rabbitTemplate.send(exchange, routingKey, message);
+                confirm.complete(null);
+            } catch (AmqpException e) {
+                confirm.completeExceptionally(e);
+            }
+            return confirm;
+        }
+        try {
+            outgoingMessages.put(new OutgoingMessage(exchange, routingKey, message, 1, confirm));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            confirm.completeExceptionally(new AmqpException("Interrupted while adding a message for the exchange " + exchange + " to the publish buffer"));
+        }
+        return confirm;
+    }
+
+    /**
+     * @return the number of messages in the publish buffer
+     */
+    public int pendingMessages() {
+        return outgoingMessages.size();
+    }
+
+    /**
+     * Publishes the buffered messages and stops the publisher thread.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        publishExecutor.shutdown();
+        try {
+            if (!publishExecutor.awaitTermination(confirmTimeoutMillis + POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("{} messages were not published before the shutdown!", outgoingMessages.size());
+                publishExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            publishExecutor.shutdownNow();
+        }
+        List<OutgoingMessage> remaining = new ArrayList<>();
+        outgoingMessages.drainTo(remaining);
+        remaining.forEach(outgoing -> outgoing.confirm().completeExceptionally(new AmqpException("Not published before the shutdown")));
+    }
+
+    private void publishLoop() {
+        List<OutgoingMessage> batch = new ArrayList<>(batchSize);
+        while (running || !outgoingMessages.isEmpty()) {
+            try {
+                OutgoingMessage first = outgoingMessages.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                outgoingMessages.drainTo(batch, batchSize - 1);
+                publishBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(outgoing -> outgoing.confirm().completeExceptionally(new AmqpException("Interrupted while waiting for the confirm")));
+                return;
+            } catch (RuntimeException e) {
+                //the messages of the batch without a confirm are handled like unconfirmed messages
+                List<OutgoingMessage> unconfirmed = batch.stream().filter(outgoing -> !outgoing.confirm().isDone()).toList();
+                if (!unconfirmed.isEmpty()) {
+                    publishAgain(unconfirmed, e.getMessage());
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends all messages of a batch and then waits for their confirms.
+     *
+     * @param batch the messages to publish
+     */
+    void publishBatch(List<OutgoingMessage> batch) throws InterruptedException {
+        if (!publisherConfirms) {
+            List<OutgoingMessage> unsent = new ArrayList<>();
+            String reason = null;
+            for (OutgoingMessage outgoing : batch) {
+                try {
+                    rabbitTemplate.send(outgoing.exchange(), outgoing.routingKey(), outgoing.message());
+                    outgoing.confirm().complete(null);
+                } catch (AmqpException e) {
+                    unsent.add(outgoing);
+                    reason = e.getMessage();
+                }
+            }
+            if (!unsent.isEmpty()) {
+                publishAgain(unsent, reason);
+            }
+            return;
+        }
+        List<CorrelationData> confirms = new ArrayList<>(batch.size());
+        for (OutgoingMessage outgoing : batch) {
+            CorrelationData correlationData = new CorrelationData();
+            try {
+                rabbitTemplate.send(outgoing.exchange(), outgoing.routingKey(), outgoing.message(), correlationData);
+            } catch (AmqpException e) {
+                correlationData.getFuture().complete(new CorrelationData.Confirm(false, e.getMessage()));
+            }
+            confirms.add(correlationData);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        List<OutgoingMessage> unconfirmed = new ArrayList<>();
+        String reason = null;
+        for (int i = 0; i < batch.size(); i++) {
+            CorrelationData.Confirm confirm = awaitConfirm(confirms.get(i), deadline);
+            if (confirm == null || !confirm.isAck()) {
+                unconfirmed.add(batch.get(i));
+                reason = confirm != null ? confirm.getReason() : "no confirm after " + confirmTimeoutMillis + " ms";
+            } else {
+                batch.get(i).confirm().complete(null);
+            }
+        }
+        if (!unconfirmed.isEmpty()) {
+            publishAgain(unconfirmed, reason);
+        }
+    }
+
+    private static CorrelationData.Confirm awaitConfirm(CorrelationData correlationData, long deadline) throws InterruptedException {
+        try {
+            return correlationData.getFuture().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the unconfirmed messages to the buffer again. The broker does not confirm a message when its exchange
+     * does not exist or the channel was closed, so the queues, exchanges and bindings are declared again first.
+     * The futures of the messages that reached the maximum attempts or do not fit into the buffer fail.
+     *
+     * @param unconfirmed the unconfirmed messages
+     * @param reason      the reason of the last unconfirmed message
+     */
+    private void publishAgain(List<OutgoingMessage> unconfirmed, String reason) {
+        logger.warn("{} messages were not confirmed by the broker: {}", unconfirmed.size(), reason);
+        try {
+            admin.initialize();
+        } catch (RuntimeException e) {
+            logger.error("Could not declare the queue topology again!\n{}", e.getMessage());
+        }
+        for (OutgoingMessage outgoing : unconfirmed) {
+            if (outgoing.attempt() >= maxAttempts) {
+                outgoing.confirm().completeExceptionally(new AmqpException("Not confirmed after " + outgoing.attempt() + " attempts: " + reason));
+            } else if (!outgoingMessages.offer(outgoing.nextAttempt())) {
+                outgoing.confirm().completeExceptionally(new AmqpException("Not confirmed and the publish buffer is full: " + reason));
+            }
+        }
+    }
+
+    record OutgoingMessage(String exchange, String routingKey, Message message, int attempt, CompletableFuture<Void> confirm) {
+
+        OutgoingMessage nextAttempt() {
+            return new OutgoingMessage(exchange, routingKey, message, attempt + 1, confirm);
+        }
+    }
+}
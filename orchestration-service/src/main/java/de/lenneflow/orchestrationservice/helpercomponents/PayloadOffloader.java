@@ -0,0 +1,272 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.utils.MessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Claim check for the large input and output data of the runs. Data above the size threshold is written to the
+ * payload store and replaced by a small reference map with the id, the size and a preview of the data. The
+ * reference is what the queue messages, the step instances and the workflow instances carry. The data is loaded
+ * again only where it is needed: when an expression reads from it and when a step is sent to its function.
+ * The loaded payloads are kept in a small cache, they never change after they were stored. The cache holds
+ * unmodifiable copies, so the callers share the cached data but can not change it. Every cached payload is above
+ * the threshold, so the cache is bounded by the serialized size of the payloads and not by their number.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class PayloadOffloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadOffloader.class);
+
+    public static final String REFERENCE_KEY = "_payloadRef";
+    public static final String SIZE_KEY = "_payloadSize";
+    public static final String PREVIEW_KEY = "_preview";
+
+    private static final int PREVIEW_ENTRIES = 10;
+    private static final int PREVIEW_VALUE_LENGTH = 64;
+
+    final PayloadStore payloadStore;
+
+    //0 disables the offloading
+    private final long thresholdBytes;
+
+    private final long cacheMaxBytes;
+
+    private long cachedBytes = 0;
+
+    //access ordered, the eldest entry is the least recently used payload
+    private final LinkedHashMap<String, CachedPayload> loadedPayloads = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Autowired
+    public PayloadOffloader(PayloadStore payloadStore,
+                            @Value("${orchestration.payload.offload-threshold-bytes:262144}") long thresholdBytes,
+                            @Value("${orchestration.payload.cache-max-bytes:33554432}") long cacheMaxBytes) {
+        this.payloadStore = payloadStore;
+        this.thresholdBytes = thresholdBytes;
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    /**
+     * Replaces data above the size threshold by a reference to the stored data.
+     *
+     * @param data                the input or output data
+     * @param workflowInstanceUid the workflow run the data belongs to
+     * @return the data itself if it is small or already a reference, otherwise the reference
+     */
+    public Map<String, Object> offload(Map<String, Object> data, String workflowInstanceUid) {
+        //the memory estimate is above the json size, small data is not serialized to measure it
+        if (thresholdBytes <= 0 || data == null || isReference(data) || InstanceCache.estimateSize(data) < thresholdBytes) {
+            return data;
+        }
+        byte[] serialized;
+        try {
+            serialized = MessageCodec.encode(data, MessageCodec.JSON_CONTENT_TYPE);
+        } catch (JsonProcessingException e) {
+            logger.warn("Could not serialize the data of the run {}, the data is not offloaded!\n{}", workflowInstanceUid, e.getMessage());
+            return data;
+        }
+        if (serialized.length < thresholdBytes) {
+            return data;
+        }
+        String payloadId = payloadStore.store(workflowInstanceUid, serialized);
+        cache(payloadId, unmodifiableCopy(data), serialized.length);
+        logger.debug("Offloaded {} bytes of the run {} to the payload {}", serialized.length, workflowInstanceUid, payloadId);
+        return reference(payloadId, serialized.length, data);
+    }
+
+    /**
+     * Returns the data with all references replaced by the stored data. References can also be nested, for example
+     * in the collected outputs of the branches of a fork.
+     *
+     * @param data the data, maybe a reference
+     * @return the data itself if it contains no reference, otherwise a copy with the loaded data
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> resolve(Map<String, Object> data) {
+        return (Map<String, Object>) resolveValue(data);
+    }
+
+    /**
+     * Deletes the stored data of a reference that was created but is not used, the data is removed from the cache
+     * too. A failed delete is only logged, the payload is deleted with its run at the latest.
+     *
+     * @param data the data, maybe a reference
+     */
+    public void discard(Map<String, Object> data) {
+        if (!isReference(data)) {
+            return;
+        }
+        String payloadId = (String) data.get(REFERENCE_KEY);
+        synchronized (loadedPayloads) {
+            CachedPayload removed = loadedPayloads.remove(payloadId);
+            if (removed != null) {
+                cachedBytes -= removed.size();
+            }
+        }
+        try {
+            payloadStore.delete(payloadId);
+        } catch (RuntimeException e) {
+            logger.warn("Could not delete the unused payload {}!\n{}", payloadId, e.getMessage());
+        }
+    }
+
+    public static boolean isReference(Map<?, ?> data) {
+        return data != null && data.get(REFERENCE_KEY) instanceof String;
+    }
+
+    private Object resolveValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            if (isReference(map)) {
+                return resolveValue(load((String) map.get(REFERENCE_KEY)));
+            }
+            Map<Object, Object> resolved = null;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object resolvedValue = resolveValue(entry.getValue());
+                if (resolvedValue != entry.getValue()) {
+                    if (resolved == null) {
+                        resolved = new LinkedHashMap<>(map);
+                    }
+                    resolved.put(entry.getKey(), resolvedValue);
+                }
+            }
+            return resolved != null ? resolved : map;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> resolved = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object resolvedValue = resolveValue(list.get(i));
+                if (resolvedValue != list.get(i)) {
+                    if (resolved == null) {
+                        resolved = new ArrayList<>(list);
+                    }
+                    resolved.set(i, resolvedValue);
+                }
+            }
+            return resolved != null ? resolved : list;
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> load(String payloadId) {
+        synchronized (loadedPayloads) {
+            CachedPayload cached = loadedPayloads.get(payloadId);
+            if (cached != null) {
+                return cached.data();
+            }
+        }
+        byte[] serialized = payloadStore.load(payloadId);
+        if (serialized == null) {
+            throw new InternalServiceException("The payload " + payloadId + " was not found");
+        }
+        Map<String, Object> data;
+        try {
+            data = unmodifiableCopy(MessageCodec.decode(serialized, MessageCodec.JSON_CONTENT_TYPE, Map.class));
+        } catch (IOException e) {
+            throw new InternalServiceException("Could not read the payload " + payloadId + ": " + e.getMessage());
+        }
+        cache(payloadId, data, serialized.length);
+        return data;
+    }
+
+    /**
+     * Adds a payload to the cache and removes the least recently used payloads until the cached payloads fit in
+     * the limit. A payload above the limit is not cached.
+     */
+    private void cache(String payloadId, Map<String, Object> data, long size) {
+        if (size > cacheMaxBytes) {
+            return;
+        }
+        synchronized (loadedPayloads) {
+            CachedPayload previous = loadedPayloads.put(payloadId, new CachedPayload(data, size));
+            if (previous != null) {
+                cachedBytes -= previous.size();
+            }
+            cachedBytes += size;
+            Iterator<Map.Entry<String, CachedPayload>> iterator = loadedPayloads.entrySet().iterator();
+            while (cachedBytes > cacheMaxBytes && iterator.hasNext()) {
+                Map.Entry<String, CachedPayload> eldest = iterator.next();
+                cachedBytes -= eldest.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    long cachedBytes() {
+        synchronized (loadedPayloads) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * Deep copy of the data where every map and list is unmodifiable.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> unmodifiableCopy(Map<String, Object> data) {
+        return (Map<String, Object>) unmodifiableCopyOfValue(data);
+    }
+
+    private static Object unmodifiableCopyOfValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), unmodifiableCopyOfValue(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(unmodifiableCopyOfValue(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * The reference of stored data. The preview contains the first keys of the data with shortened values, so the
+     * runs can be inspected without loading the payload.
+     */
+    private static Map<String, Object> reference(String payloadId, long size, Map<String, Object> data) {
+        Map<String, Object> preview = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (preview.size() == PREVIEW_ENTRIES) {
+                break;
+            }
+            preview.put(entry.getKey(), previewValue(entry.getValue()));
+        }
+        Map<String, Object> reference = new LinkedHashMap<>();
+        reference.put(REFERENCE_KEY, payloadId);
+        reference.put(SIZE_KEY, size);
+        reference.put(PREVIEW_KEY, preview);
+        return reference;
+    }
+
+    private static Object previewValue(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof Map<?, ?> map) {
+            return "{" + map.size() + " entries}";
+        }
+        if (value instanceof Collection<?> collection) {
+            return "[" + collection.size() + " items]";
+        }
+        String text = value.toString();
+        return text.length() <= PREVIEW_VALUE_LENGTH ? text : text.substring(0, PREVIEW_VALUE_LENGTH) + "...";
+    }
+
+    private record CachedPayload(Map<String, Object> data, long size) {
+    }
+}
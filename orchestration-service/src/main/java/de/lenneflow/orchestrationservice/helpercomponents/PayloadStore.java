@@ -0,0 +1,43 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import java.util.Collection;
+
+/**
+ * Blob store for the large input and output data of the runs. The payloads are written once and never changed,
+ * they are deleted together with the workflow run they belong to.
+ *
+ * @author Idrissa Ganemtore
+ */
+public interface PayloadStore {
+
+    /**
+     * Stores a payload.
+     *
+     * @param workflowInstanceUid the workflow run the payload belongs to
+     * @param payload             the serialized payload
+     * @return the id of the stored payload
+     */
+    String store(String workflowInstanceUid, byte[] payload);
+
+    /**
+     * Loads a payload.
+     *
+     * @param payloadId the id of the payload
+     * @return the serialized payload or null if not found
+     */
+    byte[] load(String payloadId);
+
+    /**
+     * Deletes a payload that is not referenced, for example the output of a result that was dropped.
+     *
+     * @param payloadId the id of the payload
+     */
+    void delete(String payloadId);
+
+    /**
+     * Deletes all payloads of workflow runs.
+     *
+     * @param workflowInstanceUids the workflow run UIDs
+     */
+    void deleteByWorkflowInstances(Collection<String> workflowInstanceUids);
+}
@@ -0,0 +1,134 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Startup check of the query plans of the frequent orchestration queries. Every query is explained by the
+ * database and a warning is logged for each query that would scan the whole collection instead of an index.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class QueryPlanCheck {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanCheck.class);
+
+    private static final String WORKFLOW_INSTANCE_UID = "workflowInstanceUid";
+
+    private static final String START_TIME = "startTime";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final boolean enabled;
+
+    public QueryPlanCheck(MongoTemplate mongoTemplate, @Value("${orchestration.query-plan-check.enabled:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkQueryPlans() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> collectionScans = findCollectionScans();
+            if (collectionScans.isEmpty()) {
+                logger.info("All checked orchestration queries use an index");
+            }
+            for (String queryName : collectionScans) {
+                logger.warn("The query {} scans the whole collection, an index is missing", queryName);
+            }
+        } catch (Exception e) {
+            logger.error("Could not check the query plans!\n{}", e.getMessage());
+        }
+    }
+
+    /**
+     * Explains the checked queries.
+     *
+     * @return the names of the queries that use a collection scan
+     */
+    public List<String> findCollectionScans() {
+        List<String> collectionScans = new ArrayList<>();
+        for (CheckedQuery query : checkedQueries()) {
+            Document command = new Document("find", query.collection).append("filter", query.filter);
+            if (query.sort != null) {
+                command.append("sort", query.sort);
+            }
+            Document explain = mongoTemplate.getDb().runCommand(new Document("explain", command).append("verbosity", "queryPlanner"));
+            Object queryPlanner = explain.get("queryPlanner");
+            if (queryPlanner instanceof Document plannerDocument && containsCollectionScan(plannerDocument.get("winningPlan"))) {
+                collectionScans.add(query.name);
+            }
+        }
+        return collectionScans;
+    }
+
+    /**
+     * Searches the plan tree for a COLLSCAN stage. The tree layout differs between the query engines of the
+     * database versions, so all nested documents are searched.
+     */
+    static boolean containsCollectionScan(Object plan) {
+        if (plan instanceof Document document) {
+            if ("COLLSCAN".equals(document.get("stage"))) {
+                return true;
+            }
+            for (Object value : document.values()) {
+                if (containsCollectionScan(value)) {
+                    return true;
+                }
+            }
+        } else if (plan instanceof List<?> list) {
+            for (Object element : list) {
+                if (containsCollectionScan(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private List<CheckedQuery> checkedQueries() {
+        String steps = mongoTemplate.getCollectionName(WorkflowStepInstance.class);
+        String runs = mongoTemplate.getCollectionName(WorkflowInstance.class);
+        Document newestFirst = new Document(START_TIME, -1).append("_id", -1);
+        return List.of(
+                new CheckedQuery("WorkflowStepInstanceRepository.findByNameAndWorkflowInstanceUid", steps,
+                        new Document("name", "").append(WORKFLOW_INSTANCE_UID, ""), null),
+                new CheckedQuery("WorkflowStepInstanceRepository.findByWorkflowInstanceUid", steps,
+                        new Document(WORKFLOW_INSTANCE_UID, ""), null),
+                new CheckedQuery("WorkflowStepInstanceRepository.findByWorkflowInstanceUidAndNameIn", steps,
+                        new Document(WORKFLOW_INSTANCE_UID, "").append("name", new Document("$in", List.of(""))), null),
+                new CheckedQuery("TimeoutScheduler running steps", steps,
+                        new Document("runStatus", RunStatus.RUNNING.name()).append("timeOutInSeconds", new Document("$gt", 0)), null),
+                new CheckedQuery("first step of a run", steps,
+                        new Document(WORKFLOW_INSTANCE_UID, "").append("runOrderLabel", RunOrderLabel.FIRST.name()), null),
+                new CheckedQuery("RetentionPurger expired runs", runs,
+                        new Document("runStatus", new Document("$in", List.of(RunStatus.COMPLETED.name())))
+                                .append("parentInstanceUid", new Document("$in", Arrays.asList(null, "")))
+                                .append(START_TIME, new Document("$lt", new Date())), new Document(START_TIME, 1)),
+                new CheckedQuery("RetentionPurger sub workflow runs", runs,
+                        new Document("parentInstanceUid", new Document("$in", List.of(""))), null),
+                new CheckedQuery("RunListing all runs", runs,
+                        new Document(START_TIME, new Document("$ne", null)), newestFirst),
+                new CheckedQuery("RunListing runs of a workflow", runs,
+                        new Document("workflowUid", "").append(START_TIME, new Document("$ne", null)), newestFirst));
+    }
+
+    private record CheckedQuery(String name, String collection, Document filter, Document sort) {
+    }
+}
@@ -4,42 +4,71 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.utils.MessageCodec;
 import de.lenneflow.orchestrationservice.utils.Util;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Controller for all queue events.
+ * Controller for all queue events. The queues, exchanges and bindings are declared once at startup, also the delay
+ * queues of the retries. The messages are published by the message publisher.
  *
  * @author Idrissa Ganemtore
  */
 @Component
 @EnableRabbit
-@RequiredArgsConstructor
 public class QueueController {
 
     private static final Logger logger = LoggerFactory.getLogger(QueueController.class);
 
     public static final String FUNCTION_RESULT_QUEUE = "functionResultQueue";
+    public static final String FUNCTION_RESULT_EXCHANGE = FUNCTION_RESULT_QUEUE + "-Exchange";
+    public static final String FUNCTION_RESULT_ROUTING = FUNCTION_RESULT_QUEUE + "-RoutingKey";
+    public static final int RESULT_QUEUE_PARTITIONS = 16;
     public static final String FUNCTION_QUEUE = "functionQueue";
+    public static final String FUNCTION_QUEUE_EXCHANGE = FUNCTION_QUEUE + "-Exchange";
+    public static final String FUNCTION_QUEUE_ROUTING = FUNCTION_QUEUE + "-RoutingKey";
     public static final String RUN_STATE_QUEUE = "runStateQueue";
     public static final String RUN_STATE_EXCHANGE = "runStateExchange";
     public static final String RUN_STATE_ROUTING = "runStateRouting";
+    public static final String FUNCTION_DEPLOYMENT_EXCHANGE = "functionDeploymentExchange";
+    public static final String RETRY_DELAY_QUEUE = "stepRetryDelay";
+    public static final String RETRY_DELAY_EXCHANGE = RETRY_DELAY_QUEUE + "-Exchange";
+    public static final String RETRY_DELAY_HEADER = "x-retry-delay-seconds";
+    //the delays of the delay queues, a retry waits in the queue of the smallest delay that is not shorter than its own
+    static final long[] RETRY_DELAY_BUCKET_SECONDS = {1, 2, 5, 10, 15, 30, 60, 120, 300, 600, 900, 1800, 3600, 7200, 14400, 28800, 43200, 86400};
+
+    final MessagePublisher messagePublisher;
 
-    final AmqpAdmin admin;
-    final RabbitTemplate rabbitTemplate;
+    //the format of the published messages, the listeners read every format by the content type of the message
+    private final String messageContentType;
 
+    @Autowired
+    public QueueController(MessagePublisher messagePublisher,
+                           @Value("${orchestration.messaging.content-type:application/json}") String messageContentType) {
+        this.messagePublisher = messagePublisher;
+        this.messageContentType = MessageCodec.supportedContentType(messageContentType);
+    }
 
+    /**
+     * Publishes a run state change to the run state queues of all orchestrators. The notifications only feed the
+     * event streams and the waiting requests, so they are not waited for.
+     *
+     * @param runNotification the run state change
+     */
     public void publishRunStateChange(RunNotification runNotification) {
         try {
-            FanoutExchange exchange = new FanoutExchange(QueueController.RUN_STATE_EXCHANGE, false, true);
-            admin.declareExchange(exchange);
-            rabbitTemplate.convertAndSend(RUN_STATE_EXCHANGE, RUN_STATE_ROUTING, Util.serialize(runNotification));
+            messagePublisher.publishAndForget(RUN_STATE_EXCHANGE, RUN_STATE_ROUTING, message(Util.serialize(runNotification, messageContentType)));
         } catch (JsonProcessingException e) {
             logger.error(e.getMessage());
         }
@@ -50,53 +79,185 @@ public class QueueController {
      * Adds a function object to the function queue.
      *
      * @param queueElement the function object
+     * @return the future of the confirm of the message
      */
-    public void addFunctionDtoToQueue(QueueElement queueElement) {
+    public CompletableFuture<Void> addFunctionDtoToQueue(QueueElement queueElement) {
         try {
-            byte[] serializedFunctionDto = Util.serialize(queueElement);
-            String queueName = FUNCTION_QUEUE;
-            String exchange = queueName + "-Exchange";
-            String routingKey = queueName + "-RoutingKey";
-            createTopicExchangeQueue(queueName, exchange, routingKey);
-            rabbitTemplate.convertAndSend(exchange, routingKey, serializedFunctionDto);
+            byte[] serializedFunctionDto = Util.serialize(queueElement, messageContentType);
+            return messagePublisher.publish(FUNCTION_QUEUE_EXCHANGE, FUNCTION_QUEUE_ROUTING, message(serializedFunctionDto));
         } catch (JsonProcessingException e) {
             logger.error(e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
 
     }
 
     /**
-     * Adds a function object to the function results queue.
+     * Adds a function object to the function results queue. The results are partitioned by the workflow instance,
+     * so all results of an instance go to the same partition queue and are processed one after the other.
      *
      * @param resultQueueElement the function object
+     * @return the future of the confirm of the message
+     */
+    public CompletableFuture<Void> addElementToResultQueue(ResultQueueElement resultQueueElement) {
+        try {
+            byte[] serializedFunctionDto = Util.serialize(resultQueueElement, messageContentType);
+            int partition = resultPartition(resultQueueElement.getWorkflowInstanceId());
+            return messagePublisher.publish(FUNCTION_RESULT_EXCHANGE, resultPartitionRoutingKey(partition), message(serializedFunctionDto));
+        } catch (JsonProcessingException e) {
+            logger.error(e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Adds a due retry of a failed step to the result queue after a delay. The element waits in a delay queue with
+     * a message time to live and no consumer. When it expires, the broker dead-letters it to the result exchange
+     * with its original routing key, so it arrives in the result partition of its workflow instance and no thread
+     * waits for the delay. The broker only expires the message at the head of a queue, so every queue has one
+     * delay. The delays are rounded up to a fixed set of delays, whose queues are declared at startup.
+     *
+     * @param resultQueueElement the retry element
+     * @param delayMillis        the delay, rounded up to the next delay of a delay queue
+     * @return the future of the confirm of the message
      */
-    public void addElementToResultQueue(ResultQueueElement resultQueueElement) {
+    public CompletableFuture<Void> addElementToRetryDelayQueue(ResultQueueElement resultQueueElement, long delayMillis) {
         try {
-            byte[] serializedFunctionDto = Util.serialize(resultQueueElement);
-            String queueName = FUNCTION_RESULT_QUEUE;
-            String exchange = queueName + "-Exchange";
-            String routingKey = queueName + "-RoutingKey";
-            createTopicExchangeQueue(queueName, exchange, routingKey);
-            rabbitTemplate.convertAndSend(exchange, routingKey, serializedFunctionDto);
+            byte[] serializedFunctionDto = Util.serialize(resultQueueElement, messageContentType);
+            int partition = resultPartition(resultQueueElement.getWorkflowInstanceId());
+            String delaySeconds = String.valueOf(retryDelayBucketSeconds(delayMillis));
+            Message message = message(serializedFunctionDto);
+            message.getMessageProperties().setHeader(RETRY_DELAY_HEADER, delaySeconds);
+            return messagePublisher.publish(RETRY_DELAY_EXCHANGE, resultPartitionRoutingKey(partition), message);
         } catch (JsonProcessingException e) {
             logger.error(e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * A persistent message with the content type of the published format, the body is already encoded in it.
+     *
+     * @param body the message body
+     * @return the message
+     */
+    private Message message(byte[] body) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(messageContentType);
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        return new Message(body, properties);
+    }
+
+    public static String retryDelayQueueName(String delaySeconds) {
+        return RETRY_DELAY_QUEUE + "." + delaySeconds + "s";
+    }
+
+    /**
+     * The partition of the results of a workflow instance. The callback service computes the partition the same
+     * way, the hash code of a string is the same in every JVM.
+     *
+     * @param workflowInstanceId the workflow instance id
+     * @return the partition between 0 and RESULT_QUEUE_PARTITIONS - 1
+     */
+    public static int resultPartition(String workflowInstanceId) {
+        if (workflowInstanceId == null) {
+            return 0;
+        }
+        return Math.floorMod(workflowInstanceId.hashCode(), RESULT_QUEUE_PARTITIONS);
+    }
+
+    public static String resultPartitionQueueName(int partition) {
+        return FUNCTION_RESULT_QUEUE + "." + partition;
+    }
+
+    /**
+     * The partition of a result partition queue.
+     *
+     * @param queueName the queue name
+     * @return the partition, or -1 if the queue is not a result partition queue
+     */
+    public static int resultPartitionOfQueue(String queueName) {
+        String prefix = FUNCTION_RESULT_QUEUE + ".";
+        if (queueName == null || !queueName.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            int partition = Integer.parseInt(queueName.substring(prefix.length()));
+            return partition >= 0 && partition < RESULT_QUEUE_PARTITIONS ? partition : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static String resultPartitionRoutingKey(int partition) {
+        return FUNCTION_RESULT_ROUTING + "." + partition;
+    }
+
+    /**
+     * The names of all result partition queues, used by the result listener.
+     *
+     * @return the queue names
+     */
+    public static String[] resultPartitionQueueNames() {
+        String[] queueNames = new String[RESULT_QUEUE_PARTITIONS];
+        for (int partition = 0; partition < RESULT_QUEUE_PARTITIONS; partition++) {
+            queueNames[partition] = resultPartitionQueueName(partition);
         }
+        return queueNames;
     }
 
+    /**
+     * A result partition queue. Only one consumer of all orchestrator replicas is active on a partition queue, the
+     * other consumers take over when it goes away.
+     *
+     * @param partition the partition
+     * @return the queue
+     */
+    public static Queue resultPartitionQueue(int partition) {
+        return QueueBuilder.durable(resultPartitionQueueName(partition)).singleActiveConsumer().build();
+    }
+
+    /**
+     * The delay of the delay queue of a retry.
+     *
+     * @param delayMillis the delay of the retry
+     * @return the smallest delay queue delay in seconds that is not shorter, the longest one for longer delays
+     */
+    public static long retryDelayBucketSeconds(long delayMillis) {
+        for (long bucketSeconds : RETRY_DELAY_BUCKET_SECONDS) {
+            if (TimeUnit.SECONDS.toMillis(bucketSeconds) >= delayMillis) {
+                return bucketSeconds;
+            }
+        }
+        return RETRY_DELAY_BUCKET_SECONDS[RETRY_DELAY_BUCKET_SECONDS.length - 1];
+    }
+
+    /**
+     * The delay queues and their bindings to the headers exchange of the delay queues, one queue per delay.
+     *
+     * @return the declarables of the delay queues
+     */
+    public static List<Declarable> retryDelayQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        HeadersExchange exchange = retryDelayExchange();
+        for (long bucketSeconds : RETRY_DELAY_BUCKET_SECONDS) {
+            String delaySeconds = String.valueOf(bucketSeconds);
+            Queue queue = QueueBuilder.durable(retryDelayQueueName(delaySeconds))
+                    .ttl((int) TimeUnit.SECONDS.toMillis(bucketSeconds))
+                    .deadLetterExchange(FUNCTION_RESULT_EXCHANGE)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange).where(RETRY_DELAY_HEADER).matches(delaySeconds));
+        }
+        return declarables;
+    }
 
     /**
-     * Create a rabbitmq queue and the corresponding binding.
+     * The headers exchange of the delay queues, declared at startup.
      *
-     * @param queueName    the name of the queue
-     * @param exchangeName the exchange name
-     * @param routingKey   the routing key
+     * @return the exchange
      */
-    private void createTopicExchangeQueue(String queueName, String exchangeName, String routingKey) {
-        Queue queue = new Queue(queueName, true, false, false);
-        admin.declareQueue(queue);
-        TopicExchange exchange = new TopicExchange(exchangeName, true, false);
-        admin.declareExchange(exchange);
-        Binding binding = new Binding(queueName, Binding.DestinationType.QUEUE, exchangeName, routingKey, null);
-        admin.declareBinding(binding);
+    public static HeadersExchange retryDelayExchange() {
+        return new HeadersExchange(RETRY_DELAY_EXCHANGE, true, false);
     }
 }
@@ -1,17 +1,31 @@
 package de.lenneflow.orchestrationservice.helpercomponents;
 
+import com.rabbitmq.client.Channel;
+import de.lenneflow.orchestrationservice.configuration.AppConfiguration;
+import de.lenneflow.orchestrationservice.dto.FunctionDeploymentEvent;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
+import de.lenneflow.orchestrationservice.dto.RunNotification;
 import de.lenneflow.orchestrationservice.utils.Util;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.listener.ConsumeOkEvent;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Listener for all queues events.
@@ -27,40 +41,191 @@ public class QueueListener {
 
     final AmqpAdmin admin;
     final WorkflowRunner workflowRunner;
+    final FunctionDispatchExecutor functionDispatchExecutor;
+    final DeploymentTracker deploymentTracker;
+    final FunctionCache functionCache;
+    final RunStateStream runStateStream;
+    final RunCompletionTracker runCompletionTracker;
+    final InstanceCache instanceCache;
+    final MessagePublisher messagePublisher;
+
+    //the result partitions whose active consumer is on this orchestrator
+    private final Set<Integer> activePartitions = ConcurrentHashMap.newKeySet();
 
 
     /**
      * Listener for the function queue. this queue contains the functions from different workflow instances that
-     * should be processed.
+     * should be processed. The dispatch runs in the bounded dispatch executor and the message is acknowledged
+     * when the dispatch is done, so the prefetch count limits the number of dispatches taken from the broker.
+     * A dispatch is done when the result of a failed dispatch was confirmed by the broker. If the result could not
+     * be published, the message is returned to the queue and dispatched again.
      *
      * @param serializedElement the serialized function from the queue.
+     * @param contentType       the content type of the message, null for messages without a content type.
+     * @param channel           the channel the message was received on.
+     * @param deliveryTag       the delivery tag of the message.
      */
-    @RabbitListener(queues = QueueController.FUNCTION_QUEUE)
-    public void queueListener(byte[] serializedElement) {
+    @RabbitListener(queues = QueueController.FUNCTION_QUEUE, containerFactory = AppConfiguration.FUNCTION_QUEUE_LISTENER_FACTORY)
+    public void queueListener(byte[] serializedElement, @Header(name = AmqpHeaders.CONTENT_TYPE, required = false) String contentType,
+                              Channel channel, @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
         try {
-            QueueElement queueElement = Util.deserializeQueueElement(serializedElement);
-            new Thread(() -> workflowRunner.processFunctionDtoFromQueue(queueElement)).start();
+            QueueElement queueElement = Util.deserializeQueueElement(serializedElement, contentType);
+            functionDispatchExecutor.executeAsync(() -> workflowRunner.processFunctionDtoFromQueue(queueElement), e -> {
+                if (isPublishFailure(e)) {
+                    requeue(channel, deliveryTag);
+                } else {
+                    acknowledge(channel, deliveryTag);
+                }
+            });
         } catch (IOException e) {
             logger.error(e.getMessage());
+            reject(channel, deliveryTag);
         }
+    }
 
+    /**
+     * Listener for the function result partition queues. These queues contain the functions from the workers that
+     * should be processed. All results of a workflow instance are in the same partition and every partition has
+     * only one active consumer, so the results of an instance are processed one after the other, also when
+     * several orchestrators are running.
+     * The broker does not tell a waiting consumer that it became the active one, so the first delivery of a
+     * partition after its consumer started marks the partition as taken over and evicts its cached runs, which
+     * the previously active orchestrator could have changed.
+     *
+     * @param serializedElement the serialized element from the queue.
+     * @param contentType       the content type of the message, null for messages without a content type.
+     * @param queueName         the partition queue of the message.
+     * @return the future of the confirms of the messages published for the result, the message is acknowledged
+     * when it completes.
+     */
+    @RabbitListener(queues = "#{T(de.lenneflow.orchestrationservice.helpercomponents.QueueController).resultPartitionQueueNames()}",
+            containerFactory = AppConfiguration.RESULT_QUEUE_LISTENER_FACTORY)
+    public CompletableFuture<Void> resultPartitionQueueListener(byte[] serializedElement, @Header(name = AmqpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                             @Header(AmqpHeaders.CONSUMER_QUEUE) String queueName) {
+        int partition = QueueController.resultPartitionOfQueue(queueName);
+        if (partition >= 0 && activePartitions.add(partition)) {
+            instanceCache.evictPartition(partition);
+            logger.info("This orchestrator processes the result partition {}", partition);
+        }
+        return resultQueueListener(serializedElement, contentType);
+    }
 
+    /**
+     * Called when a consumer of this orchestrator started, also when it restarted after a connection loss. A
+     * started consumer of a partition queue is not active until its first delivery, meanwhile another
+     * orchestrator can process the partition, so the partition is no longer taken over and its cached runs are
+     * evicted.
+     *
+     * @param event the consume ok event of the consumer
+     */
+    @EventListener
+    public void onConsumeOk(ConsumeOkEvent event) {
+        int partition = QueueController.resultPartitionOfQueue(event.getQueue());
+        if (partition < 0) {
+            return;
+        }
+        activePartitions.remove(partition);
+        instanceCache.evictPartition(partition);
     }
 
     /**
-     * Listener for the function result queue. this queue contains the functions from the workers that
-     * should be processed.
+     * Listener for the unpartitioned function result queue. It drains the results that were published before the
+     * results were partitioned.
+     * The listener returns the future of the confirms of the messages that were published while the result was
+     * processed, the container acknowledges the message when the future completes and returns it to the queue
+     * when the future fails, so a next step or a retry is never lost after its result was acknowledged.
+     * A result whose processing fails is rejected without returning it to the queue, it would fail again.
      *
      * @param serializedElement the serialized element from the queue.
+     * @param contentType       the content type of the message, null for messages without a content type.
+     * @return the future of the confirms of the messages published for the result.
      */
     @RabbitListener(queues = QueueController.FUNCTION_RESULT_QUEUE)
-    public void resultQueueListener(byte[] serializedElement) {
+    public CompletableFuture<Void> resultQueueListener(byte[] serializedElement, @Header(name = AmqpHeaders.CONTENT_TYPE, required = false) String contentType) {
+        ResultQueueElement resultQueueElement;
+        try {
+            resultQueueElement = Util.deserializeResultQueueElement(serializedElement, contentType);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return messagePublisher.confirmsOf(() -> workflowRunner.processResultFromQueue(resultQueueElement));
+        } catch (AmqpException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (RuntimeException e) {
+            logger.error("Could not process the result of the step instance {} of the run {}!\n{}",
+                    resultQueueElement.getStepInstanceId(), resultQueueElement.getWorkflowInstanceId(), e.getMessage());
+            return CompletableFuture.failedFuture(new AmqpRejectAndDontRequeueException(e));
+        }
+    }
+
+    /**
+     * Listener for the deployment state changes and updates of the functions. Every orchestrator has its own queue,
+     * because every orchestrator caches the functions and the runs waiting for a function can be registered in any
+     * orchestrator.
+     *
+     * @param serializedEvent the serialized event from the queue.
+     */
+    @RabbitListener(queues = "#{functionDeploymentQueue.name}")
+    public void deploymentStateListener(byte[] serializedEvent) {
+        try {
+            FunctionDeploymentEvent event = Util.deserializeFunctionDeploymentEvent(serializedEvent);
+            functionCache.invalidate(event.getFunctionUid());
+            deploymentTracker.onDeploymentStateChange(event.getFunctionUid(), event.getDeploymentState());
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Listener for the run state changes of all orchestrators. Every orchestrator has its own queue, because the
+     * clients of the event streams and the requests waiting for a run can be connected to any orchestrator.
+     *
+     * @param serializedNotification the serialized notification from the queue.
+     * @param contentType            the content type of the message, null for messages without a content type.
+     */
+    @RabbitListener(queues = "#{runStateQueue.name}")
+    public void runStateListener(byte[] serializedNotification, @Header(name = AmqpHeaders.CONTENT_TYPE, required = false) String contentType) {
         try {
-            ResultQueueElement resultQueueElement = Util.deserializeResultQueueElement(serializedElement);
-            workflowRunner.processResultFromQueue(resultQueueElement);
+            RunNotification runNotification = Util.deserializeRunNotification(serializedNotification, contentType);
+            runStateStream.onRunStateChange(runNotification);
+            runCompletionTracker.onRunStateChange(runNotification);
         } catch (IOException e) {
             logger.error(e.getMessage());
         }
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException e) {
+            logger.error("Could not acknowledge message {}!\n{}", deliveryTag, e.getMessage());
+        }
+    }
 
+    private void requeue(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException e) {
+            logger.error("Could not return message {} to the queue!\n{}", deliveryTag, e.getMessage());
+        }
+    }
+
+    /**
+     * The messages that could not be published fail with an AmqpException, other failures of a dispatch are
+     * failures of the message itself, which would fail again.
+     */
+    private static boolean isPublishFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof AmqpException;
+    }
+
+    private void reject(Channel channel, long deliveryTag) {
+        try {
+            channel.basicReject(deliveryTag, false);
+        } catch (IOException e) {
+            logger.error("Could not reject message {}!\n{}", deliveryTag, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,169 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Background purge of old workflow runs. Runs are deleted when they are older than the configured number of
+ * days or when a workflow has more terminated runs than the configured maximum. Only runs in one of the
+ * configured states are deleted. The sub workflow runs, the step instances and the offloaded payloads of a
+ * deleted run are deleted with it, each with one range delete per batch.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class RetentionPurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentionPurger.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private final PayloadStore payloadStore;
+
+    private final boolean enabled;
+
+    private final int keepDays;
+
+    private final int maxRunsPerWorkflow;
+
+    private final List<RunStatus> statuses;
+
+    private final int batchSize;
+
+    public RetentionPurger(MongoTemplate mongoTemplate, PayloadStore payloadStore,
+                           @Value("${orchestration.retention.enabled:true}") boolean enabled,
+                           @Value("${orchestration.retention.keep-days:100}") int keepDays,
+                           @Value("${orchestration.retention.max-runs-per-workflow:100}") int maxRunsPerWorkflow,
+                           @Value("${orchestration.retention.statuses:COMPLETED,COMPLETED_WITH_ERRORS,FAILED,FAILED_WITH_TERMINAL_ERROR,CANCELED,STOPPED,TIMED_OUT}") List<RunStatus> statuses,
+                           @Value("${orchestration.retention.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.payloadStore = payloadStore;
+        this.enabled = enabled;
+        this.keepDays = keepDays;
+        this.maxRunsPerWorkflow = maxRunsPerWorkflow;
+        this.statuses = statuses;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Deletes the runs that are not retained anymore.
+     */
+    @Scheduled(initialDelayString = "${orchestration.retention.initial-delay-ms:60000}", fixedDelayString = "${orchestration.retention.interval-ms:300000}")
+    public void purge() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long deleted = purgeExpiredRuns() + purgeRunsOverLimit();
+            if (deleted > 0) {
+                logger.info("Deleted {} old workflow runs", deleted);
+            }
+        } catch (Exception e) {
+            logger.error("Could not delete old workflow runs!\n{}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the runs started before the retention period, oldest first.
+     *
+     * @return the number of deleted runs
+     */
+    long purgeExpiredRuns() {
+        Criteria criteria = purgeableRuns().and("startTime").lt(LocalDateTime.now().minusDays(keepDays));
+        return purgeOldest(criteria, Long.MAX_VALUE);
+    }
+
+    /**
+     * Deletes the oldest runs of each workflow that has more purgeable runs than allowed.
+     *
+     * @return the number of deleted runs
+     */
+    long purgeRunsOverLimit() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(purgeableRuns()),
+                Aggregation.group("workflowUid").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(maxRunsPerWorkflow)));
+        long deleted = 0;
+        for (Document workflowCount : mongoTemplate.aggregate(aggregation, WorkflowInstance.class, Document.class)) {
+            long excess = ((Number) workflowCount.get("count")).longValue() - maxRunsPerWorkflow;
+            deleted += purgeOldest(purgeableRuns().and("workflowUid").is(workflowCount.get("_id")), excess);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the oldest runs matching the criteria in batches.
+     *
+     * @param criteria the criteria of the runs to delete
+     * @param maxCount the max number of runs to delete
+     * @return the number of deleted runs
+     */
+    private long purgeOldest(Criteria criteria, long maxCount) {
+        long deleted = 0;
+        while (deleted < maxCount) {
+            Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "startTime")).limit((int) Math.min(batchSize, maxCount - deleted));
+            List<String> uids = findUids(query);
+            if (uids.isEmpty()) {
+                break;
+            }
+            long deletedInBatch = deleteRuns(uids);
+            deleted += deletedInBatch;
+            if (deletedInBatch == 0 || uids.size() < batchSize) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the runs, their sub workflow runs, all their step instances and their payloads.
+     *
+     * @param uids the UIDs of the runs
+     * @return the number of deleted runs, without the sub workflow runs
+     */
+    private long deleteRuns(List<String> uids) {
+        List<String> subWorkflowUids = new ArrayList<>();
+        List<String> parentUids = uids;
+        while (!parentUids.isEmpty()) {
+            parentUids = findUids(new Query(Criteria.where("parentInstanceUid").in(parentUids)));
+            subWorkflowUids.addAll(parentUids);
+        }
+        List<String> allUids = new ArrayList<>(uids);
+        allUids.addAll(subWorkflowUids);
+        mongoTemplate.remove(new Query(Criteria.where("workflowInstanceUid").in(allUids)), WorkflowStepInstance.class);
+        payloadStore.deleteByWorkflowInstances(allUids);
+        if (!subWorkflowUids.isEmpty()) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").in(subWorkflowUids)), WorkflowInstance.class);
+        }
+        return mongoTemplate.remove(new Query(Criteria.where("_id").in(uids)), WorkflowInstance.class).getDeletedCount();
+    }
+
+    private List<String> findUids(Query query) {
+        query.fields().include("_id");
+        return mongoTemplate.find(query, WorkflowInstance.class).stream().map(WorkflowInstance::getUid).toList();
+    }
+
+    /**
+     * The runs that can be deleted: terminated root runs. Sub workflow runs are deleted with their root run.
+     */
+    private Criteria purgeableRuns() {
+        return Criteria.where("runStatus").in(statuses).and("parentInstanceUid").in(Arrays.asList(null, ""));
+    }
+}
@@ -0,0 +1,139 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the requests that wait for the end of a run. A waiting request is only a deferred result registered for
+ * its run, no thread waits for it. The run can end on any orchestrator, so the deferred result completes with
+ * the final state of the run when the run notification of its end arrives in the run state queue of this
+ * orchestrator. When the run does not end in time, the request completes with 202 and the run UID.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class RunCompletionTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunCompletionTracker.class);
+
+    private final WorkflowInstanceRepository workflowInstanceRepository;
+
+    private final long maxTimeoutSeconds;
+
+    private final Map<String, Set<DeferredResult<ResponseEntity<WorkflowExecution>>>> waitersByRun = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RunCompletionTracker(WorkflowInstanceRepository workflowInstanceRepository,
+                                @Value("${orchestration.run-sync.max-timeout-seconds:300}") long maxTimeoutSeconds) {
+        this.workflowInstanceRepository = workflowInstanceRepository;
+        this.maxTimeoutSeconds = maxTimeoutSeconds;
+    }
+
+    /**
+     * Registers a request that waits for the end of a run. Must be called before the run is started, so the end
+     * of a short run is not missed.
+     *
+     * @param workflowInstance the workflow instance of the run
+     * @param timeoutSeconds   the time to wait, limited to the maximum timeout
+     * @return the deferred result of the request
+     */
+    public DeferredResult<ResponseEntity<WorkflowExecution>> awaitCompletion(WorkflowInstance workflowInstance, long timeoutSeconds) {
+        String runUid = workflowInstance.getUid();
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(Math.min(Math.max(1, timeoutSeconds), maxTimeoutSeconds));
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = new DeferredResult<>(timeoutMillis);
+        WorkflowExecution accepted = accepted(workflowInstance);
+        result.onTimeout(() -> result.setResult(ResponseEntity.accepted().body(accepted)));
+        result.onCompletion(() -> remove(runUid, result));
+        waitersByRun.compute(runUid, (uid, waiters) -> {
+            Set<DeferredResult<ResponseEntity<WorkflowExecution>>> runWaiters = waiters != null ? waiters : ConcurrentHashMap.newKeySet();
+            runWaiters.add(result);
+            return runWaiters;
+        });
+        return result;
+    }
+
+    /**
+     * Removes the waiting requests of a run that could not be started.
+     *
+     * @param runUid the workflow instance UID
+     */
+    public void cancel(String runUid) {
+        waitersByRun.remove(runUid);
+    }
+
+    /**
+     * Completes the waiting requests of a run when the notification reports the end of the run.
+     *
+     * @param runNotification the notification
+     */
+    public void onRunStateChange(RunNotification runNotification) {
+        if (runNotification.isStepUpdate() || runNotification.getStatus() == null || !runNotification.getStatus().isFinal()) {
+            return;
+        }
+        Set<DeferredResult<ResponseEntity<WorkflowExecution>>> waiters = waitersByRun.remove(runNotification.getWorkflowInstanceUid());
+        if (waiters == null) {
+            return;
+        }
+        //without the stored run, the response only contains the final status
+        WorkflowExecution execution = finished(runNotification);
+        try {
+            //loaded from the database, the cached run of this orchestrator can be older than the notification
+            WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(runNotification.getWorkflowInstanceUid());
+            if (workflowInstance != null) {
+                execution = new WorkflowExecution(workflowInstance);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not load the finished run {}!\n{}", runNotification.getWorkflowInstanceUid(), e.getMessage());
+        }
+        for (DeferredResult<ResponseEntity<WorkflowExecution>> waiter : waiters) {
+            waiter.setResult(ResponseEntity.ok(execution));
+        }
+    }
+
+    /**
+     * @return the number of runs that requests wait for
+     */
+    public int awaitedRuns() {
+        return waitersByRun.size();
+    }
+
+    private void remove(String runUid, DeferredResult<ResponseEntity<WorkflowExecution>> result) {
+        waitersByRun.computeIfPresent(runUid, (uid, waiters) -> {
+            waiters.remove(result);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    /**
+     * The response of a run that did not end in time. Only the fields that do not change during the run are
+     * copied, the run can be changed by other threads while the response is written.
+     */
+    private static WorkflowExecution accepted(WorkflowInstance workflowInstance) {
+        WorkflowExecution execution = new WorkflowExecution();
+        execution.setRunUid(workflowInstance.getUid());
+        execution.setWorkflowName(workflowInstance.getName());
+        execution.setWorkflowDescription(workflowInstance.getDescription());
+        return execution;
+    }
+
+    private static WorkflowExecution finished(RunNotification runNotification) {
+        WorkflowExecution execution = new WorkflowExecution();
+        execution.setRunUid(runNotification.getWorkflowInstanceUid());
+        execution.setRunStatus(runNotification.getStatus());
+        return execution;
+    }
+}
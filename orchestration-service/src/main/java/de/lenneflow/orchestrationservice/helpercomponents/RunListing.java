@@ -0,0 +1,153 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.orchestrationservice.dto.RunPage;
+import de.lenneflow.orchestrationservice.dto.RunSummary;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.exception.PayloadNotValidException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Lists workflow runs, newest first. Only the summary fields are read from the database, the steps and the
+ * payloads of the runs are never loaded. The pages are addressed by a cursor on (startTime, uid), so every page
+ * is an index range scan, regardless of how deep it is.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class RunListing {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String START_TIME = "startTime";
+
+    private static final String UID = "_id";
+
+    private static final String[] SUMMARY_FIELDS = {UID, "workflowUid", "name", "parentInstanceUid", "runStatus", START_TIME, "endTime", "failureReason"};
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    public RunListing(MongoTemplate mongoTemplate, ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns a page of runs matching the filters.
+     *
+     * @param workflowUid only runs of this workflow, optional
+     * @param runStatus   only runs in this state, optional
+     * @param from        only runs started at or after this time, optional
+     * @param to          only runs started before this time, optional
+     * @param cursor      the next cursor of the previous page, null for the first page
+     * @param limit       the page size
+     * @return the page
+     */
+    public RunPage listRuns(String workflowUid, RunStatus runStatus, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new PayloadNotValidException("The limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Criteria criteria = filter(workflowUid, runStatus, from, to);
+        if (cursor != null && !cursor.isBlank()) {
+            criteria = new Criteria().andOperator(criteria, after(cursor));
+        }
+        //one more run than needed tells if there is a next page
+        Query query = summaryQuery(criteria).limit(limit + 1);
+        List<RunSummary> runs = new ArrayList<>();
+        for (WorkflowInstance instance : mongoTemplate.find(query, WorkflowInstance.class)) {
+            runs.add(new RunSummary(instance));
+        }
+        String nextCursor = null;
+        if (runs.size() > limit) {
+            runs = new ArrayList<>(runs.subList(0, limit));
+            nextCursor = encodeCursor(runs.get(limit - 1));
+        }
+        return new RunPage(runs, nextCursor);
+    }
+
+    /**
+     * Writes all runs matching the filters as newline delimited json. The runs are read with a database cursor,
+     * so the number of runs held in memory does not depend on the number of runs exported.
+     *
+     * @param workflowUid  only runs of this workflow, optional
+     * @param runStatus    only runs in this state, optional
+     * @param from         only runs started at or after this time, optional
+     * @param to           only runs started before this time, optional
+     * @param outputStream the stream to write to
+     */
+    public void streamRuns(String workflowUid, RunStatus runStatus, LocalDateTime from, LocalDateTime to, OutputStream outputStream) throws IOException {
+        try (Stream<WorkflowInstance> instances = mongoTemplate.stream(summaryQuery(filter(workflowUid, runStatus, from, to)), WorkflowInstance.class)) {
+            for (WorkflowInstance instance : (Iterable<WorkflowInstance>) instances::iterator) {
+                outputStream.write(objectMapper.writeValueAsBytes(new RunSummary(instance)));
+                outputStream.write('\n');
+            }
+        }
+        outputStream.flush();
+    }
+
+    private Query summaryQuery(Criteria criteria) {
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, START_TIME, UID));
+        query.fields().include(SUMMARY_FIELDS);
+        return query;
+    }
+
+    private Criteria filter(String workflowUid, RunStatus runStatus, LocalDateTime from, LocalDateTime to) {
+        Criteria criteria = new Criteria();
+        if (workflowUid != null && !workflowUid.isBlank()) {
+            criteria.and("workflowUid").is(workflowUid);
+        }
+        if (runStatus != null) {
+            criteria.and("runStatus").is(runStatus);
+        }
+        Criteria startTime = criteria.and(START_TIME).ne(null);
+        if (from != null) {
+            startTime.gte(from);
+        }
+        if (to != null) {
+            startTime.lt(to);
+        }
+        return criteria;
+    }
+
+    /**
+     * The runs after the run of the cursor in the sort order (startTime desc, uid desc).
+     */
+    private Criteria after(String cursor) {
+        String decoded;
+        LocalDateTime startTime;
+        String uid;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            startTime = LocalDateTime.parse(decoded.substring(0, separator));
+            uid = decoded.substring(separator + 1);
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new PayloadNotValidException("Invalid cursor " + cursor);
+        }
+        return new Criteria().orOperator(
+                Criteria.where(START_TIME).lt(startTime),
+                Criteria.where(START_TIME).is(startTime).and(UID).lt(uid));
+    }
+
+    static String encodeCursor(RunSummary run) {
+        String value = run.getStartTime() + "|" + run.getRunUid();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
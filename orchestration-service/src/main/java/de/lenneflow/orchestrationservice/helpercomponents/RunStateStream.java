@@ -0,0 +1,255 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.exception.ResourceNotFoundException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the state changes of the runs to the clients as server-sent events, so the clients do not poll the state
+ * of the runs. A client subscribes to one run or to all runs of a workflow. Every orchestrator receives all run
+ * notifications in its own queue and passes them to its subscribers. The changes of a subscriber are coalesced:
+ * only the last status of a run or a step since the last event is sent, and the events are sent at most once per
+ * flush interval with all changes in one list. The stream of a run is closed after the run finished, a run that
+ * already finished when the client subscribes gets its final status once.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class RunStateStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunStateStream.class);
+
+    public static final String EVENT_NAME = "state";
+
+    private final WorkflowInstanceRepository workflowInstanceRepository;
+
+    private final long timeoutMillis;
+
+    private final long heartbeatNanos;
+
+    private final Map<String, Set<Subscriber>> subscribersByRun = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Subscriber>> subscribersByWorkflow = new ConcurrentHashMap<>();
+
+    //sends the events and the heartbeats, the listener threads only record the changes
+    private final ScheduledExecutorService flushExecutor;
+
+    @Autowired
+    public RunStateStream(WorkflowInstanceRepository workflowInstanceRepository,
+                          @Value("${orchestration.run-stream.flush-ms:250}") long flushMillis,
+                          @Value("${orchestration.run-stream.timeout-ms:1800000}") long timeoutMillis,
+                          @Value("${orchestration.run-stream.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.workflowInstanceRepository = workflowInstanceRepository;
+        this.timeoutMillis = timeoutMillis;
+        this.heartbeatNanos = TimeUnit.SECONDS.toNanos(heartbeatSeconds);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lenneflow-run-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to the state changes of a run. The stream is closed after the run finished. If the run already
+     * finished, its final status is sent once and the stream is closed.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @param includeSteps        false to only receive the state changes of the run itself
+     * @return the event stream
+     */
+    public SseEmitter subscribeToRun(String workflowInstanceUid, boolean includeSteps) {
+        Subscriber subscriber = subscribe(subscribersByRun, workflowInstanceUid, includeSteps, true);
+        //read after subscribing, so the notification of a run that finishes in between is not missed
+        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceUid);
+        if (workflowInstance == null) {
+            subscriber.onClose.run();
+            throw new ResourceNotFoundException("The workflow run " + workflowInstanceUid + " does not exist");
+        }
+        if (workflowInstance.getRunStatus() != null && workflowInstance.getRunStatus().isFinal()) {
+            subscriber.offer(new RunNotification(false, workflowInstanceUid, null, workflowInstance.getRunStatus(), workflowInstance.getWorkflowUid()));
+        }
+        return subscriber.emitter;
+    }
+
+    /**
+     * Subscribes to the state changes of all runs of a workflow.
+     *
+     * @param workflowUid  the workflow UID
+     * @param includeSteps false to only receive the state changes of the runs
+     * @return the event stream
+     */
+    public SseEmitter subscribeToWorkflow(String workflowUid, boolean includeSteps) {
+        return subscribe(subscribersByWorkflow, workflowUid, includeSteps, false).emitter;
+    }
+
+    /**
+     * Passes a run notification to the subscribers of its run and of its workflow.
+     *
+     * @param runNotification the notification
+     */
+    public void onRunStateChange(RunNotification runNotification) {
+        offer(subscribersByRun.get(runNotification.getWorkflowInstanceUid()), runNotification);
+        if (runNotification.getWorkflowUid() != null) {
+            offer(subscribersByWorkflow.get(runNotification.getWorkflowUid()), runNotification);
+        }
+    }
+
+    /**
+     * @return the number of open event streams
+     */
+    public int subscribers() {
+        int count = 0;
+        for (Set<Subscriber> subscribers : subscribersByRun.values()) {
+            count += subscribers.size();
+        }
+        for (Set<Subscriber> subscribers : subscribersByWorkflow.values()) {
+            count += subscribers.size();
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void stop() {
+        flushExecutor.shutdownNow();
+        for (Subscriber subscriber : allSubscribers()) {
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Sends the coalesced changes of every subscriber and a heartbeat to the subscribers without changes, so
+     * closed connections are detected.
+     */
+    void flush() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : allSubscribers()) {
+            try {
+                subscriber.flush(now);
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Closing a run state stream: {}", e.getMessage());
+                subscriber.close();
+            }
+        }
+    }
+
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private Subscriber subscribe(Map<String, Set<Subscriber>> subscribers, String key, boolean includeSteps, boolean closeWhenFinished) {
+        SseEmitter emitter = newEmitter();
+        Subscriber subscriber = new Subscriber(emitter, includeSteps, closeWhenFinished, System.nanoTime());
+        subscriber.onClose = () -> subscribers.computeIfPresent(key, (k, keySubscribers) -> {
+            keySubscribers.remove(subscriber);
+            return keySubscribers.isEmpty() ? null : keySubscribers;
+        });
+        subscribers.compute(key, (k, keySubscribers) -> {
+            Set<Subscriber> result = keySubscribers != null ? keySubscribers : ConcurrentHashMap.newKeySet();
+            result.add(subscriber);
+            return result;
+        });
+        emitter.onCompletion(subscriber.onClose);
+        emitter.onTimeout(subscriber.onClose);
+        emitter.onError(e -> subscriber.onClose.run());
+        return subscriber;
+    }
+
+    private static void offer(Set<Subscriber> subscribers, RunNotification runNotification) {
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(runNotification);
+        }
+    }
+
+    private List<Subscriber> allSubscribers() {
+        List<Subscriber> subscribers = new ArrayList<>();
+        subscribersByRun.values().forEach(subscribers::addAll);
+        subscribersByWorkflow.values().forEach(subscribers::addAll);
+        return subscribers;
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final boolean includeSteps;
+
+        private final boolean closeWhenFinished;
+
+        //the last change of every run and step since the last event, in the order of the last changes
+        private final LinkedHashMap<String, RunNotification> pendingChanges = new LinkedHashMap<>();
+
+        private Runnable onClose;
+
+        private boolean finished;
+
+        private long lastSent;
+
+        private Subscriber(SseEmitter emitter, boolean includeSteps, boolean closeWhenFinished, long created) {
+            this.emitter = emitter;
+            this.includeSteps = includeSteps;
+            this.closeWhenFinished = closeWhenFinished;
+            this.lastSent = created;
+        }
+
+        private synchronized void offer(RunNotification runNotification) {
+            if (runNotification.isStepUpdate() && !includeSteps) {
+                return;
+            }
+            String key = runNotification.getWorkflowInstanceUid() + "/" + (runNotification.isStepUpdate() ? runNotification.getWorkflowStepInstanceUid() : "");
+            pendingChanges.remove(key);
+            pendingChanges.put(key, runNotification);
+            if (!runNotification.isStepUpdate()) {
+                finished = closeWhenFinished && runNotification.getStatus() != null && runNotification.getStatus().isFinal();
+            }
+        }
+
+        private void flush(long now) throws IOException {
+            List<RunNotification> changes;
+            boolean close;
+            synchronized (this) {
+                changes = new ArrayList<>(pendingChanges.values());
+                pendingChanges.clear();
+                close = finished;
+            }
+            if (!changes.isEmpty()) {
+                emitter.send(SseEmitter.event().name(EVENT_NAME).data(changes, MediaType.APPLICATION_JSON));
+                lastSent = now;
+            } else if (now - lastSent >= heartbeatNanos) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                lastSent = now;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        private void close() {
+            onClose.run();
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                logger.debug("The run state stream was already closed: {}", e.getMessage());
+            }
+        }
+    }
+}
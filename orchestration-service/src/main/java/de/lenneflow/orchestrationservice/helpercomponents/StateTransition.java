@@ -0,0 +1,98 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import lombok.Getter;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the field changes of one logical state transition (for example "step finished")
+ * so that they can be written as a single partial update per document instead of
+ * saving the whole document after every single change.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+public class StateTransition {
+
+    private final Map<String, Update> instanceUpdates = new LinkedHashMap<>();
+
+    private final Map<String, Update> stepInstanceUpdates = new LinkedHashMap<>();
+
+    //the workflow instance UID of every updated step instance, needed to update embedded step instances
+    private final Map<String, String> stepInstanceRunUids = new LinkedHashMap<>();
+
+    //the expected current values of conditionally updated step instances, field name to value
+    private final Map<String, Map<String, Object>> stepInstanceConditions = new LinkedHashMap<>();
+
+    private final List<RunNotification> notifications = new ArrayList<>();
+
+    /**
+     * Records a field change of a workflow instance.
+     *
+     * @param workflowInstance the workflow instance
+     * @param field            the name of the field
+     * @param value            the new value
+     * @return this transition
+     */
+    public StateTransition set(WorkflowInstance workflowInstance, String field, Object value) {
+        instanceUpdates.computeIfAbsent(workflowInstance.getUid(), k -> new Update()).set(field, value);
+        return this;
+    }
+
+    /**
+     * Records a field change of a workflow step instance.
+     *
+     * @param stepInstance the workflow step instance
+     * @param field        the name of the field
+     * @param value        the new value
+     * @return this transition
+     */
+    public StateTransition set(WorkflowStepInstance stepInstance, String field, Object value) {
+        stepInstanceUpdates.computeIfAbsent(stepInstance.getUid(), k -> new Update()).set(field, value);
+        stepInstanceRunUids.put(stepInstance.getUid(), stepInstance.getWorkflowInstanceUid());
+        return this;
+    }
+
+    /**
+     * Makes the update of a workflow step instance conditional: the transition is only written if the stored
+     * field still has the expected value. Only one step instance of a transition can be conditional, its update is
+     * the compare-and-set and the other changes are written after it matched.
+     *
+     * @param stepInstance the workflow step instance
+     * @param field        the name of the field
+     * @param value        the expected value
+     * @return this transition
+     */
+    public StateTransition expect(WorkflowStepInstance stepInstance, String field, Object value) {
+        if (!stepInstanceConditions.isEmpty() && !stepInstanceConditions.containsKey(stepInstance.getUid())) {
+            throw new IllegalStateException("A transition can only be conditional on one step instance");
+        }
+        stepInstanceConditions.computeIfAbsent(stepInstance.getUid(), k -> new LinkedHashMap<>()).put(field, value);
+        stepInstanceRunUids.put(stepInstance.getUid(), stepInstance.getWorkflowInstanceUid());
+        return this;
+    }
+
+    public boolean isConditional() {
+        return !stepInstanceConditions.isEmpty();
+    }
+
+    /**
+     * Adds a notification that is published once the transition has been written.
+     *
+     * @param runNotification the notification
+     */
+    public void addNotification(RunNotification runNotification) {
+        notifications.add(runNotification);
+    }
+
+    public boolean isEmpty() {
+        return instanceUpdates.isEmpty() && stepInstanceUpdates.isEmpty();
+    }
+}
@@ -0,0 +1,230 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import de.lenneflow.orchestrationservice.utils.HashedWheelTimer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Enforces the time outs of step runs and workflow runs. Every deadline is a timeout in a hashed wheel timer, so
+ * scheduling and cancelling are O(1) and no query polls for expired runs. An expired deadline adds a TIMED_OUT
+ * result to the result queue, so it is processed like a result of a function. Results of an earlier attempt are
+ * dropped there, a deadline that fires after the step finished does no harm. The deadlines are rebuilt from the
+ * database when the service starts.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class TimeoutScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeoutScheduler.class);
+
+    private static final String RUN_STATUS = "runStatus";
+
+    private static final String TIME_OUT_IN_SECONDS = "timeOutInSeconds";
+
+    private static final String START_TIME = "startTime";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final QueueController queueController;
+
+    private final StorageMode storageMode;
+
+    private final HashedWheelTimer timer;
+
+    private final ExecutorService expiryExecutor;
+
+    private final Map<String, HashedWheelTimer.Timeout> stepTimeouts = new ConcurrentHashMap<>();
+
+    private final Map<String, HashedWheelTimer.Timeout> runTimeouts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TimeoutScheduler(MongoTemplate mongoTemplate, QueueController queueController,
+                            @Value("${orchestration.timeout.tick-ms:1000}") long tickMillis,
+                            @Value("${orchestration.timeout.wheel-size:4096}") int wheelSize,
+                            @Value("${orchestration.storage.mode:REFERENCED}") StorageMode storageMode) {
+        this.mongoTemplate = mongoTemplate;
+        this.queueController = queueController;
+        this.storageMode = storageMode;
+        this.expiryExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "lenneflow-timeouts"));
+        this.timer = new HashedWheelTimer(tickMillis, TimeUnit.MILLISECONDS, wheelSize, expiryExecutor, "lenneflow-timeout-wheel");
+    }
+
+    /**
+     * Schedules the time out of the current run of a step instance. A previous deadline of the step is cancelled.
+     *
+     * @param stepInstance the running step instance
+     */
+    public void scheduleStep(WorkflowStepInstance stepInstance) {
+        long timeOutInSeconds = stepInstance.getTimeOutInSeconds();
+        if (timeOutInSeconds <= 0 || stepInstance.getStartTime() == null) {
+            return;
+        }
+        String stepInstanceUid = stepInstance.getUid();
+        String workflowInstanceUid = stepInstance.getWorkflowInstanceUid();
+        Integer attempt = stepInstance.getAttempt();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+            stepTimeouts.computeIfPresent(stepInstanceUid, (uid, current) -> current.isExpired() ? null : current);
+            ResultQueueElement resultQueueElement = createTimedOutResult(workflowInstanceUid, "The step timed out after " + timeOutInSeconds + " seconds");
+            resultQueueElement.setStepInstanceId(stepInstanceUid);
+            resultQueueElement.setAttempt(attempt);
+            queueController.addElementToResultQueue(resultQueueElement);
+        }, remainingMillis(stepInstance.getStartTime(), timeOutInSeconds), TimeUnit.MILLISECONDS);
+        replace(stepTimeouts, stepInstanceUid, timeout);
+    }
+
+    /**
+     * Cancels the deadline of a step instance, for example because its result arrived.
+     *
+     * @param stepInstanceUid the step instance uid
+     */
+    public void cancelStep(String stepInstanceUid) {
+        HashedWheelTimer.Timeout timeout = stepTimeouts.remove(stepInstanceUid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Schedules the time out of a workflow run. The time out results of runs have no step instance id.
+     *
+     * @param workflowInstance the started workflow instance
+     */
+    public void scheduleRun(WorkflowInstance workflowInstance) {
+        long timeOutInSeconds = workflowInstance.getTimeOutInSeconds();
+        if (timeOutInSeconds <= 0 || timeOutInSeconds == Long.MAX_VALUE || workflowInstance.getStartTime() == null) {
+            return;
+        }
+        String workflowInstanceUid = workflowInstance.getUid();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+            runTimeouts.computeIfPresent(workflowInstanceUid, (uid, current) -> current.isExpired() ? null : current);
+            queueController.addElementToResultQueue(createTimedOutResult(workflowInstanceUid, "The workflow run timed out after " + timeOutInSeconds + " seconds"));
+        }, remainingMillis(workflowInstance.getStartTime(), timeOutInSeconds), TimeUnit.MILLISECONDS);
+        replace(runTimeouts, workflowInstanceUid, timeout);
+    }
+
+    /**
+     * Cancels the deadline of a workflow run, for example because the run finished.
+     *
+     * @param workflowInstanceUid the workflow instance uid
+     */
+    public void cancelRun(String workflowInstanceUid) {
+        HashedWheelTimer.Timeout timeout = runTimeouts.remove(workflowInstanceUid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Schedules the deadlines of all running steps and runs found in the database. The queries read only the
+     * fields needed for the deadlines and stream the results.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            long steps = storageMode == StorageMode.EMBEDDED ? rebuildEmbeddedSteps() : rebuildSteps();
+            long runs = rebuildRuns();
+            logger.info("Scheduled the time outs of {} running steps and {} running workflows", steps, runs);
+        } catch (Exception e) {
+            logger.error("Could not rebuild the time outs!\n{}", e.getMessage());
+        }
+    }
+
+    public long pendingTimeouts() {
+        return timer.pendingTimeouts();
+    }
+
+    @PreDestroy
+    public void stop() {
+        timer.stop();
+        expiryExecutor.shutdown();
+    }
+
+    private long rebuildSteps() {
+        Query query = Query.query(Criteria.where(RUN_STATUS).is(RunStatus.RUNNING).and(TIME_OUT_IN_SECONDS).gt(0));
+        query.fields().include("_id", "workflowInstanceUid", "attempt", START_TIME, TIME_OUT_IN_SECONDS);
+        long count = 0;
+        try (Stream<WorkflowStepInstance> stepInstances = mongoTemplate.stream(query, WorkflowStepInstance.class)) {
+            for (WorkflowStepInstance stepInstance : (Iterable<WorkflowStepInstance>) stepInstances::iterator) {
+                scheduleStep(stepInstance);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long rebuildEmbeddedSteps() {
+        Query query = Query.query(Criteria.where("embeddedStepInstances").elemMatch(Criteria.where(RUN_STATUS).is(RunStatus.RUNNING).and(TIME_OUT_IN_SECONDS).gt(0)));
+        query.fields().include("_id", "embeddedStepInstances");
+        long count = 0;
+        try (Stream<WorkflowInstance> instances = mongoTemplate.stream(query, WorkflowInstance.class)) {
+            for (WorkflowInstance instance : (Iterable<WorkflowInstance>) instances::iterator) {
+                for (WorkflowStepInstance stepInstance : instance.getEmbeddedStepInstances()) {
+                    if (stepInstance.getRunStatus() == RunStatus.RUNNING && stepInstance.getTimeOutInSeconds() > 0) {
+                        scheduleStep(stepInstance);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private long rebuildRuns() {
+        Query query = Query.query(Criteria.where(RUN_STATUS).in(List.of(RunStatus.RUNNING, RunStatus.PAUSED))
+                .and(TIME_OUT_IN_SECONDS).gt(0).lt(Long.MAX_VALUE));
+        query.fields().include("_id", START_TIME, TIME_OUT_IN_SECONDS);
+        long count = 0;
+        try (Stream<WorkflowInstance> instances = mongoTemplate.stream(query, WorkflowInstance.class)) {
+            for (WorkflowInstance instance : (Iterable<WorkflowInstance>) instances::iterator) {
+                scheduleRun(instance);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static ResultQueueElement createTimedOutResult(String workflowInstanceUid, String failureReason) {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId(workflowInstanceUid);
+        resultQueueElement.setRunStatus(RunStatus.TIMED_OUT);
+        resultQueueElement.setFailureReason(failureReason);
+        return resultQueueElement;
+    }
+
+    private static void replace(Map<String, HashedWheelTimer.Timeout> timeouts, String uid, HashedWheelTimer.Timeout timeout) {
+        HashedWheelTimer.Timeout previous = timeouts.put(uid, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private static long remainingMillis(LocalDateTime startTime, long timeOutInSeconds) {
+        long elapsedMillis = Duration.between(startTime, LocalDateTime.now()).toMillis();
+        return Math.max(0, TimeUnit.SECONDS.toMillis(timeOutInSeconds) - elapsedMillis);
+    }
+}
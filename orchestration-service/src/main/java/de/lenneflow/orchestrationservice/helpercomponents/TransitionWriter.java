@@ -0,0 +1,269 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.mongodb.client.result.UpdateResult;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write pipeline for state transitions of workflow and step instances.
+ * Every transition is written as partial $set updates. Transitions committed concurrently by different
+ * threads are grouped: while one thread flushes, the others enqueue their transitions and the next
+ * flush writes all of them with one bulk write per collection.
+ * In the embedded storage mode the step instance updates are positional updates of the run document.
+ * Conditional transitions are not grouped, the update of their one conditional step instance is written first
+ * and the remaining changes are only written if it matched.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Component
+public class TransitionWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransitionWriter.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    private static final String EMBEDDED_STEP_INSTANCES = "embeddedStepInstances";
+
+    //operators that take field paths as values
+    private static final Set<String> UNSUPPORTED_EMBEDDED_OPERATORS = Set.of("$rename");
+
+    private final int maxBatchSize;
+
+    private final StorageMode storageMode;
+
+    private final ConcurrentLinkedQueue<PendingTransition> pendingTransitions = new ConcurrentLinkedQueue<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Autowired
+    public TransitionWriter(MongoTemplate mongoTemplate, @Value("${orchestration.transition.max-batch-size:500}") int maxBatchSize,
+                            @Value("${orchestration.storage.mode:REFERENCED}") StorageMode storageMode) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxBatchSize = maxBatchSize;
+        this.storageMode = storageMode;
+    }
+
+    public TransitionWriter(MongoTemplate mongoTemplate, int maxBatchSize) {
+        this(mongoTemplate, maxBatchSize, StorageMode.REFERENCED);
+    }
+
+    /**
+     * Adds new step instances to the document of their run. Only used in the embedded storage mode.
+     *
+     * @param workflowInstanceUid the workflow instance UID
+     * @param stepInstances       the new step instances
+     */
+    public void insertEmbeddedStepInstances(String workflowInstanceUid, List<WorkflowStepInstance> stepInstances) {
+        Update update = new Update().push(EMBEDDED_STEP_INSTANCES).each(stepInstances.toArray());
+        mongoTemplate.updateFirst(byUid(workflowInstanceUid), update, WorkflowInstance.class);
+    }
+
+    /**
+     * Writes the transition to the database. The call returns when the transition is persisted,
+     * possibly together with transitions of other threads.
+     *
+     * @param transition the transition to write
+     */
+    public void commit(StateTransition transition) {
+        if (transition.isEmpty()) {
+            return;
+        }
+        PendingTransition pending = new PendingTransition(transition);
+        pendingTransitions.add(pending);
+        flushLock.lock();
+        try {
+            while (!pending.written) {
+                flush();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        if (pending.failure != null) {
+            throw new InternalServiceException("Could not write state transition: " + pending.failure.getMessage());
+        }
+    }
+
+    /**
+     * Writes a conditional transition. A conditional transition has exactly one conditional step instance, its
+     * update is written with the conditions in the filter, so the step instance is not touched when its stored
+     * state changed in the meantime. The other changes of the transition are only written if the conditional
+     * update matched. If writing the other changes fails, the conditional update stays written and the caller
+     * gets an InternalServiceException.
+     *
+     * @param transition the transition to write
+     * @return true if the transition was written, false if the condition did not match
+     */
+    public boolean commitConditional(StateTransition transition) {
+        Map<String, Map<String, Object>> stepInstanceConditions = transition.getStepInstanceConditions();
+        if (stepInstanceConditions.size() != 1) {
+            throw new IllegalArgumentException("A conditional transition must have exactly one conditional step instance, found " + stepInstanceConditions.size());
+        }
+        Map.Entry<String, Map<String, Object>> condition = stepInstanceConditions.entrySet().iterator().next();
+        String stepInstanceUid = condition.getKey();
+        Update stepUpdate = transition.getStepInstanceUpdates().get(stepInstanceUid);
+        if (stepUpdate == null) {
+            throw new IllegalArgumentException("The conditional step instance " + stepInstanceUid + " has no update");
+        }
+        String runUid = transition.getStepInstanceRunUids().get(stepInstanceUid);
+        UpdateResult result;
+        try {
+            if (storageMode == StorageMode.EMBEDDED) {
+                Criteria stepCriteria = Criteria.where("uid").is(stepInstanceUid);
+                condition.getValue().forEach((field, value) -> stepCriteria.and(field).is(value));
+                Query query = Query.query(Criteria.where("uid").is(runUid).and(EMBEDDED_STEP_INSTANCES).elemMatch(stepCriteria));
+                result = mongoTemplate.updateFirst(query, toEmbeddedUpdate(stepUpdate), WorkflowInstance.class);
+            } else {
+                Criteria criteria = Criteria.where("uid").is(stepInstanceUid);
+                condition.getValue().forEach((field, value) -> criteria.and(field).is(value));
+                result = mongoTemplate.updateFirst(Query.query(criteria), stepUpdate, WorkflowStepInstance.class);
+            }
+        } catch (RuntimeException e) {
+            throw new InternalServiceException("Could not write state transition: " + e.getMessage());
+        }
+        if (result.getMatchedCount() == 0) {
+            return false;
+        }
+        StateTransition remaining = new StateTransition();
+        remaining.getInstanceUpdates().putAll(transition.getInstanceUpdates());
+        for (Map.Entry<String, Update> entry : transition.getStepInstanceUpdates().entrySet()) {
+            if (!entry.getKey().equals(stepInstanceUid)) {
+                remaining.getStepInstanceUpdates().put(entry.getKey(), entry.getValue());
+                remaining.getStepInstanceRunUids().put(entry.getKey(), transition.getStepInstanceRunUids().get(entry.getKey()));
+            }
+        }
+        commit(remaining);
+        return true;
+    }
+
+    /**
+     * Drains the pending transitions and writes them with one bulk operation per collection.
+     * If a bulk operation fails, its updates are written one at a time, so only the transitions whose
+     * updates could not be written get the failure.
+     * Must be called while holding the flush lock.
+     */
+    private void flush() {
+        List<PendingTransition> batch = new ArrayList<>();
+        PendingTransition next;
+        while (batch.size() < maxBatchSize && (next = pendingTransitions.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PendingWrite> instanceWrites = new ArrayList<>();
+        List<PendingWrite> stepWrites = new ArrayList<>();
+        for (PendingTransition pending : batch) {
+            for (Map.Entry<String, Update> entry : pending.transition.getInstanceUpdates().entrySet()) {
+                instanceWrites.add(new PendingWrite(pending, byUid(entry.getKey()), entry.getValue()));
+            }
+            for (Map.Entry<String, Update> entry : pending.transition.getStepInstanceUpdates().entrySet()) {
+                if (storageMode == StorageMode.EMBEDDED) {
+                    String runUid = pending.transition.getStepInstanceRunUids().get(entry.getKey());
+                    try {
+                        instanceWrites.add(new PendingWrite(pending, byEmbeddedStepUid(runUid, entry.getKey()), toEmbeddedUpdate(entry.getValue())));
+                    } catch (RuntimeException e) {
+                        pending.failure = e;
+                    }
+                    continue;
+                }
+                stepWrites.add(new PendingWrite(pending, byUid(entry.getKey()), entry.getValue()));
+            }
+        }
+        write(instanceWrites, WorkflowInstance.class);
+        write(stepWrites, WorkflowStepInstance.class);
+        for (PendingTransition pending : batch) {
+            pending.written = true;
+        }
+    }
+
+    /**
+     * Writes the updates with one bulk operation. If the bulk operation fails, some updates may be written and
+     * others not, so every update is written again on its own. The updates are $set updates, writing them twice
+     * does not change the result.
+     */
+    private void write(List<PendingWrite> writes, Class<?> entityClass) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        try {
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entityClass);
+            for (PendingWrite write : writes) {
+                operations.updateOne(write.query(), write.update());
+            }
+            operations.execute();
+        } catch (RuntimeException e) {
+            logger.error("Could not write {} updates with one bulk operation, writing them one at a time!\n{}", writes.size(), e.getMessage());
+            for (PendingWrite write : writes) {
+                try {
+                    mongoTemplate.updateFirst(write.query(), write.update(), entityClass);
+                } catch (RuntimeException writeFailure) {
+                    logger.error("Could not write state transition!\n{}", writeFailure.getMessage());
+                    write.pending().failure = writeFailure;
+                }
+            }
+        }
+    }
+
+    private static Query byUid(String uid) {
+        return Query.query(Criteria.where("uid").is(uid));
+    }
+
+    private static Query byEmbeddedStepUid(String workflowInstanceUid, String stepInstanceUid) {
+        return Query.query(Criteria.where("uid").is(workflowInstanceUid).and(EMBEDDED_STEP_INSTANCES + ".uid").is(stepInstanceUid));
+    }
+
+    /**
+     * Rewrites every field of a step instance update to the positional path of the matched embedded step instance.
+     * Operators whose values are field paths, like $rename, can not be rewritten and are rejected.
+     */
+    static Update toEmbeddedUpdate(Update stepUpdate) {
+        Document embeddedUpdate = new Document();
+        for (Map.Entry<String, Object> operation : stepUpdate.getUpdateObject().entrySet()) {
+            if (UNSUPPORTED_EMBEDDED_OPERATORS.contains(operation.getKey()) || !(operation.getValue() instanceof Document fields)) {
+                throw new InternalServiceException("The update operation " + operation.getKey() + " is not supported for embedded step instances");
+            }
+            Document embeddedFields = new Document();
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                embeddedFields.put(EMBEDDED_STEP_INSTANCES + ".$." + field.getKey(), field.getValue());
+            }
+            embeddedUpdate.put(operation.getKey(), embeddedFields);
+        }
+        return Update.fromDocument(embeddedUpdate);
+    }
+
+    private static class PendingTransition {
+
+        private final StateTransition transition;
+
+        private boolean written = false;
+
+        private RuntimeException failure;
+
+        PendingTransition(StateTransition transition) {
+            this.transition = transition;
+        }
+    }
+
+    private record PendingWrite(PendingTransition pending, Query query, Update update) {
+    }
+}
@@ -5,36 +5,39 @@ import de.lenneflow.orchestrationservice.dto.FunctionPayload;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.enums.ControlStructure;
 import de.lenneflow.orchestrationservice.enums.DeploymentState;
-import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
+import de.lenneflow.orchestrationservice.enums.RunCommand;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
-import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
+import de.lenneflow.orchestrationservice.exception.ResourceNotFoundException;
 import de.lenneflow.orchestrationservice.feignmodels.DecisionCase;
+import de.lenneflow.orchestrationservice.feignmodels.ForkBranch;
 import de.lenneflow.orchestrationservice.feignmodels.Function;
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
 import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
+import de.lenneflow.orchestrationservice.model.RetryAttempt;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
 import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceRepository;
 import de.lenneflow.orchestrationservice.utils.ExpressionEvaluator;
 import de.lenneflow.orchestrationservice.utils.ObjectMapper;
-import de.lenneflow.orchestrationservice.utils.Util;
+import de.lenneflow.orchestrationservice.utils.RetryBackoff;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This is the controller for all workflow runs.
@@ -51,14 +54,18 @@ public class WorkflowRunner {
 
     @Value("${qms.api.root.link}")  private String callBackRoot;
 
-    final FunctionServiceClient functionServiceClient;
-    final WorkflowServiceClient workflowServiceClient;
+    final FunctionCache functionCache;
+    final ExecutionPlanCache executionPlanCache;
     final WorkflowInstanceRepository workflowInstanceRepository;
     final WorkflowStepInstanceRepository workflowStepInstanceRepository;
     final QueueController queueController;
     final InstanceController instanceController;
     final ExpressionEvaluator expressionEvaluator;
-    final RestTemplate restTemplate;
+    final FunctionDispatchClient functionDispatchClient;
+    final InstanceCache instanceCache;
+    final TimeoutScheduler timeoutScheduler;
+    final DeploymentTracker deploymentTracker;
+    final PayloadOffloader payloadOffloader;
 
 
     /**
@@ -70,76 +77,87 @@ public class WorkflowRunner {
      */
     public WorkflowExecution startWorkflow(WorkflowInstance workflowInstance) {
 
-        instanceController.setStartTime(workflowInstance);
+        StateTransition transition = new StateTransition();
+        instanceController.setStartTime(workflowInstance, transition);
+        timeoutScheduler.scheduleRun(workflowInstance);
 
         WorkflowStepInstance firstStepInstance = instanceController.getStartStep(workflowInstance);
         if(firstStepInstance == null){
+            instanceController.commit(transition);
             throw new InternalServiceException("Could not find start step");
         }
         if(firstStepInstance.getControlStructure() == ControlStructure.SUB_WORKFLOW) {
+            instanceController.commit(transition);
             runStep(firstStepInstance, null);
             return new WorkflowExecution(workflowInstance);
         }
-        Function function = functionServiceClient.getFunctionByUid(firstStepInstance.getFunctionUid());
-        QueueElement queueElement = generateRunQueueElement(workflowInstance, firstStepInstance, function);
+        //the branches or items of a fan out step are queued when the step runs
+        QueueElement queueElement = null;
+        if(!isFanOutStep(firstStepInstance)) {
+            Function function = functionCache.getFunction(firstStepInstance.getFunctionUid());
+            queueElement = generateRunQueueElement(workflowInstance, firstStepInstance, function);
+        }
 
         List<Function> undeployedFunctions = getUndeployedFunctions(workflowInstance);
         if(undeployedFunctions.isEmpty()){
-            instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING);
+            instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING, transition);
+            instanceController.commit(transition);
             runStep(firstStepInstance, queueElement);
         }else{
-            new Thread(() -> deployFunctionsFirstAndRunStep(undeployedFunctions, workflowInstance, firstStepInstance)).start();
+            instanceController.commit(transition);
+            deployFunctionsFirstAndRunStep(undeployedFunctions, workflowInstance, firstStepInstance);
         }
         return new WorkflowExecution(workflowInstance);
     }
 
     /**
-     * Method that stops the workflow execution by updating the workflow instance and the workflow execution instance.
+     * Method that stops the workflow execution. The stop is sent to the result partition of the run and applied
+     * by the orchestrator that processes the run, like every other change of the run.
      *
      * @param workflowInstanceId The workflow instance ID.
-     * @return a workflow execution object with the current status.
+     * @return a workflow execution object with the status before the stop.
      */
     public WorkflowExecution stopWorkflow(String workflowInstanceId) {
-        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceId);
-        instanceController.updateRunStatus(workflowInstance, RunStatus.STOPPED);
-        terminateWorkflowRun(workflowInstance, RunStatus.STOPPED, "", workflowInstance.getOutputData());
-        return new WorkflowExecution(workflowInstance);
+        return sendCommand(workflowInstanceId, RunCommand.TERMINATE, RunStatus.STOPPED);
     }
 
     /**
-     * Method that pauses the workflow execution by updating the workflow instance and the workflow execution instance.
+     * Method that pauses the workflow execution. The pause is sent to the result partition of the run and applied
+     * by the orchestrator that processes the run.
      *
      * @param workflowInstanceId The workflow execution ID.
-     * @return a workflow execution object with the current status.
+     * @return a workflow execution object with the status before the pause.
      */
     public WorkflowExecution pauseWorkflow(String workflowInstanceId) {
-        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceId);
-        instanceController.updateRunStatus(workflowInstance, RunStatus.PAUSED);
-        for(WorkflowStepInstance stepInstance : workflowInstance.getStepInstances()){
-           if(stepInstance.getRunStatus() == RunStatus.RUNNING){
-               instanceController.updateRunStatus(stepInstance, RunStatus.PAUSED);
-           }
-        }
-        return new WorkflowExecution(workflowInstance);
+        return sendCommand(workflowInstanceId, RunCommand.PAUSE, null);
     }
 
     /**
-     * Method that resumes the workflow execution by updating the workflow instance and the workflow execution instance
-     * and then running the next step of the workflow.
+     * Method that resumes the workflow execution. The resume is sent to the result partition of the run and
+     * applied by the orchestrator that processes the run, it runs the paused steps again.
      *
      * @param workflowInstanceId The workflow execution ID.
-     * @return a workflow execution object with the current status.
+     * @return a workflow execution object with the status before the resume.
      */
     public WorkflowExecution resumeWorkflow(String workflowInstanceId) {
+        return sendCommand(workflowInstanceId, RunCommand.RESUME, null);
+    }
+
+    /**
+     * Publishes a command to the result partition of a run. The run is read from the database and not from the
+     * cache, the run can be processed by another orchestrator.
+     */
+    private WorkflowExecution sendCommand(String workflowInstanceId, RunCommand command, RunStatus runStatus) {
         WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceId);
-        instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING);
-        for(WorkflowStepInstance stepInstance : workflowInstance.getStepInstances()){
-            if(stepInstance.getRunStatus() == RunStatus.PAUSED){
-                Function function = functionServiceClient.getFunctionByUid(stepInstance.getFunctionUid());
-                QueueElement queueElement = generateRunQueueElement(workflowInstance, stepInstance, function);
-                runStep(stepInstance, queueElement);
-            }
+        if (workflowInstance == null) {
+            throw new ResourceNotFoundException("The workflow run " + workflowInstanceId + " does not exist");
         }
+        ResultQueueElement commandElement = new ResultQueueElement();
+        commandElement.setWorkflowInstanceId(workflowInstanceId);
+        commandElement.setCommand(command);
+        commandElement.setRunStatus(runStatus);
+        //the command is accepted when the broker confirmed it
+        queueController.addElementToResultQueue(commandElement).join();
         return new WorkflowExecution(workflowInstance);
     }
 
@@ -150,44 +168,61 @@ public class WorkflowRunner {
      * @return a workflow execution object with the current status.
      */
     public WorkflowExecution getCurrentExecutionState(String workflowInstanceId) {
-        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(workflowInstanceId);
+        WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance(workflowInstanceId);
         return new WorkflowExecution(workflowInstance);
     }
 
     /**
      * Process a function object to send and add it to the send queue.
+     * The request is sent without blocking the calling thread.
      *
      * @param queueElement the function dto object
+     * @return a future that completes when the function received the request or the result of the failure was
+     * confirmed by the broker, it fails if the result could not be published
      */
-    public void processFunctionDtoFromQueue(QueueElement queueElement) {
+    public CompletableFuture<Void> processFunctionDtoFromQueue(QueueElement queueElement) {
 
         //check if the workflows is still running
-        WorkflowStepInstance workflowStepInstance = workflowStepInstanceRepository.findByUid(queueElement.getStepInstanceId());
+        WorkflowStepInstance workflowStepInstance = instanceCache.getStepInstance(queueElement.getWorkflowInstanceId(), queueElement.getStepInstanceId());
         if(workflowStepInstance != null && workflowStepInstance.getRunStatus() != RunStatus.RUNNING){
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+        //the step was dispatched again in the meantime
+        if(workflowStepInstance != null && queueElement.getAttempt() != null && !queueElement.getAttempt().equals(workflowStepInstance.getAttempt())){
+            return CompletableFuture.completedFuture(null);
         }
 
 
-        Map<String, Object> inputData = queueElement.getInputData();
+        //the function gets the full input data, also when the message only carries the reference
+        Map<String, Object> inputData = payloadOffloader.resolve(queueElement.getInputData());
         String serviceUrl = queueElement.getServiceUrl();
         String callBackUrl = callBackRoot + "/" + queueElement.getStepInstanceId() + "/" + queueElement.getWorkflowInstanceId();
+        if (queueElement.getAttempt() != null) {
+            callBackUrl += "?attempt=" + queueElement.getAttempt();
+        }
 
         FunctionPayload functionPayload = new FunctionPayload();
         functionPayload.setInputData(inputData);
         functionPayload.setCallBackUrl(callBackUrl);
         functionPayload.setFailureReason("");
 
-        ResponseEntity<Void> response = restTemplate.exchange(serviceUrl, HttpMethod.POST, new HttpEntity<>(functionPayload), Void.class);
-        if (response.getStatusCode().value() != 200) {
-            logger.error("send request to the url {} failed.", serviceUrl);
-            ResultQueueElement resultQueueElement = new ResultQueueElement();
-            resultQueueElement.setWorkflowInstanceId(queueElement.getWorkflowInstanceId());
-            resultQueueElement.setStepInstanceId(queueElement.getStepInstanceId());
-            resultQueueElement.setRunStatus(RunStatus.CANCELED);
-            resultQueueElement.setFailureReason("Could not send request to the cluster!");
-            //in case of send failure, the dto is added directly to the result queue with the run status cancelled.
-            queueController.addElementToResultQueue(resultQueueElement);
-        }
+        //the response is handled on the response executor of the client, not on its I/O threads, the publish can block
+        return functionDispatchClient.post(serviceUrl, functionPayload)
+                .handle((statusCode, e) -> {
+                    if (e != null || statusCode != 200) {
+                        logger.error("send request to the url {} failed.", serviceUrl);
+                        ResultQueueElement resultQueueElement = new ResultQueueElement();
+                        resultQueueElement.setWorkflowInstanceId(queueElement.getWorkflowInstanceId());
+                        resultQueueElement.setStepInstanceId(queueElement.getStepInstanceId());
+                        resultQueueElement.setAttempt(queueElement.getAttempt());
+                        resultQueueElement.setRunStatus(RunStatus.CANCELED);
+                        resultQueueElement.setFailureReason("Could not send request to the cluster!");
+                        //in case of send failure, the dto is added directly to the result queue with the run status cancelled.
+                        return queueController.addElementToResultQueue(resultQueueElement);
+                    }
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(confirm -> confirm);
     }
 
     /**
@@ -196,16 +231,52 @@ public class WorkflowRunner {
      * @param resultQueueElement function object
      */
     public void processResultFromQueue(ResultQueueElement resultQueueElement) {
-        WorkflowInstance workflowInstance = workflowInstanceRepository.findByUid(resultQueueElement.getWorkflowInstanceId());
-        WorkflowStepInstance workflowStepInstance = workflowStepInstanceRepository.findByUid(resultQueueElement.getStepInstanceId());
+        WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance(resultQueueElement.getWorkflowInstanceId());
+        if (resultQueueElement.getCommand() != null) {
+            processCommand(workflowInstance, resultQueueElement);
+            return;
+        }
+        //results without a step belong to the whole run, the run timed out
+        if (resultQueueElement.getStepInstanceId() == null) {
+            processWorkflowRunTimedOut(workflowInstance, resultQueueElement);
+            return;
+        }
+        //the run already finished, for example because it was stopped or timed out
+        if (workflowInstance != null && isFinished(workflowInstance.getRunStatus())) {
+            logger.info("Dropped the result of the step instance {} of the finished run {}", resultQueueElement.getStepInstanceId(), workflowInstance.getUid());
+            return;
+        }
+        WorkflowStepInstance workflowStepInstance = instanceCache.getStepInstance(resultQueueElement.getWorkflowInstanceId(), resultQueueElement.getStepInstanceId());
+        if (workflowInstance == null || workflowStepInstance == null) {
+            logger.warn("The step instance {} of the result could not be found", resultQueueElement.getStepInstanceId());
+            return;
+        }
+        if (resultQueueElement.isRetry()) {
+            processDueRetry(workflowInstance, workflowStepInstance, resultQueueElement);
+            return;
+        }
 
-        instanceController.setEndTime(workflowStepInstance);
-        instanceController.mapResultToStepInstance(workflowStepInstance, resultQueueElement);
+        //duplicate and late results, for example of an earlier attempt or of a stopped step, are dropped
+        if (!instanceController.applyResult(workflowStepInstance, resultQueueElement)) {
+            logger.info("Dropped the result of attempt {} of the step instance {}", resultQueueElement.getAttempt(), resultQueueElement.getStepInstanceId());
+            return;
+        }
+        timeoutScheduler.cancelStep(workflowStepInstance.getUid());
+        instanceCache.refresh(workflowStepInstance);
+
+        //Results of fork join branches and for each items are joined in the parent step
+        if (workflowStepInstance.getParentStepInstanceUid() != null) {
+            processBranchResult(workflowInstance, workflowStepInstance);
+            return;
+        }
 
         //Proceed next steps
 
-        //Check if this is the last step and if the next instance is null because it could be a while step
-        if (workflowStepInstance.getRunOrderLabel() == RunOrderLabel.LAST && instanceController.getNextWorkflowStepInstance(workflowStepInstance) == null){
+        //Check if this is the last step and if the next instance is null because it could be a while step.
+        //The last step has no next step, the only step of a workflow with one step is labeled FIRST.
+        //A failed last step is handled like every failed step, so it is retried before the run ends.
+        boolean failed = resultQueueElement.getRunStatus() == RunStatus.FAILED || resultQueueElement.getRunStatus() == RunStatus.TIMED_OUT;
+        if (!failed && workflowStepInstance.getNextStepId() == null && instanceController.getNextWorkflowStepInstance(workflowStepInstance) == null){
                 terminateWorkflowRun(workflowInstance, workflowStepInstance.getRunStatus(), "", workflowStepInstance.getOutputData());
                 return;
         }
@@ -226,8 +297,96 @@ public class WorkflowRunner {
         }
     }
 
+    /**
+     * Applies a command to a run. Commands of finished runs are ignored, the run can have finished after the
+     * command was sent.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param commandElement   The command
+     */
+    private void processCommand(WorkflowInstance workflowInstance, ResultQueueElement commandElement) {
+        if (workflowInstance == null || isFinished(workflowInstance.getRunStatus())) {
+            logger.info("Dropped the command {} of the finished run {}", commandElement.getCommand(), commandElement.getWorkflowInstanceId());
+            return;
+        }
+        switch (commandElement.getCommand()) {
+            case TERMINATE:
+                terminateWorkflowRun(workflowInstance, commandElement.getRunStatus(), commandElement.getFailureReason(), workflowInstance.getOutputData());
+                break;
+            case PAUSE:
+                pauseWorkflowRun(workflowInstance);
+                break;
+            case RESUME:
+                resumeWorkflowRun(workflowInstance);
+                break;
+            case RUN_DEPLOYED_STEP:
+                WorkflowStepInstance stepInstance = instanceCache.getStepInstance(workflowInstance.getUid(), commandElement.getStepInstanceId());
+                if (stepInstance == null) {
+                    logger.warn("The step instance {} of the deployed functions could not be found", commandElement.getStepInstanceId());
+                    return;
+                }
+                runStepAfterDeployment(workflowInstance, stepInstance);
+                break;
+        }
+    }
+
+    private void pauseWorkflowRun(WorkflowInstance workflowInstance) {
+        instanceController.updateRunStatus(workflowInstance, RunStatus.PAUSED);
+        for(WorkflowStepInstance stepInstance : instanceCache.getStepInstances(workflowInstance.getUid())){
+           if(stepInstance.getRunStatus() == RunStatus.RUNNING){
+               instanceController.updateRunStatus(stepInstance, RunStatus.PAUSED);
+           }
+        }
+    }
+
+    /**
+     * Resumes a paused run. Paused steps run again. Paused fork join and for each steps are running again without
+     * running again themselves, their paused branches or items run again like every other step. Branches or items
+     * that finished while the run was paused were not joined, so the fan out steps are joined afterwards.
+     *
+     * @param workflowInstance The workflow instance object
+     */
+    private void resumeWorkflowRun(WorkflowInstance workflowInstance) {
+        instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING);
+        List<WorkflowStepInstance> fanOutSteps = new ArrayList<>();
+        for(WorkflowStepInstance stepInstance : instanceCache.getStepInstances(workflowInstance.getUid())){
+            if(stepInstance.getRunStatus() != RunStatus.PAUSED){
+                continue;
+            }
+            if(isFanOutStep(stepInstance)){
+                instanceController.updateRunStatus(stepInstance, RunStatus.RUNNING);
+                fanOutSteps.add(stepInstance);
+                continue;
+            }
+            Function function = functionCache.getFunction(stepInstance.getFunctionUid());
+            QueueElement queueElement = generateRunQueueElement(workflowInstance, stepInstance, function);
+            runStep(stepInstance, queueElement);
+        }
+        for (WorkflowStepInstance fanOutStep : fanOutSteps) {
+            joinStep(workflowInstance, fanOutStep);
+        }
+    }
+
+    /**
+     * Terminates a run whose time out expired. The time out of a run that already finished is ignored.
+     *
+     * @param workflowInstance   The workflow instance object
+     * @param resultQueueElement The time out result of the run
+     */
+    private void processWorkflowRunTimedOut(WorkflowInstance workflowInstance, ResultQueueElement resultQueueElement) {
+        if (workflowInstance == null || isFinished(workflowInstance.getRunStatus()) || resultQueueElement.getRunStatus() != RunStatus.TIMED_OUT) {
+            return;
+        }
+        logger.info("The workflow run {} timed out", workflowInstance.getUid());
+        terminateWorkflowRun(workflowInstance, RunStatus.TIMED_OUT, resultQueueElement.getFailureReason(), workflowInstance.getOutputData());
+    }
+
     private void processStepCompletedOrSkipped(WorkflowInstance workflowInstance, WorkflowStepInstance workflowStepInstance) {
         WorkflowStepInstance nextStepInstance = instanceController.getNextWorkflowStepInstance(workflowStepInstance);
+        if (nextStepInstance != null && isFanOutStep(nextStepInstance)) {
+            runStep(nextStepInstance, null);
+            return;
+        }
         if (nextStepInstance != null) {
             Object object = getElementToExecute(nextStepInstance);
             if (object != null) {
@@ -246,6 +405,180 @@ public class WorkflowRunner {
         }
     }
 
+    /**
+     * Method that processes the result of a fork join branch or a for each item. Failed runs are retried if they
+     * have retries left, otherwise the result is joined in the parent step.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param childInstance    The branch or item step instance object
+     */
+    private void processBranchResult(WorkflowInstance workflowInstance, WorkflowStepInstance childInstance) {
+        RunStatus childStatus = childInstance.getRunStatus();
+        if ((childStatus == RunStatus.FAILED || childStatus == RunStatus.TIMED_OUT) && childInstance.getRetryCount() > 0
+                && retryStep(workflowInstance, childInstance)) {
+            return;
+        }
+        joinParentStep(workflowInstance, childInstance);
+    }
+
+    /**
+     * Joins the parent step of a fork join branch or a for each item if enough of its runs finished.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param childInstance    The finished branch or item instance
+     */
+    private void joinParentStep(WorkflowInstance workflowInstance, WorkflowStepInstance childInstance) {
+        WorkflowStepInstance parentStepInstance = instanceCache.getStepInstance(workflowInstance.getUid(), childInstance.getParentStepInstanceUid());
+        if (parentStepInstance == null) {
+            logger.error("The parent step of the step {} could not be found", childInstance.getName());
+            return;
+        }
+        joinStep(workflowInstance, parentStepInstance);
+    }
+
+    /**
+     * Joins the branches or items of a fork join or for each step under the lock of the step.
+     *
+     * @param workflowInstance   The workflow instance object
+     * @param parentStepInstance The fork join or for each step instance
+     */
+    private void joinStep(WorkflowInstance workflowInstance, WorkflowStepInstance parentStepInstance) {
+        synchronized (parentStepInstance) {
+            //the step already joined, results of the remaining runs are only recorded, a paused step joins on resume
+            if (parentStepInstance.getRunStatus() != RunStatus.RUNNING) {
+                return;
+            }
+            if (parentStepInstance.getControlStructure() == ControlStructure.FOR_EACH) {
+                joinItems(workflowInstance, parentStepInstance);
+            } else {
+                joinBranches(workflowInstance, parentStepInstance);
+            }
+        }
+    }
+
+    /**
+     * Joins the branches of a fork join step. The step completes when the required number of branches completed
+     * and fails when this number can no longer be reached. Must be called while holding the lock on the step.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param forkStepInstance The fork join step instance object
+     */
+    private void joinBranches(WorkflowInstance workflowInstance, WorkflowStepInstance forkStepInstance) {
+        List<WorkflowStepInstance> branchInstances = getChildStepInstances(workflowInstance, forkStepInstance);
+        int required = forkStepInstance.getJoinCount() > 0 ? Math.min(forkStepInstance.getJoinCount(), branchInstances.size()) : branchInstances.size();
+        Map<String, Object> outputData = new LinkedHashMap<>();
+        int completed = 0;
+        int failed = 0;
+        WorkflowStepInstance failedBranch = null;
+        for (WorkflowStepInstance instance : branchInstances) {
+            //branches waiting for their retry are neither completed nor failed
+            if (isSuccessful(instance.getRunStatus())) {
+                completed++;
+                outputData.put(instance.getBranchName(), instance.getOutputData());
+            } else if (isUnsuccessful(instance.getRunStatus())) {
+                failed++;
+                failedBranch = instance;
+            }
+        }
+        if (completed >= required) {
+            completeParentStep(forkStepInstance, RunStatus.COMPLETED, "", outputData);
+        } else if (failedBranch != null && branchInstances.size() - failed < required) {
+            completeParentStep(forkStepInstance, failedBranch.getRunStatus(), "Branch " + failedBranch.getBranchName() + " failed: " + failedBranch.getFailureReason(), outputData);
+        }
+    }
+
+    /**
+     * Joins the items of a for each step. Waiting items are queued while fewer than maxParallelism items run.
+     * The step completes with the outputs of all items in item order and fails as soon as one item failed.
+     * Must be called while holding the lock on the step.
+     *
+     * @param workflowInstance    The workflow instance object
+     * @param forEachStepInstance The for each step instance object
+     */
+    private void joinItems(WorkflowInstance workflowInstance, WorkflowStepInstance forEachStepInstance) {
+        List<WorkflowStepInstance> itemInstances = getChildStepInstances(workflowInstance, forEachStepInstance);
+        List<Object> results = new ArrayList<>();
+        List<WorkflowStepInstance> waiting = new ArrayList<>();
+        int running = 0;
+        for (WorkflowStepInstance instance : itemInstances) {
+            if (isUnsuccessful(instance.getRunStatus())) {
+                Map<String, Object> outputData = new LinkedHashMap<>();
+                outputData.put("results", results);
+                completeParentStep(forEachStepInstance, instance.getRunStatus(), "Item " + instance.getItemIndex() + " failed: " + instance.getFailureReason(), outputData);
+                return;
+            }
+            if (isSuccessful(instance.getRunStatus())) {
+                results.add(instance.getOutputData());
+            } else if (instance.getRunStatus() == RunStatus.NEW) {
+                waiting.add(instance);
+            } else {
+                //running, paused or scheduled for a retry
+                running++;
+            }
+        }
+        if (running == 0 && waiting.isEmpty()) {
+            Map<String, Object> outputData = new LinkedHashMap<>();
+            outputData.put("results", results);
+            completeParentStep(forEachStepInstance, RunStatus.COMPLETED, "", outputData);
+            return;
+        }
+        int free = getItemParallelism(forEachStepInstance, itemInstances.size()) - running;
+        if (free > 0 && !waiting.isEmpty()) {
+            Function function = functionCache.getFunction(forEachStepInstance.getFunctionUid());
+            for (int i = 0; i < free && i < waiting.size(); i++) {
+                runStep(waiting.get(i), generateRunQueueElement(workflowInstance, waiting.get(i), function));
+            }
+        }
+    }
+
+    private List<WorkflowStepInstance> getChildStepInstances(WorkflowInstance workflowInstance, WorkflowStepInstance parentStepInstance) {
+        List<WorkflowStepInstance> childInstances = new ArrayList<>();
+        for (String childUid : parentStepInstance.getBranchStepInstanceUids()) {
+            WorkflowStepInstance instance = instanceCache.getStepInstance(workflowInstance.getUid(), childUid);
+            if (instance != null) {
+                childInstances.add(instance);
+            }
+        }
+        return childInstances;
+    }
+
+    /**
+     * Adds the result of a fork join or for each step to the result queue, so that the workflow continues like after
+     * any other step. Results of remaining runs may join again before this result is processed, the duplicate
+     * results are dropped because the step is no longer running then.
+     */
+    private void completeParentStep(WorkflowStepInstance parentStepInstance, RunStatus runStatus, String failureReason, Map<String, Object> outputData) {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId(parentStepInstance.getWorkflowInstanceUid());
+        resultQueueElement.setStepInstanceId(parentStepInstance.getUid());
+        resultQueueElement.setAttempt(parentStepInstance.getAttempt());
+        resultQueueElement.setRunStatus(runStatus);
+        resultQueueElement.setFailureReason(failureReason);
+        resultQueueElement.setOutputData(payloadOffloader.offload(outputData, parentStepInstance.getWorkflowInstanceUid()));
+        queueController.addElementToResultQueue(resultQueueElement);
+    }
+
+    private int getItemParallelism(WorkflowStepInstance forEachStepInstance, int itemCount) {
+        return forEachStepInstance.getMaxParallelism() > 0 ? Math.min(forEachStepInstance.getMaxParallelism(), itemCount) : itemCount;
+    }
+
+    private static boolean isSuccessful(RunStatus runStatus) {
+        return runStatus == RunStatus.COMPLETED || runStatus == RunStatus.SKIPPED;
+    }
+
+    private static boolean isUnsuccessful(RunStatus runStatus) {
+        return runStatus == RunStatus.FAILED || runStatus == RunStatus.TIMED_OUT || runStatus == RunStatus.CANCELED
+                || runStatus == RunStatus.FAILED_WITH_TERMINAL_ERROR || runStatus == RunStatus.STOPPED;
+    }
+
+    private static boolean isFinished(RunStatus runStatus) {
+        return runStatus == RunStatus.COMPLETED || runStatus == RunStatus.COMPLETED_WITH_ERRORS || isUnsuccessful(runStatus);
+    }
+
+    private static boolean isFanOutStep(WorkflowStepInstance stepInstance) {
+        return stepInstance.getControlStructure() == ControlStructure.FORK_JOIN || stepInstance.getControlStructure() == ControlStructure.FOR_EACH;
+    }
+
     /**
      * Method that processes failed execution steps or steps that run in time out.
      *
@@ -254,28 +587,94 @@ public class WorkflowRunner {
      */
     private void processStepFailedOrTimedOut(WorkflowInstance workflowInstance, WorkflowStepInstance workflowStepInstance) {
         if (workflowStepInstance.getRetryCount() > 0) {
-            workflowStepInstance.setRetryCount(workflowStepInstance.getRetryCount() - 1);
-            workflowStepInstanceRepository.save(workflowStepInstance);
-            Object object = getElementToExecute(workflowStepInstance);
-            if (object != null) {
-                if(object instanceof Function function){
-                    QueueElement queueElement = generateRunQueueElement(workflowInstance, workflowStepInstance, function);
-                    runStep(workflowStepInstance, queueElement);
-                }
-                else if(object instanceof Workflow){
-                    runStep(workflowStepInstance, null);
-                }
-                else{
-                    terminateWorkflowRun(workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, workflowStepInstance.getOutputData());
-                }
-
-            } else {
-                terminateWorkflowRun( workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, workflowStepInstance.getOutputData());
+            if (!retryStep(workflowInstance, workflowStepInstance)) {
+                terminateWorkflowRun(workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, workflowStepInstance.getOutputData());
             }
+            return;
         }
         terminateWorkflowRun(workflowInstance, workflowStepInstance.getRunStatus(), workflowStepInstance.getFailureReason(), workflowStepInstance.getOutputData());
     }
 
+    /**
+     * Retries a failed step. The failed attempt is recorded on the step instance. Without a delay the step runs
+     * again immediately, otherwise a retry element is published to a retry delay queue and comes back through
+     * the result queue when the delay is over, so no thread waits for the delay. A step waiting for its retry is
+     * SCHEDULED, so the join of a fork join or for each step counts it as running and not as failed.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param stepInstance     The failed step instance with retries left
+     * @return false if the function or sub workflow of the step could not be found
+     */
+    private boolean retryStep(WorkflowInstance workflowInstance, WorkflowStepInstance stepInstance) {
+        if (stepInstance.getRetryAttempts() == null) {
+            stepInstance.setRetryAttempts(new ArrayList<>());
+        }
+        long delayMillis = RetryBackoff.delayMillis(stepInstance.getRetryPolicy(), stepInstance.getRetryAttempts().size() + 1);
+        stepInstance.setRetryCount(stepInstance.getRetryCount() - 1);
+        stepInstance.getRetryAttempts().add(new RetryAttempt(stepInstance.getAttempt(), stepInstance.getRunStatus(), stepInstance.getFailureReason(), LocalDateTime.now(), delayMillis));
+        StateTransition transition = new StateTransition()
+                .set(stepInstance, "retryCount", stepInstance.getRetryCount())
+                .set(stepInstance, "retryAttempts", stepInstance.getRetryAttempts());
+        if (delayMillis <= 0) {
+            instanceController.commit(transition);
+            return runStepAgain(workflowInstance, stepInstance);
+        }
+        instanceController.updateRunStatus(stepInstance, RunStatus.SCHEDULED, transition);
+        instanceController.commit(transition);
+        ResultQueueElement retryElement = new ResultQueueElement();
+        retryElement.setWorkflowInstanceId(workflowInstance.getUid());
+        retryElement.setStepInstanceId(stepInstance.getUid());
+        retryElement.setAttempt(stepInstance.getAttempt());
+        retryElement.setRetry(true);
+        queueController.addElementToRetryDelayQueue(retryElement, delayMillis);
+        logger.info("The step instance {} is retried in {} ms", stepInstance.getUid(), delayMillis);
+        return true;
+    }
+
+    /**
+     * Runs a step again whose retry delay is over. The retry is dropped if the step ran again in the meantime.
+     * If the step can not run again, it gets the status of its failed attempt back.
+     *
+     * @param workflowInstance The workflow instance object
+     * @param stepInstance     The failed step instance
+     * @param retryElement     The due retry
+     */
+    private void processDueRetry(WorkflowInstance workflowInstance, WorkflowStepInstance stepInstance, ResultQueueElement retryElement) {
+        RunStatus status = stepInstance.getRunStatus();
+        //retries delayed before the steps were scheduled for their retry still find the step failed
+        if (!Objects.equals(stepInstance.getAttempt(), retryElement.getAttempt())
+                || (status != RunStatus.SCHEDULED && status != RunStatus.FAILED && status != RunStatus.TIMED_OUT)) {
+            logger.info("Dropped the retry of attempt {} of the step instance {}", retryElement.getAttempt(), stepInstance.getUid());
+            return;
+        }
+        if (runStepAgain(workflowInstance, stepInstance)) {
+            return;
+        }
+        if (status == RunStatus.SCHEDULED) {
+            List<RetryAttempt> retryAttempts = stepInstance.getRetryAttempts();
+            RunStatus failedStatus = retryAttempts == null || retryAttempts.isEmpty() ? RunStatus.FAILED : retryAttempts.get(retryAttempts.size() - 1).getRunStatus();
+            instanceController.updateRunStatus(stepInstance, failedStatus);
+        }
+        if (stepInstance.getParentStepInstanceUid() != null) {
+            joinParentStep(workflowInstance, stepInstance);
+            return;
+        }
+        terminateWorkflowRun(workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, stepInstance.getOutputData());
+    }
+
+    private boolean runStepAgain(WorkflowInstance workflowInstance, WorkflowStepInstance stepInstance) {
+        Object object = getElementToExecute(stepInstance);
+        if (object instanceof Function function) {
+            runStep(stepInstance, generateRunQueueElement(workflowInstance, stepInstance, function));
+            return true;
+        }
+        if (object instanceof Workflow) {
+            runStep(stepInstance, null);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Method that processes cancelled execution steps or steps that failed with terminal error.
      *
@@ -294,15 +693,18 @@ public class WorkflowRunner {
      * @param status           the status to set
      */
     private void terminateWorkflowRun(WorkflowInstance workflowInstance, RunStatus status, String failureReason, Map<String, Object> outputData) {
-        instanceController.updateRunStatus(workflowInstance, status);
-        instanceController.updateOutputData(workflowInstance, outputData);
-        instanceController.setEndTime(workflowInstance);
+        timeoutScheduler.cancelRun(workflowInstance.getUid());
+        StateTransition transition = new StateTransition();
+        instanceController.updateRunStatus(workflowInstance, status, transition);
+        instanceController.updateOutputData(workflowInstance, outputData, transition);
+        instanceController.setEndTime(workflowInstance, transition);
         if (failureReason != null && !failureReason.isEmpty()) {
-            instanceController.setFailureReason(workflowInstance, failureReason);
+            instanceController.setFailureReason(workflowInstance, failureReason, transition);
         }
+        instanceController.commit(transition);
         //If it is a Sub workflow, the parent instance must continue
         if(workflowInstance.getParentInstanceUid() != null && !workflowInstance.getParentInstanceUid().isEmpty()){
-            WorkflowInstance parentInstance = workflowInstanceRepository.findByUid(workflowInstance.getParentInstanceUid());
+            WorkflowInstance parentInstance = instanceCache.getWorkflowInstance(workflowInstance.getParentInstanceUid());
             if(parentInstance != null){
                 ResultQueueElement resultQueueElement = new ResultQueueElement();
                 resultQueueElement.setWorkflowInstanceId(workflowInstance.getParentInstanceUid());
@@ -313,7 +715,7 @@ public class WorkflowRunner {
                 queueController.addElementToResultQueue(resultQueueElement);
             }
         }
-        instanceController.deleteLastWorkflowInstances(100, 100);
+        instanceCache.evict(workflowInstance.getUid());
     }
 
 
@@ -324,45 +726,139 @@ public class WorkflowRunner {
      * @param queueElement function to process.
      */
     private void runStep(WorkflowStepInstance workflowStepInstance, QueueElement queueElement) {
-        instanceController.setStartTime(workflowStepInstance);
+        StateTransition transition = new StateTransition();
+        instanceController.setStartTime(workflowStepInstance, transition);
         if(workflowStepInstance.getControlStructure() == ControlStructure.SUB_WORKFLOW){
-            Workflow subWorkflow = workflowServiceClient.getWorkflowById(workflowStepInstance.getSubWorkflowUid());
-            logger.info("Start running su workflow with the name {}", subWorkflow.getName());
-            WorkflowInstance subWorkflowInstance = instanceController.generateWorkflowInstance(subWorkflow, workflowStepInstance.getInputData(), workflowStepInstance.getWorkflowInstanceUid(), workflowStepInstance.getUid());
-            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING);
+            ExecutionPlan subWorkflowPlan = executionPlanCache.getPlan(workflowStepInstance.getSubWorkflowUid());
+            logger.info("Start running su workflow with the name {}", subWorkflowPlan.getWorkflow().getName());
+            WorkflowInstance subWorkflowInstance = instanceController.generateWorkflowInstance(subWorkflowPlan, workflowStepInstance.getInputData(), workflowStepInstance.getWorkflowInstanceUid(), workflowStepInstance.getUid());
+            instanceController.startAttempt(workflowStepInstance, transition);
+            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING, transition);
+            instanceController.commit(transition);
+            timeoutScheduler.scheduleStep(workflowStepInstance);
             startWorkflow(subWorkflowInstance);
             return;
         }
+        if(workflowStepInstance.getControlStructure() == ControlStructure.FORK_JOIN){
+            instanceController.startAttempt(workflowStepInstance, transition);
+            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING, transition);
+            instanceController.commit(transition);
+            runBranches(workflowStepInstance);
+            return;
+        }
+        if(workflowStepInstance.getControlStructure() == ControlStructure.FOR_EACH){
+            instanceController.startAttempt(workflowStepInstance, transition);
+            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING, transition);
+            instanceController.commit(transition);
+            runItems(workflowStepInstance);
+            return;
+        }
         if(queueElement != null){
             Map<String, Object> inputData = workflowStepInstance.getInputData();
-            //set values to the input data
-            expressionEvaluator.normalizeInputData(workflowStepInstance.getInputData(), workflowStepInstance.getWorkflowInstanceUid());
-            queueElement.setInputData(inputData);
+            if (PayloadOffloader.isReference(inputData)) {
+                //the input data of a step that runs again may be offloaded, it is normalized on a copy of the stored data
+                inputData = ObjectMapper.copyData(payloadOffloader.resolve(inputData));
+            }
+            //set values to the input data, the input data of for each items was normalized before the items were bound
+            if (workflowStepInstance.getItemIndex() == null) {
+                expressionEvaluator.normalizeInputData(inputData, workflowStepInstance.getWorkflowInstanceUid());
+            }
+            queueElement.setAttempt(instanceController.startAttempt(workflowStepInstance, transition));
+            instanceController.updateInputData(workflowStepInstance, inputData, transition);
+            //large input data was offloaded, the message carries the same reference as the step
+            queueElement.setInputData(workflowStepInstance.getInputData());
+            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING, transition);
+            //the step must be running before its result can arrive
+            instanceController.commit(transition);
+            timeoutScheduler.scheduleStep(workflowStepInstance);
             queueController.addFunctionDtoToQueue(queueElement);
-            instanceController.updateRunStatus(workflowStepInstance, RunStatus.RUNNING);
+            return;
         }
+        instanceController.commit(transition);
 
     }
 
+    /**
+     * Queues all branches of a fork join step at once. The branches are dispatched in parallel.
+     *
+     * @param forkStepInstance the fork join step instance
+     */
+    private void runBranches(WorkflowStepInstance forkStepInstance) {
+        WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance(forkStepInstance.getWorkflowInstanceUid());
+        for (WorkflowStepInstance branchInstance : instanceController.generateBranchStepInstances(forkStepInstance)) {
+            Function function = functionCache.getFunction(branchInstance.getFunctionUid());
+            if (function == null) {
+                terminateWorkflowRun(workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, forkStepInstance.getOutputData());
+                return;
+            }
+            runStep(branchInstance, generateRunQueueElement(workflowInstance, branchInstance, function));
+        }
+    }
+
+    /**
+     * Expands the items expression of a for each step into one item run per element and queues the first runs.
+     * The remaining items are queued when running items finish, so that at most maxParallelism items run at once.
+     *
+     * @param forEachStepInstance the for each step instance
+     */
+    private void runItems(WorkflowStepInstance forEachStepInstance) {
+        WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance(forEachStepInstance.getWorkflowInstanceUid());
+        List<Object> items;
+        try {
+            items = expressionEvaluator.evaluateListExpression(forEachStepInstance.getWorkflowInstanceUid(), forEachStepInstance.getItemsExpression());
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            terminateWorkflowRun(workflowInstance, RunStatus.FAILED, "Could not resolve the items of the step " + forEachStepInstance.getName(), forEachStepInstance.getOutputData());
+            return;
+        }
+        Function function = functionCache.getFunction(forEachStepInstance.getFunctionUid());
+        if (function == null) {
+            terminateWorkflowRun(workflowInstance, RunStatus.FAILED, FUNCTION_OR_SUB_WORKFLOW_NOT_FOUND, forEachStepInstance.getOutputData());
+            return;
+        }
+        List<WorkflowStepInstance> itemInstances = instanceController.generateItemStepInstances(forEachStepInstance, items);
+        synchronized (forEachStepInstance) {
+            if (itemInstances.isEmpty()) {
+                joinItems(workflowInstance, forEachStepInstance);
+                return;
+            }
+            int parallelism = getItemParallelism(forEachStepInstance, itemInstances.size());
+            for (int i = 0; i < parallelism; i++) {
+                runStep(itemInstances.get(i), generateRunQueueElement(workflowInstance, itemInstances.get(i), function));
+            }
+        }
+    }
+
+    /**
+     * Searches the functions of all steps of a workflow instance that are not deployed. The functions that are not
+     * cached are read with one call to the function service.
+     *
+     * @param workflowInstance the workflow instance
+     * @return the undeployed functions
+     */
     private List<Function> getUndeployedFunctions(WorkflowInstance workflowInstance) {
-        List<Function> undeployedFunctions = new ArrayList<>();
-        List<WorkflowStepInstance> steps = workflowStepInstanceRepository.findByWorkflowInstanceUid(workflowInstance.getUid());
+        Set<String> functionUids = new LinkedHashSet<>();
+        List<WorkflowStepInstance> steps = instanceCache.getStepInstances(workflowInstance.getUid());
         for (WorkflowStepInstance step : steps) {
             if(step.getControlStructure() == ControlStructure.SUB_WORKFLOW){
                 continue;
             }
             if(step.getControlStructure() == ControlStructure.SWITCH && step.getDecisionCases() != null){
                 for(DecisionCase decisionCase : step.getDecisionCases()){
-                    Function dcFunction = functionServiceClient.getFunctionByUid(decisionCase.getFunctionUid());
-                    if(dcFunction != null && dcFunction.getDeploymentState() != DeploymentState.DEPLOYED){
-                        addFunctionToList(undeployedFunctions, dcFunction);
-                    }
+                    functionUids.add(decisionCase.getFunctionUid());
                 }
-            }else{
-                Function stepFunction = functionServiceClient.getFunctionByUid(step.getFunctionUid());
-                if(stepFunction != null && stepFunction.getDeploymentState() != DeploymentState.DEPLOYED){
-                    addFunctionToList(undeployedFunctions, stepFunction);
+            }else if(step.getControlStructure() == ControlStructure.FORK_JOIN && step.getBranches() != null){
+                for(ForkBranch branch : step.getBranches()){
+                    functionUids.add(branch.getFunctionUid());
                 }
+            }else{
+                functionUids.add(step.getFunctionUid());
+            }
+        }
+        List<Function> undeployedFunctions = new ArrayList<>();
+        for (Function function : functionCache.getFunctions(functionUids).values()) {
+            if(function.getDeploymentState() != DeploymentState.DEPLOYED){
+                undeployedFunctions.add(function);
             }
         }
         return undeployedFunctions;
@@ -370,35 +866,59 @@ public class WorkflowRunner {
 
     /**
      * In case the lazy deployment flag is true, the function is deployed by runtime.
-     * This method search for all undeployed functions in a workflow instance and performs the deployment.
+     * The run is parked until the function service reports all its functions as deployed and then continues
+     * with the step. No thread waits for the deployment. The deployment completes on the thread of the deployment
+     * event, so the continuation is sent to the result partition of the run and applied there.
      *
-     * @param workflowInstance the workflow instance to run
+     * @param undeployedFunctions the functions of the run that are not deployed
+     * @param workflowInstance    the workflow instance to run
+     * @param stepInstance        the step to run when the functions are deployed
      */
     private void deployFunctionsFirstAndRunStep(List<Function> undeployedFunctions, WorkflowInstance workflowInstance, WorkflowStepInstance stepInstance) {
         instanceController.updateRunStatus(workflowInstance, RunStatus.DEPLOYING_FUNCTIONS);
         for (Function function : undeployedFunctions) {
-            if (function != null && function.isLazyDeployment()  && function.getDeploymentState() == DeploymentState.UNDEPLOYED) {
-                functionServiceClient.deployFunction(function.getUid());
-            }else if(function != null && !function.isLazyDeployment() && function.getDeploymentState() == DeploymentState.UNDEPLOYED) {
+            if(!function.isLazyDeployment() && function.getDeploymentState() == DeploymentState.UNDEPLOYED) {
                 String reason = "Function " + function.getName() + " is not deployed but the lazy deployment flag is not set!";
                 terminateWorkflowRun(workflowInstance, RunStatus.FAILED_WITH_TERMINAL_ERROR, reason, null);
                 throw new InternalServiceException(reason);
             }
         }
-        Util.pause(10000);
-        for(int i = 0; i < 30; i++){
-            if (getUndeployedFunctions(workflowInstance).isEmpty()) {
-                instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING);
-                Function function = functionServiceClient.getFunctionByUid(stepInstance.getFunctionUid());
-                QueueElement queueElement = generateRunQueueElement(workflowInstance, stepInstance, function);
-                runStep(stepInstance, queueElement);
-                return;
-            }else{
-                Util.pause(5000);
+        List<String> functionUids = undeployedFunctions.stream().map(Function::getUid).toList();
+        deploymentTracker.awaitDeployment(functionUids).whenComplete((ignored, error) -> {
+            ResultQueueElement commandElement = new ResultQueueElement();
+            commandElement.setWorkflowInstanceId(workflowInstance.getUid());
+            if (error != null) {
+                commandElement.setCommand(RunCommand.TERMINATE);
+                commandElement.setRunStatus(RunStatus.FAILED_WITH_TERMINAL_ERROR);
+                commandElement.setFailureReason(error.getCause() != null ? error.getCause().getMessage() : error.getMessage());
+            } else {
+                //the cached functions can still miss the service urls of the deployments
+                functionUids.forEach(functionCache::invalidate);
+                commandElement.setCommand(RunCommand.RUN_DEPLOYED_STEP);
+                commandElement.setStepInstanceId(stepInstance.getUid());
             }
+            queueController.addElementToResultQueue(commandElement);
+        });
+        for (Function function : undeployedFunctions) {
+            if (function.getDeploymentState() == DeploymentState.UNDEPLOYED) {
+                deploymentTracker.requestDeployment(function.getUid());
+            }
+        }
+    }
+
+    private void runStepAfterDeployment(WorkflowInstance workflowInstance, WorkflowStepInstance stepInstance) {
+        //the run could have been stopped while it waited
+        if (isFinished(workflowInstance.getRunStatus())) {
+            return;
+        }
+        instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING);
+        if(isFanOutStep(stepInstance)){
+            runStep(stepInstance, null);
+            return;
         }
-        String reason = "All functions could not be deployed in time. Workflow run will be cancelled!";
-        terminateWorkflowRun(workflowInstance, RunStatus.FAILED_WITH_TERMINAL_ERROR, reason, null);
+        Function function = functionCache.getFunction(stepInstance.getFunctionUid());
+        QueueElement queueElement = generateRunQueueElement(workflowInstance, stepInstance, function);
+        runStep(stepInstance, queueElement);
     }
 
     /**
@@ -421,9 +941,9 @@ public class WorkflowRunner {
                 return null;
             }
             if (Objects.requireNonNull(stepInstance.getControlStructure()) == ControlStructure.SUB_WORKFLOW) {
-                return workflowServiceClient.getWorkflowById(stepInstance.getSubWorkflowUid());
+                return executionPlanCache.getWorkflow(stepInstance.getSubWorkflowUid());
             }
-            return functionServiceClient.getFunctionByUid(stepInstance.getFunctionUid());
+            return functionCache.getFunction(stepInstance.getFunctionUid());
         } catch (Exception e) {
             logger.error(e.getMessage());
             return null;
@@ -432,13 +952,14 @@ public class WorkflowRunner {
 
 
     private Object getFunctionOrSubWorkflow(WorkflowStepInstance stepInstance, DecisionCase decisionCase) {
-        Function func =  functionServiceClient.getFunctionByUid(decisionCase.getFunctionUid());
+        Function func =  functionCache.getFunction(decisionCase.getFunctionUid());
         stepInstance.setSelectedCaseName(decisionCase.getName());
         if(decisionCase.isSubWorkflow()){
-            return workflowServiceClient.getWorkflowById(stepInstance.getSubWorkflowUid());
+            return executionPlanCache.getWorkflow(stepInstance.getSubWorkflowUid());
         }
-        stepInstance.setInputData(decisionCase.getInputData());
-        workflowStepInstanceRepository.save(stepInstance);
+        StateTransition transition = new StateTransition().set(stepInstance, "selectedCaseName", decisionCase.getName());
+        instanceController.updateInputData(stepInstance, decisionCase.getInputData(), transition);
+        instanceController.commit(transition);
         return func;
     }
 
@@ -470,13 +991,4 @@ public class WorkflowRunner {
     }
 
 
-    private void addFunctionToList(List<Function> functionList, Function functionToAdd) {
-        for(Function function : functionList){
-            if(function.getUid().equals(functionToAdd.getUid())){
-                return;
-            }
-        }
-        functionList.add(functionToAdd);
-    }
-
 }
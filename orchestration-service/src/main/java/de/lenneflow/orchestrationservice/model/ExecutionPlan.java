@@ -0,0 +1,127 @@
+package de.lenneflow.orchestrationservice.model;
+
+import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
+import de.lenneflow.orchestrationservice.feignmodels.DecisionCase;
+import de.lenneflow.orchestrationservice.feignmodels.ForkBranch;
+import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
+import de.lenneflow.orchestrationservice.utils.ObjectMapper;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A version of a workflow, prepared once for all its runs. The steps are ordered by execution order and are the
+ * template of the step instances of a run. The step chain is compiled with the plan: every step is linked to the
+ * step before and after it and labeled with its position. The template is shared by the runs and never changed,
+ * every run gets copies of the data of the steps.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+public class ExecutionPlan {
+
+    private final Workflow workflow;
+
+    private final String version;
+
+    private final List<WorkflowStep> steps;
+
+    //the run order label of every step, by position
+    private final List<RunOrderLabel> runOrderLabels;
+
+    public ExecutionPlan(Workflow workflow, List<WorkflowStep> steps, String version) {
+        this.workflow = workflow;
+        this.version = version;
+        this.steps = steps.stream().sorted(Comparator.comparing(WorkflowStep::getExecutionOrder)).toList();
+        this.runOrderLabels = compileRunOrderLabels(this.steps.size());
+    }
+
+    /**
+     * The first step starts the run and the last step ends it. The only step of a workflow with one step is the
+     * first step, it ends the run because it has no next step.
+     */
+    private static List<RunOrderLabel> compileRunOrderLabels(int stepCount) {
+        List<RunOrderLabel> labels = new ArrayList<>(stepCount);
+        for (int i = 0; i < stepCount; i++) {
+            if (i == 0) {
+                labels.add(RunOrderLabel.FIRST);
+            } else if (i == stepCount - 1) {
+                labels.add(RunOrderLabel.LAST);
+            } else {
+                labels.add(RunOrderLabel.INTERMEDIATE);
+            }
+        }
+        return List.copyOf(labels);
+    }
+
+    /**
+     * @return the expressions of the steps, to parse them before the first run
+     */
+    public List<String> getExpressions() {
+        List<String> expressions = new ArrayList<>();
+        for (WorkflowStep step : steps) {
+            addIfPresent(expressions, step.getSwitchCase());
+            addIfPresent(expressions, step.getStopCondition());
+        }
+        return expressions;
+    }
+
+    /**
+     * Creates the step instances of a new run from the template, in execution order. The step instances are
+     * labeled and linked like the steps of the plan.
+     *
+     * @param workflowInstanceUid the uid of the new run
+     * @return the new step instances
+     */
+    public List<WorkflowStepInstance> newStepInstances(String workflowInstanceUid) {
+        List<WorkflowStepInstance> stepInstances = new ArrayList<>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            WorkflowStep step = steps.get(i);
+            WorkflowStepInstance stepInstance = new WorkflowStepInstance(workflow, step, workflowInstanceUid);
+            //the data of a step instance is changed while the run is running
+            stepInstance.setInputData(ObjectMapper.copyData(step.getInputData()));
+            stepInstance.setDecisionCases(copyDecisionCases(step.getDecisionCases()));
+            stepInstance.setBranches(copyBranches(step.getBranches()));
+            stepInstance.setRunOrderLabel(runOrderLabels.get(i));
+            if (i > 0) {
+                WorkflowStepInstance previous = stepInstances.get(i - 1);
+                stepInstance.setPreviousStepId(previous.getUid());
+                previous.setNextStepId(stepInstance.getUid());
+            }
+            stepInstances.add(stepInstance);
+        }
+        return stepInstances;
+    }
+
+    private static List<DecisionCase> copyDecisionCases(List<DecisionCase> decisionCases) {
+        if (decisionCases == null) {
+            return null;
+        }
+        List<DecisionCase> copies = new ArrayList<>(decisionCases.size());
+        for (DecisionCase decisionCase : decisionCases) {
+            copies.add(new DecisionCase(decisionCase.getName(), decisionCase.getFunctionUid(), decisionCase.getSubWorkflowUid(),
+                    decisionCase.isSubWorkflow(), ObjectMapper.copyData(decisionCase.getInputData()), decisionCase.getRetryCount()));
+        }
+        return copies;
+    }
+
+    private static List<ForkBranch> copyBranches(List<ForkBranch> branches) {
+        if (branches == null) {
+            return null;
+        }
+        List<ForkBranch> copies = new ArrayList<>(branches.size());
+        for (ForkBranch branch : branches) {
+            copies.add(new ForkBranch(branch.getName(), branch.getFunctionUid(), ObjectMapper.copyData(branch.getInputData()), branch.getRetryCount()));
+        }
+        return copies;
+    }
+
+    private static void addIfPresent(List<String> expressions, String expression) {
+        if (expression != null && !expression.isEmpty()) {
+            expressions.add(expression);
+        }
+    }
+}
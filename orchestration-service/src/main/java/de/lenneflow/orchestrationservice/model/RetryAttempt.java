@@ -0,0 +1,31 @@
+package de.lenneflow.orchestrationservice.model;
+
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A failed attempt of a step instance that was retried.
+ *
+ * @author Idrissa Ganemtore
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryAttempt {
+
+    private Integer attempt;
+
+    private RunStatus runStatus;
+
+    private String failureReason;
+
+    private LocalDateTime failedAt;
+
+    private long delayInMillis;
+}
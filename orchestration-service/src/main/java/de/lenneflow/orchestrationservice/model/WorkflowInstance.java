@@ -7,6 +7,9 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 
@@ -23,6 +26,11 @@ import java.util.*;
 @AllArgsConstructor
 @NoArgsConstructor
 @Document
+@CompoundIndexes({
+        @CompoundIndex(name = "status_start_time", def = "{'runStatus': 1, 'startTime': 1}"),
+        @CompoundIndex(name = "start_time_uid", def = "{'startTime': -1, '_id': -1}"),
+        @CompoundIndex(name = "workflow_start_time_uid", def = "{'workflowUid': 1, 'startTime': -1, '_id': -1}")
+})
 public class WorkflowInstance {
 
     @Id
@@ -30,6 +38,7 @@ public class WorkflowInstance {
 
     private String workflowUid;
 
+    @Indexed(name = "parent_instance")
     private String parentInstanceUid = null;
 
     private String parentStepInstanceUid = null;
@@ -43,6 +52,9 @@ public class WorkflowInstance {
     @DocumentReference
     private List<WorkflowStepInstance> stepInstances = new LinkedList<>();
 
+    //only used in the embedded storage mode, the step instances are then stored in the run document
+    private List<WorkflowStepInstance> embeddedStepInstances;
+
     private boolean statusListenerEnabled = false;
 
     private boolean restartable = true;
@@ -4,6 +4,8 @@ import de.lenneflow.orchestrationservice.enums.ControlStructure;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
 import de.lenneflow.orchestrationservice.feignmodels.DecisionCase;
+import de.lenneflow.orchestrationservice.feignmodels.ForkBranch;
+import de.lenneflow.orchestrationservice.feignmodels.RetryPolicy;
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
 import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
 import lombok.AllArgsConstructor;
@@ -11,6 +13,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -26,6 +30,11 @@ import java.util.*;
 @AllArgsConstructor
 @NoArgsConstructor
 @Document
+@CompoundIndexes({
+        @CompoundIndex(name = "run_step_name", def = "{'workflowInstanceUid': 1, 'name': 1}"),
+        @CompoundIndex(name = "run_order_label", def = "{'workflowInstanceUid': 1, 'runOrderLabel': 1}"),
+        @CompoundIndex(name = "status_time_out", def = "{'runStatus': 1, 'timeOutInSeconds': 1}")
+})
 public class WorkflowStepInstance {
 
     @Id
@@ -59,6 +68,22 @@ public class WorkflowStepInstance {
 
     private String stopCondition;
 
+    private List<ForkBranch> branches = new ArrayList<>();
+
+    private int joinCount;
+
+    private String itemsExpression;
+
+    private int maxParallelism;
+
+    private List<String> branchStepInstanceUids = new ArrayList<>();
+
+    private String parentStepInstanceUid;
+
+    private String branchName;
+
+    private Integer itemIndex;
+
     private String nextStepId;
 
     private String previousStepId;
@@ -67,8 +92,19 @@ public class WorkflowStepInstance {
 
     private Integer retryCount = 0;
 
+    //null for immediate retries
+    private RetryPolicy retryPolicy;
+
+    private List<RetryAttempt> retryAttempts = new ArrayList<>();
+
+    //0 for no time out
+    private long timeOutInSeconds;
+
     private Integer runCount = 0;
 
+    //incremented every time the step is dispatched, results of older dispatches are dropped
+    private Integer attempt = 0;
+
     private LocalDateTime created;
 
     private LocalDateTime updated;
@@ -100,11 +136,17 @@ public class WorkflowStepInstance {
         this.functionUid = step.getFunctionUid();
         this.switchCase = step.getSwitchCase();
         this.stopCondition = step.getStopCondition();
+        this.branches = step.getBranches();
+        this.joinCount = step.getJoinCount();
+        this.itemsExpression = step.getItemsExpression();
+        this.maxParallelism = step.getMaxParallelism();
         this.subWorkflowUid = step.getSubWorkflowUid();
         this.runStatus = RunStatus.NEW;
         this.workflowInstanceUid = workflowInstanceUid;
         this.controlStructure = step.getControlStructure();
         this.retryCount = step.getRetryCount();
+        this.retryPolicy = step.getRetryPolicy();
+        this.timeOutInSeconds = step.getTimeOutInSeconds();
         this.failureReason = "";
     }
 }
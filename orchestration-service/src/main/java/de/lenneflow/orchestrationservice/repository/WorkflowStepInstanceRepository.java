@@ -4,6 +4,7 @@ package de.lenneflow.orchestrationservice.repository;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -19,4 +20,6 @@ public interface WorkflowStepInstanceRepository extends MongoRepository<Workflow
 
     List<WorkflowStepInstance> findByWorkflowInstanceUid(String workflowInstanceId);
 
+    List<WorkflowStepInstance> findByWorkflowInstanceUidAndNameIn(String workflowInstanceUid, Collection<String> stepNames);
+
 }
@@ -0,0 +1,62 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of parsed values, read without locks. When the cache is full, arbitrary entries are removed.
+ * The cached values are parsed from the definitions of the workflows, so they are normally far less than the
+ * bound and the bound only protects against unbounded growth.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author Idrissa Ganemtore
+ */
+class BoundedCache<K, V> {
+
+    private final int maxSize;
+
+    private final Map<K, V> values = new ConcurrentHashMap<>(256);
+
+    BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached value and computes it on the first use. The value is computed without lock, so it can be
+     * computed more than once by concurrent first uses, only the first computed value is kept.
+     *
+     * @param key     the key
+     * @param compute computes the value, the value is not cached when it throws an exception
+     * @return the cached value
+     */
+    V get(K key, Function<K, V> compute) {
+        V value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = compute.apply(key);
+        V previous = values.putIfAbsent(key, value);
+        if (previous != null) {
+            return previous;
+        }
+        evictIfFull(key);
+        return value;
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    private void evictIfFull(K added) {
+        Iterator<K> keys = values.keySet().iterator();
+        while (values.size() > maxSize && keys.hasNext()) {
+            K key = keys.next();
+            if (!key.equals(added)) {
+                keys.remove();
+            }
+        }
+    }
+}
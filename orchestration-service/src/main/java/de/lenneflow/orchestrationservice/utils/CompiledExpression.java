@@ -0,0 +1,164 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.ezylang.evalex.EvaluationException;
+import com.ezylang.evalex.Expression;
+import com.ezylang.evalex.parser.ParseException;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression of a workflow step, parsed once. References like [step1.output.value] are replaced by the
+ * variables ref0, ref1, ... in the parsed expression and the referenced values are bound as variables on every
+ * evaluation, so that values containing brackets or operators can not change the expression.
+ * An expression that is a single reference returns the referenced value without evaluation. A string without
+ * data references that is not a valid expression is kept as literal, an invalid expression with data references
+ * is rejected, so the references are never passed on unresolved.
+ *
+ * @author Idrissa Ganemtore
+ */
+public class CompiledExpression {
+
+    static final String RUN_COUNT = "runCount";
+
+    private static final String VARIABLE_PREFIX = "ref";
+
+    private final String source;
+
+    //the reference paths, the index in the list is the index of the variable
+    private final List<String> references;
+
+    private final Expression template;
+
+    private final boolean singleReference;
+
+    private CompiledExpression(String source, List<String> references, Expression template, boolean singleReference) {
+        this.source = source;
+        this.references = references;
+        this.template = template;
+        this.singleReference = singleReference;
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param source the expression as defined in the workflow step
+     * @return the compiled expression
+     * @throws InternalServiceException if the expression references data but is not a valid expression
+     */
+    public static CompiledExpression compile(String source) {
+        Map<String, String> variablesByReference = new LinkedHashMap<>();
+        StringBuilder rewritten = new StringBuilder();
+        int position = 0;
+        while (position < source.length()) {
+            int start = source.indexOf('[', position);
+            int end = start < 0 ? -1 : source.indexOf(']', start + 1);
+            if (start < 0 || end < 0) {
+                rewritten.append(source, position, source.length());
+                break;
+            }
+            String reference = source.substring(start + 1, end).trim();
+            String variable = variablesByReference.computeIfAbsent(reference, r -> VARIABLE_PREFIX + variablesByReference.size());
+            rewritten.append(source, position, start).append(variable);
+            position = end + 1;
+        }
+        List<String> references = new ArrayList<>(variablesByReference.keySet());
+        boolean singleReference = references.size() == 1 && rewritten.toString().trim().equals(VARIABLE_PREFIX + "0");
+        if (singleReference) {
+            return new CompiledExpression(source, references, null, true);
+        }
+        Expression template = new Expression(rewritten.toString());
+        try {
+            template.validate();
+            for (String variable : template.getUsedVariables()) {
+                if (!variablesByReference.containsValue(variable)) {
+                    //unknown identifiers mean that this is a plain text
+                    return literal(source, references, "unknown identifier " + variable);
+                }
+            }
+        } catch (ParseException e) {
+            return literal(source, references, e.getMessage());
+        }
+        return new CompiledExpression(source, references, template, false);
+    }
+
+    private static CompiledExpression literal(String source, List<String> references, String reason) {
+        for (String reference : references) {
+            if (isDataReference(reference)) {
+                throw new InternalServiceException("Could not parse expression: " + source + " (" + reason + ")");
+            }
+        }
+        return new CompiledExpression(source, List.of(), null, false);
+    }
+
+    /**
+     * @return true for a reference to the run count or to the data of a step or the workflow like step1.output.id
+     */
+    private static boolean isDataReference(String reference) {
+        return reference.equalsIgnoreCase(RUN_COUNT) || reference.split("\\.").length > 1;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getReferences() {
+        return references;
+    }
+
+    public boolean isLiteral() {
+        return template == null && !singleReference;
+    }
+
+    public boolean isSingleReference() {
+        return singleReference;
+    }
+
+    /**
+     * Evaluates the expression with the given values of the references.
+     *
+     * @param values the values of the references, in the order of {@link #getReferences()}
+     * @return the raw value for a single reference or a literal, the evaluation result otherwise
+     */
+    public Object evaluate(List<Object> values) throws EvaluationException, ParseException {
+        if (singleReference) {
+            return values.get(0);
+        }
+        if (template == null) {
+            return source;
+        }
+        //the copy shares the parsed syntax tree but has its own variables
+        Expression expression = template.copy();
+        for (int i = 0; i < values.size(); i++) {
+            expression.with(VARIABLE_PREFIX + i, coerce(values.get(i)));
+        }
+        return expression.evaluate().getValue();
+    }
+
+    /**
+     * Converts strings holding numbers or booleans to typed values, as the data of the steps is mostly json.
+     *
+     * @param value the referenced value
+     * @return the typed value
+     */
+    static Object coerce(Object value) {
+        if (value instanceof String string) {
+            String trimmed = string.trim();
+            if (trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("false")) {
+                return Boolean.parseBoolean(trimmed);
+            }
+            if (!trimmed.isEmpty() && (Character.isDigit(trimmed.charAt(trimmed.length() - 1)) || trimmed.endsWith("."))) {
+                try {
+                    return new BigDecimal(trimmed);
+                } catch (NumberFormatException e) {
+                    return string;
+                }
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,171 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads values from the input and output data of the steps by a json path like $.order.items[0].price.
+ * Simple paths of properties and indexes are walked directly through the maps and lists, so the data is not
+ * serialized to json for every read. Paths with filters, wildcards or deep scans are read with JsonPath.
+ * The parsed paths are kept in a bounded cache.
+ *
+ * @author Idrissa Ganemtore
+ */
+public class DataPathResolver {
+
+    private static final int MAX_CACHED_PATHS = 10_000;
+
+    private static final String JSON_PATH_ONLY_CHARACTERS = "?*@,:()'\"";
+
+    private final BoundedCache<String, CompiledPath> compiledPaths = new BoundedCache<>(MAX_CACHED_PATHS);
+
+    /**
+     * Reads the value of a path. Maps and lists in the result are copies, so the caller can not change the
+     * data of the step through the result.
+     *
+     * @param data the data to read from
+     * @param path the json path
+     * @return the value
+     * @throws PathNotFoundException if the path does not exist in the data
+     */
+    public Object read(Map<String, Object> data, String path) {
+        if (data == null) {
+            throw new PathNotFoundException("No data to read the path " + path + " from");
+        }
+        return copy(getCompiledPath(path).read(data));
+    }
+
+    CompiledPath getCompiledPath(String path) {
+        return compiledPaths.get(path, DataPathResolver::compile);
+    }
+
+    int compiledPathCount() {
+        return compiledPaths.size();
+    }
+
+    private static CompiledPath compile(String path) {
+        String trimmed = path.trim();
+        if (!trimmed.startsWith("$") || trimmed.contains("..") || containsAny(trimmed, JSON_PATH_ONLY_CHARACTERS)) {
+            return new CompiledPath(null, JsonPath.compile(trimmed));
+        }
+        List<Object> tokens = new ArrayList<>();
+        for (String segment : trimmed.substring(1).split("\\.")) {
+            if (!addSegmentTokens(segment.trim(), tokens)) {
+                return new CompiledPath(null, JsonPath.compile(trimmed));
+            }
+        }
+        return new CompiledPath(tokens, null);
+    }
+
+    /**
+     * Splits a segment like items[0][1] into the property name and the indexes.
+     *
+     * @param segment the segment
+     * @param tokens  the list to add the property names (String) and indexes (Integer) to
+     * @return false if the segment is not a simple property with indexes
+     */
+    private static boolean addSegmentTokens(String segment, List<Object> tokens) {
+        int bracket = segment.indexOf('[');
+        String property = bracket < 0 ? segment : segment.substring(0, bracket);
+        if (!property.isEmpty()) {
+            tokens.add(property);
+        }
+        while (bracket >= 0) {
+            int end = segment.indexOf(']', bracket);
+            if (end < 0) {
+                return false;
+            }
+            try {
+                tokens.add(Integer.parseInt(segment.substring(bracket + 1, end).trim()));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (end + 1 == segment.length()) {
+                return true;
+            }
+            if (segment.charAt(end + 1) != '[') {
+                return false;
+            }
+            bracket = end + 1;
+        }
+        return true;
+    }
+
+    private static boolean containsAny(String value, String characters) {
+        for (char character : characters.toCharArray()) {
+            if (value.indexOf(character) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deep copies maps and lists, all other values are immutable or not shared.
+     *
+     * @param value the value to copy
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, element) -> copy.put(String.valueOf(key), copy(element)));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(element -> copy.add(copy(element)));
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * A parsed path. Either the tokens to walk or the compiled JsonPath are set.
+     */
+    static class CompiledPath {
+
+        private final List<Object> tokens;
+
+        private final JsonPath jsonPath;
+
+        CompiledPath(List<Object> tokens, JsonPath jsonPath) {
+            this.tokens = tokens;
+            this.jsonPath = jsonPath;
+        }
+
+        boolean isDirect() {
+            return tokens != null;
+        }
+
+        Object read(Map<String, Object> data) {
+            if (jsonPath != null) {
+                return jsonPath.read(data);
+            }
+            Object current = data;
+            for (Object token : tokens) {
+                current = step(current, token);
+            }
+            return current;
+        }
+
+        private Object step(Object current, Object token) {
+            if (token instanceof String property && current instanceof Map<?, ?> map && map.containsKey(property)) {
+                return map.get(property);
+            }
+            if (token instanceof Integer index && current instanceof List<?> list) {
+                int position = index < 0 ? list.size() + index : index;
+                if (position >= 0 && position < list.size()) {
+                    return list.get(position);
+                }
+            }
+            throw new PathNotFoundException("No results for path element " + token);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import de.lenneflow.orchestrationservice.helpercomponents.InstanceCache;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The data needed to evaluate the expressions of one step. The step instances referenced by the expressions
+ * are loaded once when the context is created, the workflow instance is loaded on the first reference to the
+ * workflow input. The context is used for all expressions of the step and then dropped.
+ *
+ * @author Idrissa Ganemtore
+ */
+public class EvaluationContext {
+
+    private final String workflowInstanceUid;
+
+    private final InstanceCache instanceCache;
+
+    private final Map<String, WorkflowStepInstance> stepInstances;
+
+    //the names already looked up, including the names of steps that do not exist
+    private final Set<String> loadedStepNames;
+
+    private WorkflowInstance workflowInstance;
+
+    EvaluationContext(String workflowInstanceUid, InstanceCache instanceCache, Collection<String> stepNames) {
+        this.workflowInstanceUid = workflowInstanceUid;
+        this.instanceCache = instanceCache;
+        this.stepInstances = instanceCache.getStepInstancesByName(workflowInstanceUid, stepNames);
+        this.loadedStepNames = new HashSet<>(stepNames);
+    }
+
+    public String getWorkflowInstanceUid() {
+        return workflowInstanceUid;
+    }
+
+    public WorkflowInstance getWorkflowInstance() {
+        if (workflowInstance == null) {
+            workflowInstance = instanceCache.getWorkflowInstance(workflowInstanceUid);
+        }
+        return workflowInstance;
+    }
+
+    /**
+     * Returns a step instance of the run. Steps that were not referenced when the context was created are
+     * read on demand.
+     *
+     * @param stepName the step name
+     * @return the step instance or null if not found
+     */
+    public WorkflowStepInstance getStepInstance(String stepName) {
+        if (loadedStepNames.add(stepName)) {
+            WorkflowStepInstance stepInstance = instanceCache.getStepInstanceByName(workflowInstanceUid, stepName);
+            if (stepInstance != null) {
+                stepInstances.put(stepName, stepInstance);
+            }
+        }
+        return stepInstances.get(stepName);
+    }
+}
@@ -1,79 +1,103 @@
 package de.lenneflow.orchestrationservice.utils;
 
 import com.ezylang.evalex.EvaluationException;
-import com.ezylang.evalex.Expression;
-import com.ezylang.evalex.data.EvaluationValue;
 import com.ezylang.evalex.parser.ParseException;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.JsonPath;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.helpercomponents.InstanceCache;
+import de.lenneflow.orchestrationservice.helpercomponents.PayloadOffloader;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
-import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
-import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceRepository;
-import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Expression evaluator class. In a workflow many input data can be expressions. for example [step1.output.waitTime].
  * The expression evaluator will get the wait time value from the output of the run step "step1".
+ * Expressions are parsed once and kept in a bounded cache, see {@link CompiledExpression}.
  *
  * @author Idrissa Ganemtore
  */
 @Component
 public class ExpressionEvaluator {
 
-    final
-    WorkflowStepInstanceRepository workflowStepInstanceRepository;
-    final WorkflowInstanceRepository workflowInstanceRepository;
-    final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Logger logger = LoggerFactory.getLogger(ExpressionEvaluator.class);
 
+    final InstanceCache instanceCache;
+    final PayloadOffloader payloadOffloader;
+    final DataPathResolver dataPathResolver = new DataPathResolver();
 
-    public ExpressionEvaluator(WorkflowStepInstanceRepository workflowStepInstanceRepository, WorkflowInstanceRepository workflowInstanceRepository) {
-        this.workflowStepInstanceRepository = workflowStepInstanceRepository;
-        this.workflowInstanceRepository = workflowInstanceRepository;
+    private static final int MAX_CACHED_EXPRESSIONS = 10_000;
+
+    private final BoundedCache<String, CompiledExpression> compiledExpressions = new BoundedCache<>(MAX_CACHED_EXPRESSIONS);
+
+    public ExpressionEvaluator(InstanceCache instanceCache, PayloadOffloader payloadOffloader) {
+        this.instanceCache = instanceCache;
+        this.payloadOffloader = payloadOffloader;
     }
 
     /**
      * This method will go throw an input data and replace all the expression by their real values.
+     * All step instances referenced in the input data are loaded at once before the evaluation.
      *
      * @param inputData           the input data to normalize
      * @param workflowInstanceUid the ID of the workflow instance.
      */
     public void normalizeInputData(Map<String, Object> inputData, String workflowInstanceUid){
+        normalizeInputData(inputData, createContext(workflowInstanceUid, inputData));
+    }
+
+    private void normalizeInputData(Map<String, Object> inputData, EvaluationContext context){
         for (Map.Entry<String, Object> entry : inputData.entrySet()) {
             if (entry.getValue() instanceof Map) {
-                normalizeInputData((Map<String, Object>) entry.getValue(), workflowInstanceUid);
+                normalizeInputData((Map<String, Object>) entry.getValue(), context);
             } else if (entry.getValue() instanceof String value) {
-                //Object newValue = evaluateInputDataEntry(workflowInstanceUid, value);
-                EvaluationValue eval = null;
+                Object eval;
                 try {
-                    eval = evaluateExpression(workflowInstanceUid, value, 0);
+                    eval = evaluateExpression(context, value, 0);
                 }catch (ParseException | EvaluationException e) {
                     throw new InternalServiceException("Could not parse or evaluate expression: " + value);
                 }
-                inputData.put(entry.getKey(), eval.getValue());
+                inputData.put(entry.getKey(), eval);
             }
         }
     }
 
     /**
-     * Evaluates an input data entry. Checks if the data is an expression. In this case,
-     * it will read the value of the expression. Otherwise, it will simply return the value.
+     * Creates the context to evaluate the expressions of a step. The step instances referenced by the expressions
+     * in the data are loaded with one lookup.
      *
-     * @param workflowInstanceUid the ID of the instance
-     * @param value               the data to evaluate
-     * @return the evaluation result.
+     * @param workflowInstanceUid the ID of the workflow instance
+     * @param data                an expression or a map containing expressions
+     * @return the evaluation context
      */
-    private Object evaluateInputDataEntry(String workflowInstanceUid, String value) {
-        if (value.startsWith("[") && value.endsWith("]")) {
-            String expression = value.replace("[", "").replace("]", "");
-            return readDataFromPath(workflowInstanceUid, expression);
+    public EvaluationContext createContext(String workflowInstanceUid, Object data) {
+        Set<String> stepNames = new HashSet<>();
+        collectStepNames(data, stepNames);
+        return new EvaluationContext(workflowInstanceUid, instanceCache, stepNames);
+    }
+
+    private void collectStepNames(Object data, Set<String> stepNames) {
+        if (data instanceof Map<?, ?> map) {
+            for (Object value : map.values()) {
+                collectStepNames(value, stepNames);
+            }
+        } else if (data instanceof String expression) {
+            for (String reference : compile(expression).getReferences()) {
+                String[] stringParts = reference.split("\\.");
+                if (stringParts.length > 1 && !isWorkflowInputPath(stringParts)) {
+                    stepNames.add(stringParts[0].trim());
+                }
+            }
         }
-        return value;
     }
 
     /**
@@ -84,35 +108,59 @@ public class ExpressionEvaluator {
      * @return the result of the evaluation
      */
     public Object readDataFromPath(String workflowInstanceUid, String dataPath) {
+        return readDataFromPath(createContext(workflowInstanceUid, "[" + dataPath.replace("[", "").replace("]", "") + "]"), dataPath);
+    }
+
+    private Object readDataFromPath(EvaluationContext context, String dataPath) {
         dataPath = dataPath.replace("[", "").replace("]", "");
         String[] stringParts = dataPath.split("\\.");
 
-        if(stringParts[0].trim().equalsIgnoreCase("workflow") && (stringParts[1].trim().equalsIgnoreCase("input") || stringParts[1].trim().equalsIgnoreCase("inputData"))){
-            WorkflowInstance instance = workflowInstanceRepository.findByUid(workflowInstanceUid);
+        if(isWorkflowInputPath(stringParts)){
+            WorkflowInstance instance = context.getWorkflowInstance();
             if(instance == null){
-                throw new InternalServiceException("Workflow instance not found for uid: " + workflowInstanceUid);
+                throw new InternalServiceException("Workflow instance not found for uid: " + context.getWorkflowInstanceUid());
             }
-            Map<String, Object> inputData = instance.getInputData();
+            //offloaded data is loaded when an expression reads from it
+            Map<String, Object> inputData = payloadOffloader.resolve(instance.getInputData());
             return getMapValueByPath(inputData, getJsonPath(stringParts));
 
         }
-        WorkflowStepInstance step = workflowStepInstanceRepository.findByNameAndWorkflowInstanceUid(stringParts[0].trim(), workflowInstanceUid);
+        WorkflowStepInstance step = context.getStepInstance(stringParts[0].trim());
         if(step == null){
-            throw new InternalServiceException("Workflow step was not found for workflow instance uid: " + workflowInstanceUid);
+            throw new InternalServiceException("Workflow step was not found for workflow instance uid: " + context.getWorkflowInstanceUid());
         }
         return switch (stringParts[1].toLowerCase().trim()) {
             case "output", "outputdata" -> {
-                Map<String, Object> outputData = step.getOutputData();
+                Map<String, Object> outputData = payloadOffloader.resolve(step.getOutputData());
                 yield getMapValueByPath(outputData, getJsonPath(stringParts));
             }
             case "input", "inputdata" -> {
-                Map<String, Object> inputData = step.getInputData();
+                Map<String, Object> inputData = payloadOffloader.resolve(step.getInputData());
                 yield getMapValueByPath(inputData, getJsonPath(stringParts));
             }
             default -> throw new InternalServiceException("Invalid data path: " + dataPath);
         };
     }
 
+    private static boolean isWorkflowInputPath(String[] stringParts) {
+        return stringParts[0].trim().equalsIgnoreCase("workflow") && (stringParts[1].trim().equalsIgnoreCase("input") || stringParts[1].trim().equalsIgnoreCase("inputData"));
+    }
+
+    /**
+     * Resolves a reference like [step1.output.items] to a list.
+     *
+     * @param workflowInstanceUid the ID of the instance
+     * @param expression          the reference to a list
+     * @return the elements of the list
+     */
+    public List<Object> evaluateListExpression(String workflowInstanceUid, String expression) {
+        Object value = readDataFromPath(workflowInstanceUid, expression.trim());
+        if (value instanceof List<?> list) {
+            return new ArrayList<>(list);
+        }
+        throw new InternalServiceException("The expression " + expression + " does not reference a list");
+    }
+
     /**
      * Creates a json path from a list of string.
      *
@@ -135,12 +183,7 @@ public class ExpressionEvaluator {
      * @return the value
      */
     private Object getMapValueByPath(Map<String, Object> inputData, String path) {
-        try {
-            String json = objectMapper.writeValueAsString(inputData);
-            return JsonPath.read(json, path);
-        } catch (JsonProcessingException e) {
-            throw new InternalServiceException("Could not get data from Map " + inputData.toString());
-        }
+        return dataPathResolver.read(inputData, path);
     }
 
     /**
@@ -151,8 +194,14 @@ public class ExpressionEvaluator {
      * @return the boolean value
      */
     public boolean evaluateDoWhileCondition(String workflowInstanceUid, String expression, int currentRunCount) throws EvaluationException, ParseException {
-        EvaluationValue result = evaluateExpression(workflowInstanceUid, expression, currentRunCount);
-        return result.getBooleanValue();
+        Object result = evaluateExpression(createContext(workflowInstanceUid, expression), expression, currentRunCount);
+        if (result instanceof Boolean booleanValue) {
+            return booleanValue;
+        }
+        if (result instanceof Number number) {
+            return new BigDecimal(number.toString()).compareTo(BigDecimal.ZERO) != 0;
+        }
+        return result != null && result.toString().trim().equalsIgnoreCase("true");
     }
 
     /**
@@ -163,8 +212,11 @@ public class ExpressionEvaluator {
      * @return the string value
      */
     public String evaluateStringExpression(String workflowInstanceUid, String expression) throws EvaluationException, ParseException {
-        EvaluationValue result = evaluateExpression(workflowInstanceUid, expression, 0);
-        return result.getStringValue();
+        Object result = evaluateExpression(createContext(workflowInstanceUid, expression), expression, 0);
+        if (result instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        return String.valueOf(result);
 
     }
 
@@ -176,30 +228,68 @@ public class ExpressionEvaluator {
      * @return the double value
      */
     public double evaluateDoubleExpression(String workflowInstanceUid, String expression) throws EvaluationException, ParseException {
-        EvaluationValue result = evaluateExpression(workflowInstanceUid, expression, 0);
-        return result.getNumberValue().doubleValue();
+        Object result = evaluateExpression(createContext(workflowInstanceUid, expression), expression, 0);
+        if (result instanceof Number number) {
+            return number.doubleValue();
+        }
+        try {
+            return Double.parseDouble(String.valueOf(result).trim());
+        } catch (NumberFormatException e) {
+            throw new InternalServiceException("The expression " + expression + " is not a number");
+        }
 
     }
 
     /**
-     * Evaluates an expression et returns the value.
+     * Evaluates an expression et returns the value. The referenced values are bound as variables of the
+     * compiled expression, they are never inserted into the expression text.
      *
-     * @param workflowInstanceUid The UID of the workflow instance
-     * @param expression          the expression to evaluate
-     * @return the {@link EvaluationValue}
+     * @param context    the evaluation context of the step
+     * @param expression the expression to evaluate
+     * @return the value of the expression
      */
-    private EvaluationValue evaluateExpression(String workflowInstanceUid, String expression, int currentRunCount) throws EvaluationException, ParseException {
-        String[] subStrings = StringUtils.substringsBetween(expression, "[", "]");
-        for (String s : subStrings) {
-            if (s.equalsIgnoreCase("runCount")) {
-                expression = expression.replace(s, currentRunCount + "").replace("[", "").replace("]", "");
+    private Object evaluateExpression(EvaluationContext context, String expression, int currentRunCount) throws EvaluationException, ParseException {
+        CompiledExpression compiledExpression = compile(expression);
+        List<Object> values = new ArrayList<>(compiledExpression.getReferences().size());
+        for (String reference : compiledExpression.getReferences()) {
+            if (reference.equalsIgnoreCase(CompiledExpression.RUN_COUNT)) {
+                values.add(currentRunCount);
             } else {
-                expression = expression.replace(s, readDataFromPath(workflowInstanceUid, s).toString());
+                values.add(readDataFromPath(context, reference));
+            }
+        }
+        return compiledExpression.evaluate(values);
+    }
+
+    /**
+     * Returns the compiled expression from the cache and compiles it on the first use.
+     *
+     * @param expression the expression
+     * @return the compiled expression
+     * @throws InternalServiceException if the expression references data but is not a valid expression
+     */
+    CompiledExpression compile(String expression) {
+        return compiledExpressions.get(expression, CompiledExpression::compile);
+    }
+
+    /**
+     * Parses expressions before their first evaluation, for example the expressions of a new workflow version.
+     * An invalid expression is only logged here, it fails the step that evaluates it.
+     *
+     * @param expressions the expressions
+     */
+    public void precompile(Collection<String> expressions) {
+        for (String expression : expressions) {
+            try {
+                compile(expression);
+            } catch (InternalServiceException e) {
+                logger.warn(e.getMessage());
             }
         }
-        expression = expression.replace("[", "").replace("]", "");
-        Expression exp = new Expression(expression);
-        return exp.evaluate();
+    }
+
+    int compiledExpressionCount() {
+        return compiledExpressions.size();
     }
 
 }
@@ -0,0 +1,88 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes and decodes the queue messages. The object mappers and the readers and writers of every message type are
+ * created once and shared, so the serializers are not built again for every message. A message is either JSON or
+ * the binary Smile format of Jackson, the format is given by the content type of the message. Messages without a
+ * known content type are read as JSON, the format of the publishers before the content type was set.
+ *
+ * @author Idrissa Ganemtore
+ */
+public final class MessageCodec {
+
+    public static final String JSON_CONTENT_TYPE = MessageProperties.CONTENT_TYPE_JSON;
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    private static final Codec JSON = new Codec(new ObjectMapper());
+    private static final Codec SMILE = new Codec(new ObjectMapper(new SmileFactory()));
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes an object in the format of a content type.
+     *
+     * @param value       the object to encode
+     * @param contentType the content type of the message
+     * @return the message body
+     */
+    public static byte[] encode(Object value, String contentType) throws JsonProcessingException {
+        return codec(contentType).writer(value != null ? value.getClass() : Object.class).writeValueAsBytes(value);
+    }
+
+    /**
+     * Decodes a message body in the format of its content type.
+     *
+     * @param body        the message body
+     * @param contentType the content type of the message, can be null
+     * @param type        the message type
+     * @return the decoded object
+     */
+    public static <T> T decode(byte[] body, String contentType, Class<T> type) throws IOException {
+        return codec(contentType).reader(type).readValue(body);
+    }
+
+    /**
+     * Returns the supported content type for a configured content type, JSON if it is not Smile.
+     *
+     * @param contentType the configured content type
+     * @return the content type the messages are published with
+     */
+    public static String supportedContentType(String contentType) {
+        return isSmile(contentType) ? SMILE_CONTENT_TYPE : JSON_CONTENT_TYPE;
+    }
+
+    public static boolean isSmile(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase().startsWith(SMILE_CONTENT_TYPE);
+    }
+
+    private static Codec codec(String contentType) {
+        return isSmile(contentType) ? SMILE : JSON;
+    }
+
+    private record Codec(ObjectMapper mapper, Map<Class<?>, ObjectReader> readers, Map<Class<?>, ObjectWriter> writers) {
+
+        private Codec(ObjectMapper mapper) {
+            this(mapper, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        private ObjectReader reader(Class<?> type) {
+            return readers.computeIfAbsent(type, mapper::readerFor);
+        }
+
+        private ObjectWriter writer(Class<?> type) {
+            return writers.computeIfAbsent(type, mapper::writerFor);
+        }
+    }
+}
@@ -7,6 +7,11 @@ import de.lenneflow.orchestrationservice.feignmodels.Workflow;
 import de.lenneflow.orchestrationservice.model.GlobalInputData;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class ObjectMapper {
 
     private ObjectMapper(){}
@@ -47,4 +52,36 @@ public class ObjectMapper {
         queueElement.setServiceUrl(function.getServiceUrl());
         return queueElement;
     }
+
+    /**
+     * Copies data with all nested maps and lists, so that the copy can be changed without changing the original.
+     *
+     * @param data the data to copy
+     * @return the copy
+     */
+    public static Map<String, Object> copyData(Map<String, Object> data) {
+        if (data == null) {
+            return null;
+        }
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return copyData((Map<String, Object>) map);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
 }
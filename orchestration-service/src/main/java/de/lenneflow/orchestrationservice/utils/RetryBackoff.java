@@ -0,0 +1,53 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import de.lenneflow.orchestrationservice.enums.BackoffStrategy;
+import de.lenneflow.orchestrationservice.feignmodels.RetryPolicy;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the delay before a retry of a failed step from the retry policy of the step.
+ *
+ * @author Idrissa Ganemtore
+ */
+public class RetryBackoff {
+
+    //upper bound of every delay, also when the policy has no max delay
+    public static final long MAX_DELAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private RetryBackoff() {
+    }
+
+    public static long delayMillis(RetryPolicy retryPolicy, int retryNumber) {
+        return delayMillis(retryPolicy, retryNumber, ThreadLocalRandom.current());
+    }
+
+    /**
+     * The delay before a retry. The fixed strategy always waits the initial delay, the exponential strategies
+     * multiply it for every further retry. The jitter strategy takes a random delay between 0 and the exponential
+     * delay, so the retries of many failed steps spread out instead of hitting the function at the same time.
+     *
+     * @param retryPolicy the retry policy of the step, null for immediate retries
+     * @param retryNumber the number of the retry, starting at 1
+     * @param random      the random source of the jitter
+     * @return the delay in milliseconds, 0 for an immediate retry
+     */
+    public static long delayMillis(RetryPolicy retryPolicy, int retryNumber, Random random) {
+        if (retryPolicy == null || retryPolicy.getDelayInSeconds() <= 0) {
+            return 0;
+        }
+        BackoffStrategy strategy = retryPolicy.getBackoffStrategy() != null ? retryPolicy.getBackoffStrategy() : BackoffStrategy.FIXED;
+        double delay = TimeUnit.SECONDS.toMillis(retryPolicy.getDelayInSeconds());
+        if (strategy != BackoffStrategy.FIXED) {
+            delay *= Math.pow(Math.max(1, retryPolicy.getMultiplier()), Math.max(0, retryNumber - 1));
+        }
+        long maxDelay = retryPolicy.getMaxDelayInSeconds() > 0 ? Math.min(TimeUnit.SECONDS.toMillis(retryPolicy.getMaxDelayInSeconds()), MAX_DELAY_MILLIS) : MAX_DELAY_MILLIS;
+        delay = Math.min(delay, maxDelay);
+        if (strategy == BackoffStrategy.EXPONENTIAL_WITH_JITTER) {
+            delay = random.nextDouble() * delay;
+        }
+        return (long) delay;
+    }
+}
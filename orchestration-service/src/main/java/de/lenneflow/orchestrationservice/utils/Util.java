@@ -1,7 +1,7 @@
 package de.lenneflow.orchestrationservice.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.orchestrationservice.dto.FunctionDeploymentEvent;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.dto.RunNotification;
@@ -19,68 +19,107 @@ public class Util {
     }
 
     /**
-     * Deserializes a byte array and returns a function dto object.
+     * Deserializes a JSON byte array and returns a function dto object.
      *
      * @param serializedFunctionDto the byte array
      * @return the {@link QueueElement} object
      */
     public static QueueElement deserializeQueueElement(byte[] serializedFunctionDto) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        QueueElement queueElement;
-        queueElement = mapper.readValue(serializedFunctionDto, QueueElement.class);
-        return queueElement;
+        return deserializeQueueElement(serializedFunctionDto, MessageCodec.JSON_CONTENT_TYPE);
     }
 
     /**
-     * Deserializes a byte array and returns a function dto object.
+     * Deserializes a byte array in the format of its content type and returns a function dto object.
+     *
+     * @param serializedFunctionDto the byte array
+     * @param contentType           the content type of the message
+     * @return the {@link QueueElement} object
+     */
+    public static QueueElement deserializeQueueElement(byte[] serializedFunctionDto, String contentType) throws IOException {
+        return MessageCodec.decode(serializedFunctionDto, contentType, QueueElement.class);
+    }
+
+    /**
+     * Deserializes a JSON byte array and returns a function dto object.
      *
      * @param serialized the byte array
      * @return the {@link QueueElement} object
      */
     public static ResultQueueElement deserializeResultQueueElement(byte[] serialized) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        ResultQueueElement queueElement;
-        queueElement = mapper.readValue(serialized, ResultQueueElement.class);
-        return queueElement;
+        return deserializeResultQueueElement(serialized, MessageCodec.JSON_CONTENT_TYPE);
     }
 
     /**
-     * Serializes a function dto object to a byte array.
+     * Deserializes a byte array in the format of its content type and returns a function dto object.
+     *
+     * @param serialized  the byte array
+     * @param contentType the content type of the message
+     * @return the {@link ResultQueueElement} object
+     */
+    public static ResultQueueElement deserializeResultQueueElement(byte[] serialized, String contentType) throws IOException {
+        return MessageCodec.decode(serialized, contentType, ResultQueueElement.class);
+    }
+
+    /**
+     * Deserializes a byte array in the format of its content type and returns a run notification.
+     *
+     * @param serialized  the byte array
+     * @param contentType the content type of the message, can be null
+     * @return the {@link RunNotification} object
+     */
+    public static RunNotification deserializeRunNotification(byte[] serialized, String contentType) throws IOException {
+        return MessageCodec.decode(serialized, contentType, RunNotification.class);
+    }
+
+    /**
+     * Deserializes a byte array and returns a function deployment event.
+     *
+     * @param serialized the byte array
+     * @return the {@link FunctionDeploymentEvent} object
+     */
+    public static FunctionDeploymentEvent deserializeFunctionDeploymentEvent(byte[] serialized) throws IOException {
+        return MessageCodec.decode(serialized, MessageCodec.JSON_CONTENT_TYPE, FunctionDeploymentEvent.class);
+    }
+
+    /**
+     * Serializes a function dto object to a JSON byte array.
      *
      * @param notification the object to serialize
      * @return the byte array
      */
     public static byte[] serialize(RunNotification notification) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        byte[] serializedFunction;
-        serializedFunction = mapper.writeValueAsBytes(notification);
-        return serializedFunction;
+        return serialize(notification, MessageCodec.JSON_CONTENT_TYPE);
     }
 
     /**
-     * Serializes a function dto object to a byte array.
+     * Serializes a function dto object to a JSON byte array.
      *
      * @param queueElement the object to serialize
      * @return the byte array
      */
     public static byte[] serialize(QueueElement queueElement) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        byte[] serializedFunction;
-        serializedFunction = mapper.writeValueAsBytes(queueElement);
-        return serializedFunction;
+        return serialize(queueElement, MessageCodec.JSON_CONTENT_TYPE);
     }
 
     /**
-     * Serializes a function dto object to a byte array.
+     * Serializes a function dto object to a JSON byte array.
      *
      * @param queueElement the object to serialize
      * @return the byte array
      */
     public static byte[] serialize(ResultQueueElement queueElement) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        byte[] serializedFunction;
-        serializedFunction = mapper.writeValueAsBytes(queueElement);
-        return serializedFunction;
+        return serialize(queueElement, MessageCodec.JSON_CONTENT_TYPE);
+    }
+
+    /**
+     * Serializes a queue message to a byte array in the format of a content type.
+     *
+     * @param message     the object to serialize
+     * @param contentType the content type of the message
+     * @return the byte array
+     */
+    public static byte[] serialize(Object message, String contentType) throws JsonProcessingException {
+        return MessageCodec.encode(message, contentType);
     }
 
 
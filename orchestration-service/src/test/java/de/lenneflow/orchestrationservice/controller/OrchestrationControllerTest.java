@@ -1,12 +1,20 @@
 package de.lenneflow.orchestrationservice.controller;
 
 import de.lenneflow.orchestrationservice.dto.GlobalInputDataDto;
+import de.lenneflow.orchestrationservice.dto.RunPage;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.enums.JsonSchemaVersion;
 import de.lenneflow.orchestrationservice.exception.PayloadNotValidException;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
 import de.lenneflow.orchestrationservice.feignmodels.JsonSchema;
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.helpercomponents.ExecutionPlanCache;
+import de.lenneflow.orchestrationservice.helpercomponents.InstanceCache;
 import de.lenneflow.orchestrationservice.helpercomponents.InstanceController;
+import de.lenneflow.orchestrationservice.helpercomponents.PayloadStore;
+import de.lenneflow.orchestrationservice.helpercomponents.RunCompletionTracker;
+import de.lenneflow.orchestrationservice.helpercomponents.RunListing;
+import de.lenneflow.orchestrationservice.helpercomponents.RunStateStream;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
 import de.lenneflow.orchestrationservice.model.GlobalInputData;
 import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
@@ -17,10 +25,14 @@ import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceReposito
 import de.lenneflow.orchestrationservice.utils.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 
@@ -30,7 +42,7 @@ import static org.mockito.Mockito.*;
 class OrchestrationControllerTest {
 
     @Mock
-    private WorkflowServiceClient workflowServiceClient;
+    private ExecutionPlanCache executionPlanCache;
     @Mock
     private WorkflowInstanceRepository workflowInstanceRepository;
     @Mock
@@ -41,13 +53,23 @@ class OrchestrationControllerTest {
     private InstanceController instanceController;
     @Mock
     private GlobalInputDataRepository globalInputDataRepository;
+    @Mock
+    private RunListing runListing;
+    @Mock
+    private RunStateStream runStateStream;
+    @Mock
+    private RunCompletionTracker runCompletionTracker;
+    @Mock
+    private InstanceCache instanceCache;
+    @Mock
+    private PayloadStore payloadStore;
 
     private OrchestrationController orchestrationController;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        orchestrationController = new OrchestrationController(workflowServiceClient, workflowInstanceRepository, workflowStepInstanceRepository, workflowRunner, instanceController, globalInputDataRepository);
+        orchestrationController = new OrchestrationController(executionPlanCache, workflowInstanceRepository, workflowStepInstanceRepository, workflowRunner, instanceController, globalInputDataRepository, runListing, runStateStream, runCompletionTracker, instanceCache, payloadStore);
     }
 
     @Test
@@ -63,8 +85,9 @@ class OrchestrationControllerTest {
         WorkflowExecution workflowExecution = new WorkflowExecution(workflowInstance);
 
         when(globalInputDataRepository.findByUid(inputdataId)).thenReturn(globalInputData);
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(workflow);
-        when(instanceController.generateWorkflowInstance(workflow, globalInputData.getInputData(), null, null)).thenReturn(workflowInstance);
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(plan);
+        when(instanceController.generateWorkflowInstance(plan, globalInputData.getInputData(), null, null)).thenReturn(workflowInstance);
         when(workflowRunner.startWorkflow(workflowInstance)).thenReturn(workflowExecution);
 
         try (MockedStatic<Validator> mockStatic = Mockito.mockStatic(Validator.class)) {
@@ -94,7 +117,7 @@ class OrchestrationControllerTest {
         GlobalInputData globalInputData = new GlobalInputData();
 
         when(globalInputDataRepository.findByUid(inputdataId)).thenReturn(globalInputData);
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(null);
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(null);
 
         assertThrows(PayloadNotValidException.class, () -> orchestrationController.startWorkflowGet(workflowId, inputdataId));
     }
@@ -106,8 +129,9 @@ class OrchestrationControllerTest {
         WorkflowInstance workflowInstance = new WorkflowInstance();
         WorkflowExecution workflowExecution = new WorkflowExecution(workflowInstance);
 
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(workflow);
-        when(instanceController.generateWorkflowInstance(workflow, null, null, null)).thenReturn(workflowInstance);
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(plan);
+        when(instanceController.generateWorkflowInstance(plan, null, null, null)).thenReturn(workflowInstance);
         when(workflowRunner.startWorkflow(workflowInstance)).thenReturn(workflowExecution);
 
         WorkflowExecution result = orchestrationController.startWorkflowGet2(workflowId);
@@ -116,11 +140,49 @@ class OrchestrationControllerTest {
         assertEquals(workflowExecution, result);
     }
 
+    @Test
+    void deleteWorkflowRun_shouldDeleteRunWithCachedAndOffloadedData() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("runUid");
+        workflowInstance.setStepInstances(new ArrayList<>());
+        when(workflowInstanceRepository.findByUid("runUid")).thenReturn(workflowInstance);
+
+        orchestrationController.deleteWorkflowRun("runUid");
+
+        verify(instanceCache).evict("runUid");
+        verify(workflowInstanceRepository).delete(workflowInstance);
+        verify(payloadStore).deleteByWorkflowInstances(List.of("runUid"));
+    }
+
+    @Test
+    void deleteWorkflowRun_shouldThrowExceptionWhenRunNotFound() {
+        when(workflowInstanceRepository.findByUid("runUid")).thenReturn(null);
+
+        assertThrows(PayloadNotValidException.class, () -> orchestrationController.deleteWorkflowRun("runUid"));
+        verifyNoInteractions(payloadStore);
+    }
+
+    @Test
+    void workflowRunEvents_shouldSubscribeToRun() {
+        SseEmitter emitter = new SseEmitter();
+        when(runStateStream.subscribeToRun("runUid", false)).thenReturn(emitter);
+
+        assertSame(emitter, orchestrationController.workflowRunEvents("runUid", false));
+    }
+
+    @Test
+    void workflowEvents_shouldSubscribeToWorkflow() {
+        SseEmitter emitter = new SseEmitter();
+        when(runStateStream.subscribeToWorkflow("workflowUid", true)).thenReturn(emitter);
+
+        assertSame(emitter, orchestrationController.workflowEvents("workflowUid", true));
+    }
+
     @Test
     void startWorkflowGet2_shouldThrowExceptionWhenWorkflowNotFound() {
         String workflowId = "workflowUid";
 
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(null);
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(null);
 
         assertThrows(PayloadNotValidException.class, () -> orchestrationController.startWorkflowGet2(workflowId));
     }
@@ -136,8 +198,9 @@ class OrchestrationControllerTest {
         WorkflowInstance workflowInstance = new WorkflowInstance();
         WorkflowExecution workflowExecution = new WorkflowExecution(workflowInstance);
 
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(workflow);
-        when(instanceController.generateWorkflowInstance(workflow, inputData, null, null)).thenReturn(workflowInstance);
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(plan);
+        when(instanceController.generateWorkflowInstance(plan, inputData, null, null)).thenReturn(workflowInstance);
         when(workflowRunner.startWorkflow(workflowInstance)).thenReturn(workflowExecution);
 
         try (MockedStatic<Validator> mockStatic = Mockito.mockStatic(Validator.class)) {
@@ -154,11 +217,58 @@ class OrchestrationControllerTest {
         String workflowId = "workflowUid";
         Map<String, Object> inputData = new HashMap<>();
 
-        when(workflowServiceClient.getWorkflowById(workflowId)).thenReturn(null);
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(null);
 
         assertThrows(PayloadNotValidException.class, () -> orchestrationController.startWorkflowPost(workflowId, inputData));
     }
 
+    @Test
+    void startWorkflowSync_shouldWaitForRunBeforeStartingIt() {
+        String workflowId = "workflowUid";
+        Map<String, Object> inputData = new HashMap<>();
+        Workflow workflow = new Workflow();
+        JsonSchema jsonSchema = new JsonSchema();
+        workflow.setInputDataSchema(jsonSchema);
+        jsonSchema.setSchemaVersion(JsonSchemaVersion.V4);
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        DeferredResult<ResponseEntity<WorkflowExecution>> deferredResult = new DeferredResult<>();
+
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(plan);
+        when(instanceController.generateWorkflowInstance(plan, inputData, null, null)).thenReturn(workflowInstance);
+        when(runCompletionTracker.awaitCompletion(workflowInstance, 10)).thenReturn(deferredResult);
+
+        try (MockedStatic<Validator> mockStatic = Mockito.mockStatic(Validator.class)) {
+            assertSame(deferredResult, orchestrationController.startWorkflowSync(workflowId, inputData, 10));
+        }
+
+        InOrder inOrder = inOrder(runCompletionTracker, workflowRunner);
+        inOrder.verify(runCompletionTracker).awaitCompletion(workflowInstance, 10);
+        inOrder.verify(workflowRunner).startWorkflow(workflowInstance);
+    }
+
+    @Test
+    void startWorkflowSync_shouldStopWaitingWhenStartFails() {
+        String workflowId = "workflowUid";
+        Map<String, Object> inputData = new HashMap<>();
+        Workflow workflow = new Workflow();
+        JsonSchema jsonSchema = new JsonSchema();
+        workflow.setInputDataSchema(jsonSchema);
+        jsonSchema.setSchemaVersion(JsonSchemaVersion.V4);
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("runUid");
+
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
+        when(executionPlanCache.getPlan(workflowId)).thenReturn(plan);
+        when(instanceController.generateWorkflowInstance(plan, inputData, null, null)).thenReturn(workflowInstance);
+        when(workflowRunner.startWorkflow(workflowInstance)).thenThrow(new IllegalStateException("error"));
+
+        try (MockedStatic<Validator> mockStatic = Mockito.mockStatic(Validator.class)) {
+            assertThrows(IllegalStateException.class, () -> orchestrationController.startWorkflowSync(workflowId, inputData, 10));
+        }
+        verify(runCompletionTracker).cancel("runUid");
+    }
+
     @Test
     void stopWorkflow_shouldStopWorkflow() {
         String executionId = "executionUid";
@@ -212,16 +322,15 @@ class OrchestrationControllerTest {
     }
 
     @Test
-    void executionList_shouldReturnExecutionList() {
-        List<WorkflowInstance> instances = List.of(new WorkflowInstance(), new WorkflowInstance());
-        List<WorkflowExecution> executions = List.of(new WorkflowExecution(instances.get(0)), new WorkflowExecution(instances.get(1)));
+    void executionList_shouldReturnPageOfRuns() {
+        RunPage runPage = new RunPage(new ArrayList<>(), "cursor2");
 
-        when(workflowInstanceRepository.findAll()).thenReturn(instances);
+        when(runListing.listRuns("workflowUid", RunStatus.COMPLETED, null, null, "cursor1", 20)).thenReturn(runPage);
 
-        List<WorkflowExecution> result = orchestrationController.executionList();
+        RunPage result = orchestrationController.executionList("workflowUid", RunStatus.COMPLETED, null, null, "cursor1", 20);
 
-        assertNotNull(result);
-        assertEquals(executions.size(), result.size());
+        assertEquals(runPage, result);
+        verify(workflowInstanceRepository, never()).findAll();
     }
 
     @Test
@@ -7,6 +7,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Collection;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -37,6 +38,17 @@ class FunctionServiceClientTest {
         assertEquals(function, result);
     }
 
+    @Test
+    void getFunctionsByUids_shouldReturnFunctions() {
+        List<String> uids = List.of("function1", "function2");
+        Function[] functions = {new Function(), new Function()};
+        when(restTemplate.postForObject("/api/functions/batch", uids, Function[].class)).thenReturn(functions);
+
+        List<Function> result = functionServiceClient.getFunctionsByUids(uids);
+
+        assertEquals(2, result.size());
+    }
+
     @Test
     void getFunctionHome_shouldReturnHomeString() {
         String homeString = "home";
@@ -82,6 +94,11 @@ class FunctionServiceClientTest {
             return restTemplate.getForObject("/api/functions/" + uid, Function.class);
         }
 
+        @Override
+        public List<Function> getFunctionsByUids(Collection<String> uids) {
+            return List.of(restTemplate.postForObject("/api/functions/batch", uids, Function[].class));
+        }
+
         @Override
         public String getFunctionHome() {
             return restTemplate.getForObject("/api/functions/ping", String.class);
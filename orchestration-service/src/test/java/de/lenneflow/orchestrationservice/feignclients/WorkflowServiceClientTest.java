@@ -1,11 +1,13 @@
 package de.lenneflow.orchestrationservice.feignclients;
 
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowBundle;
 import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
@@ -26,6 +28,17 @@ class WorkflowServiceClientTest {
         workflowServiceClient = new WorkflowServiceClientImpl(restTemplate);
     }
 
+    @Test
+    void getWorkflowBundle_shouldReturnBundle() {
+        String uid = "workflowUid";
+        WorkflowBundle bundle = new WorkflowBundle();
+        when(restTemplate.getForEntity("/api/workflows/" + uid + "/bundle", WorkflowBundle.class)).thenReturn(ResponseEntity.ok(bundle));
+
+        ResponseEntity<WorkflowBundle> result = workflowServiceClient.getWorkflowBundle(uid, null);
+
+        assertEquals(bundle, result.getBody());
+    }
+
     @Test
     void getWorkflowById_shouldReturnWorkflow() {
         String uid = "workflowUid";
@@ -112,6 +125,11 @@ class WorkflowServiceClientTest {
             return restTemplate.getForObject("/api/workflows/" + uid, Workflow.class);
         }
 
+        @Override
+        public ResponseEntity<WorkflowBundle> getWorkflowBundle(String uid, String ifNoneMatch) {
+            return restTemplate.getForEntity("/api/workflows/" + uid + "/bundle", WorkflowBundle.class);
+        }
+
         @Override
         public Workflow getWorkflowByName(String name) {
             return restTemplate.getForObject("/api/workflows/name/" + name, Workflow.class);
@@ -0,0 +1,99 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.DeploymentState;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DeploymentTrackerTest {
+
+    @Mock
+    private FunctionServiceClient functionServiceClient;
+
+    private DeploymentTracker deploymentTracker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        deploymentTracker = new DeploymentTracker(functionServiceClient, 60, 2);
+        when(functionServiceClient.getFunctionByUid(any())).thenReturn(function(DeploymentState.DEPLOYING));
+    }
+
+    @AfterEach
+    void tearDown() {
+        deploymentTracker.stop();
+    }
+
+    @Test
+    void awaitDeployment_shouldCompleteWhenAllFunctionsAreDeployed() throws Exception {
+        CompletableFuture<Void> deployment = deploymentTracker.awaitDeployment(List.of("function1", "function2"));
+        verify(functionServiceClient, timeout(500)).getFunctionByUid("function2");
+
+        deploymentTracker.onDeploymentStateChange("function1", DeploymentState.DEPLOYED);
+        assertFalse(deployment.isDone());
+        deploymentTracker.onDeploymentStateChange("function2", DeploymentState.DEPLOYED);
+
+        assertNull(deployment.get(1, TimeUnit.SECONDS));
+        assertEquals(0, deploymentTracker.awaitedFunctions());
+    }
+
+    @Test
+    void awaitDeployment_shouldFailWhenDeploymentFails() {
+        CompletableFuture<Void> deployment = deploymentTracker.awaitDeployment(List.of("function1"));
+
+        deploymentTracker.onDeploymentStateChange("function1", DeploymentState.FAILED);
+
+        CompletionException exception = assertThrows(CompletionException.class, deployment::join);
+        assertInstanceOf(InternalServiceException.class, exception.getCause());
+    }
+
+    @Test
+    void awaitDeployment_shouldCompleteWhenFunctionWasDeployedBeforeRegistration() throws Exception {
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function(DeploymentState.DEPLOYED));
+
+        CompletableFuture<Void> deployment = deploymentTracker.awaitDeployment(List.of("function1"));
+
+        assertNull(deployment.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void awaitDeployment_shouldTimeOut() {
+        deploymentTracker.stop();
+        deploymentTracker = new DeploymentTracker(functionServiceClient, 1, 1);
+
+        CompletableFuture<Void> deployment = deploymentTracker.awaitDeployment(List.of("function1"));
+
+        CompletionException exception = assertThrows(CompletionException.class, deployment::join);
+        assertEquals("All functions could not be deployed in time. Workflow run will be cancelled!", exception.getCause().getMessage());
+        assertEquals(0, deploymentTracker.awaitedFunctions());
+    }
+
+    @Test
+    void requestDeployment_shouldFailWaitingRunsWhenRequestFails() {
+        doThrow(new IllegalStateException("error")).when(functionServiceClient).deployFunction("function1");
+        CompletableFuture<Void> deployment = deploymentTracker.awaitDeployment(List.of("function1"));
+
+        deploymentTracker.requestDeployment("function1");
+
+        assertThrows(CompletionException.class, deployment::join);
+    }
+
+    private static Function function(DeploymentState deploymentState) {
+        Function function = new Function();
+        function.setDeploymentState(deploymentState);
+        return function;
+    }
+}
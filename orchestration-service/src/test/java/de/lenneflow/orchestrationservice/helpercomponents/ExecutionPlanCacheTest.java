@@ -0,0 +1,136 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.ControlStructure;
+import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.DecisionCase;
+import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowBundle;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import de.lenneflow.orchestrationservice.utils.ExpressionEvaluator;
+import feign.FeignException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExecutionPlanCacheTest {
+
+    @Mock
+    private WorkflowServiceClient workflowServiceClient;
+
+    @Mock
+    private ExpressionEvaluator expressionEvaluator;
+
+    private ExecutionPlanCache executionPlanCache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        executionPlanCache = new ExecutionPlanCache(workflowServiceClient, expressionEvaluator, 60);
+    }
+
+    @Test
+    void getPlan_shouldBuildPlanWithOrderedSteps() {
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", null)).thenReturn(bundleResponse("v1"));
+
+        ExecutionPlan plan = executionPlanCache.getPlan("workflowUid");
+
+        assertEquals("v1", plan.getVersion());
+        assertEquals(List.of("first", "second"), plan.getSteps().stream().map(WorkflowStep::getName).toList());
+        verify(expressionEvaluator).precompile(List.of("[first.output.case]"));
+    }
+
+    @Test
+    void getPlan_shouldUseCachedPlanWithoutRequest() {
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", null)).thenReturn(bundleResponse("v1"));
+
+        ExecutionPlan plan = executionPlanCache.getPlan("workflowUid");
+
+        assertSame(plan, executionPlanCache.getPlan("workflowUid"));
+        verify(workflowServiceClient, times(1)).getWorkflowBundle(any(), any());
+    }
+
+    @Test
+    void getPlan_shouldKeepPlanWhenNotModified() {
+        executionPlanCache = new ExecutionPlanCache(workflowServiceClient, expressionEvaluator, 0);
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", null)).thenReturn(bundleResponse("v1"));
+        FeignException notModified = mock(FeignException.class);
+        when(notModified.status()).thenReturn(HttpStatus.NOT_MODIFIED.value());
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", "\"v1\"")).thenThrow(notModified);
+
+        ExecutionPlan plan = executionPlanCache.getPlan("workflowUid");
+
+        assertSame(plan, executionPlanCache.getPlan("workflowUid"));
+        verify(expressionEvaluator, times(1)).precompile(any());
+    }
+
+    @Test
+    void getPlan_shouldReplacePlanOfNewVersion() {
+        executionPlanCache = new ExecutionPlanCache(workflowServiceClient, expressionEvaluator, 0);
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", null)).thenReturn(bundleResponse("v1"));
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", "\"v1\"")).thenReturn(bundleResponse("v2"));
+
+        executionPlanCache.getPlan("workflowUid");
+
+        assertEquals("v2", executionPlanCache.getPlan("workflowUid").getVersion());
+    }
+
+    @Test
+    void getPlan_shouldReturnNullWhenWorkflowNotFound() {
+        FeignException notFound = mock(FeignException.class);
+        when(notFound.status()).thenReturn(HttpStatus.NOT_FOUND.value());
+        when(workflowServiceClient.getWorkflowBundle(any(), any())).thenThrow(notFound);
+
+        assertNull(executionPlanCache.getPlan("workflowUid"));
+        assertNull(executionPlanCache.getWorkflow("workflowUid"));
+        assertEquals(0, executionPlanCache.size());
+    }
+
+    @Test
+    void newStepInstances_shouldCopyTheDataOfTheTemplate() {
+        when(workflowServiceClient.getWorkflowBundle("workflowUid", null)).thenReturn(bundleResponse("v1"));
+        ExecutionPlan plan = executionPlanCache.getPlan("workflowUid");
+
+        List<WorkflowStepInstance> firstRun = plan.newStepInstances("run1");
+        firstRun.get(0).getInputData().put("key", "changed");
+        firstRun.get(1).getDecisionCases().get(0).getInputData().put("key", "changed");
+        List<WorkflowStepInstance> secondRun = plan.newStepInstances("run2");
+
+        assertEquals("value", secondRun.get(0).getInputData().get("key"));
+        assertEquals("value", secondRun.get(1).getDecisionCases().get(0).getInputData().get("key"));
+        assertEquals("run2", secondRun.get(0).getWorkflowInstanceUid());
+        assertNotEquals(firstRun.get(0).getUid(), secondRun.get(0).getUid());
+    }
+
+    private static ResponseEntity<WorkflowBundle> bundleResponse(String version) {
+        Workflow workflow = new Workflow();
+        workflow.setUid("workflowUid");
+        workflow.setName("workflow");
+        WorkflowStep first = new WorkflowStep();
+        first.setName("first");
+        first.setExecutionOrder(1);
+        first.setInputData(new LinkedHashMap<>(Map.of("key", "value")));
+        WorkflowStep second = new WorkflowStep();
+        second.setName("second");
+        second.setExecutionOrder(2);
+        second.setControlStructure(ControlStructure.SWITCH);
+        second.setSwitchCase("[first.output.case]");
+        DecisionCase decisionCase = new DecisionCase();
+        decisionCase.setName("case");
+        decisionCase.setInputData(new LinkedHashMap<>(Map.of("key", "value")));
+        second.setDecisionCases(new ArrayList<>(List.of(decisionCase)));
+        return ResponseEntity.ok().eTag("\"" + version + "\"").body(new WorkflowBundle(workflow, List.of(second, first), version));
+    }
+}
@@ -0,0 +1,63 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemPayloadStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private FileSystemPayloadStore payloadStore;
+
+    @BeforeEach
+    void setUp() {
+        payloadStore = new FileSystemPayloadStore(directory.toString());
+    }
+
+    @Test
+    void store_shouldLoadStoredPayload() {
+        String payloadId = payloadStore.store("run1", "payload".getBytes());
+
+        assertArrayEquals("payload".getBytes(), payloadStore.load(payloadId));
+    }
+
+    @Test
+    void load_shouldReturnNullForUnknownPayload() {
+        assertNull(payloadStore.load("run1/unknown"));
+    }
+
+    @Test
+    void load_shouldRejectIdsOutsideOfDirectory() {
+        assertThrows(InternalServiceException.class, () -> payloadStore.load("../outside"));
+    }
+
+    @Test
+    void delete_shouldDeleteOnlyThePayload() {
+        String deleted = payloadStore.store("run1", "payload1".getBytes());
+        String kept = payloadStore.store("run1", "payload2".getBytes());
+
+        payloadStore.delete(deleted);
+
+        assertNull(payloadStore.load(deleted));
+        assertNotNull(payloadStore.load(kept));
+    }
+
+    @Test
+    void deleteByWorkflowInstances_shouldDeleteOnlyPayloadsOfRuns() {
+        String deleted = payloadStore.store("run1", "payload1".getBytes());
+        String kept = payloadStore.store("run2", "payload2".getBytes());
+
+        payloadStore.deleteByWorkflowInstances(List.of("run1", "run3"));
+
+        assertNull(payloadStore.load(deleted));
+        assertNotNull(payloadStore.load(kept));
+    }
+}
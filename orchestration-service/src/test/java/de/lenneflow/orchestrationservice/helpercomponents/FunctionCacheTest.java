@@ -0,0 +1,110 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FunctionCacheTest {
+
+    @Mock
+    private FunctionServiceClient functionServiceClient;
+
+    private FunctionCache functionCache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        functionCache = new FunctionCache(functionServiceClient, 300);
+    }
+
+    @Test
+    void getFunction_shouldReadFunctionOnce() {
+        Function function = function("function1");
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function);
+
+        assertSame(function, functionCache.getFunction("function1"));
+        assertSame(function, functionCache.getFunction("function1"));
+
+        verify(functionServiceClient, times(1)).getFunctionByUid("function1");
+    }
+
+    @Test
+    void getFunction_shouldNotCacheUnknownFunction() {
+        assertNull(functionCache.getFunction("unknown"));
+        assertNull(functionCache.getFunction("unknown"));
+
+        verify(functionServiceClient, times(2)).getFunctionByUid("unknown");
+        assertEquals(0, functionCache.size());
+    }
+
+    @Test
+    void getFunction_shouldReadFunctionAgainAfterInvalidation() {
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function("function1"));
+
+        functionCache.getFunction("function1");
+        functionCache.invalidate("function1");
+        functionCache.getFunction("function1");
+
+        verify(functionServiceClient, times(2)).getFunctionByUid("function1");
+    }
+
+    @Test
+    void getFunction_shouldReadExpiredFunctionAgain() {
+        functionCache = new FunctionCache(functionServiceClient, 0);
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function("function1"));
+
+        functionCache.getFunction("function1");
+        functionCache.getFunction("function1");
+
+        verify(functionServiceClient, times(2)).getFunctionByUid("function1");
+    }
+
+    @Test
+    void getFunctions_shouldReadOnlyMissingFunctionsInOneCall() {
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function("function1"));
+        when(functionServiceClient.getFunctionsByUids(List.of("function2", "function3"))).thenReturn(List.of(function("function3"), function("function2")));
+        functionCache.getFunction("function1");
+
+        Map<String, Function> result = functionCache.getFunctions(List.of("function2", "function1", "function3", "function2"));
+
+        assertEquals(List.of("function2", "function1", "function3"), new ArrayList<>(result.keySet()));
+        verify(functionServiceClient, times(1)).getFunctionsByUids(any());
+        assertEquals(3, functionCache.size());
+    }
+
+    @Test
+    void getFunctions_shouldLeaveOutUnknownFunctions() {
+        when(functionServiceClient.getFunctionsByUids(any())).thenReturn(List.of(function("function1")));
+
+        Map<String, Function> result = functionCache.getFunctions(List.of("function1", "unknown"));
+
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey("function1"));
+    }
+
+    @Test
+    void getFunctions_shouldNotCallServiceWhenAllFunctionsAreCached() {
+        when(functionServiceClient.getFunctionByUid("function1")).thenReturn(function("function1"));
+        functionCache.getFunction("function1");
+
+        functionCache.getFunctions(List.of("function1"));
+
+        verify(functionServiceClient, never()).getFunctionsByUids(any());
+    }
+
+    private static Function function(String uid) {
+        Function function = new Function();
+        function.setUid(uid);
+        return function;
+    }
+}
@@ -0,0 +1,78 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.FunctionPayload;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FunctionDispatchClientTest {
+
+    @Mock
+    private CloseableHttpAsyncClient functionHttpClient;
+
+    private FunctionDispatchClient functionDispatchClient;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        functionDispatchClient = new FunctionDispatchClient(functionHttpClient, 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void post_completesWithStatusCode() throws ExecutionException, InterruptedException {
+        ArgumentCaptor<SimpleHttpRequest> request = ArgumentCaptor.forClass(SimpleHttpRequest.class);
+        ArgumentCaptor<FutureCallback<SimpleHttpResponse>> callback = ArgumentCaptor.forClass(FutureCallback.class);
+
+        CompletableFuture<Integer> result = functionDispatchClient.post("http://function:8080/run", new FunctionPayload());
+
+        verify(functionHttpClient).execute(request.capture(), callback.capture());
+        assertEquals("POST", request.getValue().getMethod());
+        assertFalse(result.isDone());
+
+        callback.getValue().completed(SimpleHttpResponse.create(200));
+
+        assertEquals(200, result.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void post_completesExceptionallyWhenRequestFails() {
+        ArgumentCaptor<FutureCallback<SimpleHttpResponse>> callback = ArgumentCaptor.forClass(FutureCallback.class);
+
+        CompletableFuture<Integer> result = functionDispatchClient.post("http://function:8080/run", new FunctionPayload());
+
+        verify(functionHttpClient).execute(any(SimpleHttpRequest.class), callback.capture());
+        callback.getValue().failed(new ConnectException("Connection refused"));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(ConnectException.class, failure.getCause());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void post_completesOnResponseExecutor() throws ExecutionException, InterruptedException {
+        ArgumentCaptor<FutureCallback<SimpleHttpResponse>> callback = ArgumentCaptor.forClass(FutureCallback.class);
+
+        CompletableFuture<String> completingThread = functionDispatchClient.post("http://function:8080/run", new FunctionPayload())
+                .thenApply(statusCode -> Thread.currentThread().getName());
+
+        verify(functionHttpClient).execute(any(SimpleHttpRequest.class), callback.capture());
+        callback.getValue().completed(SimpleHttpResponse.create(200));
+
+        assertTrue(completingThread.get().startsWith("lenneflow-dispatch-response-"));
+    }
+}
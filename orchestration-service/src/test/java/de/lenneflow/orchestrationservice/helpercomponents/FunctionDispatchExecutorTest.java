@@ -0,0 +1,97 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunctionDispatchExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FunctionDispatchExecutor functionDispatchExecutor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        functionDispatchExecutor = new FunctionDispatchExecutor(2, 10, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        functionDispatchExecutor.shutdown();
+    }
+
+    @Test
+    void executeAsync_limitsConcurrentDispatches() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            functionDispatchExecutor.executeAsync(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }, e -> completed.countDown());
+        }
+        Thread.sleep(100);
+
+        assertEquals(2, functionDispatchExecutor.getInFlightCount());
+        assertEquals(3, functionDispatchExecutor.getQueuedCount());
+        assertEquals(2.0, meterRegistry.get("lenneflow.dispatch.in-flight").gauge().value());
+
+        release.countDown();
+
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void executeAsync_callsCompletionWithFailureWhenDispatchThrows() throws InterruptedException {
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        functionDispatchExecutor.executeAsync(() -> {
+            throw new IllegalStateException("error");
+        }, e -> {
+            failure.set(e);
+            completed.countDown();
+        });
+
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.get());
+        assertEquals(0, functionDispatchExecutor.getInFlightCount());
+    }
+
+    @Test
+    void executeAsync_keepsDispatchInFlightUntilFutureCompletes() throws InterruptedException {
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+        CountDownLatch completed = new CountDownLatch(1);
+
+        functionDispatchExecutor.executeAsync(() -> response, e -> completed.countDown());
+        Thread.sleep(100);
+
+        assertEquals(1, functionDispatchExecutor.getInFlightCount());
+        assertEquals(1, completed.getCount());
+
+        response.complete(200);
+
+        assertTrue(completed.await(1, TimeUnit.SECONDS));
+        assertEquals(0, functionDispatchExecutor.getInFlightCount());
+    }
+}
@@ -0,0 +1,173 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InstanceCacheTest {
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    @Mock
+    private WorkflowStepInstanceRepository workflowStepInstanceRepository;
+
+    private InstanceCache instanceCache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        instanceCache = new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100);
+    }
+
+    @Test
+    void getStepInstanceByName_servesActiveRunFromMemory() {
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.RUNNING);
+        WorkflowStepInstance stepInstance = createStep("step1", "instance1");
+        workflowInstance.setStepInstances(new ArrayList<>(List.of(stepInstance)));
+        when(workflowInstanceRepository.findByUid("instance1")).thenReturn(workflowInstance);
+        when(workflowStepInstanceRepository.findByWorkflowInstanceUid("instance1")).thenReturn(List.of(stepInstance));
+
+        assertEquals(stepInstance, instanceCache.getStepInstanceByName("instance1", "step1"));
+        assertEquals(stepInstance, instanceCache.getStepInstance("instance1", stepInstance.getUid()));
+        assertEquals(workflowInstance, instanceCache.getWorkflowInstance("instance1"));
+
+        verify(workflowInstanceRepository, times(1)).findByUid("instance1");
+        verify(workflowStepInstanceRepository, times(1)).findByWorkflowInstanceUid("instance1");
+        verifyNoMoreInteractions(workflowStepInstanceRepository);
+    }
+
+    @Test
+    void getStepInstances_loadsBranchInstancesOfReloadedRun() {
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.RUNNING);
+        WorkflowStepInstance forkStep = createStep("fork", "instance1");
+        WorkflowStepInstance branchStep = createStep("fork-branch1", "instance1");
+        branchStep.setParentStepInstanceUid(forkStep.getUid());
+        //branch instances are not in the step list of the run
+        workflowInstance.setStepInstances(new ArrayList<>(List.of(forkStep)));
+        when(workflowInstanceRepository.findByUid("instance1")).thenReturn(workflowInstance);
+        when(workflowStepInstanceRepository.findByWorkflowInstanceUid("instance1")).thenReturn(List.of(forkStep, branchStep));
+
+        List<WorkflowStepInstance> stepInstances = instanceCache.getStepInstances("instance1");
+
+        assertEquals(2, stepInstances.size());
+        assertTrue(stepInstances.contains(branchStep));
+        assertEquals(branchStep, instanceCache.getStepInstance("instance1", branchStep.getUid()));
+        verify(workflowStepInstanceRepository, never()).findByUid(any());
+    }
+
+    @Test
+    void getStepInstancesByName_readsStepsMissingInMemoryWithOneQuery() {
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.RUNNING);
+        WorkflowStepInstance cachedStep = createStep("step1", "instance1");
+        instanceCache.put(workflowInstance, List.of(cachedStep));
+        WorkflowStepInstance step2 = createStep("step2", "instance1");
+        WorkflowStepInstance step3 = createStep("step3", "instance1");
+        when(workflowStepInstanceRepository.findByWorkflowInstanceUidAndNameIn("instance1", List.of("step2", "step3"))).thenReturn(List.of(step2, step3));
+
+        Map<String, WorkflowStepInstance> result = instanceCache.getStepInstancesByName("instance1", List.of("step1", "step2", "step3"));
+
+        assertEquals(cachedStep, result.get("step1"));
+        assertEquals(step2, result.get("step2"));
+        assertEquals(step3, result.get("step3"));
+        verify(workflowStepInstanceRepository, times(1)).findByWorkflowInstanceUidAndNameIn("instance1", List.of("step2", "step3"));
+    }
+
+    @Test
+    void getStepInstanceByName_inEmbeddedMode_readsStepFromRunDocument() {
+        instanceCache = new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100, StorageMode.EMBEDDED);
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.COMPLETED);
+        WorkflowStepInstance stepInstance = createStep("step1", "instance1");
+        workflowInstance.setEmbeddedStepInstances(new ArrayList<>(List.of(stepInstance)));
+        when(workflowInstanceRepository.findByUid("instance1")).thenReturn(workflowInstance);
+
+        assertEquals(stepInstance, instanceCache.getStepInstanceByName("instance1", "step1"));
+        assertEquals(stepInstance, instanceCache.getStepInstance("instance1", stepInstance.getUid()));
+        assertEquals(List.of(stepInstance), instanceCache.getStepInstances("instance1"));
+        verifyNoInteractions(workflowStepInstanceRepository);
+    }
+
+    @Test
+    void getWorkflowInstance_doesNotCacheTerminatedRuns() {
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.COMPLETED);
+        when(workflowInstanceRepository.findByUid("instance1")).thenReturn(workflowInstance);
+
+        instanceCache.getWorkflowInstance("instance1");
+        instanceCache.getWorkflowInstance("instance1");
+
+        assertEquals(0, instanceCache.size());
+        verify(workflowInstanceRepository, atLeast(2)).findByUid("instance1");
+    }
+
+    @Test
+    void evict_removesRun() {
+        WorkflowInstance workflowInstance = createInstance("instance1", RunStatus.RUNNING);
+        instanceCache.put(workflowInstance, List.of(createStep("step1", "instance1")));
+        assertEquals(1, instanceCache.size());
+
+        instanceCache.evict("instance1");
+
+        assertEquals(0, instanceCache.size());
+        assertEquals(0, instanceCache.weight());
+    }
+
+    @Test
+    void evictPartition_removesOnlyRunsOfThePartition() {
+        instanceCache.put(createInstance("instance1", RunStatus.RUNNING), List.of(createStep("step1", "instance1")));
+        instanceCache.put(createInstance("instance2", RunStatus.RUNNING), List.of(createStep("step1", "instance2")));
+
+        int removed = instanceCache.evictPartition(QueueController.resultPartition("instance1"));
+
+        assertEquals(1, removed);
+        assertEquals(1, instanceCache.size());
+        when(workflowInstanceRepository.findByUid("instance1")).thenReturn(createInstance("instance1", RunStatus.STOPPED));
+        assertEquals(RunStatus.STOPPED, instanceCache.getWorkflowInstance("instance1").getRunStatus());
+        assertNotNull(instanceCache.getWorkflowInstance("instance2"));
+        verify(workflowInstanceRepository, never()).findByUid("instance2");
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedRunWhenWeightLimitIsReached() {
+        instanceCache = new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 5_000, 100);
+        WorkflowInstance first = createInstance("instance1", RunStatus.RUNNING);
+        WorkflowInstance second = createInstance("instance2", RunStatus.RUNNING);
+        WorkflowStepInstance largeStep = createStep("step1", "instance2");
+        largeStep.setOutputData(Map.of("value", "x".repeat(1500)));
+
+        instanceCache.put(first, List.of(createStep("step1", "instance1")));
+        instanceCache.put(second, List.of(largeStep));
+
+        assertEquals(1, instanceCache.size());
+        assertTrue(instanceCache.weight() <= 5_000);
+        assertEquals(second, instanceCache.getWorkflowInstance("instance2"));
+    }
+
+    private WorkflowInstance createInstance(String uid, RunStatus runStatus) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(uid);
+        workflowInstance.setRunStatus(runStatus);
+        return workflowInstance;
+    }
+
+    private WorkflowStepInstance createStep(String name, String workflowInstanceUid) {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid(name + "-" + workflowInstanceUid);
+        stepInstance.setName(name);
+        stepInstance.setWorkflowInstanceUid(workflowInstanceUid);
+        return stepInstance;
+    }
+}
@@ -4,20 +4,24 @@ import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.enums.ControlStructure;
 import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
+import de.lenneflow.orchestrationservice.feignmodels.ForkBranch;
 import de.lenneflow.orchestrationservice.feignmodels.Workflow;
+import de.lenneflow.orchestrationservice.feignmodels.WorkflowStep;
+import de.lenneflow.orchestrationservice.model.ExecutionPlan;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
 import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceRepository;
 import de.lenneflow.orchestrationservice.utils.ExpressionEvaluator;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,9 +29,6 @@ import static org.mockito.Mockito.*;
 
 class InstanceControllerTest {
 
-    @Mock
-    private WorkflowServiceClient workflowServiceClient;
-
     @Mock
     private WorkflowInstanceRepository workflowInstanceRepository;
 
@@ -40,12 +41,18 @@ class InstanceControllerTest {
     @Mock
     private ExpressionEvaluator expressionEvaluator;
 
+    @Mock
+    private TransitionWriter transitionWriter;
+
+    @Mock
+    private PayloadStore payloadStore;
+
     private InstanceController instanceController;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        instanceController = new InstanceController(workflowServiceClient, workflowInstanceRepository, workflowStepInstanceRepository, queueController, expressionEvaluator);
+        instanceController = new InstanceController(workflowInstanceRepository, workflowStepInstanceRepository, queueController, expressionEvaluator, transitionWriter, new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100), new PayloadOffloader(payloadStore, 0, 1_000_000));
     }
 
     @Test
@@ -55,15 +62,76 @@ class InstanceControllerTest {
         String parentInstanceUid = "parentInstanceUid";
         String parentStepInstanceUid = "parentStepInstanceUid";
 
-        when(workflowServiceClient.getStepListByWorkflowId(anyString())).thenReturn(Collections.emptyList());
+        ExecutionPlan plan = new ExecutionPlan(workflow, Collections.emptyList(), "version");
 
-        WorkflowInstance result = instanceController.generateWorkflowInstance(workflow, inputData, parentInstanceUid, parentStepInstanceUid);
+        WorkflowInstance result = instanceController.generateWorkflowInstance(plan, inputData, parentInstanceUid, parentStepInstanceUid);
 
         assertNotNull(result);
         assertEquals(RunStatus.NEW, result.getRunStatus());
         verify(workflowInstanceRepository, times(2)).save(any(WorkflowInstance.class));
     }
 
+    @Test
+    void generateWorkflowInstance_inEmbeddedMode_savesRunWithStepsOnce() {
+        InstanceCache embeddedCache = new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100, StorageMode.EMBEDDED);
+        instanceController = new InstanceController(workflowInstanceRepository, workflowStepInstanceRepository, queueController, expressionEvaluator, transitionWriter, embeddedCache, new PayloadOffloader(payloadStore, 0, 1_000_000));
+        Workflow workflow = new Workflow();
+        WorkflowStep first = new WorkflowStep();
+        first.setName("first");
+        first.setExecutionOrder(1);
+        WorkflowStep second = new WorkflowStep();
+        second.setName("second");
+        second.setExecutionOrder(2);
+        ExecutionPlan plan = new ExecutionPlan(workflow, List.of(second, first), "version");
+
+        WorkflowInstance result = instanceController.generateWorkflowInstance(plan, new HashMap<>(), null, null);
+
+        assertEquals(2, result.getEmbeddedStepInstances().size());
+        assertTrue(result.getStepInstances().isEmpty());
+        assertEquals(RunOrderLabel.FIRST, instanceController.getStartStep(result).getRunOrderLabel());
+        verify(workflowInstanceRepository, times(1)).save(result);
+        verifyNoInteractions(workflowStepInstanceRepository);
+    }
+
+    @Test
+    void generateWorkflowInstance_withOneStep_createsUnlinkedFirstStep() {
+        WorkflowStep only = new WorkflowStep();
+        only.setName("only");
+        only.setExecutionOrder(1);
+        ExecutionPlan plan = new ExecutionPlan(new Workflow(), List.of(only), "version");
+        when(workflowStepInstanceRepository.save(any(WorkflowStepInstance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        WorkflowInstance result = instanceController.generateWorkflowInstance(plan, new HashMap<>(), null, null);
+
+        assertEquals(1, result.getStepInstances().size());
+        WorkflowStepInstance stepInstance = result.getStepInstances().get(0);
+        assertEquals(RunOrderLabel.FIRST, stepInstance.getRunOrderLabel());
+        assertNull(stepInstance.getNextStepId());
+        assertNull(stepInstance.getPreviousStepId());
+    }
+
+    @Test
+    void generateWorkflowInstance_linksStepsInExecutionOrder() {
+        List<WorkflowStep> steps = new ArrayList<>();
+        for (int i = 3; i > 0; i--) {
+            WorkflowStep step = new WorkflowStep();
+            step.setName("step" + i);
+            step.setExecutionOrder(i);
+            steps.add(step);
+        }
+        ExecutionPlan plan = new ExecutionPlan(new Workflow(), steps, "version");
+        when(workflowStepInstanceRepository.save(any(WorkflowStepInstance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<WorkflowStepInstance> stepInstances = instanceController.generateWorkflowInstance(plan, new HashMap<>(), null, null).getStepInstances();
+
+        assertEquals(List.of(RunOrderLabel.FIRST, RunOrderLabel.INTERMEDIATE, RunOrderLabel.LAST), stepInstances.stream().map(WorkflowStepInstance::getRunOrderLabel).toList());
+        assertEquals(stepInstances.get(1).getUid(), stepInstances.get(0).getNextStepId());
+        assertEquals(stepInstances.get(0).getUid(), stepInstances.get(1).getPreviousStepId());
+        assertEquals(stepInstances.get(2).getUid(), stepInstances.get(1).getNextStepId());
+        assertEquals(stepInstances.get(1).getUid(), stepInstances.get(2).getPreviousStepId());
+        assertNull(stepInstances.get(2).getNextStepId());
+    }
+
     @Test
     void mapResultToStepInstance_updatesWorkflowStepInstance() {
         WorkflowStepInstance stepInstance = new WorkflowStepInstance();
@@ -74,7 +142,146 @@ class InstanceControllerTest {
         instanceController.mapResultToStepInstance(stepInstance, resultQueueElement);
 
         assertEquals(RunStatus.COMPLETED, stepInstance.getRunStatus());
-        verify(workflowStepInstanceRepository).save(stepInstance);
+        assertEquals(1, stepInstance.getRunCount());
+        verify(transitionWriter).commit(any(StateTransition.class));
+        verify(workflowStepInstanceRepository, never()).save(any());
+    }
+
+    @Test
+    void applyResult_writesResultConditionally() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setRunStatus(RunStatus.RUNNING);
+        stepInstance.setAttempt(2);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+        resultQueueElement.setAttempt(2);
+        when(transitionWriter.commitConditional(any(StateTransition.class))).thenReturn(true);
+
+        assertTrue(instanceController.applyResult(stepInstance, resultQueueElement));
+
+        ArgumentCaptor<StateTransition> transition = ArgumentCaptor.forClass(StateTransition.class);
+        verify(transitionWriter).commitConditional(transition.capture());
+        assertEquals(Map.of("runStatus", RunStatus.RUNNING, "attempt", 2), transition.getValue().getStepInstanceConditions().get("stepUid"));
+        assertEquals(RunStatus.COMPLETED, stepInstance.getRunStatus());
+        verify(queueController).publishRunStateChange(any());
+    }
+
+    @Test
+    void applyResult_deletesOffloadedOutputOfDroppedResult() {
+        instanceController = new InstanceController(workflowInstanceRepository, workflowStepInstanceRepository, queueController, expressionEvaluator, transitionWriter,
+                new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100), new PayloadOffloader(payloadStore, 1024, 1_000_000));
+        when(payloadStore.store(eq("runUid"), any())).thenReturn("payloadId");
+        when(transitionWriter.commitConditional(any(StateTransition.class))).thenReturn(false);
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setWorkflowInstanceUid("runUid");
+        stepInstance.setRunStatus(RunStatus.RUNNING);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+        resultQueueElement.setOutputData(new HashMap<>(Map.of("text", "x".repeat(4096))));
+
+        assertFalse(instanceController.applyResult(stepInstance, resultQueueElement));
+
+        verify(payloadStore).delete("payloadId");
+    }
+
+    @Test
+    void applyResult_keepsReferencedOutputOfDroppedResult() {
+        when(transitionWriter.commitConditional(any(StateTransition.class))).thenReturn(false);
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setWorkflowInstanceUid("runUid");
+        stepInstance.setRunStatus(RunStatus.RUNNING);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+        //the output was offloaded by the sender, a redelivered result carries the same reference
+        resultQueueElement.setOutputData(new HashMap<>(Map.of(PayloadOffloader.REFERENCE_KEY, "payloadId")));
+
+        assertFalse(instanceController.applyResult(stepInstance, resultQueueElement));
+
+        verify(payloadStore, never()).delete(any());
+    }
+
+    @Test
+    void applyResult_dropsResultOfEarlierAttempt() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setRunStatus(RunStatus.RUNNING);
+        stepInstance.setAttempt(2);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.FAILED);
+        resultQueueElement.setAttempt(1);
+
+        assertFalse(instanceController.applyResult(stepInstance, resultQueueElement));
+
+        assertEquals(RunStatus.RUNNING, stepInstance.getRunStatus());
+        verifyNoInteractions(transitionWriter);
+    }
+
+    @Test
+    void applyResult_dropsResultOfStoppedStep() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setRunStatus(RunStatus.STOPPED);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+
+        assertFalse(instanceController.applyResult(stepInstance, resultQueueElement));
+
+        assertEquals(RunStatus.STOPPED, stepInstance.getRunStatus());
+        verifyNoInteractions(transitionWriter);
+    }
+
+    @Test
+    void mapResultToStepInstance_recordsPartialUpdateInTransition() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.FAILED);
+        resultQueueElement.setFailureReason("failureReason");
+        resultQueueElement.setOutputData(new HashMap<>());
+        StateTransition transition = new StateTransition();
+
+        instanceController.mapResultToStepInstance(stepInstance, resultQueueElement, transition);
+
+        Document setFields = (Document) transition.getStepInstanceUpdates().get("stepUid").getUpdateObject().get("$set");
+        assertEquals(RunStatus.FAILED, setFields.get("runStatus"));
+        assertEquals("failureReason", setFields.get("failureReason"));
+        assertEquals(1, setFields.get("runCount"));
+        verifyNoInteractions(transitionWriter, new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100));
+    }
+
+    @Test
+    void mapResultToStepInstance_offloadsLargeOutput() {
+        instanceController = new InstanceController(workflowInstanceRepository, workflowStepInstanceRepository, queueController, expressionEvaluator, transitionWriter,
+                new InstanceCache(workflowInstanceRepository, workflowStepInstanceRepository, 1_000_000, 100), new PayloadOffloader(payloadStore, 1024, 1_000_000));
+        when(payloadStore.store(eq("runUid"), any())).thenReturn("payloadId");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setWorkflowInstanceUid("runUid");
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+        resultQueueElement.setOutputData(new HashMap<>(Map.of("text", "x".repeat(4096))));
+        StateTransition transition = new StateTransition();
+
+        instanceController.mapResultToStepInstance(stepInstance, resultQueueElement, transition);
+
+        assertEquals("payloadId", stepInstance.getOutputData().get(PayloadOffloader.REFERENCE_KEY));
+        Document setFields = (Document) transition.getStepInstanceUpdates().get("stepUid").getUpdateObject().get("$set");
+        assertSame(stepInstance.getOutputData(), setFields.get("outputData"));
+    }
+
+    @Test
+    void commit_writesTransitionAndPublishesNotifications() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("instanceUid");
+        StateTransition transition = new StateTransition();
+        instanceController.updateRunStatus(workflowInstance, RunStatus.RUNNING, transition);
+        instanceController.setStartTime(workflowInstance, transition);
+
+        instanceController.commit(transition);
+
+        verify(transitionWriter).commit(transition);
+        verify(queueController).publishRunStateChange(any());
     }
 
     @Test
@@ -85,7 +292,7 @@ class InstanceControllerTest {
         instanceController.updateRunStatus(workflowInstance, runStatus);
 
         assertEquals(RunStatus.COMPLETED, workflowInstance.getRunStatus());
-        verify(workflowInstanceRepository).save(workflowInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -96,7 +303,7 @@ class InstanceControllerTest {
         instanceController.updateRunStatus(stepInstance, runStatus);
 
         assertEquals(RunStatus.COMPLETED, stepInstance.getRunStatus());
-        verify(workflowStepInstanceRepository).save(stepInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -106,7 +313,7 @@ class InstanceControllerTest {
         instanceController.setEndTime(workflowInstance);
 
         assertNotNull(workflowInstance.getEndTime());
-        verify(workflowInstanceRepository).save(workflowInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -116,7 +323,7 @@ class InstanceControllerTest {
         instanceController.setStartTime(workflowInstance);
 
         assertNotNull(workflowInstance.getStartTime());
-        verify(workflowInstanceRepository).save(workflowInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -126,7 +333,7 @@ class InstanceControllerTest {
         instanceController.setEndTime(stepInstance);
 
         assertNotNull(stepInstance.getEndTime());
-        verify(workflowStepInstanceRepository).save(stepInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -136,7 +343,7 @@ class InstanceControllerTest {
         instanceController.setStartTime(stepInstance);
 
         assertNotNull(stepInstance.getStartTime());
-        verify(workflowStepInstanceRepository).save(stepInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -147,7 +354,7 @@ class InstanceControllerTest {
         instanceController.updateOutputData(workflowInstance, outputData);
 
         assertEquals(outputData, workflowInstance.getOutputData());
-        verify(workflowInstanceRepository).save(workflowInstance);
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -158,21 +365,7 @@ class InstanceControllerTest {
         instanceController.setFailureReason(workflowInstance, failureReason);
 
         assertEquals(failureReason, workflowInstance.getFailureReason());
-        verify(workflowInstanceRepository).save(workflowInstance);
-    }
-
-    @Test
-    void deleteLastWorkflowInstances_deletesOldWorkflowInstances() {
-        List<WorkflowInstance> instances = new ArrayList<>();
-        WorkflowInstance instance = new WorkflowInstance();
-        instance.setStartTime(LocalDateTime.now().minusDays(10));
-        instances.add(instance);
-
-        when(workflowInstanceRepository.findAll()).thenReturn(instances);
-
-        instanceController.deleteLastWorkflowInstances(5, 1);
-
-        verify(workflowInstanceRepository).deleteAll(anyList());
+        verify(transitionWriter).commit(any(StateTransition.class));
     }
 
     @Test
@@ -188,6 +381,86 @@ class InstanceControllerTest {
         assertNotNull(result);
     }
 
+    @Test
+    void generateBranchStepInstances_createsOneInstancePerBranch() {
+        WorkflowStepInstance forkStepInstance = new WorkflowStepInstance();
+        forkStepInstance.setUid("forkUid");
+        forkStepInstance.setName("fork");
+        forkStepInstance.setWorkflowInstanceUid("workflowInstanceUid");
+        forkStepInstance.setControlStructure(ControlStructure.FORK_JOIN);
+        forkStepInstance.setInputData(new LinkedHashMap<>(Map.of("shared", "value", "key", "forkValue")));
+        ForkBranch first = new ForkBranch("first", "function1", new LinkedHashMap<>(Map.of("key", "branchValue")), 2);
+        ForkBranch second = new ForkBranch("second", "function2", new LinkedHashMap<>(), null);
+        forkStepInstance.setBranches(List.of(first, second));
+
+        List<WorkflowStepInstance> result = instanceController.generateBranchStepInstances(forkStepInstance);
+
+        assertEquals(2, result.size());
+        assertEquals("fork-first", result.get(0).getName());
+        assertEquals("first", result.get(0).getBranchName());
+        assertEquals("forkUid", result.get(0).getParentStepInstanceUid());
+        assertEquals("function1", result.get(0).getFunctionUid());
+        assertEquals("branchValue", result.get(0).getInputData().get("key"));
+        assertEquals("value", result.get(0).getInputData().get("shared"));
+        assertEquals(2, result.get(0).getRetryCount());
+        assertEquals(0, result.get(1).getRetryCount());
+        assertEquals(List.of(result.get(0).getUid(), result.get(1).getUid()), forkStepInstance.getBranchStepInstanceUids());
+        verify(workflowStepInstanceRepository).saveAll(result);
+        verify(transitionWriter).commit(any(StateTransition.class));
+    }
+
+    @Test
+    void generateItemStepInstances_createsOneInstancePerItem() {
+        WorkflowStepInstance forEachStepInstance = new WorkflowStepInstance();
+        forEachStepInstance.setUid("forEachUid");
+        forEachStepInstance.setName("forEach");
+        forEachStepInstance.setWorkflowInstanceUid("workflowInstanceUid");
+        forEachStepInstance.setControlStructure(ControlStructure.FOR_EACH);
+        forEachStepInstance.setFunctionUid("functionUid");
+        forEachStepInstance.setRetryCount(1);
+        forEachStepInstance.setInputData(new LinkedHashMap<>(Map.of("shared", "value")));
+
+        List<WorkflowStepInstance> result = instanceController.generateItemStepInstances(forEachStepInstance, List.of("a", "b"));
+
+        assertEquals(2, result.size());
+        assertEquals("forEach-1", result.get(1).getName());
+        assertEquals(1, result.get(1).getItemIndex());
+        assertEquals("b", result.get(1).getInputData().get("item"));
+        assertEquals(1, result.get(1).getInputData().get("index"));
+        assertEquals("value", result.get(1).getInputData().get("shared"));
+        assertEquals("functionUid", result.get(1).getFunctionUid());
+        assertEquals(1, result.get(1).getRetryCount());
+        assertEquals(RunStatus.NEW, result.get(1).getRunStatus());
+        assertEquals("forEachUid", result.get(1).getParentStepInstanceUid());
+        assertEquals(2, forEachStepInstance.getBranchStepInstanceUids().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generateItemStepInstances_bindsItemsWithoutEvaluatingThem() {
+        WorkflowStepInstance forEachStepInstance = new WorkflowStepInstance();
+        forEachStepInstance.setUid("forEachUid");
+        forEachStepInstance.setName("forEach");
+        forEachStepInstance.setWorkflowInstanceUid("workflowInstanceUid");
+        forEachStepInstance.setControlStructure(ControlStructure.FOR_EACH);
+        forEachStepInstance.setInputData(new LinkedHashMap<>(Map.of("shared", "[fetch.output.value]")));
+        doAnswer(invocation -> {
+            invocation.<Map<String, Object>>getArgument(0).replaceAll((key, value) -> "evaluated");
+            return null;
+        }).when(expressionEvaluator).normalizeInputData(anyMap(), eq("workflowInstanceUid"));
+        Map<String, Object> mapItem = new LinkedHashMap<>(Map.of("path", "[fetch.output.value]"));
+
+        List<WorkflowStepInstance> result = instanceController.generateItemStepInstances(forEachStepInstance, List.of("10/2", mapItem));
+
+        verify(expressionEvaluator, times(1)).normalizeInputData(anyMap(), eq("workflowInstanceUid"));
+        assertEquals("10/2", result.get(0).getInputData().get("item"));
+        assertEquals("evaluated", result.get(0).getInputData().get("shared"));
+        assertEquals("[fetch.output.value]", ((Map<String, Object>) result.get(1).getInputData().get("item")).get("path"));
+        assertEquals("evaluated", result.get(1).getInputData().get("shared"));
+        assertEquals("[fetch.output.value]", forEachStepInstance.getInputData().get("shared"));
+        assertEquals("[fetch.output.value]", mapItem.get("path"));
+    }
+
     @Test
     void getStartStep_returnsFirstStepInstance() {
         WorkflowInstance workflowInstance = new WorkflowInstance();
@@ -0,0 +1,196 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessagePublisherTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private AmqpAdmin admin;
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    private MessagePublisher messagePublisher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (messagePublisher != null) {
+            messagePublisher.stop();
+        }
+    }
+
+    @Test
+    void publish_shouldSendMessagesInOrderWithConfirms() {
+        List<String> sent = new ArrayList<>();
+        doAnswer(invocation -> {
+            sent.add(new String(invocation.<Message>getArgument(2).getBody()));
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+
+        for (int i = 0; i < 25; i++) {
+            messagePublisher.publish("exchange", "routingKey", new Message(String.valueOf(i).getBytes()));
+        }
+
+        verify(rabbitTemplate, timeout(2000).times(25)).send(eq("exchange"), eq("routingKey"), any(Message.class), any(CorrelationData.class));
+        for (int i = 0; i < 25; i++) {
+            assertEquals(String.valueOf(i), sent.get(i));
+        }
+        verifyNoInteractions(admin);
+    }
+
+    @Test
+    void publish_shouldPublishNackedMessageAgain() {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            boolean ack = attempts.incrementAndGet() > 1;
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "NOT_FOUND"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+
+        CompletableFuture<Void> confirm = messagePublisher.publish("exchange", "routingKey", new Message("message".getBytes()));
+
+        assertDoesNotThrow(() -> confirm.get(2, TimeUnit.SECONDS));
+        verify(rabbitTemplate, times(2)).send(eq("exchange"), eq("routingKey"), any(Message.class), any(CorrelationData.class));
+        verify(admin).initialize();
+    }
+
+    @Test
+    void publish_shouldGiveUpAfterMaxAttempts() throws InterruptedException {
+        doAnswer(invocation -> {
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(false, "NOT_FOUND"));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 2);
+
+        CompletableFuture<Void> confirm = messagePublisher.publish("exchange", "routingKey", new Message("message".getBytes()));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> confirm.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(AmqpException.class, failure.getCause());
+        Thread.sleep(300);
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        assertEquals(0, messagePublisher.pendingMessages());
+    }
+
+    @Test
+    void publish_shouldPublishUnconfirmedMessageAgainAfterTimeout() {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() > 1) {
+                invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            }
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 50, 3);
+
+        messagePublisher.publish("exchange", "routingKey", new Message("message".getBytes()));
+
+        verify(rabbitTemplate, timeout(2000).times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void publish_shouldPublishBatchAgainAfterUnexpectedFailure() {
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("error");
+            }
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+
+        CompletableFuture<Void> confirm = messagePublisher.publish("exchange", "routingKey", new Message("message".getBytes()));
+
+        assertDoesNotThrow(() -> confirm.get(2, TimeUnit.SECONDS));
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void confirmsOf_shouldCompleteWhenAllMessagesOfTheActionAreConfirmed() {
+        List<CorrelationData> pending = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            pending.add(invocation.getArgument(3));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+
+        CompletableFuture<Void> confirms = messagePublisher.confirmsOf(() -> {
+            messagePublisher.publish("exchange", "routingKey", new Message("first".getBytes()));
+            messagePublisher.publish("exchange", "routingKey", new Message("second".getBytes()));
+            messagePublisher.publishAndForget("exchange", "routingKey", new Message("notification".getBytes()));
+        });
+
+        verify(rabbitTemplate, timeout(2000).times(3)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        //only the notification is confirmed
+        pending.get(2).getFuture().complete(new CorrelationData.Confirm(true, null));
+        assertFalse(confirms.isDone());
+        pending.get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        pending.get(1).getFuture().complete(new CorrelationData.Confirm(true, null));
+        assertDoesNotThrow(() -> confirms.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void publish_shouldSendWithoutConfirmsIfNotEnabled() {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(false);
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+
+        CompletableFuture<Void> confirm = messagePublisher.publish("exchange", "routingKey", new Message("message".getBytes()));
+
+        assertDoesNotThrow(() -> confirm.get(2, TimeUnit.SECONDS));
+        verify(rabbitTemplate).send(eq("exchange"), eq("routingKey"), any(Message.class));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void stop_shouldPublishBufferedMessages() {
+        doAnswer(invocation -> {
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher = new MessagePublisher(rabbitTemplate, admin, 10, 100, 1000, 3);
+        for (int i = 0; i < 5; i++) {
+            messagePublisher.publish("exchange", "routingKey", new Message(String.valueOf(i).getBytes()));
+        }
+
+        messagePublisher.stop();
+
+        verify(rabbitTemplate, times(5)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        messagePublisher.publish("exchange", "routingKey", new Message("late".getBytes()));
+        verify(rabbitTemplate).send(eq("exchange"), eq("routingKey"), any(Message.class));
+    }
+}
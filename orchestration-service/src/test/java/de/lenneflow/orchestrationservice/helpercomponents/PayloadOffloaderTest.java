@@ -0,0 +1,165 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PayloadOffloaderTest {
+
+    @TempDir
+    Path directory;
+
+    private PayloadStore payloadStore;
+
+    private PayloadOffloader payloadOffloader;
+
+    @BeforeEach
+    void setUp() {
+        payloadStore = spy(new FileSystemPayloadStore(directory.toString()));
+        payloadOffloader = new PayloadOffloader(payloadStore, 1024, 1_000_000);
+    }
+
+    @Test
+    void offload_shouldKeepSmallData() {
+        Map<String, Object> data = Map.of("key", "value");
+
+        assertSame(data, payloadOffloader.offload(data, "run1"));
+        verifyNoInteractions(payloadStore);
+    }
+
+    @Test
+    void offload_shouldReplaceLargeDataByReferenceWithPreview() {
+        Map<String, Object> data = largeData();
+
+        Map<String, Object> reference = payloadOffloader.offload(data, "run1");
+
+        assertTrue(PayloadOffloader.isReference(reference));
+        assertTrue((Long) reference.get(PayloadOffloader.SIZE_KEY) >= 1024);
+        Map<?, ?> preview = (Map<?, ?>) reference.get(PayloadOffloader.PREVIEW_KEY);
+        assertEquals(7, preview.get("count"));
+        assertEquals("[2 items]", preview.get("items"));
+        assertTrue(preview.get("text").toString().endsWith("..."));
+        assertSame(reference, payloadOffloader.offload(reference, "run1"));
+        verify(payloadStore, times(1)).store(eq("run1"), any());
+    }
+
+    @Test
+    void offload_shouldNotOffloadWhenDisabled() {
+        payloadOffloader = new PayloadOffloader(payloadStore, 0, 1_000_000);
+        Map<String, Object> data = largeData();
+
+        assertSame(data, payloadOffloader.offload(data, "run1"));
+    }
+
+    @Test
+    void resolve_shouldLoadStoredDataOnce() {
+        Map<String, Object> reference = payloadOffloader.offload(largeData(), "run1");
+        //a new offloader has an empty cache
+        payloadOffloader = new PayloadOffloader(payloadStore, 1024, 1_000_000);
+
+        Map<String, Object> resolved = payloadOffloader.resolve(reference);
+        payloadOffloader.resolve(reference);
+
+        assertEquals(7, resolved.get("count"));
+        assertEquals(List.of("a", "b"), resolved.get("items"));
+        verify(payloadStore, times(1)).load(any());
+    }
+
+    @Test
+    void resolve_shouldEvictLeastRecentlyUsedPayloadsOverTheByteLimit() {
+        payloadOffloader = new PayloadOffloader(payloadStore, 1024, 3000);
+        Map<String, Object> first = payloadOffloader.offload(largeData(), "run1");
+        Map<String, Object> second = payloadOffloader.offload(largeData(), "run1");
+
+        payloadOffloader.resolve(second);
+        verify(payloadStore, never()).load(any());
+        payloadOffloader.resolve(first);
+
+        verify(payloadStore, times(1)).load(any());
+        assertTrue(payloadOffloader.cachedBytes() <= 3000);
+    }
+
+    @Test
+    void resolve_shouldNotCachePayloadAboveTheByteLimit() {
+        payloadOffloader = new PayloadOffloader(payloadStore, 1024, 1000);
+        Map<String, Object> reference = payloadOffloader.offload(largeData(), "run1");
+
+        payloadOffloader.resolve(reference);
+        payloadOffloader.resolve(reference);
+
+        verify(payloadStore, times(2)).load(any());
+        assertEquals(0, payloadOffloader.cachedBytes());
+    }
+
+    @Test
+    void resolve_shouldReplaceNestedReferences() {
+        Map<String, Object> branchOutput = payloadOffloader.offload(largeData(), "run1");
+        Map<String, Object> forkOutput = new LinkedHashMap<>();
+        forkOutput.put("branch1", branchOutput);
+        forkOutput.put("branch2", Map.of("count", 1));
+
+        Map<String, Object> resolved = payloadOffloader.resolve(forkOutput);
+
+        assertNotSame(forkOutput, resolved);
+        assertEquals(7, ((Map<?, ?>) resolved.get("branch1")).get("count"));
+        assertSame(branchOutput, forkOutput.get("branch1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resolve_shouldReturnUnmodifiableCopyOfOffloadedData() {
+        Map<String, Object> data = largeData();
+        data.put("values", new ArrayList<>(List.of(1, 2)));
+        Map<String, Object> reference = payloadOffloader.offload(data, "run1");
+        data.put("count", 8);
+
+        Map<String, Object> resolved = payloadOffloader.resolve(reference);
+
+        assertEquals(7, resolved.get("count"));
+        assertThrows(UnsupportedOperationException.class, () -> resolved.put("count", 9));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) resolved.get("values")).add(3));
+    }
+
+    @Test
+    void resolve_shouldReturnUnmodifiableLoadedData() {
+        Map<String, Object> reference = payloadOffloader.offload(largeData(), "run1");
+        payloadOffloader = new PayloadOffloader(payloadStore, 1024, 1_000_000);
+
+        Map<String, Object> resolved = payloadOffloader.resolve(reference);
+
+        assertThrows(UnsupportedOperationException.class, () -> resolved.put("count", 9));
+    }
+
+    @Test
+    void resolve_shouldReturnDataWithoutReferences() {
+        Map<String, Object> data = Map.of("list", List.of(Map.of("key", "value")));
+
+        assertSame(data, payloadOffloader.resolve(data));
+        assertNull(payloadOffloader.resolve(null));
+    }
+
+    @Test
+    void resolve_shouldFailForMissingPayload() {
+        Map<String, Object> reference = Map.of(PayloadOffloader.REFERENCE_KEY, "run1/missing");
+
+        assertThrows(InternalServiceException.class, () -> payloadOffloader.resolve(reference));
+    }
+
+    private static Map<String, Object> largeData() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("count", 7);
+        data.put("items", List.of("a", "b"));
+        data.put("text", "x".repeat(2048));
+        return data;
+    }
+}
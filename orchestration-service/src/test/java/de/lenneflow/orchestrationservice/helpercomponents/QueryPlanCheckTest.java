@@ -0,0 +1,67 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.mongodb.client.MongoDatabase;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryPlanCheckTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoDatabase mongoDatabase;
+
+    private QueryPlanCheck queryPlanCheck;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getDb()).thenReturn(mongoDatabase);
+        when(mongoTemplate.getCollectionName(WorkflowStepInstance.class)).thenReturn("workflowStepInstance");
+        when(mongoTemplate.getCollectionName(WorkflowInstance.class)).thenReturn("workflowInstance");
+        queryPlanCheck = new QueryPlanCheck(mongoTemplate, true);
+    }
+
+    @Test
+    void findCollectionScans_withIndexScans_returnsNoQuery() {
+        when(mongoDatabase.runCommand(any(Bson.class))).thenReturn(explain("IXSCAN"));
+
+        assertTrue(queryPlanCheck.findCollectionScans().isEmpty());
+    }
+
+    @Test
+    void findCollectionScans_withCollectionScan_returnsAllQueries() {
+        when(mongoDatabase.runCommand(any(Bson.class))).thenReturn(explain("COLLSCAN"));
+
+        List<String> collectionScans = queryPlanCheck.findCollectionScans();
+
+        assertFalse(collectionScans.isEmpty());
+        assertTrue(collectionScans.contains("WorkflowStepInstanceRepository.findByNameAndWorkflowInstanceUid"));
+    }
+
+    @Test
+    void containsCollectionScan_findsNestedStage() {
+        Document plan = new Document("stage", "SORT").append("inputStages", List.of(new Document("stage", "FETCH"), new Document("stage", "COLLSCAN")));
+
+        assertTrue(QueryPlanCheck.containsCollectionScan(plan));
+        assertFalse(QueryPlanCheck.containsCollectionScan(new Document("stage", "FETCH").append("inputStage", new Document("stage", "IXSCAN"))));
+    }
+
+    private Document explain(String leafStage) {
+        Document winningPlan = new Document("stage", "FETCH").append("inputStage", new Document("stage", leafStage));
+        return new Document("queryPlanner", new Document("winningPlan", winningPlan));
+    }
+}
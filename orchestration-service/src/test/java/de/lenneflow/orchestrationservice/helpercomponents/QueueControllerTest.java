@@ -4,27 +4,31 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.utils.MessageCodec;
 import de.lenneflow.orchestrationservice.utils.Util;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.amqp.core.AmqpAdmin;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.Queue;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class QueueControllerTest {
 
     @Mock
-    private AmqpAdmin admin;
-
-    @Mock
-    private RabbitTemplate rabbitTemplate;
+    private MessagePublisher messagePublisher;
 
     private QueueController queueController;
 
@@ -33,7 +37,7 @@ class QueueControllerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        queueController = new QueueController(admin, rabbitTemplate);
+        queueController = new QueueController(messagePublisher, MessageCodec.JSON_CONTENT_TYPE);
         utilities = Mockito.mockStatic(Util.class);
     }
 
@@ -46,75 +50,142 @@ class QueueControllerTest {
     void publishRunStateChange_sendsRunNotification() {
         RunNotification runNotification = new RunNotification();
         byte[] serializedNotification = "serializedNotification".getBytes();
-        utilities.when(() -> Util.serialize(runNotification)).thenReturn(serializedNotification);
+        utilities.when(() -> Util.serialize(runNotification, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(serializedNotification);
 
         queueController.publishRunStateChange(runNotification);
 
-        verify(admin).declareExchange(any());
-        verify(rabbitTemplate).convertAndSend(QueueController.RUN_STATE_EXCHANGE, QueueController.RUN_STATE_ROUTING, serializedNotification);
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publishAndForget(eq(QueueController.RUN_STATE_EXCHANGE), eq(QueueController.RUN_STATE_ROUTING), message.capture());
+        assertArrayEquals(serializedNotification, message.getValue().getBody());
+        assertEquals(MessageDeliveryMode.PERSISTENT, message.getValue().getMessageProperties().getDeliveryMode());
     }
 
     @Test
     void addFunctionDtoToQueue_sendsQueueElement() {
         QueueElement queueElement = new QueueElement();
         byte[] serializedQueueElement = "serializedQueueElement".getBytes();
-        utilities.when(() -> Util.serialize(queueElement)).thenReturn(serializedQueueElement);
+        utilities.when(() -> Util.serialize(queueElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(serializedQueueElement);
 
         queueController.addFunctionDtoToQueue(queueElement);
 
-        verify(admin).declareQueue(any());
-        verify(admin).declareExchange(any());
-        verify(admin).declareBinding(any());
-        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(serializedQueueElement));
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(QueueController.FUNCTION_QUEUE_EXCHANGE), eq(QueueController.FUNCTION_QUEUE_ROUTING), message.capture());
+        assertArrayEquals(serializedQueueElement, message.getValue().getBody());
     }
 
     @Test
     void addElementToResultQueue_sendsResultQueueElement() {
         ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("instance1");
         byte[] serializedResultQueueElement = "serializedResultQueueElement".getBytes();
-        utilities.when(() -> Util.serialize(resultQueueElement)).thenReturn(serializedResultQueueElement);
+        utilities.when(() -> Util.serialize(resultQueueElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(serializedResultQueueElement);
+        int partition = QueueController.resultPartition("instance1");
+
+        queueController.addElementToResultQueue(resultQueueElement);
+
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(QueueController.FUNCTION_RESULT_EXCHANGE), eq(QueueController.resultPartitionRoutingKey(partition)), message.capture());
+        assertArrayEquals(serializedResultQueueElement, message.getValue().getBody());
+    }
+
+    @Test
+    void addElementToRetryDelayQueue_sendsToDelayQueueOfPartition() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("instance1");
+        resultQueueElement.setRetry(true);
+        byte[] serializedResultQueueElement = "serializedResultQueueElement".getBytes();
+        utilities.when(() -> Util.serialize(resultQueueElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(serializedResultQueueElement);
+        int partition = QueueController.resultPartition("instance1");
+
+        queueController.addElementToRetryDelayQueue(resultQueueElement, 4500);
+
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(eq(QueueController.RETRY_DELAY_EXCHANGE), eq(QueueController.resultPartitionRoutingKey(partition)), message.capture());
+        assertArrayEquals(serializedResultQueueElement, message.getValue().getBody());
+        assertEquals("5", message.getValue().getMessageProperties().getHeader(QueueController.RETRY_DELAY_HEADER));
+    }
+
+    @Test
+    void retryDelayBucketSeconds_roundsUpToTheNextDelayQueue() {
+        assertEquals(1, QueueController.retryDelayBucketSeconds(0));
+        assertEquals(1, QueueController.retryDelayBucketSeconds(1000));
+        assertEquals(5, QueueController.retryDelayBucketSeconds(4500));
+        assertEquals(15, QueueController.retryDelayBucketSeconds(10001));
+        assertEquals(86400, QueueController.retryDelayBucketSeconds(TimeUnit.DAYS.toMillis(2)));
+    }
+
+    @Test
+    void retryDelayQueues_declaresOneDeadLetteringQueuePerDelay() {
+        List<Queue> queues = QueueController.retryDelayQueues().stream().filter(Queue.class::isInstance).map(Queue.class::cast).toList();
+
+        assertEquals(QueueController.RETRY_DELAY_BUCKET_SECONDS.length, queues.size());
+        Queue delayQueue = queues.stream().filter(queue -> queue.getName().equals(QueueController.retryDelayQueueName("5"))).findFirst().orElseThrow();
+        assertEquals(5000, delayQueue.getArguments().get("x-message-ttl"));
+        assertEquals(QueueController.FUNCTION_RESULT_EXCHANGE, delayQueue.getArguments().get("x-dead-letter-exchange"));
+        assertFalse(delayQueue.getArguments().containsKey("x-expires"));
+    }
+
+    @Test
+    void addElementToResultQueue_publishesConfiguredFormat() {
+        queueController = new QueueController(messagePublisher, MessageCodec.SMILE_CONTENT_TYPE);
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("instance1");
+        utilities.when(() -> Util.serialize(resultQueueElement, MessageCodec.SMILE_CONTENT_TYPE)).thenCallRealMethod();
 
         queueController.addElementToResultQueue(resultQueueElement);
 
-        verify(admin).declareQueue(any());
-        verify(admin).declareExchange(any());
-        verify(admin).declareBinding(any());
-        verify(rabbitTemplate).convertAndSend(anyString(), anyString(), eq(serializedResultQueueElement));
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagePublisher).publish(anyString(), anyString(), message.capture());
+        assertEquals(MessageCodec.SMILE_CONTENT_TYPE, message.getValue().getMessageProperties().getContentType());
+    }
+
+    @Test
+    void resultPartition_isStableAndInRange() {
+        assertEquals(QueueController.resultPartition("instance1"), QueueController.resultPartition("instance1"));
+        assertEquals(0, QueueController.resultPartition(null));
+        for (int i = 0; i < 1000; i++) {
+            int partition = QueueController.resultPartition("instance" + i);
+            assertTrue(partition >= 0 && partition < QueueController.RESULT_QUEUE_PARTITIONS);
+        }
+        assertEquals(QueueController.RESULT_QUEUE_PARTITIONS, QueueController.resultPartitionQueueNames().length);
+    }
+
+    @Test
+    void resultPartitionOfQueue_parsesOnlyPartitionQueues() {
+        assertEquals(5, QueueController.resultPartitionOfQueue(QueueController.resultPartitionQueueName(5)));
+        assertEquals(-1, QueueController.resultPartitionOfQueue(QueueController.FUNCTION_RESULT_QUEUE));
+        assertEquals(-1, QueueController.resultPartitionOfQueue(QueueController.FUNCTION_QUEUE));
+        assertEquals(-1, QueueController.resultPartitionOfQueue(QueueController.resultPartitionQueueName(QueueController.RESULT_QUEUE_PARTITIONS)));
+        assertEquals(-1, QueueController.resultPartitionOfQueue(null));
     }
 
     @Test
     void publishRunStateChange_logsErrorOnException() {
         RunNotification runNotification = new RunNotification();
-        utilities.when(() -> Util.serialize(runNotification)).thenThrow(new JsonProcessingException("error") {});
+        utilities.when(() -> Util.serialize(runNotification, MessageCodec.JSON_CONTENT_TYPE)).thenThrow(new JsonProcessingException("error") {});
 
         queueController.publishRunStateChange(runNotification);
 
-        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), anyString());
+        verify(messagePublisher, never()).publishAndForget(anyString(), anyString(), any());
     }
 
     @Test
     void addFunctionDtoToQueue_logsErrorOnException() {
         QueueElement queueElement = new QueueElement();
-        utilities.when(() -> Util.serialize(queueElement)).thenThrow(new JsonProcessingException("error") {});
+        utilities.when(() -> Util.serialize(queueElement, MessageCodec.JSON_CONTENT_TYPE)).thenThrow(new JsonProcessingException("error") {});
 
         queueController.addFunctionDtoToQueue(queueElement);
 
-        verify(admin, never()).declareQueue(any());
-        verify(admin, never()).declareExchange(any());
-        verify(admin, never()).declareBinding(any());
-        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), anyString());
+        verify(messagePublisher, never()).publish(anyString(), anyString(), any());
     }
 
     @Test
     void addElementToResultQueue_logsErrorOnException() {
         ResultQueueElement resultQueueElement = new ResultQueueElement();
-        utilities.when(() -> Util.serialize(resultQueueElement)).thenThrow(new JsonProcessingException("error") {});
+        utilities.when(() -> Util.serialize(resultQueueElement, MessageCodec.JSON_CONTENT_TYPE)).thenThrow(new JsonProcessingException("error") {});
 
-        queueController.addElementToResultQueue(resultQueueElement);
+        assertTrue(queueController.addElementToResultQueue(resultQueueElement).isCompletedExceptionally());
 
-        verify(admin, never()).declareQueue(any());
-        verify(admin, never()).declareExchange(any());
-        verify(admin, never()).declareBinding(any());
-        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), anyString());
+        verify(messagePublisher, never()).publish(anyString(), anyString(), any());
     }
 }
\ No newline at end of file
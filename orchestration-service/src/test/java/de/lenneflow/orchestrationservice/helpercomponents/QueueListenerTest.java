@@ -1,8 +1,16 @@
 package de.lenneflow.orchestrationservice.helpercomponents;
 
+import com.rabbitmq.client.Channel;
+import de.lenneflow.orchestrationservice.dto.FunctionDeploymentEvent;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.enums.DeploymentState;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.utils.MessageCodec;
 import de.lenneflow.orchestrationservice.utils.Util;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,10 +18,16 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.listener.ConsumeOkEvent;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class QueueListenerTest {
@@ -24,6 +38,29 @@ class QueueListenerTest {
     @Mock
     private WorkflowRunner workflowRunner;
 
+    @Mock
+    private Channel channel;
+
+    @Mock
+    private DeploymentTracker deploymentTracker;
+
+    @Mock
+    private FunctionCache functionCache;
+
+    @Mock
+    private RunStateStream runStateStream;
+
+    @Mock
+    private RunCompletionTracker runCompletionTracker;
+
+    @Mock
+    private InstanceCache instanceCache;
+
+    @Mock
+    private MessagePublisher messagePublisher;
+
+    private FunctionDispatchExecutor functionDispatchExecutor;
+
     private QueueListener queueListener;
 
     MockedStatic<Util> utilities;
@@ -31,54 +68,211 @@ class QueueListenerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        queueListener = new QueueListener(admin, workflowRunner);
+        functionDispatchExecutor = new FunctionDispatchExecutor(2, 10, new SimpleMeterRegistry());
+        queueListener = new QueueListener(admin, workflowRunner, functionDispatchExecutor, deploymentTracker, functionCache, runStateStream, runCompletionTracker, instanceCache, messagePublisher);
         utilities = Mockito.mockStatic(Util.class);
+        when(messagePublisher.confirmsOf(any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return CompletableFuture.completedFuture(null);
+        });
     }
 
     @AfterEach
     void tearDown() {
         utilities.close();
+        functionDispatchExecutor.shutdown();
     }
 
     @Test
-    void queueListener_processesQueueElement() {
+    void queueListener_processesQueueElement() throws IOException {
         byte[] serializedElement = "serializedElement".getBytes();
         QueueElement queueElement = new QueueElement();
-        utilities.when(() -> Util.deserializeQueueElement(serializedElement)).thenReturn(queueElement);
+        utilities.when(() -> Util.deserializeQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(queueElement);
+        when(workflowRunner.processFunctionDtoFromQueue(queueElement)).thenReturn(CompletableFuture.completedFuture(null));
 
-        queueListener.queueListener(serializedElement);
+        queueListener.queueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, channel, 1L);
 
         verify(workflowRunner,  timeout(100).times(1)).processFunctionDtoFromQueue(queueElement);
+        verify(channel, timeout(100)).basicAck(1L, false);
     }
 
     @Test
-    void queueListener_logsErrorOnException() {
+    void queueListener_acknowledgesMessageWhenDispatchFails() throws IOException {
         byte[] serializedElement = "serializedElement".getBytes();
-        utilities.when(() -> Util.deserializeQueueElement(serializedElement)).thenThrow(new IOException("error"));
+        QueueElement queueElement = new QueueElement();
+        utilities.when(() -> Util.deserializeQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(queueElement);
+        doThrow(new IllegalStateException("error")).when(workflowRunner).processFunctionDtoFromQueue(queueElement);
+
+        queueListener.queueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, channel, 2L);
 
-        queueListener.queueListener(serializedElement);
+        verify(channel, timeout(100)).basicAck(2L, false);
+    }
+
+    @Test
+    void queueListener_requeuesMessageWhenResultCouldNotBePublished() throws IOException {
+        byte[] serializedElement = "serializedElement".getBytes();
+        QueueElement queueElement = new QueueElement();
+        utilities.when(() -> Util.deserializeQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(queueElement);
+        when(workflowRunner.processFunctionDtoFromQueue(queueElement)).thenReturn(CompletableFuture.failedFuture(new AmqpException("not confirmed")));
+
+        queueListener.queueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, channel, 4L);
+
+        verify(channel, timeout(100)).basicNack(4L, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void queueListener_logsErrorOnException() throws IOException {
+        byte[] serializedElement = "serializedElement".getBytes();
+        utilities.when(() -> Util.deserializeQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenThrow(new IOException("error"));
+
+        queueListener.queueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, channel, 3L);
 
         verify(workflowRunner, never()).processFunctionDtoFromQueue(any());
+        verify(channel).basicReject(3L, false);
     }
 
     @Test
     void resultQueueListener_processesResultQueueElement() {
         byte[] serializedElement = "serializedElement".getBytes();
         ResultQueueElement resultQueueElement = new ResultQueueElement();
-        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement)).thenReturn(resultQueueElement);
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(resultQueueElement);
 
-        queueListener.resultQueueListener(serializedElement);
+        CompletableFuture<Void> confirms = queueListener.resultQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE);
 
         verify(workflowRunner).processResultFromQueue(resultQueueElement);
+        assertTrue(confirms.isDone());
+    }
+
+    @Test
+    void resultQueueListener_returnsFailedFutureWhenPublishedMessagesWereNotConfirmed() {
+        byte[] serializedElement = "serializedElement".getBytes();
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(new ResultQueueElement());
+        when(messagePublisher.confirmsOf(any())).thenReturn(CompletableFuture.failedFuture(new AmqpException("not confirmed")));
+
+        CompletableFuture<Void> confirms = queueListener.resultQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE);
+
+        assertTrue(confirms.isCompletedExceptionally());
+    }
+
+    @Test
+    void resultQueueListener_rejectsResultWhoseProcessingFails() {
+        byte[] serializedElement = "serializedElement".getBytes();
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(resultQueueElement);
+        doThrow(new InternalServiceException("error")).when(workflowRunner).processResultFromQueue(resultQueueElement);
+
+        CompletableFuture<Void> confirms = queueListener.resultQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, confirms::get);
+        assertInstanceOf(AmqpRejectAndDontRequeueException.class, failure.getCause());
     }
 
     @Test
     void resultQueueListener_logsErrorOnException() {
         byte[] serializedElement = "serializedElement".getBytes();
-        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement)).thenThrow(new IOException("error"));
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenThrow(new IOException("error"));
 
-        queueListener.resultQueueListener(serializedElement);
+        queueListener.resultQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE);
 
         verify(workflowRunner, never()).processResultFromQueue(any());
     }
+
+    @Test
+    void resultQueueListener_readsElementInFormatOfContentType() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setStepInstanceId("step1");
+        utilities.when(() -> Util.deserializeResultQueueElement(any(), any())).thenCallRealMethod();
+
+        queueListener.resultPartitionQueueListener(smile(resultQueueElement), MessageCodec.SMILE_CONTENT_TYPE, QueueController.resultPartitionQueueName(3));
+
+        verify(workflowRunner).processResultFromQueue(argThat(element -> "step1".equals(element.getStepInstanceId())));
+    }
+
+    @Test
+    void resultPartitionQueueListener_evictsPartitionOnFirstDeliveryOnly() {
+        byte[] serializedElement = "serializedElement".getBytes();
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(new ResultQueueElement());
+        String queueName = QueueController.resultPartitionQueueName(3);
+
+        queueListener.resultPartitionQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, queueName);
+        queueListener.resultPartitionQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, queueName);
+
+        verify(instanceCache, times(1)).evictPartition(3);
+        verify(workflowRunner, times(2)).processResultFromQueue(any());
+    }
+
+    @Test
+    void onConsumeOk_evictsPartitionAndEvictsAgainOnNextDelivery() {
+        byte[] serializedElement = "serializedElement".getBytes();
+        utilities.when(() -> Util.deserializeResultQueueElement(serializedElement, MessageCodec.JSON_CONTENT_TYPE)).thenReturn(new ResultQueueElement());
+        String queueName = QueueController.resultPartitionQueueName(3);
+        queueListener.resultPartitionQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, queueName);
+
+        queueListener.onConsumeOk(new ConsumeOkEvent(this, queueName, "consumerTag"));
+        queueListener.resultPartitionQueueListener(serializedElement, MessageCodec.JSON_CONTENT_TYPE, queueName);
+
+        verify(instanceCache, times(3)).evictPartition(3);
+    }
+
+    @Test
+    void onConsumeOk_ignoresOtherQueues() {
+        queueListener.onConsumeOk(new ConsumeOkEvent(this, QueueController.FUNCTION_QUEUE, "consumerTag"));
+
+        verifyNoInteractions(instanceCache);
+    }
+
+    @Test
+    void deploymentStateListener_forwardsStateChange() {
+        byte[] serializedEvent = "serializedEvent".getBytes();
+        FunctionDeploymentEvent event = new FunctionDeploymentEvent();
+        event.setFunctionUid("function");
+        event.setDeploymentState(DeploymentState.DEPLOYED);
+        utilities.when(() -> Util.deserializeFunctionDeploymentEvent(serializedEvent)).thenReturn(event);
+
+        queueListener.deploymentStateListener(serializedEvent);
+
+        verify(functionCache).invalidate("function");
+        verify(deploymentTracker).onDeploymentStateChange("function", DeploymentState.DEPLOYED);
+    }
+
+    @Test
+    void deploymentStateListener_logsErrorOnException() {
+        byte[] serializedEvent = "serializedEvent".getBytes();
+        utilities.when(() -> Util.deserializeFunctionDeploymentEvent(serializedEvent)).thenThrow(new IOException("error"));
+
+        queueListener.deploymentStateListener(serializedEvent);
+
+        verify(deploymentTracker, never()).onDeploymentStateChange(any(), any());
+    }
+
+    @Test
+    void runStateListener_forwardsNotification() {
+        RunNotification runNotification = new RunNotification(false, "instance1", null, RunStatus.COMPLETED, "workflow1");
+        utilities.when(() -> Util.deserializeRunNotification(any(), any())).thenCallRealMethod();
+
+        queueListener.runStateListener(smile(runNotification), MessageCodec.SMILE_CONTENT_TYPE);
+
+        verify(runStateStream).onRunStateChange(argThat(notification -> "workflow1".equals(notification.getWorkflowUid())
+                && notification.getStatus() == RunStatus.COMPLETED));
+        verify(runCompletionTracker).onRunStateChange(argThat(notification -> "instance1".equals(notification.getWorkflowInstanceUid())));
+    }
+
+    @Test
+    void runStateListener_logsErrorOnException() {
+        byte[] serializedNotification = "serializedNotification".getBytes();
+        utilities.when(() -> Util.deserializeRunNotification(serializedNotification, null)).thenThrow(new IOException("error"));
+
+        queueListener.runStateListener(serializedNotification, null);
+
+        verify(runStateStream, never()).onRunStateChange(any());
+    }
+
+    private static byte[] smile(Object value) {
+        try {
+            return MessageCodec.encode(value, MessageCodec.SMILE_CONTENT_TYPE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
\ No newline at end of file
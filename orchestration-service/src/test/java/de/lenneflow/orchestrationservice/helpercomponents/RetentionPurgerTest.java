@@ -0,0 +1,87 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.mongodb.client.result.DeleteResult;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RetentionPurgerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private PayloadStore payloadStore;
+
+    private RetentionPurger retentionPurger;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        retentionPurger = new RetentionPurger(mongoTemplate, payloadStore, true, 100, 100, List.of(RunStatus.COMPLETED, RunStatus.FAILED), 1000);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(WorkflowInstance.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(), new Document()));
+    }
+
+    @Test
+    void purgeExpiredRuns_deletesRunsAndTheirStepsWithRangeDeletes() {
+        when(mongoTemplate.find(any(Query.class), eq(WorkflowInstance.class))).thenReturn(List.of(createRun("run1"), createRun("run2")), List.of());
+        when(mongoTemplate.remove(any(Query.class), eq(WorkflowInstance.class))).thenReturn(DeleteResult.acknowledged(2));
+
+        long deleted = retentionPurger.purgeExpiredRuns();
+
+        assertEquals(2, deleted);
+        ArgumentCaptor<Query> stepQuery = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).remove(stepQuery.capture(), eq(WorkflowStepInstance.class));
+        assertTrue(stepQuery.getValue().getQueryObject().toJson().contains("run2"));
+        verify(mongoTemplate, times(1)).remove(any(Query.class), eq(WorkflowInstance.class));
+        verify(payloadStore).deleteByWorkflowInstances(List.of("run1", "run2"));
+    }
+
+    @Test
+    void purgeRunsOverLimit_deletesOnlyTheExcessRunsOfAWorkflow() {
+        Document workflowCount = new Document("_id", "workflow1").append("count", 102);
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(WorkflowInstance.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(workflowCount), new Document()));
+        when(mongoTemplate.find(any(Query.class), eq(WorkflowInstance.class))).thenReturn(List.of(createRun("run1"), createRun("run2")), List.of());
+        when(mongoTemplate.remove(any(Query.class), eq(WorkflowInstance.class))).thenReturn(DeleteResult.acknowledged(2));
+
+        long deleted = retentionPurger.purgeRunsOverLimit();
+
+        assertEquals(2, deleted);
+        ArgumentCaptor<Query> runQuery = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(runQuery.capture(), eq(WorkflowInstance.class));
+        assertEquals(2, runQuery.getAllValues().get(0).getLimit());
+    }
+
+    @Test
+    void purge_whenDisabled_doesNothing() {
+        retentionPurger = new RetentionPurger(mongoTemplate, payloadStore, false, 100, 100, List.of(RunStatus.COMPLETED), 1000);
+
+        retentionPurger.purge();
+
+        verify(mongoTemplate, never()).find(any(Query.class), eq(WorkflowInstance.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), any(Class.class));
+    }
+
+    private WorkflowInstance createRun(String uid) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(uid);
+        return workflowInstance;
+    }
+}
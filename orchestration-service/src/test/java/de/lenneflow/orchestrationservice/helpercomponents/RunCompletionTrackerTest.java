@@ -0,0 +1,100 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RunCompletionTrackerTest {
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    private RunCompletionTracker runCompletionTracker;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        runCompletionTracker = new RunCompletionTracker(workflowInstanceRepository, 300);
+    }
+
+    @Test
+    void onRunStateChange_shouldCompleteWaitingRequestWithFinalState() {
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = runCompletionTracker.awaitCompletion(run("run1"), 30);
+        WorkflowInstance finished = run("run1");
+        finished.setRunStatus(RunStatus.COMPLETED);
+        when(workflowInstanceRepository.findByUid("run1")).thenReturn(finished);
+
+        runCompletionTracker.onRunStateChange(new RunNotification(false, "run1", null, RunStatus.COMPLETED, "workflow1"));
+
+        ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(RunStatus.COMPLETED, ((WorkflowExecution) response.getBody()).getRunStatus());
+        assertEquals(0, runCompletionTracker.awaitedRuns());
+    }
+
+    @Test
+    void onRunStateChange_shouldCompleteWaitingRequestWhenRunIsStopped() {
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = runCompletionTracker.awaitCompletion(run("run1"), 30);
+        WorkflowInstance stopped = run("run1");
+        stopped.setRunStatus(RunStatus.STOPPED);
+        when(workflowInstanceRepository.findByUid("run1")).thenReturn(stopped);
+
+        runCompletionTracker.onRunStateChange(new RunNotification(false, "run1", null, RunStatus.STOPPED, "workflow1"));
+
+        ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(RunStatus.STOPPED, ((WorkflowExecution) response.getBody()).getRunStatus());
+        assertEquals(0, runCompletionTracker.awaitedRuns());
+    }
+
+    @Test
+    void onRunStateChange_shouldIgnoreStepsAndRunningStates() {
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = runCompletionTracker.awaitCompletion(run("run1"), 30);
+
+        runCompletionTracker.onRunStateChange(new RunNotification(true, "run1", "step1", RunStatus.COMPLETED, "workflow1"));
+        runCompletionTracker.onRunStateChange(new RunNotification(false, "run1", null, RunStatus.PAUSED, "workflow1"));
+        runCompletionTracker.onRunStateChange(new RunNotification(false, "run2", null, RunStatus.COMPLETED, "workflow1"));
+
+        assertFalse(result.hasResult());
+        assertEquals(1, runCompletionTracker.awaitedRuns());
+        verifyNoInteractions(workflowInstanceRepository);
+    }
+
+    @Test
+    void onRunStateChange_shouldReturnFinalStatusWhenRunCannotBeLoaded() {
+        DeferredResult<ResponseEntity<WorkflowExecution>> result = runCompletionTracker.awaitCompletion(run("run1"), 30);
+        when(workflowInstanceRepository.findByUid("run1")).thenThrow(new IllegalStateException("error"));
+
+        runCompletionTracker.onRunStateChange(new RunNotification(false, "run1", null, RunStatus.FAILED, "workflow1"));
+
+        ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+        assertEquals(RunStatus.FAILED, ((WorkflowExecution) response.getBody()).getRunStatus());
+        assertEquals("run1", ((WorkflowExecution) response.getBody()).getRunUid());
+    }
+
+    @Test
+    void cancel_shouldRemoveWaitingRequests() {
+        runCompletionTracker.awaitCompletion(run("run1"), 30);
+
+        runCompletionTracker.cancel("run1");
+
+        assertEquals(0, runCompletionTracker.awaitedRuns());
+    }
+
+    private static WorkflowInstance run(String uid) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(uid);
+        return workflowInstance;
+    }
+}
@@ -0,0 +1,107 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.lenneflow.orchestrationservice.dto.RunPage;
+import de.lenneflow.orchestrationservice.dto.RunSummary;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.exception.PayloadNotValidException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RunListingTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private RunListing runListing;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        runListing = new RunListing(mongoTemplate, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void listRuns_withMoreRunsThanLimit_returnsCursorOfLastRun() {
+        WorkflowInstance first = createRun("run3", LocalDateTime.of(2024, 1, 3, 0, 0));
+        WorkflowInstance second = createRun("run2", LocalDateTime.of(2024, 1, 2, 0, 0));
+        WorkflowInstance third = createRun("run1", LocalDateTime.of(2024, 1, 1, 0, 0));
+        when(mongoTemplate.find(any(Query.class), eq(WorkflowInstance.class))).thenReturn(List.of(first, second, third));
+
+        RunPage page = runListing.listRuns("workflow1", RunStatus.COMPLETED, null, null, null, 2);
+
+        assertEquals(2, page.getRuns().size());
+        assertEquals("run2", page.getRuns().get(1).getRunUid());
+        assertNotNull(page.getNextCursor());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(WorkflowInstance.class));
+        assertEquals(3, query.getValue().getLimit());
+        assertFalse(query.getValue().getFieldsObject().containsKey("stepInstances"));
+        assertTrue(query.getValue().getFieldsObject().containsKey("runStatus"));
+    }
+
+    @Test
+    void listRuns_withCursor_continuesAfterLastRun() {
+        WorkflowInstance last = createRun("run2", LocalDateTime.of(2024, 1, 2, 0, 0));
+        when(mongoTemplate.find(any(Query.class), eq(WorkflowInstance.class))).thenReturn(List.of(last));
+        String cursor = runListing.listRuns(null, null, null, null, null, 1).getNextCursor();
+        assertNull(cursor);
+
+        RunPage page = runListing.listRuns(null, null, null, null, RunListing.encodeCursor(new RunSummary(last)), 1);
+
+        assertNull(page.getNextCursor());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(query.capture(), eq(WorkflowInstance.class));
+        String queryJson = query.getAllValues().get(1).getQueryObject().toString();
+        assertTrue(queryJson.contains("$or"));
+        assertTrue(queryJson.contains("run2"));
+    }
+
+    @Test
+    void listRuns_withInvalidCursor_throwsPayloadNotValidException() {
+        assertThrows(PayloadNotValidException.class, () -> runListing.listRuns(null, null, null, null, "not-a-cursor", 10));
+    }
+
+    @Test
+    void listRuns_withTooLargeLimit_throwsPayloadNotValidException() {
+        assertThrows(PayloadNotValidException.class, () -> runListing.listRuns(null, null, null, null, null, RunListing.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void streamRuns_writesOneLinePerRun() throws IOException {
+        when(mongoTemplate.stream(any(Query.class), eq(WorkflowInstance.class)))
+                .thenReturn(Stream.of(createRun("run2", LocalDateTime.of(2024, 1, 2, 0, 0)), createRun("run1", LocalDateTime.of(2024, 1, 1, 0, 0))));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        runListing.streamRuns(null, null, null, null, outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"runUid\":\"run2\""));
+        assertTrue(lines[1].contains("\"runUid\":\"run1\""));
+    }
+
+    private WorkflowInstance createRun(String uid, LocalDateTime startTime) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(uid);
+        workflowInstance.setStartTime(startTime);
+        workflowInstance.setRunStatus(RunStatus.COMPLETED);
+        return workflowInstance;
+    }
+}
@@ -0,0 +1,212 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.exception.ResourceNotFoundException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RunStateStreamTest {
+
+    @Mock
+    private WorkflowInstanceRepository workflowInstanceRepository;
+
+    private final List<RecordingEmitter> emitters = new ArrayList<>();
+
+    private RunStateStream runStateStream;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(workflowInstanceRepository.findByUid("run1")).thenReturn(workflowInstance("run1", RunStatus.RUNNING));
+        runStateStream = recordingStream(15);
+    }
+
+    @AfterEach
+    void tearDown() {
+        runStateStream.stop();
+    }
+
+    @Test
+    void flush_shouldSendLastChangeOfEveryStepOfTheRun() {
+        runStateStream.subscribeToRun("run1", true);
+
+        runStateStream.onRunStateChange(stepNotification("run1", "step1", RunStatus.RUNNING));
+        runStateStream.onRunStateChange(stepNotification("run1", "step1", RunStatus.COMPLETED));
+        runStateStream.onRunStateChange(stepNotification("run1", "step2", RunStatus.RUNNING));
+        runStateStream.onRunStateChange(stepNotification("run2", "step3", RunStatus.RUNNING));
+        runStateStream.flush();
+
+        RecordingEmitter emitter = emitters.get(0);
+        assertEquals(1, emitter.events.size());
+        List<RunNotification> changes = emitter.events.get(0);
+        assertEquals(2, changes.size());
+        assertEquals("step1", changes.get(0).getWorkflowStepInstanceUid());
+        assertEquals(RunStatus.COMPLETED, changes.get(0).getStatus());
+        assertEquals("step2", changes.get(1).getWorkflowStepInstanceUid());
+
+        runStateStream.flush();
+        assertEquals(1, emitter.events.size());
+    }
+
+    @Test
+    void flush_shouldSendOnlyRunChangesOfTheWorkflowWithoutSteps() {
+        runStateStream.subscribeToWorkflow("workflow1", false);
+
+        runStateStream.onRunStateChange(runNotification("run1", "workflow1", RunStatus.RUNNING));
+        runStateStream.onRunStateChange(stepNotification("run1", "step1", RunStatus.RUNNING));
+        runStateStream.onRunStateChange(runNotification("run2", "workflow2", RunStatus.RUNNING));
+        runStateStream.onRunStateChange(runNotification("run3", "workflow1", RunStatus.COMPLETED));
+        runStateStream.flush();
+
+        List<RunNotification> changes = emitters.get(0).events.get(0);
+        assertEquals(2, changes.size());
+        assertEquals("run1", changes.get(0).getWorkflowInstanceUid());
+        assertEquals("run3", changes.get(1).getWorkflowInstanceUid());
+        assertFalse(emitters.get(0).completed);
+        assertEquals(1, runStateStream.subscribers());
+    }
+
+    @Test
+    void flush_shouldCloseRunStreamAfterRunFinished() {
+        runStateStream.subscribeToRun("run1", false);
+
+        runStateStream.onRunStateChange(runNotification("run1", "workflow1", RunStatus.FAILED));
+        runStateStream.flush();
+
+        assertEquals(RunStatus.FAILED, emitters.get(0).events.get(0).get(0).getStatus());
+        assertTrue(emitters.get(0).completed);
+        assertEquals(0, runStateStream.subscribers());
+    }
+
+    @Test
+    void flush_shouldCloseRunStreamAfterRunStopped() {
+        runStateStream.subscribeToRun("run1", true);
+
+        runStateStream.onRunStateChange(stepNotification("run1", "step1", RunStatus.STOPPED));
+        runStateStream.onRunStateChange(runNotification("run1", "workflow1", RunStatus.STOPPED));
+        runStateStream.flush();
+
+        assertEquals(2, emitters.get(0).events.get(0).size());
+        assertTrue(emitters.get(0).completed);
+        assertEquals(0, runStateStream.subscribers());
+    }
+
+    @Test
+    void subscribeToRun_shouldSendStatusOnceAndCloseWhenRunAlreadyFinished() {
+        when(workflowInstanceRepository.findByUid("run1")).thenReturn(workflowInstance("run1", RunStatus.COMPLETED));
+
+        runStateStream.subscribeToRun("run1", true);
+        runStateStream.flush();
+
+        List<RunNotification> changes = emitters.get(0).events.get(0);
+        assertEquals(1, changes.size());
+        assertEquals(RunStatus.COMPLETED, changes.get(0).getStatus());
+        assertEquals("workflow1", changes.get(0).getWorkflowUid());
+        assertTrue(emitters.get(0).completed);
+        assertEquals(0, runStateStream.subscribers());
+    }
+
+    @Test
+    void subscribeToRun_shouldThrowWhenRunDoesNotExist() {
+        assertThrows(ResourceNotFoundException.class, () -> runStateStream.subscribeToRun("unknown", true));
+
+        assertEquals(0, runStateStream.subscribers());
+    }
+
+    @Test
+    void flush_shouldSendHeartbeatWithoutChanges() {
+        runStateStream.stop();
+        runStateStream = recordingStream(0);
+        runStateStream.subscribeToRun("run1", true);
+
+        runStateStream.flush();
+
+        assertEquals(0, emitters.get(0).events.size());
+        assertEquals(1, emitters.get(0).heartbeats);
+    }
+
+    @Test
+    void flush_shouldRemoveSubscriberWhenSendFails() {
+        runStateStream.subscribeToRun("run1", true);
+        emitters.get(0).failing = true;
+
+        runStateStream.onRunStateChange(runNotification("run1", "workflow1", RunStatus.RUNNING));
+        runStateStream.flush();
+
+        assertEquals(0, runStateStream.subscribers());
+    }
+
+    private RunStateStream recordingStream(long heartbeatSeconds) {
+        return new RunStateStream(workflowInstanceRepository, 60_000, 60_000, heartbeatSeconds) {
+            @Override
+            SseEmitter newEmitter() {
+                RecordingEmitter emitter = new RecordingEmitter();
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    private static WorkflowInstance workflowInstance(String runUid, RunStatus status) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(runUid);
+        workflowInstance.setWorkflowUid("workflow1");
+        workflowInstance.setRunStatus(status);
+        return workflowInstance;
+    }
+
+    private static RunNotification stepNotification(String runUid, String stepUid, RunStatus status) {
+        return new RunNotification(true, runUid, stepUid, status, "workflow1");
+    }
+
+    private static RunNotification runNotification(String runUid, String workflowUid, RunStatus status) {
+        return new RunNotification(false, runUid, null, status, workflowUid);
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        private final List<List<RunNotification>> events = new ArrayList<>();
+
+        private int heartbeats;
+
+        private boolean completed;
+
+        private boolean failing;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+                if (data.getData() instanceof List<?> changes) {
+                    events.add((List<RunNotification>) changes);
+                    return;
+                }
+            }
+            heartbeats++;
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+            super.complete();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TimeoutSchedulerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private QueueController queueController;
+
+    private TimeoutScheduler timeoutScheduler;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        timeoutScheduler = new TimeoutScheduler(mongoTemplate, queueController, 10, 8, StorageMode.REFERENCED);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timeoutScheduler.stop();
+    }
+
+    @Test
+    void scheduleStep_publishesTimedOutResultWithAttempt() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepInstanceId");
+        stepInstance.setWorkflowInstanceUid("workflowInstanceId");
+        stepInstance.setAttempt(2);
+        stepInstance.setTimeOutInSeconds(1);
+        stepInstance.setStartTime(LocalDateTime.now().minusSeconds(5));
+
+        timeoutScheduler.scheduleStep(stepInstance);
+
+        ArgumentCaptor<ResultQueueElement> captor = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController, timeout(2000)).addElementToResultQueue(captor.capture());
+        assertEquals(RunStatus.TIMED_OUT, captor.getValue().getRunStatus());
+        assertEquals("stepInstanceId", captor.getValue().getStepInstanceId());
+        assertEquals("workflowInstanceId", captor.getValue().getWorkflowInstanceId());
+        assertEquals(2, captor.getValue().getAttempt());
+    }
+
+    @Test
+    void scheduleStep_withoutTimeOut_schedulesNothing() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepInstanceId");
+        stepInstance.setStartTime(LocalDateTime.now());
+
+        timeoutScheduler.scheduleStep(stepInstance);
+
+        assertEquals(0, timeoutScheduler.pendingTimeouts());
+    }
+
+    @Test
+    void cancelStep_preventsTimedOutResult() throws InterruptedException {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepInstanceId");
+        stepInstance.setTimeOutInSeconds(1);
+        stepInstance.setStartTime(LocalDateTime.now().minusNanos(900_000_000));
+
+        timeoutScheduler.scheduleStep(stepInstance);
+        timeoutScheduler.cancelStep("stepInstanceId");
+        Thread.sleep(300);
+
+        verify(queueController, never()).addElementToResultQueue(any());
+        assertEquals(0, timeoutScheduler.pendingTimeouts());
+    }
+
+    @Test
+    void scheduleRun_publishesTimedOutResultWithoutStep() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        workflowInstance.setTimeOutInSeconds(1);
+        workflowInstance.setStartTime(LocalDateTime.now().minusSeconds(5));
+
+        timeoutScheduler.scheduleRun(workflowInstance);
+
+        ArgumentCaptor<ResultQueueElement> captor = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController, timeout(2000)).addElementToResultQueue(captor.capture());
+        assertEquals(RunStatus.TIMED_OUT, captor.getValue().getRunStatus());
+        assertNull(captor.getValue().getStepInstanceId());
+    }
+
+    @Test
+    void scheduleRun_withoutTimeOut_schedulesNothing() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setTimeOutInSeconds(Long.MAX_VALUE);
+        workflowInstance.setStartTime(LocalDateTime.now());
+
+        timeoutScheduler.scheduleRun(workflowInstance);
+
+        assertEquals(0, timeoutScheduler.pendingTimeouts());
+    }
+}
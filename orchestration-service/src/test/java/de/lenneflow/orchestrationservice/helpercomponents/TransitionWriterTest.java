@@ -0,0 +1,228 @@
+package de.lenneflow.orchestrationservice.helpercomponents;
+
+import com.mongodb.client.result.UpdateResult;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import de.lenneflow.orchestrationservice.enums.StorageMode;
+import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.model.WorkflowInstance;
+import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
+import org.junit.jupiter.api.BeforeEach;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TransitionWriterTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations instanceOperations;
+
+    @Mock
+    private BulkOperations stepOperations;
+
+    private TransitionWriter transitionWriter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, WorkflowInstance.class)).thenReturn(instanceOperations);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, WorkflowStepInstance.class)).thenReturn(stepOperations);
+        transitionWriter = new TransitionWriter(mongoTemplate, 500);
+    }
+
+    @Test
+    void commit_writesOnePartialUpdatePerDocument() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("instanceUid");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+
+        StateTransition transition = new StateTransition()
+                .set(workflowInstance, "runStatus", RunStatus.COMPLETED)
+                .set(workflowInstance, "endTime", LocalDateTime.now())
+                .set(stepInstance, "runStatus", RunStatus.COMPLETED)
+                .set(stepInstance, "runCount", 1);
+
+        transitionWriter.commit(transition);
+
+        verify(instanceOperations, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(stepOperations, times(1)).updateOne(any(Query.class), any(Update.class));
+        verify(instanceOperations).execute();
+        verify(stepOperations).execute();
+        verify(mongoTemplate, never()).save(any());
+    }
+
+    @Test
+    void commit_inEmbeddedMode_writesPositionalUpdateOfRunDocument() {
+        transitionWriter = new TransitionWriter(mongoTemplate, 500, StorageMode.EMBEDDED);
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setWorkflowInstanceUid("instanceUid");
+
+        transitionWriter.commit(new StateTransition().set(stepInstance, "runStatus", RunStatus.COMPLETED));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(instanceOperations).updateOne(query.capture(), update.capture());
+        assertEquals("stepUid", query.getValue().getQueryObject().get("embeddedStepInstances.uid"));
+        assertEquals(RunStatus.COMPLETED, ((Document) update.getValue().getUpdateObject().get("$set")).get("embeddedStepInstances.$.runStatus"));
+        verifyNoInteractions(stepOperations);
+    }
+
+    @Test
+    void toEmbeddedUpdate_rewritesEveryOperatorToThePositionalPath() {
+        Update stepUpdate = new Update().set("runStatus", RunStatus.RUNNING).unset("failureReason").inc("runCount", 1);
+
+        Document embeddedUpdate = TransitionWriter.toEmbeddedUpdate(stepUpdate).getUpdateObject();
+
+        assertEquals(RunStatus.RUNNING, ((Document) embeddedUpdate.get("$set")).get("embeddedStepInstances.$.runStatus"));
+        assertTrue(((Document) embeddedUpdate.get("$unset")).containsKey("embeddedStepInstances.$.failureReason"));
+        assertEquals(1, ((Document) embeddedUpdate.get("$inc")).get("embeddedStepInstances.$.runCount"));
+    }
+
+    @Test
+    void toEmbeddedUpdate_rejectsRename() {
+        Update stepUpdate = new Update().rename("outputData", "previousOutputData");
+
+        assertThrows(InternalServiceException.class, () -> TransitionWriter.toEmbeddedUpdate(stepUpdate));
+    }
+
+    @Test
+    void commit_skipsEmptyTransition() {
+        transitionWriter.commit(new StateTransition());
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void commit_throwsInternalServiceException_whenBulkWriteFails() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        when(stepOperations.execute()).thenThrow(new IllegalStateException("error"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(WorkflowStepInstance.class))).thenThrow(new IllegalStateException("error"));
+
+        StateTransition transition = new StateTransition().set(stepInstance, "runStatus", RunStatus.FAILED);
+
+        assertThrows(InternalServiceException.class, () -> transitionWriter.commit(transition));
+    }
+
+    @Test
+    void commit_writesUpdatesOneAtATime_whenBulkWriteFails() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("instanceUid");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        when(stepOperations.execute()).thenThrow(new IllegalStateException("error"));
+
+        StateTransition transition = new StateTransition()
+                .set(workflowInstance, "runStatus", RunStatus.RUNNING)
+                .set(stepInstance, "runStatus", RunStatus.COMPLETED);
+
+        assertDoesNotThrow(() -> transitionWriter.commit(transition));
+        verify(instanceOperations, times(1)).execute();
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(WorkflowStepInstance.class));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(WorkflowInstance.class));
+    }
+
+    @Test
+    void commitConditional_writesRemainingChanges_whenConditionMatches() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("instanceUid");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(WorkflowStepInstance.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        StateTransition transition = new StateTransition()
+                .expect(stepInstance, "runStatus", RunStatus.RUNNING)
+                .expect(stepInstance, "attempt", 2)
+                .set(stepInstance, "runStatus", RunStatus.COMPLETED)
+                .set(workflowInstance, "runStatus", RunStatus.COMPLETED);
+
+        assertTrue(transitionWriter.commitConditional(transition));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateFirst(query.capture(), any(Update.class), eq(WorkflowStepInstance.class));
+        assertEquals(RunStatus.RUNNING, query.getValue().getQueryObject().get("runStatus"));
+        assertEquals(2, query.getValue().getQueryObject().get("attempt"));
+        verify(instanceOperations).updateOne(any(Query.class), any(Update.class));
+        verifyNoInteractions(stepOperations);
+    }
+
+    @Test
+    void commitConditional_writesNothingElse_whenConditionDoesNotMatch() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("instanceUid");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(WorkflowStepInstance.class))).thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        StateTransition transition = new StateTransition()
+                .expect(stepInstance, "runStatus", RunStatus.RUNNING)
+                .set(stepInstance, "runStatus", RunStatus.COMPLETED)
+                .set(workflowInstance, "runStatus", RunStatus.COMPLETED);
+
+        assertFalse(transitionWriter.commitConditional(transition));
+
+        verifyNoInteractions(instanceOperations, stepOperations);
+    }
+
+    @Test
+    void expect_rejectsASecondConditionalStepInstance() {
+        WorkflowStepInstance first = new WorkflowStepInstance();
+        first.setUid("first");
+        WorkflowStepInstance second = new WorkflowStepInstance();
+        second.setUid("second");
+        StateTransition transition = new StateTransition().expect(first, "runStatus", RunStatus.RUNNING);
+
+        assertThrows(IllegalStateException.class, () -> transition.expect(second, "runStatus", RunStatus.RUNNING));
+    }
+
+    @Test
+    void commitConditional_rejectsTransitionWithoutConditionalUpdate() {
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        WorkflowStepInstance otherStepInstance = new WorkflowStepInstance();
+        otherStepInstance.setUid("otherStepUid");
+
+        StateTransition transition = new StateTransition()
+                .expect(stepInstance, "runStatus", RunStatus.RUNNING)
+                .set(otherStepInstance, "runStatus", RunStatus.COMPLETED);
+
+        assertThrows(IllegalArgumentException.class, () -> transitionWriter.commitConditional(transition));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void commitConditional_inEmbeddedMode_matchesTheEmbeddedStepInstance() {
+        transitionWriter = new TransitionWriter(mongoTemplate, 500, StorageMode.EMBEDDED);
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setUid("stepUid");
+        stepInstance.setWorkflowInstanceUid("instanceUid");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(WorkflowInstance.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        StateTransition transition = new StateTransition()
+                .expect(stepInstance, "runStatus", RunStatus.RUNNING)
+                .set(stepInstance, "runStatus", RunStatus.COMPLETED);
+
+        assertTrue(transitionWriter.commitConditional(transition));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(WorkflowInstance.class));
+        assertTrue(query.getValue().getQueryObject().containsKey("embeddedStepInstances"));
+        assertEquals(RunStatus.COMPLETED, ((Document) update.getValue().getUpdateObject().get("$set")).get("embeddedStepInstances.$.runStatus"));
+    }
+}
@@ -1,16 +1,19 @@
 package de.lenneflow.orchestrationservice.helpercomponents;
 
+import de.lenneflow.orchestrationservice.dto.FunctionPayload;
 import de.lenneflow.orchestrationservice.dto.QueueElement;
 import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
 import de.lenneflow.orchestrationservice.dto.WorkflowExecution;
+import de.lenneflow.orchestrationservice.enums.BackoffStrategy;
 import de.lenneflow.orchestrationservice.enums.ControlStructure;
 import de.lenneflow.orchestrationservice.enums.DeploymentState;
+import de.lenneflow.orchestrationservice.enums.RunCommand;
 import de.lenneflow.orchestrationservice.enums.RunOrderLabel;
 import de.lenneflow.orchestrationservice.enums.RunStatus;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
-import de.lenneflow.orchestrationservice.feignclients.FunctionServiceClient;
-import de.lenneflow.orchestrationservice.feignclients.WorkflowServiceClient;
+import de.lenneflow.orchestrationservice.exception.ResourceNotFoundException;
 import de.lenneflow.orchestrationservice.feignmodels.Function;
+import de.lenneflow.orchestrationservice.feignmodels.RetryPolicy;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
@@ -21,15 +24,15 @@ import org.junit.jupiter.api.Test;
 import org.mockito.*;
 
 import org.mockito.verification.Timeout;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.amqp.AmqpException;
 
+import java.net.ConnectException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -37,10 +40,10 @@ import static org.mockito.Mockito.*;
 class WorkflowRunnerTest {
 
     @Mock
-    private FunctionServiceClient functionServiceClient;
+    private FunctionCache functionCache;
 
     @Mock
-    private WorkflowServiceClient workflowServiceClient;
+    private ExecutionPlanCache executionPlanCache;
 
     @Mock
     private WorkflowInstanceRepository workflowInstanceRepository;
@@ -58,7 +61,19 @@ class WorkflowRunnerTest {
     private ExpressionEvaluator expressionEvaluator;
 
     @Mock
-    private RestTemplate restTemplate;
+    private FunctionDispatchClient functionDispatchClient;
+
+    @Mock
+    private InstanceCache instanceCache;
+
+    @Mock
+    private TimeoutScheduler timeoutScheduler;
+
+    @Mock
+    private DeploymentTracker deploymentTracker;
+
+    @Mock
+    private PayloadOffloader payloadOffloader;
 
     @InjectMocks
     private WorkflowRunner workflowRunner;
@@ -66,6 +81,12 @@ class WorkflowRunnerTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(instanceController.applyResult(any(WorkflowStepInstance.class), any(ResultQueueElement.class))).thenReturn(true);
+        when(payloadOffloader.offload(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(payloadOffloader.resolve(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(queueController.addElementToResultQueue(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(queueController.addElementToRetryDelayQueue(any(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+        when(queueController.addFunctionDtoToQueue(any())).thenReturn(CompletableFuture.completedFuture(null));
     }
 
     @Test
@@ -75,25 +96,70 @@ class WorkflowRunnerTest {
         firstStepInstance.setControlStructure(ControlStructure.SIMPLE);
 
         when(instanceController.getStartStep(workflowInstance)).thenReturn(firstStepInstance);
-        when(functionServiceClient.getFunctionByUid(any())).thenReturn(new Function());
+        when(functionCache.getFunction(any())).thenReturn(new Function());
 
         WorkflowExecution result = workflowRunner.startWorkflow(workflowInstance);
 
         assertNotNull(result);
-        verify(instanceController).setStartTime(workflowInstance);
+        verify(instanceController).setStartTime(eq(workflowInstance), any(StateTransition.class));
     }
 
     @Test
-    void stopWorkflow_shouldStopWorkflow() {
+    void stopWorkflow_shouldSendStopToResultPartitionOfRun() {
         String workflowInstanceId = "workflowInstanceId";
         WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(workflowInstanceId);
 
         when(workflowInstanceRepository.findByUid(workflowInstanceId)).thenReturn(workflowInstance);
 
         WorkflowExecution result = workflowRunner.stopWorkflow(workflowInstanceId);
 
         assertNotNull(result);
-        verify(instanceController, atLeast(1)).updateRunStatus(workflowInstance, RunStatus.STOPPED);
+        ArgumentCaptor<ResultQueueElement> command = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(command.capture());
+        assertEquals(RunCommand.TERMINATE, command.getValue().getCommand());
+        assertEquals(RunStatus.STOPPED, command.getValue().getRunStatus());
+        assertEquals(workflowInstanceId, command.getValue().getWorkflowInstanceId());
+        verifyNoInteractions(instanceController, instanceCache);
+    }
+
+    @Test
+    void stopWorkflow_shouldThrowWhenRunDoesNotExist() {
+        assertThrows(ResourceNotFoundException.class, () -> workflowRunner.stopWorkflow("unknown"));
+        verify(queueController, never()).addElementToResultQueue(any());
+    }
+
+    @Test
+    void processResultFromQueue_shouldStopRunOnTerminateCommand() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        workflowInstance.setRunStatus(RunStatus.RUNNING);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+
+        workflowRunner.processResultFromQueue(command(RunCommand.TERMINATE, RunStatus.STOPPED));
+
+        verify(instanceController).updateRunStatus(eq(workflowInstance), eq(RunStatus.STOPPED), any(StateTransition.class));
+        verify(instanceCache).evict("workflowInstanceId");
+    }
+
+    @Test
+    void processResultFromQueue_shouldIgnoreCommandOfFinishedRun() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        workflowInstance.setRunStatus(RunStatus.COMPLETED);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+
+        workflowRunner.processResultFromQueue(command(RunCommand.TERMINATE, RunStatus.STOPPED));
+
+        verifyNoInteractions(instanceController);
+    }
+
+    private static ResultQueueElement command(RunCommand runCommand, RunStatus runStatus) {
+        ResultQueueElement commandElement = new ResultQueueElement();
+        commandElement.setWorkflowInstanceId("workflowInstanceId");
+        commandElement.setCommand(runCommand);
+        commandElement.setRunStatus(runStatus);
+        return commandElement;
     }
 
     @Test
@@ -104,14 +170,13 @@ class WorkflowRunnerTest {
         queueElement.setStepInstanceId("stepInstanceId");
         queueElement.setWorkflowInstanceId("workflowInstanceId");
 
-        ResponseEntity<Void> responseEntity = mock(ResponseEntity.class);
-        when(responseEntity.getStatusCode()).thenReturn(HttpStatus.OK);
-        when(restTemplate.exchange(eq("serviceUrl"), eq(HttpMethod.POST), any(HttpEntity.class), eq(Void.class)))
-                .thenReturn(responseEntity);
+        when(functionDispatchClient.post(eq("serviceUrl"), any(FunctionPayload.class)))
+                .thenReturn(CompletableFuture.completedFuture(200));
 
-        workflowRunner.processFunctionDtoFromQueue(queueElement);
+        workflowRunner.processFunctionDtoFromQueue(queueElement).join();
 
-        verify(restTemplate).exchange(eq("serviceUrl"), eq(HttpMethod.POST), any(HttpEntity.class), eq(Void.class));
+        verify(functionDispatchClient).post(eq("serviceUrl"), any(FunctionPayload.class));
+        verify(queueController, never()).addElementToResultQueue(any(ResultQueueElement.class));
     }
 
     @Test
@@ -124,13 +189,75 @@ class WorkflowRunnerTest {
         WorkflowInstance workflowInstance = new WorkflowInstance();
         WorkflowStepInstance workflowStepInstance = new WorkflowStepInstance();
 
-        when(workflowInstanceRepository.findByUid("workflowInstanceId")).thenReturn(workflowInstance);
-        when(workflowStepInstanceRepository.findByUid("stepInstanceId")).thenReturn(workflowStepInstance);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "stepInstanceId")).thenReturn(workflowStepInstance);
 
         workflowRunner.processResultFromQueue(resultQueueElement);
 
-        verify(instanceController).setEndTime(workflowStepInstance);
-        verify(instanceController).mapResultToStepInstance(workflowStepInstance, resultQueueElement);
+        verify(instanceController).applyResult(workflowStepInstance, resultQueueElement);
+        verify(instanceCache).refresh(workflowStepInstance);
+    }
+
+    @Test
+    void processResultFromQueue_shouldDropStaleResult() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setStepInstanceId("stepInstanceId");
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+        resultQueueElement.setAttempt(1);
+
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        WorkflowStepInstance workflowStepInstance = new WorkflowStepInstance();
+        workflowStepInstance.setRunOrderLabel(RunOrderLabel.LAST);
+
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "stepInstanceId")).thenReturn(workflowStepInstance);
+        when(instanceController.applyResult(workflowStepInstance, resultQueueElement)).thenReturn(false);
+
+        workflowRunner.processResultFromQueue(resultQueueElement);
+
+        verify(instanceCache, never()).refresh(any());
+        verify(instanceController, never()).getNextWorkflowStepInstance(any());
+        verify(instanceCache, never()).evict(any());
+    }
+
+    @Test
+    void processResultFromQueue_shouldTerminateTimedOutRun() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setRunStatus(RunStatus.TIMED_OUT);
+        resultQueueElement.setFailureReason("timed out");
+
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        workflowInstance.setRunStatus(RunStatus.RUNNING);
+
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+
+        workflowRunner.processResultFromQueue(resultQueueElement);
+
+        verify(instanceController).updateRunStatus(eq(workflowInstance), eq(RunStatus.TIMED_OUT), any(StateTransition.class));
+        verify(instanceController).setFailureReason(eq(workflowInstance), eq("timed out"), any(StateTransition.class));
+        verify(timeoutScheduler).cancelRun("workflowInstanceId");
+        verify(instanceController, never()).applyResult(any(), any());
+    }
+
+    @Test
+    void processResultFromQueue_shouldDropResultOfFinishedRun() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setStepInstanceId("stepInstanceId");
+        resultQueueElement.setRunStatus(RunStatus.TIMED_OUT);
+
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setRunStatus(RunStatus.STOPPED);
+
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+
+        workflowRunner.processResultFromQueue(resultQueueElement);
+
+        verify(instanceController, never()).applyResult(any(), any());
+        verify(instanceController, never()).updateRunStatus(any(WorkflowInstance.class), any(RunStatus.class), any(StateTransition.class));
     }
 
     @Test
@@ -144,16 +271,90 @@ class WorkflowRunnerTest {
 
     @Test
     void startWorkflow_shouldDeployFunctionsFirst() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        mockUndeployedStartStep(workflowInstance);
+        when(deploymentTracker.awaitDeployment(any())).thenReturn(new CompletableFuture<>());
+
+        WorkflowExecution result = workflowRunner.startWorkflow(workflowInstance);
+
+        assertNotNull(result);
+        verify(instanceController).updateRunStatus(workflowInstance, RunStatus.DEPLOYING_FUNCTIONS);
+        verify(deploymentTracker).requestDeployment("function");
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+    }
+
+    @Test
+    void startWorkflow_shouldRunStepWhenFunctionsAreDeployed() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        mockUndeployedStartStep(workflowInstance);
+        CompletableFuture<Void> deployment = new CompletableFuture<>();
+        when(deploymentTracker.awaitDeployment(List.of("function"))).thenReturn(deployment);
+
+        workflowRunner.startWorkflow(workflowInstance);
+        deployment.complete(null);
+
+        ArgumentCaptor<ResultQueueElement> command = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(command.capture());
+        assertEquals(RunCommand.RUN_DEPLOYED_STEP, command.getValue().getCommand());
+        assertEquals("firstStep", command.getValue().getStepInstanceId());
+        verify(functionCache).invalidate("function");
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+
+        WorkflowStepInstance firstStepInstance = instanceController.getStartStep(workflowInstance);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "firstStep")).thenReturn(firstStepInstance);
+        workflowRunner.processResultFromQueue(command.getValue());
+
+        verify(instanceController).updateRunStatus(workflowInstance, RunStatus.RUNNING);
+        verify(queueController).addFunctionDtoToQueue(any(QueueElement.class));
+    }
 
+    @Test
+    void startWorkflow_shouldTerminateRunWhenDeploymentFails() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        mockUndeployedStartStep(workflowInstance);
+        CompletableFuture<Void> deployment = new CompletableFuture<>();
+        when(deploymentTracker.awaitDeployment(any())).thenReturn(deployment);
+
+        workflowRunner.startWorkflow(workflowInstance);
+        deployment.completeExceptionally(new InternalServiceException("not deployed"));
+
+        ArgumentCaptor<ResultQueueElement> command = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(command.capture());
+        assertEquals(RunCommand.TERMINATE, command.getValue().getCommand());
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        workflowRunner.processResultFromQueue(command.getValue());
+
+        verify(instanceController).updateRunStatus(eq(workflowInstance), eq(RunStatus.FAILED_WITH_TERMINAL_ERROR), any(StateTransition.class));
+        verify(instanceController).setFailureReason(eq(workflowInstance), eq("not deployed"), any(StateTransition.class));
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+    }
+
+    @Test
+    void startWorkflow_shouldFailWhenFunctionIsNotLazilyDeployed() {
         WorkflowInstance workflowInstance = new WorkflowInstance();
         workflowInstance.setUid("workflowInstanceId");
+        Function undeployedFunction = mockUndeployedStartStep(workflowInstance);
+        undeployedFunction.setLazyDeployment(false);
 
+        assertThrows(InternalServiceException.class, () -> workflowRunner.startWorkflow(workflowInstance));
+        verify(deploymentTracker, never()).awaitDeployment(any());
+        verify(deploymentTracker, never()).requestDeployment(any());
+    }
+
+    private Function mockUndeployedStartStep(WorkflowInstance workflowInstance) {
         WorkflowStepInstance firstStepInstance = new WorkflowStepInstance();
-        firstStepInstance.setWorkflowInstanceUid("workflowInstanceId");
+        firstStepInstance.setUid("firstStep");
+        firstStepInstance.setWorkflowInstanceUid(workflowInstance.getUid());
         firstStepInstance.setControlStructure(ControlStructure.SIMPLE);
+        firstStepInstance.setFunctionUid("function");
 
         Function undeployedFunction = new Function();
         undeployedFunction.setUid("function");
+        undeployedFunction.setName("function");
         undeployedFunction.setDeploymentState(DeploymentState.UNDEPLOYED);
         undeployedFunction.setLazyDeployment(true);
 
@@ -161,13 +362,10 @@ class WorkflowRunnerTest {
         stepList.add(firstStepInstance);
 
         when(instanceController.getStartStep(workflowInstance)).thenReturn(firstStepInstance);
-        when(workflowStepInstanceRepository.findByWorkflowInstanceUid(any())).thenReturn(stepList);
-        when(functionServiceClient.getFunctionByUid(any())).thenReturn(new Function(), undeployedFunction);
-
-        WorkflowExecution result = workflowRunner.startWorkflow(workflowInstance);
-
-        assertNotNull(result);
-        verify(instanceController, timeout(500)).updateRunStatus(workflowInstance, RunStatus.DEPLOYING_FUNCTIONS);
+        when(instanceCache.getStepInstances(any())).thenReturn(stepList);
+        when(functionCache.getFunction("function")).thenReturn(undeployedFunction);
+        when(functionCache.getFunctions(Set.of("function"))).thenReturn(Map.of("function", undeployedFunction));
+        return undeployedFunction;
     }
 
     @Test
@@ -178,16 +376,45 @@ class WorkflowRunnerTest {
         queueElement.setStepInstanceId("stepInstanceId");
         queueElement.setWorkflowInstanceId("workflowInstanceId");
 
-        ResponseEntity<Void> responseEntity = mock(ResponseEntity.class);
-        when(responseEntity.getStatusCode()).thenReturn(HttpStatus.INTERNAL_SERVER_ERROR);
-        when(restTemplate.exchange(eq("serviceUrl"), eq(HttpMethod.POST), any(HttpEntity.class), eq(Void.class)))
-                .thenReturn(responseEntity);
+        when(functionDispatchClient.post(eq("serviceUrl"), any(FunctionPayload.class)))
+                .thenReturn(CompletableFuture.completedFuture(500));
 
-        workflowRunner.processFunctionDtoFromQueue(queueElement);
+        workflowRunner.processFunctionDtoFromQueue(queueElement).join();
 
         verify(queueController).addElementToResultQueue(any(ResultQueueElement.class));
     }
 
+    @Test
+    void processFunctionDtoFromQueue_shouldHandleConnectionFailure() {
+        QueueElement queueElement = new QueueElement();
+        queueElement.setServiceUrl("serviceUrl");
+        queueElement.setStepInstanceId("stepInstanceId");
+        queueElement.setWorkflowInstanceId("workflowInstanceId");
+
+        when(functionDispatchClient.post(eq("serviceUrl"), any(FunctionPayload.class)))
+                .thenReturn(CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+
+        workflowRunner.processFunctionDtoFromQueue(queueElement).join();
+
+        verify(queueController).addElementToResultQueue(argThat(element -> element.getRunStatus() == RunStatus.CANCELED));
+    }
+
+    @Test
+    void processFunctionDtoFromQueue_shouldFailWhenCanceledResultIsNotConfirmed() {
+        QueueElement queueElement = new QueueElement();
+        queueElement.setServiceUrl("serviceUrl");
+        queueElement.setStepInstanceId("stepInstanceId");
+        queueElement.setWorkflowInstanceId("workflowInstanceId");
+
+        when(functionDispatchClient.post(eq("serviceUrl"), any(FunctionPayload.class)))
+                .thenReturn(CompletableFuture.completedFuture(500));
+        when(queueController.addElementToResultQueue(any())).thenReturn(CompletableFuture.failedFuture(new AmqpException("not confirmed")));
+
+        CompletableFuture<Void> result = workflowRunner.processFunctionDtoFromQueue(queueElement);
+
+        assertTrue(result.isCompletedExceptionally());
+    }
+
     @Test
     void processResultFromQueue_shouldTerminateWorkflowRun() {
         ResultQueueElement resultQueueElement = new ResultQueueElement();
@@ -200,52 +427,407 @@ class WorkflowRunnerTest {
         WorkflowStepInstance workflowStepInstance = new WorkflowStepInstance();
         workflowStepInstance.setRunOrderLabel(RunOrderLabel.LAST);
 
-        when(workflowInstanceRepository.findByUid("workflowInstanceId")).thenReturn(workflowInstance);
-        when(workflowStepInstanceRepository.findByUid("stepInstanceId")).thenReturn(workflowStepInstance);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "stepInstanceId")).thenReturn(workflowStepInstance);
         when(instanceController.getNextWorkflowStepInstance(workflowStepInstance)).thenReturn(null);
-        doNothing().when(instanceController).deleteLastWorkflowInstances(anyInt(), anyInt());
 
         workflowRunner.processResultFromQueue(resultQueueElement);
 
-         verify(instanceController).deleteLastWorkflowInstances(100, 100);
+        verify(instanceController).setEndTime(eq(workflowInstance), any(StateTransition.class));
+        verify(instanceCache).evict(workflowInstance.getUid());
+    }
+
+    @Test
+    void processResultFromQueue_shouldTerminateRunOfWorkflowWithOneStep() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setStepInstanceId("stepInstanceId");
+        resultQueueElement.setRunStatus(RunStatus.COMPLETED);
+
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        WorkflowStepInstance workflowStepInstance = new WorkflowStepInstance();
+        workflowStepInstance.setRunOrderLabel(RunOrderLabel.FIRST);
+
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "stepInstanceId")).thenReturn(workflowStepInstance);
+        when(instanceController.getNextWorkflowStepInstance(workflowStepInstance)).thenReturn(null);
+
+        workflowRunner.processResultFromQueue(resultQueueElement);
+
+        verify(instanceController).setEndTime(eq(workflowInstance), any(StateTransition.class));
+        verify(instanceCache).evict(workflowInstance.getUid());
+    }
+
+    @Test
+    void processResultFromQueue_shouldRetryFailedLastStep() {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setStepInstanceId("stepInstanceId");
+        resultQueueElement.setRunStatus(RunStatus.FAILED);
+
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        WorkflowStepInstance workflowStepInstance = new WorkflowStepInstance();
+        workflowStepInstance.setUid("stepInstanceId");
+        workflowStepInstance.setRunOrderLabel(RunOrderLabel.LAST);
+        workflowStepInstance.setRunStatus(RunStatus.FAILED);
+        workflowStepInstance.setRetryCount(1);
+        workflowStepInstance.setRetryPolicy(new RetryPolicy(BackoffStrategy.FIXED, 5, 2, 0));
+
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "stepInstanceId")).thenReturn(workflowStepInstance);
+
+        workflowRunner.processResultFromQueue(resultQueueElement);
+
+        verify(queueController).addElementToRetryDelayQueue(argThat(element -> element.isRetry() && element.getStepInstanceId().equals("stepInstanceId")), eq(5000L));
+        verify(instanceController, never()).setEndTime(any(WorkflowInstance.class), any(StateTransition.class));
+        verify(instanceCache, never()).evict(any());
     }
 
     @Test
     void pauseWorkflow_shouldPauseWorkflow() {
         String workflowInstanceId = "workflowInstanceId";
         WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(workflowInstanceId);
+        workflowInstance.setRunStatus(RunStatus.RUNNING);
+        WorkflowStepInstance runningStep = new WorkflowStepInstance();
+        runningStep.setRunStatus(RunStatus.RUNNING);
 
         when(workflowInstanceRepository.findByUid(workflowInstanceId)).thenReturn(workflowInstance);
+        when(instanceCache.getWorkflowInstance(workflowInstanceId)).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstances(workflowInstanceId)).thenReturn(List.of(runningStep));
 
         WorkflowExecution result = workflowRunner.pauseWorkflow(workflowInstanceId);
 
         assertNotNull(result);
+        verify(instanceController, never()).updateRunStatus(any(WorkflowInstance.class), any(RunStatus.class));
+        ArgumentCaptor<ResultQueueElement> command = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(command.capture());
+        assertEquals(RunCommand.PAUSE, command.getValue().getCommand());
+
+        workflowRunner.processResultFromQueue(command.getValue());
+
         verify(instanceController).updateRunStatus(workflowInstance, RunStatus.PAUSED);
+        verify(instanceController).updateRunStatus(runningStep, RunStatus.PAUSED);
     }
 
     @Test
     void resumeWorkflow_shouldResumeWorkflow() {
         String workflowInstanceId = "workflowInstanceId";
         WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid(workflowInstanceId);
+        workflowInstance.setRunStatus(RunStatus.PAUSED);
 
         when(workflowInstanceRepository.findByUid(workflowInstanceId)).thenReturn(workflowInstance);
+        when(instanceCache.getWorkflowInstance(workflowInstanceId)).thenReturn(workflowInstance);
 
         WorkflowExecution result = workflowRunner.resumeWorkflow(workflowInstanceId);
 
         assertNotNull(result);
+        ArgumentCaptor<ResultQueueElement> command = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(command.capture());
+        assertEquals(RunCommand.RESUME, command.getValue().getCommand());
+
+        workflowRunner.processResultFromQueue(command.getValue());
+
         verify(instanceController).updateRunStatus(workflowInstance, RunStatus.RUNNING);
     }
 
+    @Test
+    void resumeWorkflow_shouldJoinForkWhoseBranchFinishedWhilePaused() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance first = createBranch("first", RunStatus.COMPLETED);
+        WorkflowStepInstance second = createBranch("second", RunStatus.RUNNING);
+        stubBranches(forkStepInstance, first, second);
+        WorkflowInstance workflowInstance = instanceCache.getWorkflowInstance("workflowInstanceId");
+        workflowInstance.setRunStatus(RunStatus.RUNNING);
+        when(instanceCache.getStepInstances("workflowInstanceId")).thenReturn(List.of(forkStepInstance, first, second));
+        doAnswer(invocation -> {
+            invocation.<WorkflowStepInstance>getArgument(0).setRunStatus(invocation.getArgument(1));
+            return null;
+        }).when(instanceController).updateRunStatus(any(WorkflowStepInstance.class), any(RunStatus.class));
+        doAnswer(invocation -> {
+            invocation.<WorkflowInstance>getArgument(0).setRunStatus(invocation.getArgument(1));
+            return null;
+        }).when(instanceController).updateRunStatus(any(WorkflowInstance.class), any(RunStatus.class));
+
+        workflowRunner.processResultFromQueue(createCommand(RunCommand.PAUSE));
+        assertEquals(RunStatus.PAUSED, forkStepInstance.getRunStatus());
+        second.setRunStatus(RunStatus.COMPLETED);
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.COMPLETED));
+        verify(queueController, never()).addElementToResultQueue(any(ResultQueueElement.class));
+
+        workflowRunner.processResultFromQueue(createCommand(RunCommand.RESUME));
+
+        assertEquals(RunStatus.RUNNING, forkStepInstance.getRunStatus());
+        verify(queueController).addElementToResultQueue(argThat(element -> element.getStepInstanceId().equals("forkUid")
+                && element.getRunStatus() == RunStatus.COMPLETED));
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+    }
+
+    private static ResultQueueElement createCommand(RunCommand command) {
+        ResultQueueElement commandElement = new ResultQueueElement();
+        commandElement.setWorkflowInstanceId("workflowInstanceId");
+        commandElement.setCommand(command);
+        return commandElement;
+    }
+
     @Test
     void getCurrentExecutionState_shouldReturnCurrentState() {
         String workflowInstanceId = "workflowInstanceId";
         WorkflowInstance workflowInstance = new WorkflowInstance();
 
-        when(workflowInstanceRepository.findByUid(workflowInstanceId)).thenReturn(workflowInstance);
+        when(instanceCache.getWorkflowInstance(workflowInstanceId)).thenReturn(workflowInstance);
 
         WorkflowExecution result = workflowRunner.getCurrentExecutionState(workflowInstanceId);
 
         assertNotNull(result);
         assertEquals(workflowInstance.getName(), result.getWorkflowName());
     }
-}
\ No newline at end of file
+
+    @Test
+    void processResultFromQueue_shouldWaitForRemainingBranches() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance first = createBranch("first", RunStatus.COMPLETED);
+        WorkflowStepInstance second = createBranch("second", RunStatus.RUNNING);
+        stubBranches(forkStepInstance, first, second);
+
+        workflowRunner.processResultFromQueue(createBranchResult(first, RunStatus.COMPLETED));
+
+        verify(queueController, never()).addElementToResultQueue(any(ResultQueueElement.class));
+    }
+
+    @Test
+    void processResultFromQueue_shouldJoinWhenAllBranchesCompleted() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance first = createBranch("first", RunStatus.COMPLETED);
+        WorkflowStepInstance second = createBranch("second", RunStatus.COMPLETED);
+        stubBranches(forkStepInstance, first, second);
+
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.COMPLETED));
+
+        ArgumentCaptor<ResultQueueElement> captor = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(captor.capture());
+        assertEquals("forkUid", captor.getValue().getStepInstanceId());
+        assertEquals(RunStatus.COMPLETED, captor.getValue().getRunStatus());
+        assertEquals(List.of("first", "second"), new ArrayList<>(captor.getValue().getOutputData().keySet()));
+        assertEquals(forkStepInstance.getAttempt(), captor.getValue().getAttempt());
+    }
+
+    @Test
+    void processResultFromQueue_shouldJoinWhenJoinCountIsReached() {
+        WorkflowStepInstance forkStepInstance = createForkStep(1);
+        WorkflowStepInstance first = createBranch("first", RunStatus.RUNNING);
+        WorkflowStepInstance second = createBranch("second", RunStatus.COMPLETED);
+        stubBranches(forkStepInstance, first, second);
+
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.COMPLETED));
+
+        verify(queueController).addElementToResultQueue(argThat(element -> element.getRunStatus() == RunStatus.COMPLETED));
+    }
+
+    @Test
+    void processResultFromQueue_shouldFailForkWhenBranchFails() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance first = createBranch("first", RunStatus.RUNNING);
+        WorkflowStepInstance second = createBranch("second", RunStatus.FAILED);
+        stubBranches(forkStepInstance, first, second);
+
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.FAILED));
+
+        verify(queueController).addElementToResultQueue(argThat(element -> element.getRunStatus() == RunStatus.FAILED
+                && element.getStepInstanceId().equals("forkUid")));
+    }
+
+    @Test
+    void processResultFromQueue_shouldDelayRetryOfFailedBranch() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance branch = createBranch("first", RunStatus.FAILED);
+        branch.setRetryCount(2);
+        branch.setAttempt(1);
+        branch.setRetryPolicy(new RetryPolicy(BackoffStrategy.FIXED, 5, 2, 0));
+        stubBranches(forkStepInstance, branch);
+
+        workflowRunner.processResultFromQueue(createBranchResult(branch, RunStatus.FAILED));
+
+        verify(queueController).addElementToRetryDelayQueue(argThat(element -> element.isRetry()
+                && element.getAttempt() == 1 && element.getStepInstanceId().equals("firstUid")), eq(5000L));
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+        verify(queueController, never()).addElementToResultQueue(any());
+        assertEquals(1, branch.getRetryCount());
+        assertEquals(1, branch.getRetryAttempts().size());
+        assertEquals(5000L, branch.getRetryAttempts().get(0).getDelayInMillis());
+    }
+
+    @Test
+    void processResultFromQueue_shouldRunDueRetry() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance branch = createBranch("first", RunStatus.FAILED);
+        branch.setAttempt(1);
+        stubBranches(forkStepInstance, branch);
+        when(functionCache.getFunction(any())).thenReturn(new Function());
+        ResultQueueElement retryElement = createBranchResult(branch, null);
+        retryElement.setAttempt(1);
+        retryElement.setRetry(true);
+
+        workflowRunner.processResultFromQueue(retryElement);
+
+        verify(queueController).addFunctionDtoToQueue(any());
+        verify(instanceController, never()).applyResult(any(), any());
+    }
+
+    @Test
+    void processResultFromQueue_shouldDropStaleRetry() {
+        WorkflowStepInstance forkStepInstance = createForkStep(0);
+        WorkflowStepInstance branch = createBranch("first", RunStatus.RUNNING);
+        branch.setAttempt(2);
+        stubBranches(forkStepInstance, branch);
+        ResultQueueElement retryElement = createBranchResult(branch, null);
+        retryElement.setAttempt(1);
+        retryElement.setRetry(true);
+
+        workflowRunner.processResultFromQueue(retryElement);
+
+        verify(queueController, never()).addFunctionDtoToQueue(any());
+        verify(instanceController, never()).applyResult(any(), any());
+    }
+
+    private WorkflowStepInstance createForkStep(int joinCount) {
+        WorkflowStepInstance forkStepInstance = new WorkflowStepInstance();
+        forkStepInstance.setUid("forkUid");
+        forkStepInstance.setWorkflowInstanceUid("workflowInstanceId");
+        forkStepInstance.setControlStructure(ControlStructure.FORK_JOIN);
+        forkStepInstance.setRunStatus(RunStatus.RUNNING);
+        forkStepInstance.setJoinCount(joinCount);
+        return forkStepInstance;
+    }
+
+    private WorkflowStepInstance createBranch(String name, RunStatus runStatus) {
+        WorkflowStepInstance branchInstance = new WorkflowStepInstance();
+        branchInstance.setUid(name + "Uid");
+        branchInstance.setBranchName(name);
+        branchInstance.setWorkflowInstanceUid("workflowInstanceId");
+        branchInstance.setParentStepInstanceUid("forkUid");
+        branchInstance.setControlStructure(ControlStructure.SIMPLE);
+        branchInstance.setRunStatus(runStatus);
+        branchInstance.setRetryCount(0);
+        return branchInstance;
+    }
+
+    private void stubBranches(WorkflowStepInstance forkStepInstance, WorkflowStepInstance... branchInstances) {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(instanceCache.getStepInstance("workflowInstanceId", "forkUid")).thenReturn(forkStepInstance);
+        List<String> branchUids = new ArrayList<>();
+        for (WorkflowStepInstance branchInstance : branchInstances) {
+            branchUids.add(branchInstance.getUid());
+            when(instanceCache.getStepInstance("workflowInstanceId", branchInstance.getUid())).thenReturn(branchInstance);
+        }
+        forkStepInstance.setBranchStepInstanceUids(branchUids);
+    }
+
+    private ResultQueueElement createBranchResult(WorkflowStepInstance branchInstance, RunStatus runStatus) {
+        ResultQueueElement resultQueueElement = new ResultQueueElement();
+        resultQueueElement.setWorkflowInstanceId("workflowInstanceId");
+        resultQueueElement.setStepInstanceId(branchInstance.getUid());
+        resultQueueElement.setRunStatus(runStatus);
+        resultQueueElement.setOutputData(new HashMap<>());
+        return resultQueueElement;
+    }
+
+    @Test
+    void startWorkflow_shouldQueueItemsUpToMaxParallelism() {
+        WorkflowInstance workflowInstance = new WorkflowInstance();
+        workflowInstance.setUid("workflowInstanceId");
+        WorkflowStepInstance forEachStepInstance = createForEachStep(2);
+        List<WorkflowStepInstance> itemInstances = List.of(createItem(0, RunStatus.NEW), createItem(1, RunStatus.NEW), createItem(2, RunStatus.NEW));
+        List<Object> items = List.of("a", "b", "c");
+
+        when(instanceController.getStartStep(workflowInstance)).thenReturn(forEachStepInstance);
+        when(instanceCache.getWorkflowInstance("workflowInstanceId")).thenReturn(workflowInstance);
+        when(expressionEvaluator.evaluateListExpression("workflowInstanceId", "[fetch.output.items]")).thenReturn(items);
+        when(functionCache.getFunction("functionUid")).thenReturn(new Function());
+        when(instanceController.generateItemStepInstances(forEachStepInstance, items)).thenReturn(itemInstances);
+
+        workflowRunner.startWorkflow(workflowInstance);
+
+        verify(queueController, times(2)).addFunctionDtoToQueue(any(QueueElement.class));
+        //the items were bound after the input data of the step was normalized
+        verify(expressionEvaluator, never()).normalizeInputData(any(), anyString());
+    }
+
+    @Test
+    void processResultFromQueue_shouldQueueNextWaitingItem() {
+        WorkflowStepInstance forEachStepInstance = createForEachStep(2);
+        WorkflowStepInstance first = createItem(0, RunStatus.COMPLETED);
+        WorkflowStepInstance second = createItem(1, RunStatus.RUNNING);
+        WorkflowStepInstance third = createItem(2, RunStatus.NEW);
+        stubBranches(forEachStepInstance, first, second, third);
+        when(functionCache.getFunction("functionUid")).thenReturn(new Function());
+
+        workflowRunner.processResultFromQueue(createBranchResult(first, RunStatus.COMPLETED));
+
+        verify(queueController, times(1)).addFunctionDtoToQueue(argThat(element -> element.getStepInstanceId().equals(third.getUid())));
+        verify(queueController, never()).addElementToResultQueue(any(ResultQueueElement.class));
+    }
+
+    @Test
+    void processResultFromQueue_shouldAggregateItemOutputsInOrder() {
+        WorkflowStepInstance forEachStepInstance = createForEachStep(0);
+        WorkflowStepInstance first = createItem(0, RunStatus.COMPLETED);
+        first.setOutputData(new HashMap<>(Map.of("value", 0)));
+        WorkflowStepInstance second = createItem(1, RunStatus.COMPLETED);
+        second.setOutputData(new HashMap<>(Map.of("value", 1)));
+        stubBranches(forEachStepInstance, first, second);
+
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.COMPLETED));
+
+        ArgumentCaptor<ResultQueueElement> captor = ArgumentCaptor.forClass(ResultQueueElement.class);
+        verify(queueController).addElementToResultQueue(captor.capture());
+        assertEquals(RunStatus.COMPLETED, captor.getValue().getRunStatus());
+        assertEquals(List.of(first.getOutputData(), second.getOutputData()), captor.getValue().getOutputData().get("results"));
+    }
+
+    @Test
+    void processResultFromQueue_shouldNotFailForEachWhileItemWaitsForRetry() {
+        WorkflowStepInstance forEachStepInstance = createForEachStep(0);
+        WorkflowStepInstance first = createItem(0, RunStatus.FAILED);
+        first.setRetryCount(1);
+        first.setAttempt(1);
+        first.setRetryPolicy(new RetryPolicy(BackoffStrategy.FIXED, 5, 2, 0));
+        WorkflowStepInstance second = createItem(1, RunStatus.RUNNING);
+        stubBranches(forEachStepInstance, first, second);
+        doAnswer(invocation -> {
+            invocation.<WorkflowStepInstance>getArgument(0).setRunStatus(invocation.getArgument(1));
+            return null;
+        }).when(instanceController).updateRunStatus(any(WorkflowStepInstance.class), any(RunStatus.class), any(StateTransition.class));
+
+        workflowRunner.processResultFromQueue(createBranchResult(first, RunStatus.FAILED));
+        second.setRunStatus(RunStatus.COMPLETED);
+        workflowRunner.processResultFromQueue(createBranchResult(second, RunStatus.COMPLETED));
+
+        assertEquals(RunStatus.SCHEDULED, first.getRunStatus());
+        verify(queueController).addElementToRetryDelayQueue(argThat(element -> element.getStepInstanceId().equals(first.getUid())), eq(5000L));
+        verify(queueController, never()).addElementToResultQueue(any(ResultQueueElement.class));
+    }
+
+    private WorkflowStepInstance createForEachStep(int maxParallelism) {
+        WorkflowStepInstance forEachStepInstance = new WorkflowStepInstance();
+        forEachStepInstance.setUid("forkUid");
+        forEachStepInstance.setWorkflowInstanceUid("workflowInstanceId");
+        forEachStepInstance.setControlStructure(ControlStructure.FOR_EACH);
+        forEachStepInstance.setRunStatus(RunStatus.RUNNING);
+        forEachStepInstance.setFunctionUid("functionUid");
+        forEachStepInstance.setItemsExpression("[fetch.output.items]");
+        forEachStepInstance.setMaxParallelism(maxParallelism);
+        return forEachStepInstance;
+    }
+
+    private WorkflowStepInstance createItem(int index, RunStatus runStatus) {
+        WorkflowStepInstance itemInstance = createBranch("item" + index, runStatus);
+        itemInstance.setBranchName(null);
+        itemInstance.setItemIndex(index);
+        return itemInstance;
+    }
+}
@@ -0,0 +1,46 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    @Test
+    void get_shouldComputeValueOnce() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+        AtomicInteger computations = new AtomicInteger();
+
+        assertEquals(5, cache.get("value", key -> computations.incrementAndGet() + 4));
+        assertEquals(5, cache.get("value", key -> computations.incrementAndGet() + 4));
+
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    void get_shouldKeepTheBoundAndTheAddedValue() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(3);
+
+        for (int i = 0; i < 10; i++) {
+            cache.get(i, key -> key);
+        }
+
+        assertEquals(3, cache.size());
+        AtomicInteger computations = new AtomicInteger();
+        cache.get(9, key -> computations.incrementAndGet());
+        assertEquals(0, computations.get());
+    }
+
+    @Test
+    void get_shouldNotCacheFailedComputation() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("value", key -> {
+            throw new IllegalStateException("invalid");
+        }));
+
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,72 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import com.jayway.jsonpath.PathNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataPathResolverTest {
+
+    private final DataPathResolver resolver = new DataPathResolver();
+
+    @Test
+    void read_withPropertiesAndIndexes_walksDataDirectly() {
+        Map<String, Object> data = createOrder();
+
+        assertEquals("ACME", resolver.read(data, "$.customer.name"));
+        assertEquals(20, resolver.read(data, "$.items[1].price"));
+        assertEquals(20, resolver.read(data, "$.items[-1].price"));
+        assertTrue(resolver.getCompiledPath("$.items[1].price").isDirect());
+    }
+
+    @Test
+    void read_withFilter_usesJsonPath() {
+        Map<String, Object> data = createOrder();
+
+        Object result = resolver.read(data, "$.items[?(@.price > 15)].name");
+
+        assertEquals(List.of("b"), result);
+        assertFalse(resolver.getCompiledPath("$.items[?(@.price > 15)].name").isDirect());
+    }
+
+    @Test
+    void read_withMissingProperty_throwsPathNotFoundException() {
+        Map<String, Object> data = createOrder();
+
+        assertThrows(PathNotFoundException.class, () -> resolver.read(data, "$.customer.address"));
+        assertThrows(PathNotFoundException.class, () -> resolver.read(data, "$.items[5].price"));
+    }
+
+    @Test
+    void read_returnsCopyOfNestedData() {
+        Map<String, Object> data = createOrder();
+
+        Map<String, Object> customer = (Map<String, Object>) resolver.read(data, "$.customer");
+        customer.put("name", "changed");
+
+        assertEquals("ACME", ((Map<?, ?>) data.get("customer")).get("name"));
+    }
+
+    @Test
+    void read_withSamePath_reusesCompiledPath() {
+        Map<String, Object> data = createOrder();
+
+        resolver.read(data, "$.customer.name");
+        resolver.read(data, "$.customer.name");
+
+        assertEquals(1, resolver.compiledPathCount());
+    }
+
+    private Map<String, Object> createOrder() {
+        Map<String, Object> customer = new HashMap<>();
+        customer.put("name", "ACME");
+        Map<String, Object> data = new HashMap<>();
+        data.put("customer", customer);
+        data.put("items", List.of(Map.of("name", "a", "price", 10), Map.of("name", "b", "price", 20)));
+        return data;
+    }
+}
@@ -3,6 +3,9 @@ package de.lenneflow.orchestrationservice.utils;
 import com.ezylang.evalex.EvaluationException;
 import com.ezylang.evalex.parser.ParseException;
 import de.lenneflow.orchestrationservice.exception.InternalServiceException;
+import de.lenneflow.orchestrationservice.helpercomponents.InstanceCache;
+import de.lenneflow.orchestrationservice.helpercomponents.PayloadOffloader;
+import de.lenneflow.orchestrationservice.helpercomponents.PayloadStore;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import de.lenneflow.orchestrationservice.model.WorkflowStepInstance;
 import de.lenneflow.orchestrationservice.repository.WorkflowInstanceRepository;
@@ -10,6 +13,7 @@ import de.lenneflow.orchestrationservice.repository.WorkflowStepInstanceReposito
 import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,7 +23,7 @@ class ExpressionEvaluatorTests {
 
     WorkflowStepInstanceRepository stepRepo = mock(WorkflowStepInstanceRepository.class);
     WorkflowInstanceRepository instanceRepo = mock(WorkflowInstanceRepository.class);
-    ExpressionEvaluator evaluator = new ExpressionEvaluator(stepRepo, instanceRepo);
+    ExpressionEvaluator evaluator = new ExpressionEvaluator(new InstanceCache(instanceRepo, stepRepo, 1_000_000, 100), new PayloadOffloader(mock(PayloadStore.class), 0, 1_000_000));
 
     @Test
     void normalizeInputData_withValidExpressions_replacesWithValues() {
@@ -62,6 +66,31 @@ class ExpressionEvaluatorTests {
         assertEquals("16", ((Map) inputData.get("key")).get("nestedKey").toString());
     }
 
+    @Test
+    void normalizeInputData_withSeveralReferencedSteps_loadsStepsWithOneQuery() {
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.put("first", "[step1.output.value]");
+        inputData.put("second", "[step2.output.value]");
+        inputData.put("sum", "[step1.output.value] + [step2.output.value]");
+
+        WorkflowStepInstance step1 = new WorkflowStepInstance();
+        step1.setName("step1");
+        step1.setOutputData(new HashMap<>(Map.of("value", 1)));
+        WorkflowStepInstance step2 = new WorkflowStepInstance();
+        step2.setName("step2");
+        step2.setOutputData(new HashMap<>(Map.of("value", 2)));
+
+        when(stepRepo.findByWorkflowInstanceUidAndNameIn(eq("workflow1"), anyCollection())).thenReturn(List.of(step1, step2));
+
+        evaluator.normalizeInputData(inputData, "workflow1");
+
+        assertEquals(1, inputData.get("first"));
+        assertEquals(2, inputData.get("second"));
+        assertEquals("3", inputData.get("sum").toString());
+        verify(stepRepo, times(1)).findByWorkflowInstanceUidAndNameIn(eq("workflow1"), anyCollection());
+        verify(stepRepo, never()).findByNameAndWorkflowInstanceUid(anyString(), anyString());
+    }
+
     @Test
     void readDataFromPath_withInvalidStep_throwsInternalServiceException() {
         when(stepRepo.findByNameAndWorkflowInstanceUid("step1", "workflow1")).thenReturn(null);
@@ -104,7 +133,65 @@ class ExpressionEvaluatorTests {
 
         String result = evaluator.evaluateStringExpression("workflow1", "[step1.output.value]");
 
-        assertEquals("false", result);
+        //the referenced value is returned as it is and not evaluated as expression
+        assertEquals("2=3", result);
+    }
+
+    @Test
+    void evaluateStringExpression_withOperatorsInReferencedValue_doesNotChangeExpression() throws EvaluationException, ParseException {
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("value", "a] + [b");
+        WorkflowStepInstance step = new WorkflowStepInstance();
+        step.setOutputData(outputData);
+        when(stepRepo.findByNameAndWorkflowInstanceUid("step1", "workflow1")).thenReturn(step);
+
+        String result = evaluator.evaluateStringExpression("workflow1", "[step1.output.value] + \"!\"");
+
+        assertEquals("a] + [b!", result);
+    }
+
+    @Test
+    void normalizeInputData_withPlainText_keepsValue() {
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.put("key", "hello world");
+
+        evaluator.normalizeInputData(inputData, "workflow1");
+
+        assertEquals("hello world", inputData.get("key"));
+        verifyNoInteractions(stepRepo);
+    }
+
+    @Test
+    void normalizeInputData_withReferenceInInvalidExpression_throwsInternalServiceException() {
+        Map<String, Object> inputData = new HashMap<>();
+        inputData.put("url", "http://host/[step1.output.id]");
+
+        assertThrows(InternalServiceException.class, () -> evaluator.normalizeInputData(inputData, "workflow1"));
+        verifyNoInteractions(stepRepo);
+    }
+
+    @Test
+    void evaluateDoWhileCondition_withUnknownIdentifier_throwsInternalServiceException() {
+        assertThrows(InternalServiceException.class, () -> evaluator.evaluateDoWhileCondition("workflow1", "[step1.output.status] == DONE", 1));
+    }
+
+    @Test
+    void precompile_withInvalidExpression_compilesTheOthers() {
+        evaluator.precompile(List.of("[step1.output.status] == DONE", "[runCount] < 3"));
+
+        assertEquals(1, evaluator.compiledExpressionCount());
+    }
+
+    @Test
+    void evaluateDoWhileCondition_withRunCount_reusesCompiledExpression() throws EvaluationException, ParseException {
+        String condition = "[runCount] < 3";
+
+        assertTrue(evaluator.evaluateDoWhileCondition("workflow1", condition, 1));
+        assertTrue(evaluator.evaluateDoWhileCondition("workflow1", condition, 2));
+        assertFalse(evaluator.evaluateDoWhileCondition("workflow1", condition, 3));
+
+        assertSame(evaluator.compile(condition), evaluator.compile(condition));
+        assertEquals(1, evaluator.compiledExpressionCount());
     }
 
     @Test
@@ -126,4 +213,30 @@ class ExpressionEvaluatorTests {
 
         assertEquals(1.0, result);
     }
-}
\ No newline at end of file
+
+    @Test
+    void evaluateListExpression_withListReference_returnsElements() {
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("items", List.of("a", "b", "c"));
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setOutputData(outputData);
+
+        when(stepRepo.findByNameAndWorkflowInstanceUid("fetch", "workflow1")).thenReturn(stepInstance);
+
+        List<Object> result = evaluator.evaluateListExpression("workflow1", "[fetch.output.items]");
+
+        assertEquals(List.of("a", "b", "c"), result);
+    }
+
+    @Test
+    void evaluateListExpression_withScalarReference_throwsInternalServiceException() {
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("items", "a");
+        WorkflowStepInstance stepInstance = new WorkflowStepInstance();
+        stepInstance.setOutputData(outputData);
+
+        when(stepRepo.findByNameAndWorkflowInstanceUid("fetch", "workflow1")).thenReturn(stepInstance);
+
+        assertThrows(InternalServiceException.class, () -> evaluator.evaluateListExpression("workflow1", "[fetch.output.items]"));
+    }
+}
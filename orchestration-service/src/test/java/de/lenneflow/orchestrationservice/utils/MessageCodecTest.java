@@ -0,0 +1,64 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import de.lenneflow.orchestrationservice.dto.QueueElement;
+import de.lenneflow.orchestrationservice.dto.ResultQueueElement;
+import de.lenneflow.orchestrationservice.dto.RunNotification;
+import de.lenneflow.orchestrationservice.enums.RunStatus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+
+    @Test
+    void encode_shouldRoundTripQueueElementInSmile() throws IOException {
+        QueueElement queueElement = new QueueElement();
+        queueElement.setStepInstanceId("step1");
+        queueElement.setRunStatus(RunStatus.RUNNING);
+        queueElement.setInputData(Map.of("items", List.of(1, 2, 3), "name", "value"));
+
+        byte[] encoded = MessageCodec.encode(queueElement, MessageCodec.SMILE_CONTENT_TYPE);
+        QueueElement decoded = MessageCodec.decode(encoded, MessageCodec.SMILE_CONTENT_TYPE, QueueElement.class);
+
+        assertEquals("step1", decoded.getStepInstanceId());
+        assertEquals(RunStatus.RUNNING, decoded.getRunStatus());
+        assertEquals(List.of(1, 2, 3), decoded.getInputData().get("items"));
+        assertTrue(encoded.length < MessageCodec.encode(queueElement, MessageCodec.JSON_CONTENT_TYPE).length);
+    }
+
+    @Test
+    void decode_shouldReadMessagesWithoutKnownContentTypeAsJson() throws IOException {
+        byte[] serialized = "{\"stepInstanceId\":\"step1\"}".getBytes();
+
+        assertEquals("step1", MessageCodec.decode(serialized, null, ResultQueueElement.class).getStepInstanceId());
+        assertEquals("step1", MessageCodec.decode(serialized, "application/octet-stream", ResultQueueElement.class).getStepInstanceId());
+    }
+
+    @Test
+    void decode_shouldFailForJsonInSmileMessage() {
+        byte[] serialized = "{\"stepInstanceId\":\"step1\"}".getBytes();
+
+        assertThrows(IOException.class, () -> MessageCodec.decode(serialized, MessageCodec.SMILE_CONTENT_TYPE, ResultQueueElement.class));
+    }
+
+    @Test
+    void encode_shouldWriteSameJsonAsNewMapper() throws IOException {
+        RunNotification notification = new RunNotification(true, "instance1", "step1", RunStatus.COMPLETED, "workflow1");
+
+        byte[] encoded = MessageCodec.encode(notification, MessageCodec.JSON_CONTENT_TYPE);
+
+        assertArrayEquals(new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsBytes(notification), encoded);
+    }
+
+    @Test
+    void supportedContentType_shouldFallBackToJson() {
+        assertEquals(MessageCodec.SMILE_CONTENT_TYPE, MessageCodec.supportedContentType("application/x-jackson-smile"));
+        assertEquals(MessageCodec.JSON_CONTENT_TYPE, MessageCodec.supportedContentType("application/json"));
+        assertEquals(MessageCodec.JSON_CONTENT_TYPE, MessageCodec.supportedContentType("text/plain"));
+        assertEquals(MessageCodec.JSON_CONTENT_TYPE, MessageCodec.supportedContentType(null));
+    }
+}
@@ -8,6 +8,9 @@ import de.lenneflow.orchestrationservice.model.GlobalInputData;
 import de.lenneflow.orchestrationservice.model.WorkflowInstance;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -74,4 +77,23 @@ class ObjectMapperTest {
 
         assertNull(result.getFunctionType());
     }
-}
\ No newline at end of file
+
+    @Test
+    void copyData_copiesNestedMapsAndLists() {
+        Map<String, Object> nested = new LinkedHashMap<>(Map.of("key", "value"));
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("nested", nested);
+        data.put("list", new ArrayList<>(List.of(nested)));
+
+        Map<String, Object> result = ObjectMapper.copyData(data);
+        nested.put("key", "changed");
+
+        assertEquals(Map.of("key", "value"), result.get("nested"));
+        assertEquals(List.of(Map.of("key", "value")), result.get("list"));
+    }
+
+    @Test
+    void copyData_returnsNullForNull() {
+        assertNull(ObjectMapper.copyData(null));
+    }
+}
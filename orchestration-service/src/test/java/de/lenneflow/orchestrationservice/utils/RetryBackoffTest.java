@@ -0,0 +1,55 @@
+package de.lenneflow.orchestrationservice.utils;
+
+import de.lenneflow.orchestrationservice.enums.BackoffStrategy;
+import de.lenneflow.orchestrationservice.feignmodels.RetryPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBackoffTest {
+
+    @Test
+    void delayMillis_withoutPolicy_returnsZero() {
+        assertEquals(0, RetryBackoff.delayMillis(null, 1));
+        assertEquals(0, RetryBackoff.delayMillis(new RetryPolicy(BackoffStrategy.EXPONENTIAL, 0, 2, 0), 3));
+    }
+
+    @Test
+    void delayMillis_fixed_returnsInitialDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(BackoffStrategy.FIXED, 3, 2, 0);
+
+        assertEquals(3000, RetryBackoff.delayMillis(retryPolicy, 1));
+        assertEquals(3000, RetryBackoff.delayMillis(retryPolicy, 5));
+    }
+
+    @Test
+    void delayMillis_exponential_growsUpToMaxDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(BackoffStrategy.EXPONENTIAL, 1, 2, 10);
+
+        assertEquals(1000, RetryBackoff.delayMillis(retryPolicy, 1));
+        assertEquals(2000, RetryBackoff.delayMillis(retryPolicy, 2));
+        assertEquals(8000, RetryBackoff.delayMillis(retryPolicy, 4));
+        assertEquals(10000, RetryBackoff.delayMillis(retryPolicy, 5));
+        assertEquals(10000, RetryBackoff.delayMillis(retryPolicy, 100));
+    }
+
+    @Test
+    void delayMillis_exponentialWithoutMaxDelay_isBounded() {
+        RetryPolicy retryPolicy = new RetryPolicy(BackoffStrategy.EXPONENTIAL, 60, 10, 0);
+
+        assertEquals(RetryBackoff.MAX_DELAY_MILLIS, RetryBackoff.delayMillis(retryPolicy, 50));
+    }
+
+    @Test
+    void delayMillis_withJitter_staysBelowExponentialDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(BackoffStrategy.EXPONENTIAL_WITH_JITTER, 1, 2, 0);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            long delay = RetryBackoff.delayMillis(retryPolicy, 3, random);
+            assertTrue(delay >= 0 && delay <= 4000);
+        }
+    }
+}
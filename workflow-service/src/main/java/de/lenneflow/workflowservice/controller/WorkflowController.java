@@ -1,9 +1,13 @@
 package de.lenneflow.workflowservice.controller;
 
 import de.lenneflow.workflowservice.dto.JsonSchemaDTO;
+import de.lenneflow.workflowservice.dto.WorkflowBundle;
 import de.lenneflow.workflowservice.dto.WorkflowDTO;
+import de.lenneflow.workflowservice.exception.InternalServiceException;
+import de.lenneflow.workflowservice.exception.ResourceNotFoundException;
 import de.lenneflow.workflowservice.model.JsonSchema;
 import de.lenneflow.workflowservice.model.Workflow;
+import de.lenneflow.workflowservice.model.WorkflowStep;
 import de.lenneflow.workflowservice.repository.JsonSchemaRepository;
 import de.lenneflow.workflowservice.repository.WorkflowRepository;
 import de.lenneflow.workflowservice.repository.WorkflowStepRepository;
@@ -11,9 +15,18 @@ import de.lenneflow.workflowservice.util.ObjectMapper;
 import de.lenneflow.workflowservice.util.Validator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
@@ -40,6 +53,26 @@ public class WorkflowController {
         return workflowRepository.findByUid(uid);
     }
 
+    @Operation(summary = "Get the bundle of a Workflow", description = "Returns the workflow with its schemas and its steps ordered by execution order. "
+            + "The version of the bundle is sent as ETag, a request with a matching If-None-Match header is answered with 304 and no body.")
+    @GetMapping("/{uid}/bundle")
+    public ResponseEntity<WorkflowBundle> getWorkflowBundle(@PathVariable String uid, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Workflow workflow = workflowRepository.findByUid(uid);
+        if (workflow == null) {
+            throw new ResourceNotFoundException("Workflow with UID " + uid + " not found");
+        }
+        List<WorkflowStep> steps = workflowStepRepository.findByWorkflowUid(uid).stream()
+                .sorted(Comparator.comparing(WorkflowStep::getExecutionOrder)).toList();
+        String version = bundleVersion(workflow, steps);
+        String eTag = "\"" + version + "\"";
+        if (eTag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        //the steps are sent once, ordered
+        workflow.setSteps(new LinkedList<>());
+        return ResponseEntity.ok().eTag(eTag).body(new WorkflowBundle(workflow, steps, version));
+    }
+
     @Operation(summary = "Get Workflow by Name")
     @GetMapping("/name/{workflow-name}")
     public Workflow getWorkflowByName(@PathVariable("workflow-name") String name) {
@@ -106,4 +139,31 @@ public class WorkflowController {
         workflowRepository.delete(workflow);
     }
 
+    /**
+     * The version of a workflow bundle is a hash of the uids and update times of the workflow, its schemas and
+     * its steps. Every change of one of them saves a new update time, a removed step changes the list of uids.
+     *
+     * @param workflow the workflow
+     * @param steps    the ordered steps of the workflow
+     * @return the version
+     */
+    private String bundleVersion(Workflow workflow, List<WorkflowStep> steps) {
+        StringBuilder source = new StringBuilder();
+        source.append(workflow.getUid()).append('@').append(workflow.getUpdated());
+        for (JsonSchema schema : new JsonSchema[]{workflow.getInputDataSchema(), workflow.getOutputDataSchema()}) {
+            if (schema != null) {
+                source.append('|').append(schema.getUid()).append('@').append(schema.getUpdated());
+            }
+        }
+        for (WorkflowStep step : steps) {
+            source.append('|').append(step.getUid()).append('@').append(step.getUpdated());
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalServiceException("Could not compute the version of the workflow " + workflow.getName());
+        }
+    }
+
 }
@@ -1,5 +1,7 @@
 package de.lenneflow.workflowservice.controller;
 
+import de.lenneflow.workflowservice.dto.ForEachWorkflowStep;
+import de.lenneflow.workflowservice.dto.ForkJoinWorkflowStep;
 import de.lenneflow.workflowservice.dto.SimpleWorkflowStep;
 import de.lenneflow.workflowservice.dto.SubWorkflowStep;
 import de.lenneflow.workflowservice.dto.SwitchWorkflowStep;
@@ -112,6 +114,30 @@ public class WorkflowStepController {
         return saveWorkflowStep(workflowStep);
     }
 
+    @Operation(summary = "Create a Fork Join Workflow Step")
+    @PostMapping("/fork-join/create")
+    public WorkflowStep addForkJoinWorkflowStep(@RequestBody ForkJoinWorkflowStep forkJoinWorkflowStep) {
+        WorkflowStep workflowStep = ObjectMapper.mapToWorkflowStep(forkJoinWorkflowStep);
+        workflowStep.setUid(UUID.randomUUID().toString());
+        workflowStep.setCreated(LocalDateTime.now());
+        workflowStep.setUpdated(LocalDateTime.now());
+        workflowStep.setControlStructure(ControlStructure.FORK_JOIN);
+        validator.validate(workflowStep);
+        return saveWorkflowStep(workflowStep);
+    }
+
+    @Operation(summary = "Create a For Each Workflow Step")
+    @PostMapping("/for-each/create")
+    public WorkflowStep addForEachWorkflowStep(@RequestBody ForEachWorkflowStep forEachWorkflowStep) {
+        WorkflowStep workflowStep = ObjectMapper.mapToWorkflowStep(forEachWorkflowStep);
+        workflowStep.setUid(UUID.randomUUID().toString());
+        workflowStep.setCreated(LocalDateTime.now());
+        workflowStep.setUpdated(LocalDateTime.now());
+        workflowStep.setControlStructure(ControlStructure.FOR_EACH);
+        validator.validate(workflowStep);
+        return saveWorkflowStep(workflowStep);
+    }
+
     @Operation(summary = "Update a Simple Workflow Step")
     @PostMapping("/simple/{uid}/update")
     public WorkflowStep updateWorkflowStep(@PathVariable String uid, @RequestBody SimpleWorkflowStep simpleWorkflowStep) {
@@ -148,6 +174,24 @@ public class WorkflowStepController {
         return patchWorkflowStep(workflowStep);
     }
 
+    @Operation(summary = "Update a Fork Join Workflow Step")
+    @PostMapping("/fork-join/{uid}/update")
+    public WorkflowStep updateWorkflowStep(@PathVariable String uid, @RequestBody ForkJoinWorkflowStep forkJoinWorkflowStep) {
+        WorkflowStep workflowStep = workflowStepRepository.findByUid(uid);
+        ObjectMapper.mapToWorkflowStep(workflowStep, forkJoinWorkflowStep);
+        validator.validate(workflowStep);
+        return patchWorkflowStep(workflowStep);
+    }
+
+    @Operation(summary = "Update a For Each Workflow Step")
+    @PostMapping("/for-each/{uid}/update")
+    public WorkflowStep updateWorkflowStep(@PathVariable String uid, @RequestBody ForEachWorkflowStep forEachWorkflowStep) {
+        WorkflowStep workflowStep = workflowStepRepository.findByUid(uid);
+        ObjectMapper.mapToWorkflowStep(workflowStep, forEachWorkflowStep);
+        validator.validate(workflowStep);
+        return patchWorkflowStep(workflowStep);
+    }
+
     @Operation(summary = "Delete a Workflow Step")
     @DeleteMapping("/{uid}")
     public void deleteWorkflowStep(@PathVariable String uid) {
@@ -0,0 +1,53 @@
+package de.lenneflow.workflowservice.dto;
+
+import de.lenneflow.workflowservice.model.RetryPolicy;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ForEachWorkflowStep {
+
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private String name;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private String workflowUid;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private String description;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private int executionOrder;
+
+    @Schema(description = "Number of retries for every item.", requiredMode = Schema.RequiredMode.REQUIRED)
+    private Integer retryCount = 0;
+
+    @Schema(description = "Seconds after which a run of an item times out, 0 for no time out.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long timeOutInSeconds;
+
+    @Schema(description = "Delay between the retries of every item, retries are immediate without a policy.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private RetryPolicy retryPolicy;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private String functionUid;
+
+    @Schema(example = "[fetch.output.items]", requiredMode = Schema.RequiredMode.REQUIRED)
+    private String itemsExpression; //reference to a list, the function runs once for every element
+
+    @Schema(description = "Maximum number of items processed at the same time. 0 means all items.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private int maxParallelism = 0;
+
+    @Schema(description = "Input data of every item run. The keys item and index are added with the element and its position.", requiredMode = Schema.RequiredMode.REQUIRED)
+    private Map<String, Object> inputData = new LinkedHashMap<>();
+
+}
@@ -0,0 +1,50 @@
+package de.lenneflow.workflowservice.dto;
+
+import de.lenneflow.workflowservice.model.ForkBranch;
+import de.lenneflow.workflowservice.model.RetryPolicy;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ForkJoinWorkflowStep {
+
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private String name;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private String workflowUid;
+
+    @Schema(requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private String description;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private int executionOrder;
+
+    @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<ForkBranch> branches = new ArrayList<>();
+
+    @Schema(description = "Number of branches that must complete before the step joins. 0 means all branches.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private int joinCount = 0;
+
+    @Schema(description = "Seconds after which a run of a branch times out, 0 for no time out. Every branch inherits it.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long timeOutInSeconds;
+
+    @Schema(description = "Delay between the retries of every branch, retries are immediate without a policy.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private RetryPolicy retryPolicy;
+
+    @Schema(description = "Input data shared by all branches. The input data of a branch overrides these values.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private Map<String, Object> inputData = new LinkedHashMap<>();
+
+}
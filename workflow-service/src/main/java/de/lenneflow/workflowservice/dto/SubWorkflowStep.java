@@ -1,5 +1,6 @@
 package de.lenneflow.workflowservice.dto;
 
+import de.lenneflow.workflowservice.model.RetryPolicy;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -31,6 +32,12 @@ public class SubWorkflowStep {
     @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
     private Integer retryCount = 0;
 
+    @Schema(description = "Seconds after which a run of the step times out, 0 for no time out.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long timeOutInSeconds;
+
+    @Schema(description = "Delay between the retries of the step, retries are immediate without a policy.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private RetryPolicy retryPolicy;
+
     @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
     private String subWorkflowUid;
 
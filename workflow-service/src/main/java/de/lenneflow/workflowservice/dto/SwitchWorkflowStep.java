@@ -2,6 +2,7 @@ package de.lenneflow.workflowservice.dto;
 
 import de.lenneflow.workflowservice.enums.ControlStructure;
 import de.lenneflow.workflowservice.model.DecisionCase;
+import de.lenneflow.workflowservice.model.RetryPolicy;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -35,6 +36,12 @@ public class SwitchWorkflowStep {
     @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
     private Integer retryCount = 0;
 
+    @Schema(description = "Seconds after which a run of the step times out, 0 for no time out.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long timeOutInSeconds;
+
+    @Schema(description = "Delay between the retries of the step, retries are immediate without a policy.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private RetryPolicy retryPolicy;
+
     @Schema(example = "([step2.output.randomValue] * 5 ) >= 10", requiredMode = Schema.RequiredMode.REQUIRED)
     private String switchCase; //example {stepname.outputData.field.field} > 10 ; will be validated by creation
 
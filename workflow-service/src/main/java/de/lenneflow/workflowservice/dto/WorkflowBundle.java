@@ -0,0 +1,28 @@
+package de.lenneflow.workflowservice.dto;
+
+import de.lenneflow.workflowservice.model.Workflow;
+import de.lenneflow.workflowservice.model.WorkflowStep;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(name = "WorkflowBundle")
+public class WorkflowBundle {
+
+    @Schema(description = "The workflow with its input and output data schema.")
+    private Workflow workflow;
+
+    @Schema(description = "The steps of the workflow, ordered by execution order.")
+    private List<WorkflowStep> steps;
+
+    @Schema(description = "The version of the bundle. It changes when the workflow, a step or a schema changes and is also sent as ETag.")
+    private String version;
+}
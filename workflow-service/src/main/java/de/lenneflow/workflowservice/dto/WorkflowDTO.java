@@ -24,4 +24,7 @@ public class WorkflowDTO {
 
     @Schema(requiredMode = Schema.RequiredMode.REQUIRED)
     private String outputDataSchemaUid;
+
+    @Schema(description = "Seconds after which a run of the workflow times out, 0 for no time out.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long timeOutInSeconds;
 }
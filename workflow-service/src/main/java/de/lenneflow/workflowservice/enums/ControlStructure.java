@@ -4,5 +4,7 @@ public enum ControlStructure {
     SIMPLE,
     SWITCH,
     DO_WHILE,
-    SUB_WORKFLOW
+    SUB_WORKFLOW,
+    FORK_JOIN,
+    FOR_EACH
 }
@@ -0,0 +1,27 @@
+package de.lenneflow.workflowservice.model;
+
+import de.lenneflow.workflowservice.enums.BackoffStrategy;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class RetryPolicy {
+
+    @Schema(description = "How the delay grows from one retry to the next.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private BackoffStrategy backoffStrategy = BackoffStrategy.FIXED;
+
+    @Schema(description = "Seconds before the first retry, 0 to retry immediately.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long delayInSeconds;
+
+    @Schema(description = "Factor of the exponential backoff strategies.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private double multiplier = 2;
+
+    @Schema(description = "Upper bound of the delay in seconds, 0 for no bound.", requiredMode = Schema.RequiredMode.NOT_REQUIRED)
+    private long maxDelayInSeconds;
+}
@@ -48,10 +48,22 @@ public class WorkflowStep {
 
     private String stopCondition;
 
+    private List<ForkBranch> branches = new ArrayList<>();
+
+    private int joinCount;
+
+    private String itemsExpression;
+
+    private int maxParallelism;
+
     private Map<String, Object> inputData = new LinkedHashMap<>();
 
     private Integer retryCount;
 
+    private long timeOutInSeconds;
+
+    private RetryPolicy retryPolicy;
+
     private LocalDateTime created;
 
     private LocalDateTime updated;
@@ -19,7 +19,7 @@ public class ObjectMapper {
         Workflow workflow = new Workflow();
         workflow.setDescription(workflowDTO.getDescription());
         workflow.setName(workflowDTO.getName());
-        workflow.setTimeOutInSeconds(Long.MAX_VALUE);
+        workflow.setTimeOutInSeconds(workflowDTO.getTimeOutInSeconds() > 0 ? workflowDTO.getTimeOutInSeconds() : Long.MAX_VALUE);
         return workflow;
     }
 
@@ -34,7 +34,9 @@ public class ObjectMapper {
         workflowStep.setControlStructure(ControlStructure.SUB_WORKFLOW);
         workflowStep.setExecutionOrder(subWorkflowStep.getExecutionOrder());
         workflowStep.setInputData(subWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(subWorkflowStep.getRetryPolicy());
         workflowStep.setRetryCount(subWorkflowStep.getRetryCount());
+        workflowStep.setTimeOutInSeconds(subWorkflowStep.getTimeOutInSeconds());
         return workflowStep;
     }
     public static WorkflowStep mapToWorkflowStep(SubWorkflowStep subWorkflowStep) {
@@ -57,7 +59,9 @@ public class ObjectMapper {
         workflowStep.setFunctionUid(whileWorkflowStep.getFunctionUid());
         workflowStep.setStopCondition(whileWorkflowStep.getStopCondition());
         workflowStep.setInputData(whileWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(whileWorkflowStep.getRetryPolicy());
         workflowStep.setRetryCount(whileWorkflowStep.getRetryCount());
+        workflowStep.setTimeOutInSeconds(whileWorkflowStep.getTimeOutInSeconds());
         return workflowStep;
 
     }
@@ -79,10 +83,59 @@ public class ObjectMapper {
         workflowStep.setSwitchCase(switchWorkflowStep.getSwitchCase());
         workflowStep.setDecisionCases(switchWorkflowStep.getDecisionCases());
         workflowStep.setInputData(switchWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(switchWorkflowStep.getRetryPolicy());
+        workflowStep.setTimeOutInSeconds(switchWorkflowStep.getTimeOutInSeconds());
         return workflowStep;
 
     }
 
+    public static WorkflowStep mapToWorkflowStep(ForkJoinWorkflowStep forkJoinWorkflowStep) {
+        return mapToWorkflowStep(new WorkflowStep(), forkJoinWorkflowStep);
+    }
+
+    public static WorkflowStep mapToWorkflowStep(WorkflowStep workflowStep, ForkJoinWorkflowStep forkJoinWorkflowStep) {
+        if(forkJoinWorkflowStep == null){
+            return null;
+        }
+        workflowStep.setName(forkJoinWorkflowStep.getName());
+        workflowStep.setWorkflowUid(forkJoinWorkflowStep.getWorkflowUid());
+        workflowStep.setDescription(forkJoinWorkflowStep.getDescription());
+        workflowStep.setControlStructure(ControlStructure.FORK_JOIN);
+        workflowStep.setExecutionOrder(forkJoinWorkflowStep.getExecutionOrder());
+        workflowStep.setBranches(forkJoinWorkflowStep.getBranches());
+        workflowStep.setJoinCount(forkJoinWorkflowStep.getJoinCount());
+        workflowStep.setInputData(forkJoinWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(forkJoinWorkflowStep.getRetryPolicy());
+        //the branches inherit the time out of the step
+        workflowStep.setTimeOutInSeconds(forkJoinWorkflowStep.getTimeOutInSeconds());
+        //retries are configured per branch
+        workflowStep.setRetryCount(0);
+        return workflowStep;
+    }
+
+    public static WorkflowStep mapToWorkflowStep(ForEachWorkflowStep forEachWorkflowStep) {
+        return mapToWorkflowStep(new WorkflowStep(), forEachWorkflowStep);
+    }
+
+    public static WorkflowStep mapToWorkflowStep(WorkflowStep workflowStep, ForEachWorkflowStep forEachWorkflowStep) {
+        if(forEachWorkflowStep == null){
+            return null;
+        }
+        workflowStep.setName(forEachWorkflowStep.getName());
+        workflowStep.setWorkflowUid(forEachWorkflowStep.getWorkflowUid());
+        workflowStep.setDescription(forEachWorkflowStep.getDescription());
+        workflowStep.setControlStructure(ControlStructure.FOR_EACH);
+        workflowStep.setExecutionOrder(forEachWorkflowStep.getExecutionOrder());
+        workflowStep.setFunctionUid(forEachWorkflowStep.getFunctionUid());
+        workflowStep.setItemsExpression(forEachWorkflowStep.getItemsExpression());
+        workflowStep.setMaxParallelism(forEachWorkflowStep.getMaxParallelism());
+        workflowStep.setInputData(forEachWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(forEachWorkflowStep.getRetryPolicy());
+        workflowStep.setRetryCount(forEachWorkflowStep.getRetryCount());
+        workflowStep.setTimeOutInSeconds(forEachWorkflowStep.getTimeOutInSeconds());
+        return workflowStep;
+    }
+
     public static WorkflowStep mapToWorkflowStep(SimpleWorkflowStep simpleWorkflowStep) {
         return mapToWorkflowStep(new WorkflowStep(), simpleWorkflowStep);
     }
@@ -97,8 +150,10 @@ public class ObjectMapper {
         workflowStep.setExecutionOrder(simpleWorkflowStep.getExecutionOrder());
         workflowStep.setControlStructure(ControlStructure.SIMPLE);
         workflowStep.setRetryCount(simpleWorkflowStep.getRetryCount());
+        workflowStep.setTimeOutInSeconds(simpleWorkflowStep.getTimeOutInSeconds());
         workflowStep.setFunctionUid(simpleWorkflowStep.getFunctionUid());
         workflowStep.setInputData(simpleWorkflowStep.getInputData());
+        workflowStep.setRetryPolicy(simpleWorkflowStep.getRetryPolicy());
         return workflowStep;
     }
 
@@ -3,11 +3,14 @@ package de.lenneflow.workflowservice.util;
 import com.ezylang.evalex.Expression;
 import com.networknt.schema.*;
 import de.lenneflow.workflowservice.dto.WorkflowDTO;
+import de.lenneflow.workflowservice.enums.BackoffStrategy;
 import de.lenneflow.workflowservice.enums.JsonSchemaVersion;
 import de.lenneflow.workflowservice.exception.InternalServiceException;
 import de.lenneflow.workflowservice.exception.PayloadNotValidException;
 import de.lenneflow.workflowservice.exception.ResourceNotFoundException;
+import de.lenneflow.workflowservice.model.ForkBranch;
 import de.lenneflow.workflowservice.model.JsonSchema;
+import de.lenneflow.workflowservice.model.RetryPolicy;
 import de.lenneflow.workflowservice.model.Workflow;
 import de.lenneflow.workflowservice.model.WorkflowStep;
 import de.lenneflow.workflowservice.repository.JsonSchemaRepository;
@@ -18,6 +21,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 @Component
@@ -132,11 +137,55 @@ public class Validator {
                     throw new PayloadNotValidException("The field subWorkflowId is mandatory for this payload!");
                 }
                 break;
+            case FORK_JOIN:
+                checkForkBranches(workflowStep);
+                break;
+            case FOR_EACH:
+                if (workflowStep.getFunctionUid() == null || workflowStep.getFunctionUid().isEmpty()) {
+                    logger.info("Workflow step {} has no function ID", workflowStep.getName());
+                    throw new PayloadNotValidException("The field functionId is mandatory for this payload!");
+                }
+                if (workflowStep.getItemsExpression() == null || !workflowStep.getItemsExpression().trim().matches("\\[[^\\[\\]]+]")) {
+                    logger.info("Workflow step {} has no valid items expression", workflowStep.getName());
+                    throw new PayloadNotValidException("The field itemsExpression must be a reference like [step.output.items]!");
+                }
+                if (workflowStep.getMaxParallelism() < 0) {
+                    logger.info("Workflow step {} has a negative max parallelism", workflowStep.getName());
+                    throw new PayloadNotValidException("The field maxParallelism must not be negative!");
+                }
+                break;
             default:
                 break;
         }
     }
 
+    private void checkForkBranches(WorkflowStep workflowStep) {
+        List<ForkBranch> branches = workflowStep.getBranches();
+        if (branches == null || branches.isEmpty()) {
+            logger.info("Workflow step {} has no branches", workflowStep.getName());
+            throw new PayloadNotValidException("The object branches is mandatory for this payload!");
+        }
+        Set<String> branchNames = new HashSet<>();
+        for (ForkBranch branch : branches) {
+            if (branch.getName() == null || branch.getName().isEmpty()) {
+                logger.info("Workflow step {} has a branch without name", workflowStep.getName());
+                throw new PayloadNotValidException("The field name is mandatory for every branch!");
+            }
+            if (!branchNames.add(branch.getName())) {
+                logger.info("Workflow step {} has duplicate branch name {}", workflowStep.getName(), branch.getName());
+                throw new PayloadNotValidException("The branch name " + branch.getName() + " is used more than once!");
+            }
+            if (branch.getFunctionUid() == null || branch.getFunctionUid().isEmpty()) {
+                logger.info("Branch {} of workflow step {} has no function ID", branch.getName(), workflowStep.getName());
+                throw new PayloadNotValidException("The field functionUid is mandatory for every branch!");
+            }
+        }
+        if (workflowStep.getJoinCount() < 0 || workflowStep.getJoinCount() > branches.size()) {
+            logger.info("Workflow step {} has an invalid join count", workflowStep.getName());
+            throw new PayloadNotValidException("The field joinCount must be between 0 and the number of branches!");
+        }
+    }
+
     private void checkGeneralMandatoryFields(WorkflowStep workflowStep) {
         if (workflowStep.getUid() == null || workflowStep.getUid().isEmpty()) {
             logger.info("Workflow step {} has no UID", workflowStep.getName());
@@ -154,6 +203,26 @@ public class Validator {
             logger.info("Workflow step {} has no positive execution order", workflowStep.getName());
             throw new PayloadNotValidException("The field executionOrder must have a value greater than 0!");
         }
+        if (workflowStep.getTimeOutInSeconds() < 0) {
+            logger.info("Workflow step {} has a negative time out", workflowStep.getName());
+            throw new PayloadNotValidException("The field timeOutInSeconds must not be negative!");
+        }
+        checkRetryPolicy(workflowStep);
+    }
+
+    private void checkRetryPolicy(WorkflowStep workflowStep) {
+        RetryPolicy retryPolicy = workflowStep.getRetryPolicy();
+        if (retryPolicy == null) {
+            return;
+        }
+        if (retryPolicy.getDelayInSeconds() < 0 || retryPolicy.getMaxDelayInSeconds() < 0) {
+            logger.info("Workflow step {} has a negative retry delay", workflowStep.getName());
+            throw new PayloadNotValidException("The retry delays must not be negative!");
+        }
+        if (retryPolicy.getBackoffStrategy() != BackoffStrategy.FIXED && retryPolicy.getMultiplier() < 1) {
+            logger.info("Workflow step {} has a retry multiplier below 1", workflowStep.getName());
+            throw new PayloadNotValidException("The retry multiplier must be at least 1!");
+        }
     }
 
     public void validateJsonSchema(JsonSchema jsonSchema){
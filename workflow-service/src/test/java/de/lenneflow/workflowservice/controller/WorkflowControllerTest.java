@@ -1,9 +1,12 @@
 package de.lenneflow.workflowservice.controller;
 
 import de.lenneflow.workflowservice.dto.JsonSchemaDTO;
+import de.lenneflow.workflowservice.dto.WorkflowBundle;
 import de.lenneflow.workflowservice.dto.WorkflowDTO;
+import de.lenneflow.workflowservice.exception.ResourceNotFoundException;
 import de.lenneflow.workflowservice.model.JsonSchema;
 import de.lenneflow.workflowservice.model.Workflow;
+import de.lenneflow.workflowservice.model.WorkflowStep;
 import de.lenneflow.workflowservice.repository.JsonSchemaRepository;
 import de.lenneflow.workflowservice.repository.WorkflowRepository;
 import de.lenneflow.workflowservice.repository.WorkflowStepRepository;
@@ -12,7 +15,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -59,6 +65,66 @@ class WorkflowControllerTest {
         assertNull(result);
     }
 
+    @Test
+    void getWorkflowBundle_shouldReturnOrderedStepsWithETag() {
+        mockWorkflowWithSteps(LocalDateTime.of(2024, 1, 1, 0, 0));
+
+        ResponseEntity<WorkflowBundle> result = workflowController.getWorkflowBundle("workflowUid", null);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        WorkflowBundle bundle = result.getBody();
+        assertNotNull(bundle);
+        assertEquals(List.of("first", "second"), bundle.getSteps().stream().map(WorkflowStep::getName).toList());
+        assertEquals("\"" + bundle.getVersion() + "\"", result.getHeaders().getETag());
+    }
+
+    @Test
+    void getWorkflowBundle_shouldReturnNotModifiedForMatchingETag() {
+        mockWorkflowWithSteps(LocalDateTime.of(2024, 1, 1, 0, 0));
+        String eTag = workflowController.getWorkflowBundle("workflowUid", null).getHeaders().getETag();
+
+        ResponseEntity<WorkflowBundle> result = workflowController.getWorkflowBundle("workflowUid", eTag);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+    }
+
+    @Test
+    void getWorkflowBundle_shouldChangeVersionWhenStepChanges() {
+        mockWorkflowWithSteps(LocalDateTime.of(2024, 1, 1, 0, 0));
+        String eTag = workflowController.getWorkflowBundle("workflowUid", null).getHeaders().getETag();
+        mockWorkflowWithSteps(LocalDateTime.of(2024, 1, 2, 0, 0));
+
+        ResponseEntity<WorkflowBundle> result = workflowController.getWorkflowBundle("workflowUid", eTag);
+
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNotEquals(eTag, result.getHeaders().getETag());
+    }
+
+    @Test
+    void getWorkflowBundle_shouldThrowWhenWorkflowNotFound() {
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(null);
+
+        assertThrows(ResourceNotFoundException.class, () -> workflowController.getWorkflowBundle("workflowUid", null));
+    }
+
+    private void mockWorkflowWithSteps(LocalDateTime stepUpdated) {
+        Workflow workflow = new Workflow();
+        workflow.setUid("workflowUid");
+        workflow.setUpdated(LocalDateTime.of(2024, 1, 1, 0, 0));
+        WorkflowStep first = new WorkflowStep();
+        first.setUid("firstUid");
+        first.setName("first");
+        first.setExecutionOrder(1);
+        first.setUpdated(stepUpdated);
+        WorkflowStep second = new WorkflowStep();
+        second.setUid("secondUid");
+        second.setName("second");
+        second.setExecutionOrder(2);
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(workflow);
+        when(workflowStepRepository.findByWorkflowUid("workflowUid")).thenReturn(List.of(second, first));
+    }
+
     @Test
     void getWorkflowByName_shouldReturnWorkflow() {
         String name = "workflowName";
@@ -1,9 +1,11 @@
 package de.lenneflow.workflowservice.controller;
 
+import de.lenneflow.workflowservice.dto.ForkJoinWorkflowStep;
 import de.lenneflow.workflowservice.dto.SimpleWorkflowStep;
 import de.lenneflow.workflowservice.dto.SubWorkflowStep;
 import de.lenneflow.workflowservice.dto.SwitchWorkflowStep;
 import de.lenneflow.workflowservice.dto.WhileWorkflowStep;
+import de.lenneflow.workflowservice.enums.ControlStructure;
 import de.lenneflow.workflowservice.model.Workflow;
 import de.lenneflow.workflowservice.model.WorkflowStep;
 import de.lenneflow.workflowservice.repository.WorkflowRepository;
@@ -177,6 +179,22 @@ class WorkflowStepControllerTest {
         assertEquals(workflowStep, result);
     }
 
+    @Test
+    void addForkJoinWorkflowStep_shouldCreateAndReturnWorkflowStep() {
+        ForkJoinWorkflowStep forkJoinWorkflowStep = new ForkJoinWorkflowStep();
+        WorkflowStep workflowStep = new WorkflowStep();
+        workflowStep.setWorkflowUid("uid");
+
+        when(workflowStepRepository.save(any(WorkflowStep.class))).thenReturn(workflowStep);
+        when(workflowRepository.findByUid(anyString())).thenReturn(new Workflow());
+
+        WorkflowStep result = workflowStepController.addForkJoinWorkflowStep(forkJoinWorkflowStep);
+
+        assertNotNull(result);
+        assertEquals(workflowStep, result);
+        verify(validator).validate(argThat((WorkflowStep step) -> step.getControlStructure() == ControlStructure.FORK_JOIN));
+    }
+
     @Test
     void deleteWorkflowStep_shouldDeleteWorkflowStep() {
         String uid = "stepUid";
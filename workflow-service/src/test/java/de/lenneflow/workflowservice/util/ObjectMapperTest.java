@@ -1,15 +1,19 @@
 package de.lenneflow.workflowservice.util;
 
 import de.lenneflow.workflowservice.dto.*;
+import de.lenneflow.workflowservice.enums.BackoffStrategy;
 import de.lenneflow.workflowservice.enums.ControlStructure;
 import de.lenneflow.workflowservice.enums.JsonSchemaVersion;
+import de.lenneflow.workflowservice.model.ForkBranch;
 import de.lenneflow.workflowservice.model.JsonSchema;
+import de.lenneflow.workflowservice.model.RetryPolicy;
 import de.lenneflow.workflowservice.model.Workflow;
 import de.lenneflow.workflowservice.model.WorkflowStep;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +43,8 @@ class ObjectMapperTest {
         subWorkflowStep.setExecutionOrder(1);
         subWorkflowStep.setInputData(new HashMap<>());
         subWorkflowStep.setRetryCount(3);
+        RetryPolicy retryPolicy = new RetryPolicy(BackoffStrategy.EXPONENTIAL, 5, 2, 60);
+        subWorkflowStep.setRetryPolicy(retryPolicy);
 
         WorkflowStep result = ObjectMapper.mapToWorkflowStep(subWorkflowStep);
 
@@ -51,6 +57,56 @@ class ObjectMapperTest {
         assertEquals(1, result.getExecutionOrder());
         assertEquals(new HashMap<>(), result.getInputData());
         assertEquals(3, result.getRetryCount());
+        assertSame(retryPolicy, result.getRetryPolicy());
+    }
+
+    @Test
+    void mapToWorkflowStep_shouldMapForkJoinWorkflowStepToWorkflowStep() {
+        ForkBranch branch = new ForkBranch();
+        branch.setName("branch");
+        branch.setFunctionUid("functionUid");
+        ForkJoinWorkflowStep forkJoinWorkflowStep = new ForkJoinWorkflowStep();
+        forkJoinWorkflowStep.setName("ForkJoinStep");
+        forkJoinWorkflowStep.setWorkflowUid("workflowUid");
+        forkJoinWorkflowStep.setDescription("Description");
+        forkJoinWorkflowStep.setExecutionOrder(2);
+        forkJoinWorkflowStep.setBranches(List.of(branch));
+        forkJoinWorkflowStep.setJoinCount(1);
+        forkJoinWorkflowStep.setTimeOutInSeconds(45);
+
+        WorkflowStep result = ObjectMapper.mapToWorkflowStep(forkJoinWorkflowStep);
+
+        assertNotNull(result);
+        assertEquals("ForkJoinStep", result.getName());
+        assertEquals("workflowUid", result.getWorkflowUid());
+        assertEquals(ControlStructure.FORK_JOIN, result.getControlStructure());
+        assertEquals(2, result.getExecutionOrder());
+        assertEquals(1, result.getBranches().size());
+        assertEquals(1, result.getJoinCount());
+        assertEquals(0, result.getRetryCount());
+        assertEquals(45, result.getTimeOutInSeconds());
+    }
+
+    @Test
+    void mapToWorkflowStep_shouldMapForEachWorkflowStepToWorkflowStep() {
+        ForEachWorkflowStep forEachWorkflowStep = new ForEachWorkflowStep();
+        forEachWorkflowStep.setName("ForEachStep");
+        forEachWorkflowStep.setWorkflowUid("workflowUid");
+        forEachWorkflowStep.setExecutionOrder(3);
+        forEachWorkflowStep.setFunctionUid("functionUid");
+        forEachWorkflowStep.setItemsExpression("[fetch.output.items]");
+        forEachWorkflowStep.setMaxParallelism(5);
+        forEachWorkflowStep.setRetryCount(2);
+
+        WorkflowStep result = ObjectMapper.mapToWorkflowStep(forEachWorkflowStep);
+
+        assertNotNull(result);
+        assertEquals("ForEachStep", result.getName());
+        assertEquals(ControlStructure.FOR_EACH, result.getControlStructure());
+        assertEquals("functionUid", result.getFunctionUid());
+        assertEquals("[fetch.output.items]", result.getItemsExpression());
+        assertEquals(5, result.getMaxParallelism());
+        assertEquals(2, result.getRetryCount());
     }
 
     @Test
@@ -107,6 +163,7 @@ class ObjectMapperTest {
         switchWorkflowStep.setSwitchCase("switchCase");
         switchWorkflowStep.setDecisionCases(new ArrayList<>());
         switchWorkflowStep.setInputData(new HashMap<>());
+        switchWorkflowStep.setTimeOutInSeconds(20);
 
         WorkflowStep result = ObjectMapper.mapToWorkflowStep(switchWorkflowStep);
 
@@ -120,6 +177,7 @@ class ObjectMapperTest {
         assertEquals("switchCase", result.getSwitchCase());
         assertEquals(new ArrayList<>(), result.getDecisionCases());
         assertEquals(new HashMap<>(), result.getInputData());
+        assertEquals(20, result.getTimeOutInSeconds());
     }
 
     @Test
@@ -130,6 +188,7 @@ class ObjectMapperTest {
         simpleWorkflowStep.setDescription("Description");
         simpleWorkflowStep.setExecutionOrder(4);
         simpleWorkflowStep.setRetryCount(0);
+        simpleWorkflowStep.setTimeOutInSeconds(30);
         simpleWorkflowStep.setFunctionUid("functionUid");
         simpleWorkflowStep.setInputData(new HashMap<>());
 
@@ -142,10 +201,20 @@ class ObjectMapperTest {
         assertEquals(ControlStructure.SIMPLE, result.getControlStructure());
         assertEquals(4, result.getExecutionOrder());
         assertEquals(0, result.getRetryCount());
+        assertEquals(30, result.getTimeOutInSeconds());
         assertEquals("functionUid", result.getFunctionUid());
         assertEquals(new HashMap<>(), result.getInputData());
     }
 
+    @Test
+    void mapToWorkflow_shouldMapTimeOut() {
+        WorkflowDTO workflowDTO = new WorkflowDTO();
+        assertEquals(Long.MAX_VALUE, ObjectMapper.mapToWorkflow(workflowDTO).getTimeOutInSeconds());
+
+        workflowDTO.setTimeOutInSeconds(60);
+        assertEquals(60, ObjectMapper.mapToWorkflow(workflowDTO).getTimeOutInSeconds());
+    }
+
     @Test
     void mapToWorkflow_shouldHandleNullWorkflowDTO() {
         WorkflowDTO workflowDTO = null;
@@ -1,11 +1,14 @@
 package de.lenneflow.workflowservice.util;
 
 import de.lenneflow.workflowservice.dto.WorkflowDTO;
+import de.lenneflow.workflowservice.enums.BackoffStrategy;
 import de.lenneflow.workflowservice.enums.ControlStructure;
 import de.lenneflow.workflowservice.enums.JsonSchemaVersion;
 import de.lenneflow.workflowservice.exception.InternalServiceException;
 import de.lenneflow.workflowservice.exception.PayloadNotValidException;
+import de.lenneflow.workflowservice.model.ForkBranch;
 import de.lenneflow.workflowservice.model.JsonSchema;
+import de.lenneflow.workflowservice.model.RetryPolicy;
 import de.lenneflow.workflowservice.model.Workflow;
 import de.lenneflow.workflowservice.model.WorkflowStep;
 import de.lenneflow.workflowservice.repository.JsonSchemaRepository;
@@ -16,6 +19,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -119,6 +124,51 @@ class ValidatorTest {
         assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
     }
 
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenRetryDelayIsNegative() {
+        WorkflowStep workflowStep = new WorkflowStep();
+        workflowStep.setUid("uid");
+        workflowStep.setWorkflowUid("workflowUid");
+        workflowStep.setName("name");
+        workflowStep.setExecutionOrder(1);
+        workflowStep.setControlStructure(ControlStructure.SIMPLE);
+        workflowStep.setFunctionUid("functionUid");
+        RetryPolicy retryPolicy = new RetryPolicy();
+        retryPolicy.setDelayInSeconds(-1);
+        workflowStep.setRetryPolicy(retryPolicy);
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenTimeOutIsNegative() {
+        WorkflowStep workflowStep = createForkJoinStep();
+        workflowStep.setBranches(List.of(createBranch("branch1")));
+        workflowStep.setTimeOutInSeconds(-1);
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenRetryMultiplierIsBelowOne() {
+        WorkflowStep workflowStep = new WorkflowStep();
+        workflowStep.setUid("uid");
+        workflowStep.setWorkflowUid("workflowUid");
+        workflowStep.setName("name");
+        workflowStep.setExecutionOrder(1);
+        workflowStep.setControlStructure(ControlStructure.SIMPLE);
+        workflowStep.setFunctionUid("functionUid");
+        workflowStep.setRetryPolicy(new RetryPolicy(BackoffStrategy.EXPONENTIAL, 1, 0.5, 0));
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
     @Test
     void validateWorkflowStep_shouldThrowExceptionWhenSwitchStepHasNoSwitchCase() {
         WorkflowStep workflowStep = new WorkflowStep();
@@ -191,6 +241,69 @@ class ValidatorTest {
         assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
     }
 
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenForkJoinStepHasNoBranches() {
+        WorkflowStep workflowStep = createForkJoinStep();
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenForkJoinStepHasDuplicateBranchNames() {
+        WorkflowStep workflowStep = createForkJoinStep();
+        workflowStep.setBranches(List.of(createBranch("branch"), createBranch("branch")));
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenForkJoinCountExceedsBranches() {
+        WorkflowStep workflowStep = createForkJoinStep();
+        workflowStep.setBranches(List.of(createBranch("branch1"), createBranch("branch2")));
+        workflowStep.setJoinCount(3);
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldAcceptValidForkJoinStep() {
+        WorkflowStep workflowStep = createForkJoinStep();
+        workflowStep.setBranches(List.of(createBranch("branch1"), createBranch("branch2")));
+        workflowStep.setJoinCount(1);
+        workflowStep.setTimeOutInSeconds(30);
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertDoesNotThrow(() -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldThrowExceptionWhenForEachStepHasNoItemsReference() {
+        WorkflowStep workflowStep = createForEachStep();
+        workflowStep.setItemsExpression("fetch.output.items");
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowStep));
+    }
+
+    @Test
+    void validateWorkflowStep_shouldAcceptValidForEachStep() {
+        WorkflowStep workflowStep = createForEachStep();
+        workflowStep.setItemsExpression("[fetch.output.items]");
+        workflowStep.setMaxParallelism(4);
+
+        when(workflowRepository.findByUid("workflowUid")).thenReturn(new Workflow());
+
+        assertDoesNotThrow(() -> validator.validate(workflowStep));
+    }
+
     @Test
     void validateWorkflow_shouldThrowExceptionWhenNameIsEmpty() {
         Workflow workflow = new Workflow();
@@ -225,4 +338,32 @@ class ValidatorTest {
 
         assertThrows(PayloadNotValidException.class, () -> validator.validate(workflowDTO));
     }
-}
\ No newline at end of file
+
+    private WorkflowStep createForkJoinStep() {
+        WorkflowStep workflowStep = new WorkflowStep();
+        workflowStep.setUid("uid");
+        workflowStep.setWorkflowUid("workflowUid");
+        workflowStep.setName("name");
+        workflowStep.setExecutionOrder(1);
+        workflowStep.setControlStructure(ControlStructure.FORK_JOIN);
+        return workflowStep;
+    }
+
+    private WorkflowStep createForEachStep() {
+        WorkflowStep workflowStep = new WorkflowStep();
+        workflowStep.setUid("uid");
+        workflowStep.setWorkflowUid("workflowUid");
+        workflowStep.setName("name");
+        workflowStep.setExecutionOrder(1);
+        workflowStep.setFunctionUid("functionUid");
+        workflowStep.setControlStructure(ControlStructure.FOR_EACH);
+        return workflowStep;
+    }
+
+    private ForkBranch createBranch(String name) {
+        ForkBranch branch = new ForkBranch();
+        branch.setName(name);
+        branch.setFunctionUid("functionUid");
+        return branch;
+    }
+}